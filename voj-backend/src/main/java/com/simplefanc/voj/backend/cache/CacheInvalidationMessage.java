@@ -0,0 +1,25 @@
+package com.simplefanc.voj.backend.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author chenfan
+ * @date 2023/11/2 10:21
+ * 通过 Redis 发布订阅广播的一级缓存失效通知
+ **/
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheInvalidationMessage {
+    /**
+     * 发送通知的节点，收到自己发送的通知时忽略
+     */
+    private String nodeId;
+    private String cacheName;
+    /**
+     * 为null时清空整个缓存
+     */
+    private String key;
+}
@@ -13,11 +13,10 @@ import java.util.Map;
 public class CacheTypeManager {
     public static final Map<String, CacheType> CACHE_TYPE_MAP = new HashMap<>(){
         {
-            put(RedisConstant.OI_CONTEST_RANK_CACHE, new CacheType(RedisConstant.OI_CONTEST_RANK_CACHE, 3600, 2 * 3600));
-            put(RedisConstant.CONTEST_RANK_CAL_RESULT_CACHE, new CacheType(RedisConstant.CONTEST_RANK_CAL_RESULT_CACHE, 8, 16));
-            put(RedisConstant.SUPER_ADMIN_UID_LIST_CACHE, new CacheType(RedisConstant.SUPER_ADMIN_UID_LIST_CACHE, 6 * 3600, 12 * 3600));
-            put(RedisConstant.ACM_RANK_CACHE, new CacheType(RedisConstant.ACM_RANK_CACHE, 30, 60));
-            put(RedisConstant.OI_RANK_CACHE, new CacheType(RedisConstant.OI_RANK_CACHE, 30, 60));
+            put(RedisConstant.SUPER_ADMIN_UID_LIST_CACHE, new CacheType(RedisConstant.SUPER_ADMIN_UID_LIST_CACHE, 6 * 3600, 12 * 3600, false));
+            put(RedisConstant.ACM_RANK_CACHE, new CacheType(RedisConstant.ACM_RANK_CACHE, 30, 60, true));
+            put(RedisConstant.OI_RANK_CACHE, new CacheType(RedisConstant.OI_RANK_CACHE, 30, 60, true));
+            put(RedisConstant.JUDGE_LIST_COUNT_CACHE, new CacheType(RedisConstant.JUDGE_LIST_COUNT_CACHE, 30, 60, true));
         }
     };
 
@@ -26,5 +25,9 @@ public class CacheTypeManager {
         public String key;
         public final int ttl1;
         public final int ttl2;
+        /**
+         * 热点缓存：一级缓存快过期时后台提前刷新，读取时不等待加载
+         */
+        public final boolean refreshAhead;
     }
 }
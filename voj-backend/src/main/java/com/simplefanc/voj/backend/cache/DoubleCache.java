@@ -2,41 +2,96 @@ package com.simplefanc.voj.backend.cache;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.simplefanc.voj.backend.config.property.DoubleCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @program: double-cache
  * @author: chenfan
  * @create: 2022-10-6 10:07
+ * <p>
+ * 一级缓存为本机 Caffeine，二级缓存为 Redis。同一个 key 在本机同时只有一个线程执行加载，其它线程等待其结果；
+ * 写入、删除、清空后通过 Redis 发布订阅通知其它节点删除各自的一级缓存；
+ * 开启了提前刷新的缓存，一级缓存的数据存在时间超过过期时间的 {@link #REFRESH_AHEAD_RATIO} 后，读取时仍返回旧值并在后台重新加载
  **/
 @Slf4j
 public class DoubleCache extends AbstractValueAdaptingCache {
-    private String cacheName;
-    private RedisTemplate<Object, Object> redisTemplate;
-    private Cache<Object, Object> caffeineCache;
-    private DoubleCacheProperties cacheConfig;
 
-    protected DoubleCache(boolean allowNullValues) {
-        super(allowNullValues);
-    }
+    private static final double REFRESH_AHEAD_RATIO = 0.8;
+
+    private static final int SCAN_BATCH_SIZE = 500;
+
+    private final String cacheName;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    private final Cache<String, Object> caffeineCache;
+
+    private final DoubleCacheProperties cacheConfig;
+
+    private final CacheTypeManager.CacheType cacheType;
+
+    private final DoubleCacheManager cacheManager;
+
+    /**
+     * 正在加载的 key，同一 key 的并发加载共享同一个结果
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> loadings = new ConcurrentHashMap<>();
+
+    private final Counter l1HitCounter;
+
+    private final Counter l2HitCounter;
+
+    private final Counter missCounter;
 
-    public DoubleCache(String cacheName, RedisTemplate<Object, Object> redisTemplate,
-                       Cache<Object, Object> caffeineCache,
-                       DoubleCacheProperties cacheConfig) {
+    private final Timer loadTimer;
+
+    public DoubleCache(String cacheName, RedisTemplate<String, Object> redisTemplate,
+                       Cache<String, Object> caffeineCache,
+                       DoubleCacheProperties cacheConfig, DoubleCacheManager cacheManager,
+                       MeterRegistry meterRegistry) {
         super(cacheConfig.getAllowNull());
         this.cacheName = cacheName;
         this.redisTemplate = redisTemplate;
         this.caffeineCache = caffeineCache;
         this.cacheConfig = cacheConfig;
+        this.cacheType = CacheTypeManager.CACHE_TYPE_MAP.get(cacheName);
+        this.cacheManager = cacheManager;
+        this.l1HitCounter = getCounter(meterRegistry, "l1_hit");
+        this.l2HitCounter = getCounter(meterRegistry, "l2_hit");
+        this.missCounter = getCounter(meterRegistry, "miss");
+        this.loadTimer = Timer.builder("voj.cache.load")
+                .tag("cache", cacheName)
+                .description("缓存未命中时加载数据的耗时")
+                .register(meterRegistry);
+    }
+
+    private Counter getCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("voj.cache.gets")
+                .tag("cache", cacheName)
+                .tag("result", result)
+                .description("缓存读取次数")
+                .register(meterRegistry);
     }
 
     /**
@@ -47,50 +102,102 @@ public class DoubleCache extends AbstractValueAdaptingCache {
     @Override
     protected Object lookup(Object key) {
         // 先从caffeine中查找
-        Object obj = caffeineCache.getIfPresent(key);
+        Object obj = caffeineCache.getIfPresent(toCacheKey(key));
         if (Objects.nonNull(obj)) {
-            log.info("get data from caffeine");
+            l1HitCounter.increment();
             // 不用fromStoreValue，否则返回的是null，会再查数据库
             return obj;
         }
 
         // 再从redis中查找
-        String redisKey = this.cacheName + ":" + key;
-        obj = redisTemplate.opsForValue().get(redisKey);
+        obj = redisTemplate.opsForValue().get(getRedisKey(key));
         if (Objects.nonNull(obj)) {
-            log.info("get data from redis");
-            caffeineCache.put(key, obj);
+            l2HitCounter.increment();
+            caffeineCache.put(toCacheKey(key), obj);
+        } else {
+            missCounter.increment();
         }
         return obj;
     }
 
     /**
-     * 如果只是使用注解来管理缓存的话，那么这个方法不会被调用到（实际走父类的get方法）
+     * 如果只是使用注解来管理缓存的话，那么这个方法不会被调用到（实际走父类的get方法），
+     * 注解中指定 sync = true 或直接调用时使用
      * @param key
      * @param valueLoader
      * @param <T>
      * @return
      */
     @Override
+    @SuppressWarnings("unchecked")
     public <T> T get(Object key, Callable<T> valueLoader) {
-        ReentrantLock lock = new ReentrantLock();
-        lock.lock();
+        Object obj = lookup(key);
+        if (Objects.nonNull(obj)) {
+            if (shouldRefreshAhead(key)) {
+                refreshAsync(key, valueLoader);
+            }
+            return (T) fromStoreValue(obj);
+        }
+        try {
+            return (T) load(key, valueLoader, false).join();
+        } catch (CompletionException e) {
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        }
+    }
+
+    /**
+     * 同一 key 只有第一个线程执行加载，其它线程等待同一个结果
+     *
+     * @param force 为true时即使一级缓存中有值也重新加载（提前刷新）
+     */
+    private CompletableFuture<Object> load(Object key, Callable<?> valueLoader, boolean force) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loading = loadings.putIfAbsent(toCacheKey(key), future);
+        if (loading != null) {
+            return loading;
+        }
         try {
-            Object obj = lookup(key);
-            if (Objects.nonNull(obj)) {
-                return (T) obj;
+            // 等待期间其它线程可能已经加载完成
+            Object obj = force ? null : caffeineCache.getIfPresent(toCacheKey(key));
+            if (Objects.isNull(obj)) {
+                long startTime = System.nanoTime();
+                obj = valueLoader.call();
+                loadTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+                put(key, obj);
+                obj = toStoreValue(obj);
             }
-            // 没有找到
-            obj = valueLoader.call();
-            // 放入缓存
-            put(key, obj);
-            return (T) obj;
-        } catch (Exception e) {
-            log.error(e.getMessage());
+            future.complete(fromStoreValue(obj));
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
         } finally {
-            lock.unlock();
+            loadings.remove(toCacheKey(key), future);
+        }
+        return future;
+    }
+
+    private void refreshAsync(Object key, Callable<?> valueLoader) {
+        if (loadings.containsKey(toCacheKey(key))) {
+            return;
+        }
+        try {
+            // 刷新期间其它线程仍读取旧值
+            cacheManager.getRefreshExecutor().execute(() -> load(key, valueLoader, true).exceptionally(t -> {
+                log.error("refresh cache {}:{} failed", cacheName, key, t);
+                return null;
+            }));
+        } catch (RejectedExecutionException e) {
+            // 刷新任务过多时放弃本次提前刷新，过期后由读取线程加载
         }
-        return null;
+    }
+
+    private boolean shouldRefreshAhead(Object key) {
+        if (cacheType == null || !cacheType.refreshAhead) {
+            return false;
+        }
+        return caffeineCache.policy().expireAfterWrite()
+                .map(expiration -> expiration.ageOf(toCacheKey(key), TimeUnit.SECONDS).orElse(0)
+                        >= cacheType.ttl1 * REFRESH_AHEAD_RATIO)
+                .orElse(false);
     }
 
     /**
@@ -106,15 +213,14 @@ public class DoubleCache extends AbstractValueAdaptingCache {
         }
 
         // 使用 toStoreValue(value) 包装，解决caffeine不能存null的问题
-        caffeineCache.put(key, toStoreValue(value));
+        caffeineCache.put(toCacheKey(key), toStoreValue(value));
 
         // null对象只存在caffeine中一份就够了，不用存redis了
         if (Objects.isNull(value)) {
             return;
         }
-        String redisKey = this.cacheName + ":" + key;
-        final CacheTypeManager.CacheType cacheType = CacheTypeManager.CACHE_TYPE_MAP.get(this.cacheName);
-        if(cacheType != null) {
+        String redisKey = getRedisKey(key);
+        if (cacheType != null) {
             redisTemplate.opsForValue().set(redisKey, toStoreValue(value),
                     cacheType.ttl2, TimeUnit.SECONDS);
         } else {
@@ -127,6 +233,8 @@ public class DoubleCache extends AbstractValueAdaptingCache {
                 redisTemplate.opsForValue().set(redisKey, toStoreValue(value));
             }
         }
+        // 其它节点的一级缓存中是旧值
+        cacheManager.publishInvalidation(cacheName, toCacheKey(key));
     }
 
     /**
@@ -135,21 +243,59 @@ public class DoubleCache extends AbstractValueAdaptingCache {
      */
     @Override
     public void evict(Object key) {
-        redisTemplate.delete(this.cacheName + ":" + key);
-        caffeineCache.invalidate(key);
+        redisTemplate.delete(getRedisKey(key));
+        caffeineCache.invalidate(toCacheKey(key));
+        cacheManager.publishInvalidation(cacheName, toCacheKey(key));
     }
 
     /**
-     * 清空缓存中所有数据
+     * 清空缓存中所有数据，使用 SCAN 分批查找 key，避免 KEYS 阻塞 Redis
      */
     @Override
     public void clear() {
-        // 如果是正式环境，避免使用keys命令
-        Set<Object> keys = redisTemplate.keys(this.cacheName.concat(":*"));
-        for (Object key : keys) {
-            redisTemplate.delete(String.valueOf(key));
+        List<String> redisKeys = redisTemplate.execute((RedisCallback<List<String>>) connection -> scanKeys(connection));
+        if (redisKeys != null) {
+            for (int i = 0; i < redisKeys.size(); i += SCAN_BATCH_SIZE) {
+                redisTemplate.delete(redisKeys.subList(i, Math.min(i + SCAN_BATCH_SIZE, redisKeys.size())));
+            }
         }
         caffeineCache.invalidateAll();
+        cacheManager.publishInvalidation(cacheName, null);
+    }
+
+    private List<String> scanKeys(RedisConnection connection) {
+        List<String> redisKeys = new ArrayList<>();
+        ScanOptions options = ScanOptions.scanOptions().match(this.cacheName + ":*").count(SCAN_BATCH_SIZE).build();
+        try (Cursor<byte[]> cursor = connection.scan(options)) {
+            while (cursor.hasNext()) {
+                redisKeys.add(new String(cursor.next(), StandardCharsets.UTF_8));
+            }
+        }
+        return redisKeys;
+    }
+
+    /**
+     * 收到其它节点的失效通知，只删除本机一级缓存
+     *
+     * @param key 为null时清空
+     */
+    void invalidateLocal(String key) {
+        if (key == null) {
+            caffeineCache.invalidateAll();
+        } else {
+            caffeineCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 一级缓存与失效通知统一使用字符串形式的 key（与 Redis key 的后缀相同），注解生成的 SimpleKey 等也能跨节点失效
+     */
+    private static String toCacheKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    private String getRedisKey(Object key) {
+        return this.cacheName + ":" + key;
     }
 
     /**
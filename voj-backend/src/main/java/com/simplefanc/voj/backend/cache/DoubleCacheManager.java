@@ -1,32 +1,64 @@
 package com.simplefanc.voj.backend.cache;
 
+import cn.hutool.core.util.IdUtil;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.simplefanc.voj.backend.config.property.DoubleCacheProperties;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.core.RedisTemplate;
 
 import java.util.Collection;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @program: 缓存管理器 管理 DoubleCache 作为spring中的缓存使用
  * @author: chenfan
  * @create: 2022-10-6 10:07
+ * <p>
+ * 同时订阅 {@link RedisConstant#DOUBLE_CACHE_INVALIDATION_CHANNEL}，收到其它节点的失效通知后删除本机对应的一级缓存
  **/
-public class DoubleCacheManager implements CacheManager {
+@Slf4j
+public class DoubleCacheManager implements CacheManager, MessageListener, DisposableBean {
     Map<String, Cache> cacheMap = new ConcurrentHashMap<>();
-    private RedisTemplate<Object, Object> redisTemplate;
+    private RedisTemplate<String, Object> redisTemplate;
     private DoubleCacheProperties cacheConfig;
+    private MeterRegistry meterRegistry;
+    /**
+     * 本节点标识
+     */
+    private final String nodeId = IdUtil.fastSimpleUUID();
+    /**
+     * 提前刷新热点缓存的线程池，队列满时放弃刷新
+     */
+    private final ThreadPoolExecutor refreshExecutor;
 
-    public DoubleCacheManager(RedisTemplate<Object, Object> redisTemplate,
-                              DoubleCacheProperties doubleCacheConfig) {
+    public DoubleCacheManager(RedisTemplate<String, Object> redisTemplate,
+                              DoubleCacheProperties doubleCacheConfig,
+                              MeterRegistry meterRegistry) {
         this.redisTemplate = redisTemplate;
         this.cacheConfig = doubleCacheConfig;
+        this.meterRegistry = meterRegistry;
+        AtomicInteger threadNum = new AtomicInteger();
+        this.refreshExecutor = new ThreadPoolExecutor(1, 4, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(64), r -> {
+            Thread thread = new Thread(r, "DoubleCacheRefresh-" + threadNum.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
     }
 
     /**
@@ -40,10 +72,9 @@ public class DoubleCacheManager implements CacheManager {
         if (Objects.nonNull(cache)) {
             return cache;
         }
-        cache = new DoubleCache(name, redisTemplate, createCaffeineCache(name), cacheConfig);
-        // 使用 ConcurrentHashMap的putIfAbsent()方法放入，避免重复创建Cache以及造成Cache内数据的丢失
-        Cache oldCache = cacheMap.putIfAbsent(name, cache);
-        return oldCache == null ? cache : oldCache;
+        // 使用 ConcurrentHashMap的computeIfAbsent()方法创建，避免重复创建Cache以及重复注册监控指标
+        return cacheMap.computeIfAbsent(name, k -> new DoubleCache(name, redisTemplate, createCaffeineCache(name),
+                cacheConfig, this, meterRegistry));
     }
 
     /**
@@ -55,11 +86,51 @@ public class DoubleCacheManager implements CacheManager {
         return cacheMap.keySet();
     }
 
+    Executor getRefreshExecutor() {
+        return refreshExecutor;
+    }
+
+    /**
+     * 通知其它节点删除一级缓存
+     *
+     * @param key 为null时清空整个缓存
+     */
+    void publishInvalidation(String cacheName, String key) {
+        try {
+            redisTemplate.convertAndSend(RedisConstant.DOUBLE_CACHE_INVALIDATION_CHANNEL,
+                    new CacheInvalidationMessage(nodeId, cacheName, key));
+        } catch (Exception e) {
+            // 通知失败时其它节点的一级缓存最迟在 ttl1 后过期
+            log.error("publish invalidation of cache {}:{} failed", cacheName, key, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(body instanceof CacheInvalidationMessage)) {
+            return;
+        }
+        CacheInvalidationMessage invalidation = (CacheInvalidationMessage) body;
+        if (nodeId.equals(invalidation.getNodeId())) {
+            return;
+        }
+        Cache cache = cacheMap.get(invalidation.getCacheName());
+        if (cache instanceof DoubleCache) {
+            ((DoubleCache) cache).invalidateLocal(invalidation.getKey());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
     /**
      * 根据项目配置文件中的具体参数进行初始化
      * @return
      */
-    private com.github.benmanes.caffeine.cache.Cache<Object, Object> createCaffeineCache(String name) {
+    private com.github.benmanes.caffeine.cache.Cache<String, Object> createCaffeineCache(String name) {
         Caffeine<Object, Object> caffeineBuilder = Caffeine.newBuilder();
         Optional<DoubleCacheProperties> cacheConfig = Optional.ofNullable(this.cacheConfig);
         cacheConfig.map(DoubleCacheProperties::getInitialCapacity)
@@ -75,8 +146,7 @@ public class DoubleCacheManager implements CacheManager {
         }
         cacheConfig.map(DoubleCacheProperties::getExpireAfterAccess)
                 .ifPresent(eaa -> caffeineBuilder.expireAfterAccess(eaa, TimeUnit.SECONDS));
-        cacheConfig.map(DoubleCacheProperties::getRefreshAfterWrite)
-                .ifPresent(raw -> caffeineBuilder.refreshAfterWrite(raw, TimeUnit.SECONDS));
+        // refreshAfterWrite 需要 LoadingCache，这里的加载逻辑由调用方提供，提前刷新由 DoubleCache 实现
         return caffeineBuilder.build();
     }
 }
@@ -1,5 +1,6 @@
 package com.simplefanc.voj.backend.common.utils;
 
+import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.io.file.FileReader;
 import cn.hutool.core.util.CharsetUtil;
 import cn.hutool.json.JSONUtil;
@@ -11,10 +12,17 @@ import org.springframework.web.multipart.MultipartFile;
 import javax.servlet.http.HttpServletResponse;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
 
 /**
  * @author chenfan
@@ -44,18 +52,90 @@ public class MyFileUtil {
             bouts.flush();
         } catch (IOException e) {
             log.error(errMsg + "------------>", e);
-            response.reset();
-            response.setContentType("application/json");
-            response.setCharacterEncoding(CharsetUtil.UTF_8);
-            Map<String, Object> map = new HashMap<>();
-            map.put("status", ResultStatus.SYSTEM_ERROR);
-            map.put("msg", errMsg);
-            map.put("data", null);
-            try {
-                response.getWriter().println(JSONUtil.toJsonStr(map));
-            } catch (IOException ioException) {
-                ioException.printStackTrace();
+            writeError(response, errMsg);
+        }
+    }
+
+    /**
+     * 边生成边下载zip，压缩内容直接写入响应流，不在磁盘上生成临时文件
+     *
+     * @param zipWriter 向压缩流中写入条目
+     */
+    public void downloadZip(HttpServletResponse response, String fileName, String errMsg, ZipWriter zipWriter) {
+        response.setContentType("application/x-download");
+        try {
+            response.setHeader("Content-disposition", "attachment;filename=" + URLEncoder.encode(fileName, CharsetUtil.UTF_8));
+            ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(response.getOutputStream()));
+            zipWriter.write(zipOut);
+            zipOut.finish();
+            zipOut.flush();
+        } catch (IOException e) {
+            log.error(errMsg + "------------>", e);
+            // 已经开始传输时无法再返回错误信息，客户端会收到不完整的文件
+            if (!response.isCommitted()) {
+                writeError(response, errMsg);
+            }
+        }
+    }
+
+    /**
+     * 写入一个文件条目，同名条目已存在时跳过
+     */
+    public void putZipEntry(ZipOutputStream zipOut, String entryName, String content) throws IOException {
+        if (putEntry(zipOut, entryName)) {
+            zipOut.write(content == null ? new byte[0] : content.getBytes(StandardCharsets.UTF_8));
+            zipOut.closeEntry();
+        }
+    }
+
+    public void putZipEntry(ZipOutputStream zipOut, String entryName, File file) throws IOException {
+        if (putEntry(zipOut, entryName)) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                IoUtil.copy(in, zipOut);
             }
+            zipOut.closeEntry();
         }
     }
+
+    /**
+     * 写入一个空文件夹条目
+     */
+    public void putZipDirectory(ZipOutputStream zipOut, String dirName) throws IOException {
+        if (putEntry(zipOut, dirName.endsWith("/") ? dirName : dirName + "/")) {
+            zipOut.closeEntry();
+        }
+    }
+
+    private boolean putEntry(ZipOutputStream zipOut, String entryName) throws IOException {
+        try {
+            zipOut.putNextEntry(new ZipEntry(entryName));
+            return true;
+        } catch (ZipException e) {
+            // 同名条目（如同一秒内的多次提交），保留先写入的
+            log.warn("Skip duplicate zip entry [{}]", entryName);
+            return false;
+        }
+    }
+
+    private void writeError(HttpServletResponse response, String errMsg) {
+        response.reset();
+        response.setContentType("application/json");
+        response.setCharacterEncoding(CharsetUtil.UTF_8);
+        Map<String, Object> map = new HashMap<>();
+        map.put("status", ResultStatus.SYSTEM_ERROR);
+        map.put("msg", errMsg);
+        map.put("data", null);
+        try {
+            response.getWriter().println(JSONUtil.toJsonStr(map));
+        } catch (IOException ioException) {
+            ioException.printStackTrace();
+        }
+    }
+
+    @FunctionalInterface
+    public interface ZipWriter {
+
+        void write(ZipOutputStream zipOut) throws IOException;
+
+    }
 }
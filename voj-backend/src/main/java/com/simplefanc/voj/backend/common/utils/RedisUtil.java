@@ -8,8 +8,11 @@ import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.StringRedisConnection;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -576,6 +579,59 @@ public final class RedisUtil {
         }
     }
 
+    /**
+     * 从list右边批量取出，使用管道发送多个单值 RPOP（RPOP key count 需要 Redis 6.2 及以上）
+     *
+     * @param key   键
+     * @param count 最多取出的个数
+     * @return
+     */
+    public List<Object> lrPop(String key, long count) {
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        byte[] rawKey = keySerializer.serialize(key);
+        List<Object> values = redisTemplate.executePipelined(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                for (long i = 0; i < count; i++) {
+                    connection.rPop(rawKey);
+                }
+                return null;
+            }
+        });
+        List<Object> result = new ArrayList<>(values.size());
+        for (Object value : values) {
+            // 队列为空后的 RPOP 返回null
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 阻塞地从多个list的右边取出一个值，按key的顺序优先取出前面的list
+     *
+     * @param timeout 最长阻塞时间(秒)
+     * @param keys    键
+     * @return 超时返回null
+     */
+    public Object brPop(long timeout, String... keys) {
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        byte[][] rawKeys = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            rawKeys[i] = keySerializer.serialize(keys[i]);
+        }
+        List<byte[]> result = redisTemplate.execute(
+                (RedisCallback<List<byte[]>>) connection -> connection.bRPop((int) timeout, rawKeys));
+        if (result == null || result.size() < 2) {
+            return null;
+        }
+        return redisTemplate.getValueSerializer().deserialize(result.get(1));
+    }
+
     /**
      * 将list放入缓存
      *
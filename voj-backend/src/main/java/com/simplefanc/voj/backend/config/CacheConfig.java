@@ -2,23 +2,38 @@ package com.simplefanc.voj.backend.config;
 
 import com.simplefanc.voj.backend.cache.DoubleCacheManager;
 import com.simplefanc.voj.backend.config.property.DoubleCacheProperties;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
 /**
  * @author: chenfan
  * @create: 2022-10-6 10:07
  **/
-//@Configuration
+@Configuration
 public class CacheConfig {
-//    @Autowired
-    DoubleCacheProperties doubleCacheConfig;
 
-//    @Bean
-    public DoubleCacheManager cacheManager(RedisTemplate<Object, Object> redisTemplate,
-                                           DoubleCacheProperties doubleCacheConfig) {
-        return new DoubleCacheManager(redisTemplate, doubleCacheConfig);
+    @Bean
+    public DoubleCacheManager cacheManager(RedisTemplate<String, Object> redisTemplate,
+                                           DoubleCacheProperties doubleCacheConfig,
+                                           MeterRegistry meterRegistry) {
+        return new DoubleCacheManager(redisTemplate, doubleCacheConfig, meterRegistry);
+    }
+
+    /**
+     * 订阅一级缓存失效通知，其它 Redis 消息的订阅者（如判题状态推送）自行注册到该容器
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                       DoubleCacheManager cacheManager) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(cacheManager, new ChannelTopic(RedisConstant.DOUBLE_CACHE_INVALIDATION_CHANNEL));
+        return container;
     }
 }
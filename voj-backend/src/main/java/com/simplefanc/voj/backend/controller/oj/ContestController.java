@@ -104,6 +104,7 @@ public class ContestController {
     public CommonResult<IPage<JudgeVO>> getContestSubmissionList(
             @RequestParam(value = "limit", required = false) Integer limit,
             @RequestParam(value = "currentPage", required = false) Integer currentPage,
+            @RequestParam(value = "lastSubmitId", required = false) Long lastSubmitId,
             @RequestParam(value = "onlyMine", required = false) Boolean onlyMine,
             @RequestParam(value = "problemID", required = false) String displayId,
             @RequestParam(value = "status", required = false) Integer searchStatus,
@@ -112,8 +113,8 @@ public class ContestController {
             @RequestParam(value = "beforeContestSubmit") Boolean beforeContestSubmit,
             @RequestParam(value = "completeProblemID", defaultValue = "false") Boolean completeProblemId) {
         // TODO 参数过多
-        return CommonResult.successResponse(contestService.getContestSubmissionList(limit, currentPage, onlyMine,
-                displayId, searchStatus, searchUsername, searchCid, beforeContestSubmit, completeProblemId));
+        return CommonResult.successResponse(contestService.getContestSubmissionList(limit, currentPage, lastSubmitId,
+                onlyMine, displayId, searchStatus, searchUsername, searchCid, beforeContestSubmit, completeProblemId));
     }
 
     /**
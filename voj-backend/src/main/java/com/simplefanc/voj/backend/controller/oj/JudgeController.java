@@ -12,7 +12,9 @@ import com.simplefanc.voj.common.result.CommonResult;
 import lombok.RequiredArgsConstructor;
 import org.apache.shiro.authz.annotation.RequiresAuthentication;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.List;
@@ -82,6 +84,7 @@ public class JudgeController {
     /**
      * @param limit
      * @param currentPage
+     * @param lastSubmitId 上一页最后一条提交的id，传入时按提交id游标分页，忽略 currentPage
      * @param onlyMine
      * @param searchPid
      * @param searchStatus
@@ -95,13 +98,14 @@ public class JudgeController {
     @RequestMapping(value = "/submissions", method = RequestMethod.GET)
     public CommonResult<IPage<JudgeVO>> getJudgeList(@RequestParam(value = "limit", required = false) Integer limit,
                                                      @RequestParam(value = "currentPage", required = false) Integer currentPage,
+                                                     @RequestParam(value = "lastSubmitId", required = false) Long lastSubmitId,
                                                      @RequestParam(value = "onlyMine", required = false) Boolean onlyMine,
                                                      @RequestParam(value = "problemID", required = false) String searchPid,
                                                      @RequestParam(value = "status", required = false) Integer searchStatus,
                                                      @RequestParam(value = "username", required = false) String searchUsername,
                                                      @RequestParam(value = "completeProblemID", defaultValue = "false") Boolean completeProblemId) {
-        return CommonResult.successResponse(judgeService.getJudgeList(limit, currentPage, onlyMine, searchPid,
-                searchStatus, searchUsername, completeProblemId));
+        return CommonResult.successResponse(judgeService.getJudgeList(limit, currentPage, lastSubmitId, onlyMine,
+                searchPid, searchStatus, searchUsername, completeProblemId));
     }
 
     /**
@@ -128,6 +132,31 @@ public class JudgeController {
         return CommonResult.successResponse(judgeService.checkContestJudgeResult(submitIdListDTO));
     }
 
+    /**
+     * @MethodName subscribeCommonJudgeStatus
+     * @Description 以 SSE 推送当前用户非比赛提交的判题状态变化，推送不可用时前端退回轮询 /check-submissions-status
+     * @Return
+     * @Since 2023/11/5
+     */
+    @GetMapping(value = "/submissions-status/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @RequiresAuthentication
+    public SseEmitter subscribeCommonJudgeStatus() {
+        return judgeService.subscribeCommonJudgeStatus();
+    }
+
+    /**
+     * @param cid
+     * @MethodName subscribeContestJudgeStatus
+     * @Description 以 SSE 推送比赛提交的判题状态变化，推送不可用时前端退回轮询 /check-contest-submissions-status
+     * @Return
+     * @Since 2023/11/5
+     */
+    @GetMapping(value = "/contest-submissions-status/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @RequiresAuthentication
+    public SseEmitter subscribeContestJudgeStatus(@RequestParam("cid") Long cid) {
+        return judgeService.subscribeContestJudgeStatus(cid);
+    }
+
     /**
      * @param submitId
      * @MethodName getJudgeCase
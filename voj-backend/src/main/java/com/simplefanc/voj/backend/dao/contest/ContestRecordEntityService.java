@@ -3,7 +3,6 @@ package com.simplefanc.voj.backend.dao.contest;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.simplefanc.voj.backend.pojo.vo.ContestRecordVO;
-import com.simplefanc.voj.common.pojo.entity.contest.Contest;
 import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
 
 import java.util.Date;
@@ -22,8 +21,14 @@ public interface ContestRecordEntityService extends IService<ContestRecord> {
     IPage<ContestRecord> getACInfo(Integer currentPage, Integer limit, Integer status, Long cid,
                                    String contestCreatorId);
 
-    List<ContestRecordVO> getOIContestRecord(Contest contest, Boolean isOpenSealRank);
+    /**
+     * 榜单使用的比赛记录，since为null时返回全部已评测的记录，否则返回该时间之后有变更的记录（包括被重置为未评测的记录）
+     */
+    List<ContestRecordVO> getScoreboardContestRecord(Long cid, Date since);
 
-    List<ContestRecordVO> getACMContestRecord(Long cid, Date startTime);
+    /**
+     * 数据库当前时间，作为榜单增量同步的水位
+     */
+    Date getCurrentTime();
 
 }
@@ -50,7 +50,7 @@ public class ContestProblemEntityServiceImpl extends ServiceImpl<ContestProblemM
     public void syncContestRecord(Long pid, Long cid, String displayId) {
 
         UpdateWrapper<ContestRecord> updateWrapper = new UpdateWrapper<>();
-        updateWrapper.eq("pid", pid).eq("cid", cid).set("display_id", displayId);
+        updateWrapper.eq("pid", pid).eq("cid", cid).set("display_id", displayId).setSql("gmt_modified=NOW()");
         contestRecordEntityService.update(updateWrapper);
     }
 
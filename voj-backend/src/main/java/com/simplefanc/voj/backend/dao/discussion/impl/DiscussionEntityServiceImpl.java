@@ -1,16 +1,24 @@
 package com.simplefanc.voj.backend.dao.discussion.impl;
 
+import cn.hutool.core.convert.Convert;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.simplefanc.voj.backend.dao.discussion.DiscussionEntityService;
 import com.simplefanc.voj.backend.dao.msg.MsgRemindEntityService;
 import com.simplefanc.voj.backend.mapper.DiscussionMapper;
 import com.simplefanc.voj.backend.pojo.vo.DiscussionVO;
+import com.simplefanc.voj.backend.search.KeywordSearchService;
 import com.simplefanc.voj.common.pojo.entity.discussion.Discussion;
 import com.simplefanc.voj.common.pojo.entity.msg.MsgRemind;
 import lombok.RequiredArgsConstructor;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
 /**
  * @Author: chenfan
  * @Date: 2021/5/4 22:31
@@ -25,6 +33,30 @@ public class DiscussionEntityServiceImpl extends ServiceImpl<DiscussionMapper, D
 
     private final MsgRemindEntityService msgRemindEntityService;
 
+    private final KeywordSearchService keywordSearchService;
+
+    @Override
+    public boolean save(Discussion discussion) {
+        boolean isOk = super.save(discussion);
+        keywordSearchService.refreshDiscussions(Collections.singletonList(discussion.getId()));
+        return isOk;
+    }
+
+    @Override
+    public boolean updateById(Discussion discussion) {
+        boolean isOk = super.updateById(discussion);
+        keywordSearchService.refreshDiscussions(Collections.singletonList(discussion.getId()));
+        return isOk;
+    }
+
+    @Override
+    public boolean removeByIds(Collection<? extends Serializable> idList) {
+        boolean isOk = super.removeByIds(idList);
+        List<Integer> didList = idList.stream().map(Convert::toInt).collect(Collectors.toList());
+        keywordSearchService.refreshDiscussions(didList);
+        return isOk;
+    }
+
     @Override
     public DiscussionVO getDiscussion(Integer did, String uid) {
         return discussionMapper.getDiscussion(did, uid);
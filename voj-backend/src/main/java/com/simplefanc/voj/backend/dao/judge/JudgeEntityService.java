@@ -20,23 +20,22 @@ import java.util.List;
 
 public interface JudgeEntityService extends IService<Judge> {
 
-    IPage<JudgeVO> getCommonJudgeList(Integer limit, Integer currentPage, String searchPid, Integer status,
-                                      String username, String uid, Boolean completeProblemId);
+    /**
+     * @param lastSubmitId 游标分页时为上一页最后一条提交的id，不为null时忽略 currentPage；总数为缓存的近似值
+     */
+    IPage<JudgeVO> getCommonJudgeList(Integer limit, Integer currentPage, Long lastSubmitId, String searchPid,
+                                      Integer status, String username, String uid, Boolean completeProblemId);
 
     // TODO 参数过多
-    IPage<JudgeVO> getContestJudgeList(Integer limit, Integer currentPage, String displayId, Long cid, Integer status,
-                                       String username, String uid, Boolean beforeContestSubmit, String rule, Date startTime, Date sealRankTime,
-                                       String sealTimeUid, Boolean completeProblemId);
+    IPage<JudgeVO> getContestJudgeList(Integer limit, Integer currentPage, Long lastSubmitId, String displayId, Long cid,
+                                       Integer status, String username, String uid, Boolean beforeContestSubmit, String rule, Date startTime,
+                                       Date sealRankTime, String sealTimeUid, Boolean completeProblemId);
 
     void failToUseRedisPublishJudge(Long submitId, Long pid, Boolean isContest);
 
     ProblemCountVO getContestProblemCount(Long pid, Long cpid, Long cid, Date startTime, Date sealRankTime,
                                           List<String> adminList);
 
-    ProblemCountVO getProblemCount(Long pid);
-
     int getTodayJudgeNum();
 
-    List<ProblemCountVO> getProblemListCount(List<Long> pidList);
-
 }
@@ -1,5 +1,6 @@
 package com.simplefanc.voj.backend.dao.judge.impl;
 
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
@@ -9,16 +10,20 @@ import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.backend.mapper.JudgeMapper;
 import com.simplefanc.voj.backend.pojo.vo.JudgeVO;
 import com.simplefanc.voj.backend.pojo.vo.ProblemCountVO;
+import com.simplefanc.voj.backend.search.KeywordSearchService;
 import com.simplefanc.voj.common.constants.ContestEnum;
 import com.simplefanc.voj.common.constants.JudgeStatus;
+import com.simplefanc.voj.common.constants.RedisConstant;
 import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
 import com.simplefanc.voj.common.pojo.entity.judge.Judge;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * <p>
@@ -37,25 +42,83 @@ public class JudgeEntityServiceImpl extends ServiceImpl<JudgeMapper, Judge> impl
 
     private final ContestRecordEntityService contestRecordEntityService;
 
+    private final KeywordSearchService keywordSearchService;
+
+    private final CacheManager cacheManager;
+
     @Override
-    public IPage<JudgeVO> getCommonJudgeList(Integer limit, Integer currentPage, String searchPid, Integer status,
-                                             String username, String uid, Boolean completeProblemId) {
-        // 新建分页
-        Page<JudgeVO> page = new Page<>(currentPage, limit);
+    public IPage<JudgeVO> getCommonJudgeList(Integer limit, Integer currentPage, Long lastSubmitId, String searchPid,
+                                             Integer status, String username, String uid, Boolean completeProblemId) {
+        // 新建分页，游标分页时总是取第一页
+        Page<JudgeVO> page = newPage(limit, currentPage, lastSubmitId);
+
+        // 模糊查询改为按关键字索引返回的题目、用户过滤
+        List<Long> searchPidList = null;
+        if (StrUtil.isNotEmpty(searchPid) && !Boolean.TRUE.equals(completeProblemId)) {
+            searchPidList = keywordSearchService.searchProblemIds(searchPid);
+            if (searchPidList != null && searchPidList.isEmpty()) {
+                return page;
+            }
+        }
+        List<String> searchUidList = null;
+        if (StrUtil.isNotEmpty(username)) {
+            searchUidList = keywordSearchService.searchUsernames(username);
+            if (searchUidList != null && searchUidList.isEmpty()) {
+                return page;
+            }
+        }
+        judgeMapper.getCommonJudgeList(page, searchPid, status, username, uid, completeProblemId,
+                searchPidList, searchUidList, lastSubmitId);
 
-        return judgeMapper.getCommonJudgeList(page, searchPid, status, username, uid, completeProblemId);
+        final List<Long> finalSearchPidList = searchPidList;
+        final List<String> finalSearchUidList = searchUidList;
+        String countKey = StrUtil.join(":", "common", searchPid, status, username, uid, completeProblemId);
+        return page.setTotal(getCachedCount(countKey, () -> judgeMapper.countCommonJudgeList(searchPid, status,
+                username, uid, completeProblemId, finalSearchPidList, finalSearchUidList)));
     }
 
     // TODO 参数过多
     @Override
-    public IPage<JudgeVO> getContestJudgeList(Integer limit, Integer currentPage, String displayId, Long cid,
-                                              Integer status, String username, String uid, Boolean beforeContestSubmit, String rule, Date startTime,
-                                              Date sealRankTime, String sealTimeUid, Boolean completeProblemId) {
-        // 新建分页
-        Page<JudgeVO> page = new Page<>(currentPage, limit);
-
-        return judgeMapper.getContestJudgeList(page, displayId, cid, status, username, uid, beforeContestSubmit, rule,
-                startTime, sealRankTime, sealTimeUid, completeProblemId);
+    public IPage<JudgeVO> getContestJudgeList(Integer limit, Integer currentPage, Long lastSubmitId, String displayId,
+                                              Long cid, Integer status, String username, String uid, Boolean beforeContestSubmit, String rule,
+                                              Date startTime, Date sealRankTime, String sealTimeUid, Boolean completeProblemId) {
+        // 新建分页，游标分页时总是取第一页
+        Page<JudgeVO> page = newPage(limit, currentPage, lastSubmitId);
+
+        List<String> searchUidList = null;
+        if (StrUtil.isNotEmpty(username)) {
+            searchUidList = keywordSearchService.searchUsers(username);
+            if (searchUidList != null && searchUidList.isEmpty()) {
+                return page;
+            }
+        }
+        judgeMapper.getContestJudgeList(page, displayId, cid, status, username, uid, beforeContestSubmit, rule,
+                startTime, sealRankTime, sealTimeUid, completeProblemId, searchUidList, lastSubmitId);
+
+        final List<String> finalSearchUidList = searchUidList;
+        // 封榜期间各用户可见的提交不同
+        String countKey = StrUtil.join(":", "contest", cid, displayId, status, username, uid, beforeContestSubmit,
+                completeProblemId, sealRankTime == null ? null : sealRankTime.getTime() + ":" + sealTimeUid);
+        return page.setTotal(getCachedCount(countKey, () -> judgeMapper.countContestJudgeList(displayId, cid, status,
+                username, uid, beforeContestSubmit, startTime, sealRankTime, sealTimeUid, completeProblemId,
+                finalSearchUidList)));
+    }
+
+    /**
+     * 不执行分页插件的 count 查询，总数由 {@link #getCachedCount} 提供
+     */
+    private static Page<JudgeVO> newPage(Integer limit, Integer currentPage, Long lastSubmitId) {
+        Page<JudgeVO> page = new Page<>(lastSubmitId != null ? 1 : currentPage, limit);
+        page.setSearchCount(false);
+        return page;
+    }
+
+    /**
+     * 翻页时不重复 count，同一筛选条件的总数缓存一段时间，是近似值
+     */
+    private long getCachedCount(String key, Callable<Number> counter) {
+        Number count = cacheManager.getCache(RedisConstant.JUDGE_LIST_COUNT_CACHE).get(key, counter);
+        return count == null ? 0 : count.longValue();
     }
 
     @Override
@@ -70,7 +133,7 @@ public class JudgeEntityServiceImpl extends ServiceImpl<JudgeMapper, Judge> impl
             UpdateWrapper<ContestRecord> updateWrapper = new UpdateWrapper<>();
             // submit_id一定只有一个
             updateWrapper.eq("submit_id", submitId).set("first_blood", false).set("status",
-                    ContestEnum.RECORD_NOT_AC_NOT_PENALTY.getCode());
+                    ContestEnum.RECORD_NOT_AC_NOT_PENALTY.getCode()).setSql("gmt_modified=NOW()");
             contestRecordEntityService.update(updateWrapper);
         }
     }
@@ -81,19 +144,9 @@ public class JudgeEntityServiceImpl extends ServiceImpl<JudgeMapper, Judge> impl
         return judgeMapper.getContestProblemCount(pid, cpid, cid, startTime, sealRankTime, adminList);
     }
 
-    @Override
-    public ProblemCountVO getProblemCount(Long pid) {
-        return judgeMapper.getProblemCount(pid);
-    }
-
     @Override
     public int getTodayJudgeNum() {
         return judgeMapper.getTodayJudgeNum();
     }
 
-    @Override
-    public List<ProblemCountVO> getProblemListCount(List<Long> pidList) {
-        return judgeMapper.getProblemListCount(pidList);
-    }
-
 }
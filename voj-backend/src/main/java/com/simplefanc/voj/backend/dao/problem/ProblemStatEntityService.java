@@ -0,0 +1,37 @@
+package com.simplefanc.voj.backend.dao.problem;
+
+import com.simplefanc.voj.backend.pojo.vo.ProblemCountVO;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 题目提交统计（problem_stat 表），判题机在非比赛提交得到最终结果后累加，重判前撤销原结果，
+ * 后端每天全量重建修正删除提交等其它变更
+ * </p>
+ *
+ * @Author: chenfan
+ * @since 2023-11-08
+ */
+public interface ProblemStatEntityService {
+
+    /**
+     * @return 有统计数据的题目，没有提交的题目不在结果中
+     */
+    List<ProblemCountVO> getProblemStatList(List<Long> pidList);
+
+    ProblemCountVO getProblemStat(Long pid);
+
+    /**
+     * 非比赛提交重判或重新提交前调用，从统计中减去原来的结果
+     */
+    void removeResult(Long pid, Integer status);
+
+    /**
+     * 分批重建全部题目的统计数据
+     */
+    void rebuildProblemStat();
+
+    int countProblemStat();
+
+}
@@ -1,8 +1,9 @@
 package com.simplefanc.voj.backend.dao.problem.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.convert.Convert;
 import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.io.file.FileReader;
+import cn.hutool.core.io.IORuntimeException;
 import cn.hutool.core.io.file.FileWriter;
 import cn.hutool.core.util.CharsetUtil;
 import cn.hutool.core.util.StrUtil;
@@ -12,7 +13,6 @@ import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.backend.dao.problem.*;
 import com.simplefanc.voj.backend.mapper.ProblemMapper;
 import com.simplefanc.voj.backend.config.property.FilePathProperties;
@@ -20,20 +20,22 @@ import com.simplefanc.voj.backend.pojo.dto.ProblemDTO;
 import com.simplefanc.voj.backend.pojo.vo.ImportProblemVO;
 import com.simplefanc.voj.backend.pojo.vo.ProblemCountVO;
 import com.simplefanc.voj.backend.pojo.vo.ProblemVO;
+import com.simplefanc.voj.backend.search.KeywordSearchService;
 import com.simplefanc.voj.common.constants.Constant;
 import com.simplefanc.voj.common.constants.ContestEnum;
 import com.simplefanc.voj.common.constants.JudgeMode;
 import com.simplefanc.voj.common.constants.ProblemEnum;
 import com.simplefanc.voj.common.pojo.entity.problem.*;
+import com.simplefanc.voj.common.utils.TestCaseDigestUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.ApplicationContext;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.DigestUtils;
 
 import java.io.File;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.io.Serializable;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -51,7 +53,7 @@ public class ProblemEntityServiceImpl extends ServiceImpl<ProblemMapper, Problem
 
     private final ProblemMapper problemMapper;
 
-    private final JudgeEntityService judgeEntityService;
+    private final ProblemStatEntityService problemStatEntityService;
 
     private final ProblemCaseEntityService problemCaseEntityService;
 
@@ -67,12 +69,29 @@ public class ProblemEntityServiceImpl extends ServiceImpl<ProblemMapper, Problem
 
     private final FilePathProperties filePathProps;
 
-    // 去除每行末尾的空白符
-    public static String rtrim(String value) {
-        if (value == null) {
-            return null;
-        }
-        return value.replaceAll("[^\\S\\r\\n]+(?=\\n|\\r)|\\s+(?=$)", "");
+    private final KeywordSearchService keywordSearchService;
+
+    @Override
+    public boolean save(Problem problem) {
+        fillSortKey(problem);
+        boolean isOk = super.save(problem);
+        keywordSearchService.refreshProblems(Collections.singletonList(problem.getId()));
+        return isOk;
+    }
+
+    @Override
+    public boolean updateById(Problem problem) {
+        fillSortKey(problem);
+        boolean isOk = super.updateById(problem);
+        keywordSearchService.refreshProblems(Collections.singletonList(problem.getId()));
+        return isOk;
+    }
+
+    @Override
+    public boolean removeById(Serializable id) {
+        boolean isOk = super.removeById(id);
+        keywordSearchService.refreshProblems(Collections.singletonList(Convert.toLong(id)));
+        return isOk;
     }
 
     @Override
@@ -87,17 +106,28 @@ public class ProblemEntityServiceImpl extends ServiceImpl<ProblemMapper, Problem
             tagListSize = tagIds.size();
         }
 
-        List<ProblemVO> problemList = problemMapper.getProblemList(page, title, difficulty, tagIds, tagListSize, oj, allProblemVisible);
+        List<Long> keywordPidList = null;
+        if (StrUtil.isNotEmpty(title)) {
+            keywordPidList = keywordSearchService.searchProblems(title);
+            if (keywordPidList != null && keywordPidList.isEmpty()) {
+                return page;
+            }
+        }
+
+        List<ProblemVO> problemList = problemMapper.getProblemList(page, title, keywordPidList, difficulty, tagIds,
+                tagListSize, oj, allProblemVisible);
 
         if (problemList.size() > 0) {
             List<Long> pidList = problemList.stream().map(ProblemVO::getPid).collect(Collectors.toList());
-            List<ProblemCountVO> problemListCount = judgeEntityService.getProblemListCount(pidList);
+            Map<Long, List<Tag>> problemTagsMap = getProblemTagsMap(pidList);
+            // 提交统计读取判题机维护的 problem_stat 表，不在请求时统计 judge 表
+            Map<Long, ProblemCountVO> problemCountMap = problemStatEntityService.getProblemStatList(pidList).stream()
+                    .collect(Collectors.toMap(ProblemCountVO::getPid, problemCountVO -> problemCountVO));
             for (ProblemVO problemVO : problemList) {
-                for (ProblemCountVO problemCountVO : problemListCount) {
-                    if (problemVO.getPid().equals(problemCountVO.getPid())) {
-                        problemVO.setProblemCountVO(problemCountVO);
-                        break;
-                    }
+                problemVO.setTags(problemTagsMap.getOrDefault(problemVO.getPid(), new ArrayList<>()));
+                ProblemCountVO problemCountVO = problemCountMap.get(problemVO.getPid());
+                if (problemCountVO != null) {
+                    problemVO.setProblemCountVO(problemCountVO);
                 }
             }
         }
@@ -105,6 +135,36 @@ public class ProblemEntityServiceImpl extends ServiceImpl<ProblemMapper, Problem
         return page.setRecords(problemList);
     }
 
+    /**
+     * 一次查询本页所有题目的标签
+     */
+    private Map<Long, List<Tag>> getProblemTagsMap(List<Long> pidList) {
+        List<ProblemTag> problemTagList = problemTagEntityService.list(new QueryWrapper<ProblemTag>().in("pid", pidList));
+        if (problemTagList.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Long> tidList = problemTagList.stream().map(ProblemTag::getTid).distinct().collect(Collectors.toList());
+        Map<Long, Tag> tagMap = tagEntityService.listByIds(tidList).stream()
+                .collect(Collectors.toMap(Tag::getId, tag -> tag));
+        Map<Long, List<Tag>> problemTagsMap = new HashMap<>();
+        for (ProblemTag problemTag : problemTagList) {
+            Tag tag = tagMap.get(problemTag.getTid());
+            if (tag != null) {
+                problemTagsMap.computeIfAbsent(problemTag.getPid(), pid -> new ArrayList<>()).add(tag);
+            }
+        }
+        return problemTagsMap;
+    }
+
+    /**
+     * 题目列表按 problem_id 的长度、再按 problem_id 排序，写入时生成排序键以便使用索引
+     */
+    private static void fillSortKey(Problem problem) {
+        if (problem.getProblemId() != null) {
+            problem.setSortKey(String.format("%03d", problem.getProblemId().length()) + problem.getProblemId());
+        }
+    }
+
     /**
      * 处理tag表与problem_tag表的删除与更新
      */
@@ -228,7 +288,9 @@ public class ProblemEntityServiceImpl extends ServiceImpl<ProblemMapper, Problem
         }
 
         long pid = checkUniquePid(problemDTO, problem);
+        keywordSearchService.refreshProblems(Collections.singletonList(pid));
 
+        fillSortKey(problem);
         if (problemMapper.updateById(problem) == 1 &&
                 processTag(pid, problemDTO, ojName) &&
                 processCodeTemplate(pid, problemDTO) &&
@@ -407,8 +469,10 @@ public class ProblemEntityServiceImpl extends ServiceImpl<ProblemMapper, Problem
         }
 
         // 1. 插入到数据库
+        fillSortKey(problem);
         boolean addProblemResult = problemMapper.insert(problem) == 1;
         long pid = problem.getId();
+        keywordSearchService.refreshProblems(Collections.singletonList(pid));
 
         // 2. 为新的题目添加对应的language
         List<ProblemLanguage> problemLanguageList = new LinkedList<>();
@@ -531,35 +595,17 @@ public class ProblemEntityServiceImpl extends ServiceImpl<ProblemMapper, Problem
             jsonObject.set("inputName", problemCase.getInput());
             jsonObject.set("outputName", problemCase.getOutput());
 
-            // 读取输入文件
-            FileReader inputFile = new FileReader(testCasesDir + File.separator + problemCase.getInput(),
-                    CharsetUtil.UTF_8);
-            String input = inputFile.readString().replaceAll("\r\n", "\n");
-
-            FileWriter inputFileWriter = new FileWriter(testCasesDir + File.separator + problemCase.getInput(),
-                    CharsetUtil.UTF_8);
-            inputFileWriter.write(input);
-
-            // 读取输出文件
-            FileReader outputFile = new FileReader(testCasesDir + File.separator + problemCase.getOutput(),
-                    CharsetUtil.UTF_8);
-            String output = outputFile.readString().replaceAll("\r\n", "\n");
-
-            FileWriter outFileWriter = new FileWriter(testCasesDir + File.separator + problemCase.getOutput(),
-                    CharsetUtil.UTF_8);
-            outFileWriter.write(output);
-
-            // spj和interactive是根据特判程序输出判断结果，所以无需初始化测试数据
-            if (JudgeMode.DEFAULT.getMode().equals(mode)) {
-                // 原数据MD5
-                jsonObject.set("outputMd5", DigestUtils.md5DigestAsHex(output.getBytes()));
-                // 原数据大小
-                jsonObject.set("outputSize", output.getBytes().length);
-                // 去掉全部空格的MD5，用来判断pe
-                jsonObject.set("allStrippedOutputMd5",
-                        DigestUtils.md5DigestAsHex(output.replaceAll("\\s+", "").getBytes()));
-                // 默认去掉文末空格的MD5
-                jsonObject.set("EOFStrippedOutputMd5", DigestUtils.md5DigestAsHex(rtrim(output).getBytes()));
+            try {
+                // 流式规整输入、输出文件的换行符，同时计算输出文件的摘要
+                TestCaseDigestUtil.normalizeFile(testCasesDir + File.separator + problemCase.getInput(), false);
+                TestCaseDigestUtil.TestCaseDigest digest = TestCaseDigestUtil.normalizeFile(
+                        testCasesDir + File.separator + problemCase.getOutput(), JudgeMode.DEFAULT.getMode().equals(mode));
+                // spj和interactive是根据特判程序输出判断结果，所以无需初始化测试数据
+                if (digest != null) {
+                    digest.fillTo(jsonObject);
+                }
+            } catch (IOException e) {
+                throw new IORuntimeException(e);
             }
 
             testCaseList.add(jsonObject);
@@ -614,19 +660,7 @@ public class ProblemEntityServiceImpl extends ServiceImpl<ProblemMapper, Problem
 
             // spj和interactive是根据特判程序输出判断结果，所以无需初始化测试数据
             if (JudgeMode.DEFAULT.getMode().equals(mode)) {
-                // 原数据MD5
-                jsonObject.set("outputMd5", DigestUtils.md5DigestAsHex(outputData.getBytes()));
-                // 原数据大小
-                try {
-                    jsonObject.set("outputSize", outputData.getBytes(CharsetUtil.UTF_8).length);
-                } catch (UnsupportedEncodingException e) {
-                    e.printStackTrace();
-                }
-                // 去掉全部空格的MD5，用来判断pe
-                jsonObject.set("allStrippedOutputMd5",
-                        DigestUtils.md5DigestAsHex(outputData.replaceAll("\\s+", "").getBytes()));
-                // 默认去掉文末空格的MD5
-                jsonObject.set("EOFStrippedOutputMd5", DigestUtils.md5DigestAsHex(rtrim(outputData).getBytes()));
+                TestCaseDigestUtil.digest(outputData).fillTo(jsonObject);
             }
 
             testCaseList.add(jsonObject);
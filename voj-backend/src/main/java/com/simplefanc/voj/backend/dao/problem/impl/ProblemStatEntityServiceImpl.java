@@ -0,0 +1,107 @@
+package com.simplefanc.voj.backend.dao.problem.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.simplefanc.voj.backend.dao.problem.ProblemStatEntityService;
+import com.simplefanc.voj.backend.mapper.ProblemMapper;
+import com.simplefanc.voj.backend.mapper.ProblemStatMapper;
+import com.simplefanc.voj.backend.pojo.vo.ProblemCountVO;
+import com.simplefanc.voj.common.constants.JudgeStatus;
+import com.simplefanc.voj.common.pojo.entity.problem.Problem;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * 服务实现类
+ * </p>
+ *
+ * @Author: chenfan
+ * @since 2023-11-08
+ */
+@Service
+@Slf4j(topic = "voj")
+@RequiredArgsConstructor
+public class ProblemStatEntityServiceImpl implements ProblemStatEntityService {
+
+    /**
+     * 重建 problem_stat 时每批统计的题目数
+     */
+    private static final int REBUILD_BATCH_SIZE = 200;
+
+    /**
+     * 还没有最终结果的状态，不计入统计，与 refreshProblemStat 中排除的状态一致
+     */
+    private static final List<Integer> UNFINISHED_STATUS = Arrays.asList(
+            JudgeStatus.STATUS_PENDING.getStatus(),
+            JudgeStatus.STATUS_COMPILING.getStatus(),
+            JudgeStatus.STATUS_JUDGING.getStatus(),
+            JudgeStatus.STATUS_SUBMITTING.getStatus(),
+            JudgeStatus.STATUS_SUBMITTED_FAILED.getStatus());
+
+    private final ProblemStatMapper problemStatMapper;
+
+    private final ProblemMapper problemMapper;
+
+    @Override
+    public List<ProblemCountVO> getProblemStatList(List<Long> pidList) {
+        if (pidList == null || pidList.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return problemStatMapper.getProblemStatList(pidList);
+    }
+
+    @Override
+    public ProblemCountVO getProblemStat(Long pid) {
+        List<ProblemCountVO> problemStatList = problemStatMapper.getProblemStatList(Collections.singletonList(pid));
+        if (!problemStatList.isEmpty()) {
+            return problemStatList.get(0);
+        }
+        return new ProblemCountVO().setPid(pid).setTotal(0).setAc(0).setWa(0).setCe(0).setPe(0).setTle(0)
+                .setMle(0).setRe(0).setSe(0).setPa(0);
+    }
+
+    @Override
+    public void removeResult(Long pid, Integer status) {
+        if (status == null || UNFINISHED_STATUS.contains(status)) {
+            return;
+        }
+        problemStatMapper.addResult(pid, status, -1);
+    }
+
+    @Override
+    public void rebuildProblemStat() {
+        long startTime = System.currentTimeMillis();
+        int count = 0;
+        Long lastPid = null;
+        while (true) {
+            // 按题目id顺序分批，每批只扫描这些题目的提交记录
+            List<Long> pidList = problemMapper.selectList(new QueryWrapper<Problem>().select("id")
+                    .gt(lastPid != null, "id", lastPid)
+                    .orderByAsc("id")
+                    .last("LIMIT " + REBUILD_BATCH_SIZE))
+                    .stream()
+                    .map(Problem::getId)
+                    .collect(Collectors.toList());
+            if (pidList.isEmpty()) {
+                break;
+            }
+            problemStatMapper.refreshProblemStat(pidList);
+            count += pidList.size();
+            lastPid = pidList.get(pidList.size() - 1);
+        }
+        log.info("Rebuild problem_stat finished, problems: {}, cost: {}ms", count,
+                System.currentTimeMillis() - startTime);
+    }
+
+    @Override
+    public int countProblemStat() {
+        return problemStatMapper.countProblemStat();
+    }
+
+}
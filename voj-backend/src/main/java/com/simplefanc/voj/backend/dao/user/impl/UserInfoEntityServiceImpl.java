@@ -1,18 +1,24 @@
 package com.simplefanc.voj.backend.dao.user.impl;
 
+import cn.hutool.core.convert.Convert;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.simplefanc.voj.backend.common.constants.RoleEnum;
 import com.simplefanc.voj.backend.common.utils.RedisUtil;
 import com.simplefanc.voj.backend.dao.user.UserInfoEntityService;
 import com.simplefanc.voj.backend.mapper.UserInfoMapper;
 import com.simplefanc.voj.backend.pojo.dto.RegisterDTO;
+import com.simplefanc.voj.backend.search.KeywordSearchService;
 import com.simplefanc.voj.common.constants.RedisConstant;
 import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
 import lombok.RequiredArgsConstructor;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -30,13 +36,38 @@ public class UserInfoEntityServiceImpl extends ServiceImpl<UserInfoMapper, UserI
 
     private final RedisUtil redisUtil;
 
+    private final KeywordSearchService keywordSearchService;
+
     @Override
     public Boolean addUser(RegisterDTO registerDTO) {
-        return userInfoMapper.addUser(registerDTO) == 1;
+        boolean isOk = userInfoMapper.addUser(registerDTO) == 1;
+        keywordSearchService.refreshUsers(Collections.singletonList(registerDTO.getUuid()));
+        return isOk;
+    }
+
+    @Override
+    public boolean saveBatch(Collection<UserInfo> userInfoList, int batchSize) {
+        boolean isOk = super.saveBatch(userInfoList, batchSize);
+        keywordSearchService.refreshUsers(userInfoList.stream().map(UserInfo::getUuid).collect(Collectors.toList()));
+        return isOk;
+    }
+
+    @Override
+    public boolean updateById(UserInfo userInfo) {
+        boolean isOk = super.updateById(userInfo);
+        keywordSearchService.refreshUsers(Collections.singletonList(userInfo.getUuid()));
+        return isOk;
+    }
+
+    @Override
+    public boolean removeByIds(Collection<? extends Serializable> idList) {
+        boolean isOk = super.removeByIds(idList);
+        keywordSearchService.refreshUsers(idList.stream().map(Convert::toStr).collect(Collectors.toList()));
+        return isOk;
     }
 
     @Override
-    @Cacheable(value = RedisConstant.SUPER_ADMIN_UID_LIST_CACHE)
+    @Cacheable(value = RedisConstant.SUPER_ADMIN_UID_LIST_CACHE, sync = true)
     public List<String> getSuperAdminUidList() {
 //        List<String> superAdminUidList = (List<String>) redisUtil.get(AccountConstant.SUPER_ADMIN_UID_LIST_CACHE);
 //        if (superAdminUidList == null) {
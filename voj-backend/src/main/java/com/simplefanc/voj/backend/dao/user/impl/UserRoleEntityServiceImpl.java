@@ -7,6 +7,7 @@ import com.simplefanc.voj.backend.dao.user.UserRoleEntityService;
 import com.simplefanc.voj.backend.mapper.UserRoleMapper;
 import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
 import com.simplefanc.voj.backend.shiro.AccountProfile;
+import com.simplefanc.voj.backend.shiro.AuthContextCache;
 import com.simplefanc.voj.common.pojo.entity.user.UserRole;
 import lombok.RequiredArgsConstructor;
 import org.apache.shiro.SecurityUtils;
@@ -48,6 +49,8 @@ public class UserRoleEntityServiceImpl extends ServiceImpl<UserRoleMapper, UserR
 
     private final RedisSessionDAO redisSessionDAO;
 
+    private final AuthContextCache authContextCache;
+
     @Override
     public UserRolesVO getUserRoles(String uid, String username) {
         return userRoleMapper.getUserRoles(uid, username);
@@ -75,6 +78,8 @@ public class UserRoleEntityServiceImpl extends ServiceImpl<UserRoleMapper, UserR
      */
     @Override
     public void deleteCache(String uid, boolean isRemoveSession) {
+        // 各节点缓存的用户信息与权限在下一个请求时重新加载
+        authContextCache.invalidate(uid);
         // 从缓存中获取Session
         Collection<Session> sessions = redisSessionDAO.getActiveSessions();
         for (Session sessionInfo : sessions) {
@@ -1,28 +1,31 @@
 package com.simplefanc.voj.backend.judge;
 
-import cn.hutool.core.lang.UUID;
+import cn.hutool.core.thread.ThreadUtil;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.simplefanc.voj.backend.common.constants.CallJudgerType;
 import com.simplefanc.voj.backend.common.utils.RestTemplateUtil;
 import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
-import com.simplefanc.voj.backend.dao.judge.JudgeServerEntityService;
 import com.simplefanc.voj.backend.dao.judge.RemoteJudgeAccountEntityService;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.common.constants.RemoteOj;
 import com.simplefanc.voj.common.pojo.dto.CompileDTO;
 import com.simplefanc.voj.common.pojo.dto.JudgeDTO;
+import com.simplefanc.voj.common.pojo.dto.JudgeStatusDTO;
 import com.simplefanc.voj.common.pojo.entity.judge.Judge;
 import com.simplefanc.voj.common.pojo.entity.judge.JudgeServer;
 import com.simplefanc.voj.common.pojo.entity.judge.RemoteJudgeAccount;
 import com.simplefanc.voj.common.result.CommonResult;
 import com.simplefanc.voj.common.result.ResultStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
+import javax.annotation.PostConstruct;
+import java.util.Deque;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @Author: chenfan
@@ -34,20 +37,68 @@ import java.util.concurrent.atomic.AtomicInteger;
 @RequiredArgsConstructor
 public class Dispatcher {
 
-    private final static ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(20);
+    /**
+     * 等待分配判题机的最长时间，超时判为提交失败
+     */
+    private final static long MAX_WAIT_MILLIS = 600 * 1000L;
 
-    private final static Map<String, ScheduledFuture<?>> FUTURE_TASK_MAP = new ConcurrentHashMap<>(20);
+    /**
+     * 定时刷新判题机名额账本并清理超时任务，判题任务本身不依赖定时轮询
+     */
+    private final static ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            ThreadUtil.newNamedThreadFactory("JudgeDispatcher-Refresh-", true));
 
-    private final JudgeServerEntityService judgeServerEntityService;
+    /**
+     * 调用判题机的线程，同时进行的调用数受判题机名额限制
+     */
+    private final static ExecutorService CALL_EXECUTOR = Executors.newCachedThreadPool(
+            ThreadUtil.newNamedThreadFactory("JudgeDispatcher-", true));
+
+    /**
+     * 等待判题机名额的本地判题与远程判题任务，按提交顺序分配
+     */
+    private final Deque<SubmitTask> localQueue = new ConcurrentLinkedDeque<>();
+
+    private final Deque<SubmitTask> remoteQueue = new ConcurrentLinkedDeque<>();
 
     private final JudgeEntityService judgeEntityService;
 
-    private final ChooseUtils chooseUtils;
+    private final JudgeServerSlotLedger slotLedger;
 
     private final RemoteJudgeAccountEntityService remoteJudgeAccountService;
 
     private final RestTemplateUtil restTemplateUtil;
 
+    private final MeterRegistry meterRegistry;
+
+    private final JudgeStatusHub judgeStatusHub;
+
+    /**
+     * 有判题机名额归还时通知等待的任务消费者
+     */
+    private final Object slotReleased = new Object();
+
+    private Timer localQueueWaitTimer;
+
+    private Timer remoteQueueWaitTimer;
+
+    @PostConstruct
+    public void init() {
+        localQueueWaitTimer = Timer.builder("voj.judge.queue.wait").tag("type", "local")
+                .description("提交等待判题机名额的时间")
+                .register(meterRegistry);
+        remoteQueueWaitTimer = Timer.builder("voj.judge.queue.wait").tag("type", "remote")
+                .description("提交等待判题机名额的时间")
+                .register(meterRegistry);
+        Gauge.builder("voj.judge.queue.size", localQueue, Deque::size).tag("type", "local")
+                .description("等待判题机名额的提交数")
+                .register(meterRegistry);
+        Gauge.builder("voj.judge.queue.size", remoteQueue, Deque::size).tag("type", "remote")
+                .description("等待判题机名额的提交数")
+                .register(meterRegistry);
+        SCHEDULER.scheduleWithFixedDelay(this::refresh, 0, 3, TimeUnit.SECONDS);
+    }
+
     public CommonResult dispatcher(CallJudgerType type, String path, Object data) {
         switch (type) {
             case JUDGE:
@@ -68,28 +119,108 @@ public class Dispatcher {
      */
     public CommonResult toCompile(String path, CompileDTO data) {
         CommonResult result = CommonResult.errorResponse("没有可用的判题服务器，请重新尝试！");
-        JudgeServer judgeServer = chooseUtils.chooseJudgeServer(false);
-        if (judgeServer != null) {
+        JudgeServerSlotLedger.Lease lease = slotLedger.tryAcquire(false);
+        if (lease != null) {
+            JudgeServer judgeServer = lease.getJudgeServer();
             try {
                 result = restTemplateUtil.post(judgeServer.getUrl(), path, data, CommonResult.class);
             } catch (Exception e) {
                 log.error("调用判题服务器[" + judgeServer.getUrl() + "]发送异常-------------->", e);
             } finally {
-                // 无论成功与否，都要将对应的当前判题机当前判题数减1
-                reduceCurrentTaskNum(judgeServer.getId());
+                // 无论成功与否，都要归还判题机名额
+                slotLedger.release(lease);
+                drain(false);
+                notifySlotReleased();
             }
         }
         return result;
     }
 
+    /**
+     * 将判题任务加入等待队列，有空闲名额时立即发送给判题机
+     *
+     * @param path /judge or /remote-judge
+     * @param data
+     */
     public void toJudge(String path, JudgeDTO data) {
-        String key = UUID.randomUUID().toString() + data.getJudge().getSubmitId();
-        ScheduledFuture<?> scheduledFuture = SCHEDULER.scheduleWithFixedDelay(
-                new SubmitTask(path, data, key), 0, 2, TimeUnit.SECONDS);
-        FUTURE_TASK_MAP.put(key, scheduledFuture);
+        SubmitTask submitTask = new SubmitTask(path, data);
+        getQueue(submitTask.isRemote).addLast(submitTask);
+        drain(submitTask.isRemote);
     }
 
-    class SubmitTask implements Runnable {
+    /**
+     * 按顺序为等待中的任务分配判题机名额，直到任务或名额耗尽
+     */
+    private void drain(boolean isRemote) {
+        Deque<SubmitTask> queue = getQueue(isRemote);
+        synchronized (queue) {
+            while (!queue.isEmpty()) {
+                JudgeServerSlotLedger.Lease lease = slotLedger.tryAcquire(isRemote);
+                if (lease == null) {
+                    return;
+                }
+                SubmitTask submitTask = queue.pollFirst();
+                if (submitTask == null) {
+                    slotLedger.release(lease);
+                    return;
+                }
+                (isRemote ? remoteQueueWaitTimer : localQueueWaitTimer)
+                        .record(System.currentTimeMillis() - submitTask.enqueueTime, TimeUnit.MILLISECONDS);
+                CALL_EXECUTOR.execute(() -> submitTask.handleJudgeProcess(lease));
+            }
+        }
+    }
+
+    /**
+     * 刷新判题机名额（新上线或下线的判题机），清理等待超时的任务，并重新分配
+     */
+    private void refresh() {
+        try {
+            slotLedger.refresh();
+            for (boolean isRemote : new boolean[]{false, true}) {
+                long now = System.currentTimeMillis();
+                getQueue(isRemote).removeIf(submitTask -> {
+                    if (now - submitTask.enqueueTime > MAX_WAIT_MILLIS) {
+                        submitTask.handleSubmitFailure();
+                        return true;
+                    }
+                    return false;
+                });
+                drain(isRemote);
+            }
+            notifySlotReleased();
+        } catch (Exception e) {
+            log.error("刷新判题机名额发生异常-------------->", e);
+        }
+    }
+
+    /**
+     * 已接收但还在等待判题机名额的任务数
+     */
+    public int getPendingNum(boolean isRemote) {
+        return getQueue(isRemote).size();
+    }
+
+    /**
+     * 等待判题机名额归还，最多等待timeout毫秒
+     */
+    public void awaitSlotReleased(long timeout) throws InterruptedException {
+        synchronized (slotReleased) {
+            slotReleased.wait(timeout);
+        }
+    }
+
+    private void notifySlotReleased() {
+        synchronized (slotReleased) {
+            slotReleased.notifyAll();
+        }
+    }
+
+    private Deque<SubmitTask> getQueue(boolean isRemote) {
+        return isRemote ? remoteQueue : localQueue;
+    }
+
+    class SubmitTask {
         /**
          * /judge or /remote-judge
          */
@@ -103,12 +234,9 @@ public class Dispatcher {
 
         String oj;
 
-        String key;
-
-        // 尝试600s
-        AtomicInteger count = new AtomicInteger(0);
+        long enqueueTime = System.currentTimeMillis();
 
-        public SubmitTask(String path, JudgeDTO data, String key) {
+        public SubmitTask(String path, JudgeDTO data) {
             this.path = path;
             this.data = data;
             this.submitId = data.getJudge().getSubmitId();
@@ -118,25 +246,10 @@ public class Dispatcher {
                 oj = data.getRemoteJudgeProblem().split("-")[0];
             }
             this.oj = oj;
-            this.key = key;
         }
 
-        @Override
-        public void run() {
-            // 300次失败则判为提交失败
-            if (count.get() > 300) {
-                handleSubmitFailure();
-                return;
-            }
-            count.getAndIncrement();
-            JudgeServer judgeServer = chooseUtils.chooseJudgeServer(isRemote);
-            // 获取到判题机资源
-            if (judgeServer != null) {
-                handleJudgeProcess(judgeServer);
-            }
-        }
-
-        private void handleJudgeProcess(JudgeServer judgeServer) {
+        private void handleJudgeProcess(JudgeServerSlotLedger.Lease lease) {
+            JudgeServer judgeServer = lease.getJudgeServer();
             data.setJudgeServerIp(judgeServer.getIp());
             data.setJudgeServerPort(judgeServer.getPort());
             CommonResult result = null;
@@ -146,14 +259,22 @@ public class Dispatcher {
             } catch (Exception e) {
                 log.error("调用判题服务器[" + judgeServer.getUrl() + "]发送异常-------------->", e);
             } finally {
-                checkResult(result, submitId);
-                // 无论成功与否，都要将对应的当前判题机当前判题数减1
-                reduceCurrentTaskNum(judgeServer.getId());
+                // 无论成功与否，都要归还判题机名额
+                slotLedger.release(lease);
+            }
+            // 判题机满载拒绝了本次评测，放回队首，等待下一个空闲名额
+            if (result != null && result.getStatus() == ResultStatus.BUSY.getStatus()) {
+                log.info("判题服务器[{}]繁忙，提交[{}]稍后重试", judgeServer.getUrl(), submitId);
+                slotLedger.markFull(lease);
+                getQueue(isRemote).addFirst(this);
+            } else {
+                checkResult(result, data.getJudge());
                 if (isRemote) {
                     changeRemoteJudgeStatus(oj, data.getUsername());
                 }
-                cancelFutureTask(key);
             }
+            drain(isRemote);
+            notifySlotReleased();
         }
 
         private void handleSubmitFailure() {
@@ -161,71 +282,28 @@ public class Dispatcher {
             if (isRemote) {
                 changeRemoteJudgeStatus(oj, data.getUsername());
             }
-            checkResult(null, submitId);
-            cancelFutureTask(key);
+            checkResult(null, data.getJudge());
         }
 
     }
 
-    private void checkResult(CommonResult<Void> result, Long submitId) {
+    private void checkResult(CommonResult<Void> result, Judge submission) {
         Judge judge = new Judge();
+        judge.setSubmitId(submission.getSubmitId());
         // 调用失败
         if (result == null) {
-            judge.setSubmitId(submitId);
             judge.setStatus(JudgeStatus.STATUS_SUBMITTED_FAILED.getStatus());
             judge.setErrorMessage("Failed to connect the JudgeServer. Please resubmit this submission again!");
-            judgeEntityService.updateById(judge);
+        } else if (result.getStatus() != ResultStatus.SUCCESS.getStatus()) {
+            // 如果是结果码不是200 说明调用有错误，判为系统错误
+            judge.setStatus(JudgeStatus.STATUS_SYSTEM_ERROR.getStatus()).setErrorMessage(result.getMsg());
         } else {
-            // 如果是结果码不是200 说明调用有错误
-            if (result.getStatus() != ResultStatus.SUCCESS.getStatus()) {
-                // 判为系统错误
-                judge.setStatus(JudgeStatus.STATUS_SYSTEM_ERROR.getStatus()).setErrorMessage(result.getMsg());
-                judgeEntityService.updateById(judge);
-            }
-        }
-    }
-
-    private void cancelFutureTask(String key) {
-        ScheduledFuture<?> future = FUTURE_TASK_MAP.get(key);
-        if (future != null) {
-            boolean isCanceled = future.cancel(true);
-            if (isCanceled) {
-                FUTURE_TASK_MAP.remove(key);
-            }
-        }
-    }
-
-    public void reduceCurrentTaskNum(Integer id) {
-        UpdateWrapper<JudgeServer> judgeServerUpdateWrapper = new UpdateWrapper<>();
-        judgeServerUpdateWrapper.setSql("task_number = task_number-1").eq("id", id);
-        boolean isOk = judgeServerEntityService.update(judgeServerUpdateWrapper);
-        if (!isOk) {
-            // 重试八次
-            tryAgainUpdateJudgeServer(judgeServerUpdateWrapper);
+            return;
         }
-    }
-
-    public void tryAgainUpdateJudgeServer(UpdateWrapper<JudgeServer> updateWrapper) {
-        boolean retryable;
-        int attemptNumber = 0;
-        do {
-            boolean success = judgeServerEntityService.update(updateWrapper);
-            if (success) {
-                return;
-            } else {
-                attemptNumber++;
-                retryable = attemptNumber < 8;
-                if (attemptNumber == 8) {
-                    break;
-                }
-                try {
-                    Thread.sleep(300);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-        while (retryable);
+        judgeEntityService.updateById(judge);
+        judgeStatusHub.publish(new JudgeStatusDTO().setSubmitId(submission.getSubmitId())
+                .setUid(submission.getUid()).setCid(submission.getCid()).setPid(submission.getPid())
+                .setStatus(judge.getStatus()).setSubmitTime(submission.getSubmitTime()));
     }
 
     public void changeRemoteJudgeStatus(String remoteOjName, String username) {
@@ -0,0 +1,287 @@
+package com.simplefanc.voj.backend.judge;
+
+import cn.hutool.core.util.IdUtil;
+import com.alibaba.cloud.nacos.NacosDiscoveryProperties;
+import com.alibaba.cloud.nacos.NacosServiceManager;
+import com.alibaba.nacos.api.exception.NacosException;
+import com.alibaba.nacos.api.naming.NamingService;
+import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.simplefanc.voj.backend.dao.judge.JudgeServerEntityService;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import com.simplefanc.voj.common.pojo.entity.judge.JudgeServer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/10/25 10:20
+ * @Description: 判题机的评测名额账本。
+ * 判题机的容量来自判题机启动时登记的 judge_server 记录（只登记健康实例），写入redis的hash中；
+ * 每个占用的名额是判题机对应有序集合中的一个租约，score为租约到期时间，分配名额由lua脚本原子完成，
+ * 后端实例定期续约自己持有的租约，实例崩溃后租约自动过期，不会泄漏名额；
+ * judge_server 的 task_number 仅在刷新时按有效租约数回写，作为展示用的视图
+ */
+@Component
+@Slf4j(topic = "voj")
+@RequiredArgsConstructor
+public class JudgeServerSlotLedger {
+
+    /**
+     * 租约有效期，持有期间每次刷新都会续约
+     */
+    private final static long LEASE_TTL_MILLIS = 30 * 1000L;
+
+    /**
+     * KEYS[1] 判题机容量hash；ARGV[1] 当前时间，ARGV[2] 租约到期时间，ARGV[3] 租约id，ARGV[4] 租约有序集合的key前缀，
+     * ARGV[5...] 暂不分配的判题机id。清理过期租约后选择负载比例最低且有空闲名额的判题机，返回其id。
+     * 租约的key在脚本中拼接（判题机id来自容量hash），与 KEYS[1] 使用相同的 hash tag，集群模式下位于同一个slot
+     */
+    private final static DefaultRedisScript<String> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local capacities = redis.call('HGETALL', KEYS[1])\n" +
+            "local excluded = {}\n" +
+            "for i = 5, #ARGV do excluded[ARGV[i]] = true end\n" +
+            "local chosen, chosenLoad = nil, nil\n" +
+            "for i = 1, #capacities, 2 do\n" +
+            "  local id = capacities[i]\n" +
+            "  local capacity = tonumber(capacities[i + 1])\n" +
+            "  if not excluded[id] and capacity > 0 then\n" +
+            "    local leaseKey = ARGV[4] .. id\n" +
+            "    redis.call('ZREMRANGEBYSCORE', leaseKey, '-inf', ARGV[1])\n" +
+            "    local inUse = redis.call('ZCARD', leaseKey)\n" +
+            "    if inUse < capacity and (chosen == nil or inUse / capacity < chosenLoad) then\n" +
+            "      chosen = id\n" +
+            "      chosenLoad = inUse / capacity\n" +
+            "    end\n" +
+            "  end\n" +
+            "end\n" +
+            "if chosen == nil then return false end\n" +
+            "redis.call('ZADD', ARGV[4] .. chosen, ARGV[2], ARGV[3])\n" +
+            "return chosen", String.class);
+
+    /**
+     * KEYS[1] 判题机容量hash；ARGV[1] 当前时间，ARGV[2] 租约有序集合的key前缀（与 KEYS[1] 的 hash tag 相同）。
+     * 返回所有判题机的空闲名额总数
+     */
+    private final static DefaultRedisScript<Long> FREE_SLOTS_SCRIPT = new DefaultRedisScript<>(
+            "local capacities = redis.call('HGETALL', KEYS[1])\n" +
+            "local free = 0\n" +
+            "for i = 1, #capacities, 2 do\n" +
+            "  local inUse = redis.call('ZCOUNT', ARGV[2] .. capacities[i], '(' .. ARGV[1], '+inf')\n" +
+            "  free = free + math.max(tonumber(capacities[i + 1]) - inUse, 0)\n" +
+            "end\n" +
+            "return free", Long.class);
+
+    /**
+     * 只续约仍然存在的租约，已归还或已过期清理的租约不会被重新加入
+     */
+    private final static DefaultRedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "return redis.call('ZADD', KEYS[1], 'XX', 'CH', ARGV[1], ARGV[2])", Long.class);
+
+    private final NacosServiceManager nacosServiceManager;
+
+    private final NacosDiscoveryProperties discoveryProperties;
+
+    private final JudgeServerEntityService judgeServerEntityService;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${service-url.name}")
+    private String judgeServiceName;
+
+    /**
+     * 本实例已知的判题机信息，key为judge_server的id
+     */
+    private volatile Map<String, JudgeServer> judgeServers = Collections.emptyMap();
+
+    /**
+     * 本实例持有的租约，刷新时续约
+     */
+    private final Set<Lease> heldLeases = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 返回繁忙的判题机（可能被其它后端实例占满），在下次归还或刷新前本实例不再向其分配任务
+     */
+    private final Set<String> fullServers = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean initialized;
+
+    /**
+     * 占用一个评测名额，选择剩余名额比例最高的判题机
+     *
+     * @param isRemote 是否为远程判题
+     * @return 没有空闲名额时返回null
+     */
+    public Lease tryAcquire(Boolean isRemote) {
+        if (!initialized) {
+            refresh();
+        }
+        long now = System.currentTimeMillis();
+        String leaseId = IdUtil.fastSimpleUUID();
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(now));
+        args.add(String.valueOf(now + LEASE_TTL_MILLIS));
+        args.add(leaseId);
+        args.add(RedisConstant.JUDGE_SERVER_LEASES);
+        args.addAll(fullServers);
+        String serverId = stringRedisTemplate.execute(ACQUIRE_SCRIPT,
+                Collections.singletonList(getCapacityKey(isRemote)), args.toArray());
+        if (serverId == null) {
+            return null;
+        }
+        JudgeServer judgeServer = judgeServers.get(serverId);
+        if (judgeServer == null) {
+            // 其它后端实例刚登记的判题机，本实例还没有刷新到
+            refresh();
+            judgeServer = judgeServers.get(serverId);
+        }
+        Lease lease = new Lease(serverId, leaseId, judgeServer);
+        if (judgeServer == null) {
+            release(lease);
+            return null;
+        }
+        heldLeases.add(lease);
+        return lease;
+    }
+
+    /**
+     * 归还名额
+     */
+    public void release(Lease lease) {
+        heldLeases.remove(lease);
+        fullServers.remove(lease.serverId);
+        stringRedisTemplate.opsForZSet().remove(RedisConstant.JUDGE_SERVER_LEASES + lease.serverId, lease.leaseId);
+    }
+
+    public void markFull(Lease lease) {
+        fullServers.add(lease.serverId);
+    }
+
+    public int getFreeSlots(Boolean isRemote) {
+        Long free = stringRedisTemplate.execute(FREE_SLOTS_SCRIPT,
+                Collections.singletonList(getCapacityKey(isRemote)),
+                String.valueOf(System.currentTimeMillis()), RedisConstant.JUDGE_SERVER_LEASES);
+        return free == null ? 0 : free.intValue();
+    }
+
+    /**
+     * 续约本实例持有的租约；根据健康实例与 judge_server 登记信息刷新判题机容量，并按有效租约数回写 task_number
+     */
+    public synchronized void refresh() {
+        long now = System.currentTimeMillis();
+        for (Lease lease : heldLeases) {
+            stringRedisTemplate.execute(RENEW_SCRIPT,
+                    Collections.singletonList(RedisConstant.JUDGE_SERVER_LEASES + lease.serverId),
+                    String.valueOf(now + LEASE_TTL_MILLIS), lease.leaseId);
+        }
+
+        List<Instance> instances = getInstances(judgeServiceName);
+        List<JudgeServer> judgeServerList = Collections.emptyList();
+        if (!instances.isEmpty()) {
+            List<String> keyList = instances.stream()
+                    .map(instance -> instance.getIp() + ":" + instance.getPort())
+                    .collect(Collectors.toList());
+            QueryWrapper<JudgeServer> judgeServerQueryWrapper = new QueryWrapper<>();
+            judgeServerQueryWrapper.in("url", keyList);
+            judgeServerList = judgeServerEntityService.list(judgeServerQueryWrapper);
+        }
+
+        Map<String, JudgeServer> refreshed = new HashMap<>();
+        Map<String, String> localCapacities = new HashMap<>();
+        Map<String, String> remoteCapacities = new HashMap<>();
+        for (JudgeServer judgeServer : judgeServerList) {
+            String serverId = String.valueOf(judgeServer.getId());
+            refreshed.put(serverId, judgeServer);
+            int capacity = judgeServer.getMaxTaskNumber() == null ? 0 : judgeServer.getMaxTaskNumber();
+            (judgeServer.getIsRemote() ? remoteCapacities : localCapacities).put(serverId, String.valueOf(capacity));
+        }
+        updateCapacities(getCapacityKey(false), localCapacities);
+        updateCapacities(getCapacityKey(true), remoteCapacities);
+        judgeServers = refreshed;
+        fullServers.clear();
+        initialized = true;
+
+        for (JudgeServer judgeServer : judgeServerList) {
+            String leaseKey = RedisConstant.JUDGE_SERVER_LEASES + judgeServer.getId();
+            Long inUse = stringRedisTemplate.opsForZSet().count(leaseKey, now + 1, Double.POSITIVE_INFINITY);
+            int taskNumber = inUse == null ? 0 : inUse.intValue();
+            if (!Integer.valueOf(taskNumber).equals(judgeServer.getTaskNumber())) {
+                UpdateWrapper<JudgeServer> updateWrapper = new UpdateWrapper<>();
+                updateWrapper.set("task_number", taskNumber).eq("id", judgeServer.getId());
+                judgeServerEntityService.update(updateWrapper);
+            }
+        }
+    }
+
+    private void updateCapacities(String key, Map<String, String> capacities) {
+        Set<Object> staleIds = stringRedisTemplate.opsForHash().keys(key);
+        staleIds.removeAll(capacities.keySet());
+        if (!staleIds.isEmpty()) {
+            stringRedisTemplate.opsForHash().delete(key, staleIds.toArray());
+        }
+        if (!capacities.isEmpty()) {
+            stringRedisTemplate.opsForHash().putAll(key, capacities);
+        }
+    }
+
+    private String getCapacityKey(Boolean isRemote) {
+        return RedisConstant.JUDGE_SERVER_CAPACITY + (isRemote ? "remote" : "local");
+    }
+
+    /**
+     * @param serviceId
+     * @MethodName getInstances
+     * @Description 根据服务id获取对应的健康实例列表
+     * @Return
+     * @Since 2021/4/15
+     */
+    private List<Instance> getInstances(String serviceId) {
+        // 获取服务发现的相关API
+        NamingService namingService = nacosServiceManager.getNamingService(discoveryProperties.getNacosProperties());
+        try {
+            // 获取该微服务的所有健康实例
+            return namingService.selectInstances(serviceId, true);
+        } catch (NacosException e) {
+            log.error("获取微服务健康实例发生异常--------->", e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 一个已占用的评测名额
+     */
+    public static class Lease {
+
+        private final String serverId;
+
+        private final String leaseId;
+
+        private final JudgeServer judgeServer;
+
+        Lease(String serverId, String leaseId, JudgeServer judgeServer) {
+            this.serverId = serverId;
+            this.leaseId = leaseId;
+            this.judgeServer = judgeServer;
+        }
+
+        public JudgeServer getJudgeServer() {
+            return judgeServer;
+        }
+
+    }
+
+}
@@ -0,0 +1,260 @@
+package com.simplefanc.voj.backend.judge;
+
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.json.JSONUtil;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import com.simplefanc.voj.common.pojo.dto.JudgeStatusDTO;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/11/5 10:30
+ * @Description: 判题状态推送。判题服务（及本服务的调度失败处理）将状态变化发布到 {@link RedisConstant#JUDGE_STATUS_CHANNEL}，
+ * 每个后台节点收到后通过 SSE 推送给本节点上的订阅：非比赛提交推送给提交者本人，比赛提交推送给订阅该比赛的用户。
+ * 原有的轮询接口保留，作为连接断开或推送丢失时的补偿
+ */
+@Slf4j(topic = "voj")
+@Component
+@RequiredArgsConstructor
+public class JudgeStatusHub implements MessageListener {
+
+    /**
+     * 连接最长保持时间，超时后由前端重新订阅
+     */
+    private final static long EMITTER_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+
+    private final static long HEARTBEAT_INTERVAL_SECONDS = 20;
+
+    /**
+     * 每个用户在本节点最多同时保持的订阅数（多个标签页），超过时关闭最早的订阅
+     */
+    private final static int MAX_SUBSCRIPTIONS_PER_USER = 5;
+
+    /**
+     * 推送在单独的线程中进行，避免慢连接阻塞 Redis 消息的接收
+     */
+    private final static ExecutorService PUSH_EXECUTOR = Executors.newSingleThreadExecutor(
+            ThreadUtil.newNamedThreadFactory("JudgeStatusPush-", true));
+
+    private final static ScheduledExecutorService HEARTBEAT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            ThreadUtil.newNamedThreadFactory("JudgeStatusHeartbeat-", true));
+
+    /**
+     * key 为 user:uid 或 contest:cid
+     */
+    private final Map<String, Set<Subscription>> topics = new ConcurrentHashMap<>();
+
+    /**
+     * uid -> 该用户的订阅，按订阅时间排序
+     */
+    private final Map<String, Deque<Subscription>> userSubscriptions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger subscriptionCount = new AtomicInteger();
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RedisConstant.JUDGE_STATUS_CHANNEL));
+        Gauge.builder("voj.judge.status.subscriptions", subscriptionCount, AtomicInteger::get)
+                .description("本节点保持的判题状态推送连接数")
+                .register(meterRegistry);
+        HEARTBEAT_SCHEDULER.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_INTERVAL_SECONDS,
+                HEARTBEAT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        HEARTBEAT_SCHEDULER.shutdownNow();
+        userSubscriptions.values().forEach(subscriptions -> subscriptions.forEach(Subscription::close));
+    }
+
+    /**
+     * 订阅当前用户的非比赛提交
+     */
+    public SseEmitter subscribeUser(String uid) {
+        return subscribe(getUserTopic(uid), uid, judgeStatus -> judgeStatus);
+    }
+
+    /**
+     * 订阅比赛的提交
+     *
+     * @param view 返回推送给该订阅者的数据，返回null表示不推送（如封榜期间）
+     */
+    public SseEmitter subscribeContest(Long cid, String uid, Function<JudgeStatusDTO, Object> view) {
+        return subscribe(getContestTopic(cid), uid, view);
+    }
+
+    /**
+     * 发布状态变化，所有后台节点（包括本节点）都会收到
+     */
+    public void publish(JudgeStatusDTO judgeStatus) {
+        try {
+            stringRedisTemplate.convertAndSend(RedisConstant.JUDGE_STATUS_CHANNEL, JSONUtil.toJsonStr(judgeStatus));
+        } catch (Exception e) {
+            log.error("发布提交[{}]的判题状态失败-------------->", judgeStatus.getSubmitId(), e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        JudgeStatusDTO judgeStatus;
+        try {
+            judgeStatus = JSONUtil.toBean(new String(message.getBody(), StandardCharsets.UTF_8), JudgeStatusDTO.class);
+        } catch (Exception e) {
+            log.error("解析判题状态消息失败-------------->", e);
+            return;
+        }
+        String topic = judgeStatus.getCid() == null || judgeStatus.getCid() == 0
+                ? getUserTopic(judgeStatus.getUid()) : getContestTopic(judgeStatus.getCid());
+        Set<Subscription> subscriptions = topics.get(topic);
+        if (subscriptions == null || subscriptions.isEmpty()) {
+            return;
+        }
+        PUSH_EXECUTOR.execute(() -> {
+            for (Subscription subscription : subscriptions) {
+                Object data = subscription.view.apply(judgeStatus);
+                if (data != null) {
+                    subscription.send(SseEmitter.event().name("status").data(data));
+                }
+            }
+        });
+    }
+
+    private SseEmitter subscribe(String topic, String uid, Function<JudgeStatusDTO, Object> view) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MILLIS);
+        Subscription subscription = new Subscription(topic, uid, emitter, view);
+        emitter.onCompletion(() -> remove(subscription));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> remove(subscription));
+
+        // 在 compute 中加入，避免加入到刚被移除的空集合中
+        topics.compute(topic, (k, subscriptions) -> {
+            subscriptions = subscriptions != null ? subscriptions : ConcurrentHashMap.newKeySet();
+            subscriptions.add(subscription);
+            return subscriptions;
+        });
+        Deque<Subscription> subscriptions = userSubscriptions.compute(uid, (k, deque) -> {
+            deque = deque != null ? deque : new ConcurrentLinkedDeque<>();
+            deque.addLast(subscription);
+            return deque;
+        });
+        subscriptionCount.incrementAndGet();
+        while (subscriptions.size() > MAX_SUBSCRIPTIONS_PER_USER) {
+            Subscription oldest = subscriptions.pollFirst();
+            if (oldest != null) {
+                oldest.close();
+            }
+        }
+        return emitter;
+    }
+
+    private void remove(Subscription subscription) {
+        if (!subscription.removed.compareAndSet(false, true)) {
+            return;
+        }
+        subscriptionCount.decrementAndGet();
+        topics.computeIfPresent(subscription.topic, (k, subscriptions) -> {
+            subscriptions.remove(subscription);
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+        userSubscriptions.computeIfPresent(subscription.uid, (k, subscriptions) -> {
+            subscriptions.remove(subscription);
+            return subscriptions.isEmpty() ? null : subscriptions;
+        });
+    }
+
+    /**
+     * 定时发送注释行保持连接，同时清理已断开的连接
+     */
+    private void heartbeat() {
+        try {
+            for (Deque<Subscription> subscriptions : userSubscriptions.values()) {
+                subscriptions.forEach(subscription -> subscription.send(SseEmitter.event().comment("heartbeat")));
+            }
+        } catch (Exception e) {
+            log.error("判题状态推送心跳发生异常-------------->", e);
+        }
+    }
+
+    private static String getUserTopic(String uid) {
+        return "user:" + uid;
+    }
+
+    private static String getContestTopic(Long cid) {
+        return "contest:" + cid;
+    }
+
+    private class Subscription {
+
+        final String topic;
+
+        final String uid;
+
+        final SseEmitter emitter;
+
+        final Function<JudgeStatusDTO, Object> view;
+
+        final AtomicBoolean removed = new AtomicBoolean();
+
+        Subscription(String topic, String uid, SseEmitter emitter, Function<JudgeStatusDTO, Object> view) {
+            this.topic = topic;
+            this.uid = uid;
+            this.emitter = emitter;
+            this.view = view;
+        }
+
+        /**
+         * 推送线程与心跳线程可能同时写同一个连接
+         */
+        synchronized void send(SseEmitter.SseEventBuilder event) {
+            if (removed.get()) {
+                return;
+            }
+            try {
+                emitter.send(event);
+            } catch (Exception e) {
+                // 连接已断开
+                remove(this);
+                emitter.completeWithError(e);
+            }
+        }
+
+        void close() {
+            remove(this);
+            emitter.complete();
+        }
+
+    }
+
+}
@@ -28,8 +28,6 @@ public class JudgeTaskDispatcher {
 
     private final JudgeEntityService judgeEntityService;
 
-    private final JudgeTaskTaskReceiver judgeTaskReceiver;
-
     @Value("${voj.judge.token}")
     private String judgeToken;
 
@@ -50,8 +48,7 @@ public class JudgeTaskDispatcher {
                         .setStatus(JudgeStatus.STATUS_SUBMITTED_FAILED.getStatus())
                         .setErrorMessage("Please try to submit again!"));
             }
-            // 调用判题任务处理
-            judgeTaskReceiver.processWaitingTask();
+            // 判题任务由 JudgeTaskTaskReceiver 的消费线程阻塞取出处理
         } catch (Exception e) {
             log.error("调用Redis将判题纳入判题等待队列异常，此次判题任务判为系统错误--------------->", e);
             judgeEntityService.failToUseRedisPublishJudge(judge.getSubmitId(), judge.getPid(), isContest);
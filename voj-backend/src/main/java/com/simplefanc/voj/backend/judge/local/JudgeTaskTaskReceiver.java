@@ -5,56 +5,139 @@ import cn.hutool.json.JSONUtil;
 import com.simplefanc.voj.backend.common.constants.CallJudgerType;
 import com.simplefanc.voj.backend.common.constants.QueueConstant;
 import com.simplefanc.voj.backend.common.utils.RedisUtil;
-import com.simplefanc.voj.backend.judge.AbstractTaskReceiver;
 import com.simplefanc.voj.backend.judge.Dispatcher;
+import com.simplefanc.voj.backend.judge.JudgeServerSlotLedger;
 import com.simplefanc.voj.common.pojo.dto.JudgeDTO;
 import com.simplefanc.voj.common.pojo.entity.judge.Judge;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @Author: chenfan
  * @Date: 2021/2/5 16:43
- * @Description:
+ * @Description: 判题等待队列的消费者。
+ * 固定的消费线程阻塞地从比赛队列与普通队列中取任务（优先比赛的提交），
+ * 只在判题机有空闲名额时取出，并按空闲名额数批量取出后交给调度器
  */
 @Component
 @Slf4j(topic = "voj")
 @RequiredArgsConstructor
-public class JudgeTaskTaskReceiver extends AbstractTaskReceiver {
+public class JudgeTaskTaskReceiver {
+
+    /**
+     * 消费线程数
+     */
+    private static final int CONSUMER_NUM = 2;
+
+    /**
+     * 一次最多取出的任务数
+     */
+    private static final int MAX_BATCH_SIZE = 32;
+
+    /**
+     * 阻塞取任务的超时时间(秒)，超时后重新检查判题机名额
+     */
+    private static final long POP_TIMEOUT = 1;
 
     private final Dispatcher dispatcher;
 
+    private final JudgeServerSlotLedger slotLedger;
+
     private final RedisUtil redisUtil;
 
-    @Async("judgeTaskAsyncPool")
-    public void processWaitingTask() {
-        // 优先处理比赛的提交
-        // 其次处理普通提交的提交
-        this.handleWaitingTask(QueueConstant.CONTEST_JUDGE_WAITING, QueueConstant.GENERAL_JUDGE_WAITING);
+    private final List<Thread> consumers = new ArrayList<>();
+
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void start() {
+        for (int i = 0; i < CONSUMER_NUM; i++) {
+            Thread consumer = new Thread(this::consume, "JudgeTaskConsumer-" + i);
+            consumer.setDaemon(true);
+            consumer.start();
+            consumers.add(consumer);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        consumers.forEach(Thread::interrupt);
     }
 
-    @Override
-    public String getTaskFromRedis(String queue) {
-        long size = redisUtil.lGetListSize(queue);
-        if (size > 0) {
-            return (String) redisUtil.lrPop(queue);
-        } else {
-            return null;
+    private void consume() {
+        while (running) {
+            try {
+                // 判题机没有空闲名额时不取任务，任务留在redis队列中
+                int capacity = slotLedger.getFreeSlots(false) - dispatcher.getPendingNum(false);
+                if (capacity <= 0) {
+                    dispatcher.awaitSlotReleased(POP_TIMEOUT * 1000);
+                    continue;
+                }
+                for (String taskJsonStr : popTasks(Math.min(capacity, MAX_BATCH_SIZE))) {
+                    // 任务已从redis队列取出，逐个交给调度器，单个任务失败不影响同一批的其余任务
+                    try {
+                        handleTask(taskJsonStr);
+                    } catch (Exception e) {
+                        log.error("处理判题任务发生异常，任务：{}-------------->", taskJsonStr, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("消费判题等待队列发生异常-------------->", e);
+                try {
+                    Thread.sleep(POP_TIMEOUT * 1000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 阻塞取出一个任务，再按优先级非阻塞地取出同一批的其余任务
+     */
+    private List<String> popTasks(int batchSize) {
+        List<String> tasks = new ArrayList<>(batchSize);
+        // 优先处理比赛的提交，其次处理普通提交
+        Object first = redisUtil.brPop(POP_TIMEOUT, QueueConstant.CONTEST_JUDGE_WAITING,
+                QueueConstant.GENERAL_JUDGE_WAITING);
+        if (first == null) {
+            return tasks;
+        }
+        tasks.add((String) first);
+        try {
+            for (String queue : new String[]{QueueConstant.CONTEST_JUDGE_WAITING, QueueConstant.GENERAL_JUDGE_WAITING}) {
+                if (tasks.size() >= batchSize) {
+                    break;
+                }
+                for (Object task : redisUtil.lrPop(queue, batchSize - tasks.size())) {
+                    tasks.add((String) task);
+                }
+            }
+        } catch (Exception e) {
+            // 已取出的任务不能丢弃，先交给调度器，其余任务留在队列中下次再取
+            log.error("批量取出判题任务发生异常-------------->", e);
         }
+        return tasks;
     }
 
-    @Override
-    public void handleTask(String taskJsonStr) {
+    private void handleTask(String taskJsonStr) {
         JSONObject task = JSONUtil.parseObj(taskJsonStr);
         Judge judge = task.get("judge", Judge.class);
         String token = task.getStr("token");
         // 调用判题服务
         dispatcher.dispatcher(CallJudgerType.JUDGE, "/judge",
                 new JudgeDTO().setJudge(judge).setToken(token).setRemoteJudgeProblem(null));
-        // 接着处理任务
-        processWaitingTask();
     }
 
-}
\ No newline at end of file
+}
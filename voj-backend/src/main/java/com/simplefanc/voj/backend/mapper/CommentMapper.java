@@ -9,6 +9,7 @@ import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
@@ -25,4 +26,12 @@ public interface CommentMapper extends BaseMapper<Comment> {
                                     @Param("onlyMineAndAdmin") Boolean onlyMineAndAdmin,
                                     @Param("myAndAdminUidList") List<String> myAndAdminUidList);
 
+    /**
+     * 批量累加计数列
+     *
+     * @param column like_num
+     * @param deltas 评论id -> 增量
+     */
+    int addCounts(@Param("column") String column, @Param("deltas") Map<Integer, Long> deltas);
+
 }
@@ -5,6 +5,7 @@ import com.simplefanc.voj.backend.pojo.vo.ContestRecordVO;
 import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 
 import java.util.Date;
 import java.util.List;
@@ -22,14 +23,9 @@ public interface ContestRecordMapper extends BaseMapper<ContestRecord> {
 
     List<ContestRecord> getACInfo(@Param("status") Integer status, @Param("cid") Long cid);
 
-    List<ContestRecordVO> getOIContestRecordByRecentSubmission(@Param("cid") Long cid,
-                                                               @Param("isOpenSealRank") Boolean isOpenSealRank,
-                                                               @Param("sealTime") Date sealTime, @Param("startTime") Date startTime, @Param("endTime") Date endTime);
+    List<ContestRecordVO> getScoreboardContestRecord(@Param("cid") Long cid, @Param("since") Date since);
 
-    List<ContestRecordVO> getOIContestRecordByHighestSubmission(@Param("cid") Long cid,
-                                                                @Param("isOpenSealRank") Boolean isOpenSealRank,
-                                                                @Param("sealTime") Date sealTime, @Param("startTime") Date startTime, @Param("endTime") Date endTime);
-
-    List<ContestRecordVO> getACMContestRecord(@Param("cid") Long cid, @Param("startTime") Date startTime);
+    @Select("SELECT NOW()")
+    Date getCurrentTime();
 
 }
@@ -6,9 +6,29 @@ import com.simplefanc.voj.common.pojo.entity.discussion.Discussion;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Date;
+import java.util.Map;
+
 @Mapper
 public interface DiscussionMapper extends BaseMapper<Discussion> {
 
     DiscussionVO getDiscussion(@Param("did") Integer did, @Param("uid") String uid);
 
+    /**
+     * 批量累加计数列
+     *
+     * @param column view_num 或 like_num
+     * @param deltas 讨论id -> 增量
+     */
+    int addCounts(@Param("column") String column, @Param("deltas") Map<Integer, Long> deltas);
+
+    /**
+     * 记录计数写入批次，与 addCounts 在同一事务中执行
+     *
+     * @return 批次已存在时返回0
+     */
+    int insertCounterFlush(@Param("flushId") String flushId);
+
+    int deleteCounterFlushBefore(@Param("time") Date time);
+
 }
@@ -25,14 +25,32 @@ public interface JudgeMapper extends BaseMapper<Judge> {
 
     IPage<JudgeVO> getCommonJudgeList(Page<JudgeVO> page, @Param("searchPid") String searchPid,
                                       @Param("status") Integer status, @Param("username") String username, @Param("uid") String uid,
-                                      @Param("completeProblemId") Boolean completeProblemId);
+                                      @Param("completeProblemId") Boolean completeProblemId,
+                                      @Param("searchPidList") List<Long> searchPidList,
+                                      @Param("searchUidList") List<String> searchUidList,
+                                      @Param("lastSubmitId") Long lastSubmitId);
+
+    long countCommonJudgeList(@Param("searchPid") String searchPid, @Param("status") Integer status,
+                              @Param("username") String username, @Param("uid") String uid,
+                              @Param("completeProblemId") Boolean completeProblemId,
+                              @Param("searchPidList") List<Long> searchPidList,
+                              @Param("searchUidList") List<String> searchUidList);
 
     // TODO 参数过多
     IPage<JudgeVO> getContestJudgeList(Page<JudgeVO> page, @Param("displayId") String displayId, @Param("cid") Long cid,
                                        @Param("status") Integer status, @Param("username") String username, @Param("uid") String uid,
                                        @Param("beforeContestSubmit") Boolean beforeContestSubmit, @Param("rule") String rule,
                                        @Param("startTime") Date startTime, @Param("sealRankTime") Date sealRankTime,
-                                       @Param("sealTimeUid") String sealTimeUid, @Param("completeProblemId") Boolean completeProblemId);
+                                       @Param("sealTimeUid") String sealTimeUid, @Param("completeProblemId") Boolean completeProblemId,
+                                       @Param("searchUidList") List<String> searchUidList,
+                                       @Param("lastSubmitId") Long lastSubmitId);
+
+    long countContestJudgeList(@Param("displayId") String displayId, @Param("cid") Long cid,
+                               @Param("status") Integer status, @Param("username") String username, @Param("uid") String uid,
+                               @Param("beforeContestSubmit") Boolean beforeContestSubmit,
+                               @Param("startTime") Date startTime, @Param("sealRankTime") Date sealRankTime,
+                               @Param("sealTimeUid") String sealTimeUid, @Param("completeProblemId") Boolean completeProblemId,
+                               @Param("searchUidList") List<String> searchUidList);
 
     int getTodayJudgeNum();
 
@@ -40,8 +58,4 @@ public interface JudgeMapper extends BaseMapper<Judge> {
                                           @Param("startTime") Date startTime, @Param("sealRankTime") Date sealRankTime,
                                           @Param("adminList") List<String> adminList);
 
-    ProblemCountVO getProblemCount(@Param("pid") Long pid);
-
-    List<ProblemCountVO> getProblemListCount(@Param("pidList") List<Long> pidList);
-
 }
@@ -21,6 +21,7 @@ import java.util.List;
 public interface ProblemMapper extends BaseMapper<Problem> {
 
     List<ProblemVO> getProblemList(IPage page, @Param("keyword") String keyword,
+                                   @Param("keywordPidList") List<Long> keywordPidList,
                                    @Param("difficulty") Integer difficulty, @Param("tid") List<Long> tid,
                                    @Param("tagListSize") Integer tagListSize, @Param("oj") String oj, @Param("allProblemVisible") boolean allProblemVisible);
 
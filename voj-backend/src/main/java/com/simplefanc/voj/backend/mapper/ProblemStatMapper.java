@@ -0,0 +1,28 @@
+package com.simplefanc.voj.backend.mapper;
+
+import com.simplefanc.voj.backend.pojo.vo.ProblemCountVO;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Mapper 接口
+ * </p>
+ *
+ * @Author: chenfan
+ * @since 2023-11-08
+ */
+@Mapper
+public interface ProblemStatMapper {
+
+    List<ProblemCountVO> getProblemStatList(@Param("pidList") List<Long> pidList);
+
+    int addResult(@Param("pid") Long pid, @Param("status") Integer status, @Param("delta") int delta);
+
+    int refreshProblemStat(@Param("pidList") List<Long> pidList);
+
+    int countProblemStat();
+
+}
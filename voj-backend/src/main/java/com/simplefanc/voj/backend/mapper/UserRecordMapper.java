@@ -29,4 +29,8 @@ public interface UserRecordMapper {
 
     UserHomeVO getUserHomeInfo(@Param("uid") String uid, @Param("username") String username);
 
+    int refreshUserStat(@Param("uidList") List<String> uidList);
+
+    int countUserStat();
+
 }
@@ -0,0 +1,177 @@
+package com.simplefanc.voj.backend.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/11/7 10:20
+ * @Description: 基于二元组（相邻两个字符）的倒排索引，用于替代 like '%keyword%'。
+ * 每条记录保存若干个字段（转为小写），查询时取关键字中倒排表最短的二元组作为候选，
+ * 再逐条校验字段是否包含关键字，结果与 like 的匹配结果一致（不区分大小写，% 与 _ 按普通字符处理）
+ */
+public class KeywordIndex<K> {
+
+    private final Map<K, String[]> documents = new HashMap<>();
+
+    /**
+     * 二元组 -> 包含该二元组的记录
+     */
+    private final Map<Integer, Set<K>> postings = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 新增或替换记录
+     *
+     * @param fields 记录的各个字段，为null的字段不参与匹配
+     */
+    public void put(K key, String... fields) {
+        String[] normalized = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            normalized[i] = fields[i] == null ? null : fields[i].toLowerCase(Locale.ROOT);
+        }
+        lock.writeLock().lock();
+        try {
+            String[] old = documents.put(key, normalized);
+            if (old != null) {
+                for (Integer gram : grams(old)) {
+                    Set<K> keys = postings.get(gram);
+                    if (keys != null) {
+                        keys.remove(key);
+                        if (keys.isEmpty()) {
+                            postings.remove(gram);
+                        }
+                    }
+                }
+            }
+            for (Integer gram : grams(normalized)) {
+                postings.computeIfAbsent(gram, k -> new HashSet<>()).add(key);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(K key) {
+        lock.writeLock().lock();
+        try {
+            String[] old = documents.remove(key);
+            if (old == null) {
+                return;
+            }
+            for (Integer gram : grams(old)) {
+                Set<K> keys = postings.get(gram);
+                if (keys != null) {
+                    keys.remove(key);
+                    if (keys.isEmpty()) {
+                        postings.remove(gram);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param keyword 关键字，不能为空
+     * @param limit   最多返回的记录数，超过时返回null，由调用方改用数据库查询
+     * @param fields  参与匹配的字段下标，为空时匹配全部字段
+     * @return 任一字段包含关键字的记录
+     */
+    public List<K> search(String keyword, int limit, int... fields) {
+        String normalized = keyword.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            Iterable<K> candidates;
+            if (normalized.length() < 2) {
+                // 单个字符无法使用二元组，逐条校验
+                candidates = documents.keySet();
+            } else {
+                Set<K> shortest = null;
+                for (Integer gram : grams(normalized)) {
+                    Set<K> keys = postings.get(gram);
+                    if (keys == null) {
+                        return Collections.emptyList();
+                    }
+                    if (shortest == null || keys.size() < shortest.size()) {
+                        shortest = keys;
+                    }
+                }
+                candidates = shortest;
+            }
+            List<K> result = new ArrayList<>();
+            for (K key : candidates) {
+                if (matches(documents.get(key), normalized, fields)) {
+                    if (result.size() >= limit) {
+                        return null;
+                    }
+                    result.add(key);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 倒排表中的二元组数量
+     */
+    int gramCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean matches(String[] document, String keyword, int[] fields) {
+        if (fields.length == 0) {
+            for (String field : document) {
+                if (field != null && field.contains(keyword)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int i : fields) {
+            if (document[i] != null && document[i].contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<Integer> grams(String... fields) {
+        Set<Integer> grams = new HashSet<>();
+        for (String field : fields) {
+            if (field == null) {
+                continue;
+            }
+            for (int i = 0; i + 1 < field.length(); i++) {
+                grams.add(field.charAt(i) << 16 | field.charAt(i + 1));
+            }
+        }
+        return grams;
+    }
+
+}
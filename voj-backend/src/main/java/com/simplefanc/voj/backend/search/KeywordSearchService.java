@@ -0,0 +1,327 @@
+package com.simplefanc.voj.backend.search;
+
+import cn.hutool.core.thread.ThreadUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.simplefanc.voj.backend.mapper.DiscussionMapper;
+import com.simplefanc.voj.backend.mapper.ProblemMapper;
+import com.simplefanc.voj.backend.mapper.UserInfoMapper;
+import com.simplefanc.voj.common.pojo.entity.discussion.Discussion;
+import com.simplefanc.voj.common.pojo.entity.problem.Problem;
+import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/11/7 11:05
+ * @Description: 题目、讨论、用户的关键字搜索索引，启动时从数据库全量构建，之后：
+ * 1. 本节点的写入在事务提交后调用 refresh 方法立即更新；
+ * 2. 定时按 gmt_modified 增量同步其它节点的写入；
+ * 3. 定时全量重建，清除已删除的记录。
+ * 搜索返回候选id，由数据库按主键过滤其余条件；索引未构建完成或匹配的记录过多时返回null，调用方改用 like 查询
+ */
+@Slf4j(topic = "voj")
+@Component
+@RequiredArgsConstructor
+public class KeywordSearchService {
+
+    /**
+     * 返回的候选id上限，超过时 in 查询不比 like 更快
+     */
+    private final static int MAX_CANDIDATES = 1000;
+
+    private final static int LOAD_BATCH_SIZE = 5000;
+
+    private final static long SYNC_INTERVAL_SECONDS = 5;
+
+    private final static long REBUILD_INTERVAL_MINUTES = 60;
+
+    /**
+     * 增量同步时向前多读的时间，覆盖同步时还未提交的事务和各节点间的时钟误差
+     */
+    private final static long SYNC_OVERLAP_MILLIS = 60 * 1000L;
+
+    private final static ScheduledExecutorService INDEX_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            ThreadUtil.newNamedThreadFactory("KeywordIndex-", true));
+
+    private final ProblemMapper problemMapper;
+
+    private final DiscussionMapper discussionMapper;
+
+    private final UserInfoMapper userInfoMapper;
+
+    private final MeterRegistry meterRegistry;
+
+    private IndexedTable<Long, Problem> problems;
+
+    private IndexedTable<Integer, Discussion> discussions;
+
+    private IndexedTable<String, UserInfo> users;
+
+    @PostConstruct
+    public void init() {
+        problems = new IndexedTable<>("problem", problemMapper, "id",
+                new String[]{"id", "problem_id", "title", "gmt_modified"}, Problem::getId,
+                problem -> new String[]{problem.getProblemId(), problem.getTitle()}, Problem::getGmtModified);
+        discussions = new IndexedTable<>("discussion", discussionMapper, "id",
+                new String[]{"id", "title", "author", "description", "gmt_modified"}, Discussion::getId,
+                discussion -> new String[]{discussion.getTitle(), discussion.getAuthor(),
+                        String.valueOf(discussion.getId()), discussion.getDescription()},
+                Discussion::getGmtModified);
+        users = new IndexedTable<>("user_info", userInfoMapper, "uuid",
+                new String[]{"uuid", "username", "realname", "gmt_modified"}, UserInfo::getUuid,
+                user -> new String[]{user.getUsername(), user.getRealname()}, UserInfo::getGmtModified);
+
+        INDEX_SCHEDULER.scheduleWithFixedDelay(this::sync, 0, SYNC_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        INDEX_SCHEDULER.scheduleWithFixedDelay(this::rebuild, REBUILD_INTERVAL_MINUTES, REBUILD_INTERVAL_MINUTES,
+                TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        INDEX_SCHEDULER.shutdownNow();
+    }
+
+    /**
+     * 题目id或标题包含关键字的题目
+     */
+    public List<Long> searchProblems(String keyword) {
+        return problems.search(keyword);
+    }
+
+    /**
+     * 题目id包含关键字的题目
+     */
+    public List<Long> searchProblemIds(String keyword) {
+        return problems.search(keyword, 0);
+    }
+
+    /**
+     * 标题、作者、id或描述包含关键字的讨论
+     */
+    public List<Integer> searchDiscussions(String keyword) {
+        return discussions.search(keyword);
+    }
+
+    /**
+     * 用户名或真实姓名包含关键字的用户
+     */
+    public List<String> searchUsers(String keyword) {
+        return users.search(keyword);
+    }
+
+    /**
+     * 用户名包含关键字的用户
+     */
+    public List<String> searchUsernames(String keyword) {
+        return users.search(keyword, 0);
+    }
+
+    public void refreshProblems(Collection<Long> pidList) {
+        afterCommit(() -> problems.refresh(pidList));
+    }
+
+    public void refreshDiscussions(Collection<Integer> didList) {
+        afterCommit(() -> discussions.refresh(didList));
+    }
+
+    public void refreshUsers(Collection<String> uidList) {
+        afterCommit(() -> users.refresh(uidList));
+    }
+
+    private void sync() {
+        for (IndexedTable<?, ?> table : tables()) {
+            try {
+                if (table.index == null) {
+                    table.rebuild();
+                } else {
+                    table.sync();
+                }
+            } catch (Exception e) {
+                log.error("同步{}表的关键字索引失败-------------->", table.name, e);
+            }
+        }
+    }
+
+    private void rebuild() {
+        for (IndexedTable<?, ?> table : tables()) {
+            try {
+                table.rebuild();
+            } catch (Exception e) {
+                log.error("重建{}表的关键字索引失败-------------->", table.name, e);
+            }
+        }
+    }
+
+    private List<IndexedTable<?, ?>> tables() {
+        List<IndexedTable<?, ?>> tables = new ArrayList<>();
+        Collections.addAll(tables, problems, discussions, users);
+        return tables;
+    }
+
+    /**
+     * 在事务提交后执行，避免回滚的修改进入索引
+     */
+    private static void afterCommit(Runnable runnable) {
+        Runnable task = () -> {
+            try {
+                runnable.run();
+            } catch (Exception e) {
+                log.error("更新关键字索引失败-------------->", e);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    private class IndexedTable<K, T> {
+
+        final String name;
+
+        final BaseMapper<T> mapper;
+
+        final String idColumn;
+
+        final String[] columns;
+
+        final Function<T, K> idGetter;
+
+        final Function<T, String[]> fieldsGetter;
+
+        final Function<T, Date> modifiedGetter;
+
+        /**
+         * 构建完成前为null
+         */
+        volatile KeywordIndex<K> index;
+
+        /**
+         * 全量重建过程中的新索引，本节点的更新同时写入，避免重建期间的更新丢失
+         */
+        volatile KeywordIndex<K> building;
+
+        /**
+         * 已同步记录的最大修改时间
+         */
+        Date lastModified;
+
+        IndexedTable(String name, BaseMapper<T> mapper, String idColumn, String[] columns, Function<T, K> idGetter,
+                     Function<T, String[]> fieldsGetter, Function<T, Date> modifiedGetter) {
+            this.name = name;
+            this.mapper = mapper;
+            this.idColumn = idColumn;
+            this.columns = columns;
+            this.idGetter = idGetter;
+            this.fieldsGetter = fieldsGetter;
+            this.modifiedGetter = modifiedGetter;
+            Gauge.builder("voj.search.index.size", this, table -> table.index == null ? 0 : table.index.size())
+                    .tag("table", name)
+                    .description("关键字索引中的记录数")
+                    .register(meterRegistry);
+        }
+
+        List<K> search(String keyword, int... fields) {
+            KeywordIndex<K> current = index;
+            return current == null ? null : current.search(keyword, MAX_CANDIDATES, fields);
+        }
+
+        void rebuild() {
+            long start = System.currentTimeMillis();
+            KeywordIndex<K> newIndex = new KeywordIndex<>();
+            building = newIndex;
+            Date maxModified = lastModified;
+            K lastId = null;
+            while (true) {
+                QueryWrapper<T> queryWrapper = new QueryWrapper<T>().select(columns)
+                        .gt(lastId != null, idColumn, lastId)
+                        .orderByAsc(idColumn)
+                        .last("limit " + LOAD_BATCH_SIZE);
+                List<T> rows = mapper.selectList(queryWrapper);
+                maxModified = put(newIndex, rows, maxModified);
+                if (rows.size() < LOAD_BATCH_SIZE) {
+                    break;
+                }
+                lastId = idGetter.apply(rows.get(rows.size() - 1));
+            }
+            index = newIndex;
+            building = null;
+            lastModified = maxModified;
+            log.info("{}表的关键字索引构建完成，共{}条记录，耗时{}ms", name, newIndex.size(),
+                    System.currentTimeMillis() - start);
+        }
+
+        void sync() {
+            QueryWrapper<T> queryWrapper = new QueryWrapper<T>().select(columns);
+            if (lastModified != null) {
+                queryWrapper.ge("gmt_modified", new Date(lastModified.getTime() - SYNC_OVERLAP_MILLIS));
+            }
+            lastModified = put(index, mapper.selectList(queryWrapper), lastModified);
+        }
+
+        void refresh(Collection<K> ids) {
+            if (ids == null || ids.isEmpty()) {
+                return;
+            }
+            List<T> rows = mapper.selectList(new QueryWrapper<T>().select(columns).in(idColumn, ids));
+            refresh(index, ids, rows);
+            refresh(building, ids, rows);
+        }
+
+        /**
+         * 数据库中已不存在的记录从索引中删除
+         */
+        private void refresh(KeywordIndex<K> target, Collection<K> ids, List<T> rows) {
+            if (target == null) {
+                return;
+            }
+            Set<K> removed = new HashSet<>(ids);
+            for (T row : rows) {
+                K id = idGetter.apply(row);
+                removed.remove(id);
+                target.put(id, fieldsGetter.apply(row));
+            }
+            removed.forEach(target::remove);
+        }
+
+        private Date put(KeywordIndex<K> target, List<T> rows, Date maxModified) {
+            for (T row : rows) {
+                target.put(idGetter.apply(row), fieldsGetter.apply(row));
+                Date modified = modifiedGetter.apply(row);
+                if (modified != null && (maxModified == null || modified.after(maxModified))) {
+                    maxModified = modified;
+                }
+            }
+            return maxModified;
+        }
+
+    }
+
+}
@@ -27,8 +27,10 @@ import com.simplefanc.voj.backend.pojo.vo.RegisterCodeVO;
 import com.simplefanc.voj.backend.pojo.vo.UserInfoVO;
 import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
 import com.simplefanc.voj.backend.service.account.PassportService;
+import com.simplefanc.voj.backend.service.admin.user.UserRecordService;
 import com.simplefanc.voj.backend.service.email.EmailService;
 import com.simplefanc.voj.backend.service.msg.NoticeService;
+import com.simplefanc.voj.backend.shiro.AuthContextCache;
 import com.simplefanc.voj.common.constants.RedisConstant;
 import com.simplefanc.voj.common.pojo.entity.user.*;
 import com.simplefanc.voj.common.utils.IpUtil;
@@ -38,6 +40,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
 import java.util.stream.Collectors;
 
 /**
@@ -67,6 +70,10 @@ public class PassportServiceImpl implements PassportService {
 
     private final NoticeService noticeService;
 
+    private final UserRecordService userRecordService;
+
+    private final AuthContextCache authContextCache;
+
     @Override
     public UserInfoVO login(LoginDTO loginDTO, HttpServletResponse response, HttpServletRequest request) {
         // 去掉账号密码首尾的空格
@@ -204,6 +211,8 @@ public class PassportServiceImpl implements PassportService {
         boolean addUserRole = userRoleEntityService.save(new UserRole().setRoleId(RoleEnum.DEFAULT_USER.getId()).setUid(uuid));
 
         if (addUser && addUserRole) {
+            // 排行榜只读取 user_stat，新用户需要先有一行统计数据
+            userRecordService.refreshUserStat(Collections.singletonList(uuid));
             redisUtil.del(registerDTO.getEmail());
             noticeService.syncNoticeToNewRegisterUser(uuid);
         } else {
@@ -268,6 +277,11 @@ public class PassportServiceImpl implements PassportService {
         if (!isOk) {
             throw new StatusFailException("重置密码失败");
         }
+        UserInfo userInfo = userInfoEntityService.lambdaQuery().select(UserInfo::getUuid)
+                .eq(UserInfo::getUsername, username).one();
+        if (userInfo != null) {
+            authContextCache.invalidate(userInfo.getUuid());
+        }
         redisUtil.del(codeKey);
     }
 
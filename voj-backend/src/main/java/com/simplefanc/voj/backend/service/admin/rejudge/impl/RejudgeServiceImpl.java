@@ -7,10 +7,12 @@ import com.simplefanc.voj.backend.dao.contest.ContestRecordEntityService;
 import com.simplefanc.voj.backend.dao.judge.JudgeCaseEntityService;
 import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.backend.dao.problem.ProblemEntityService;
+import com.simplefanc.voj.backend.dao.problem.ProblemStatEntityService;
 import com.simplefanc.voj.backend.dao.user.UserAcproblemEntityService;
 import com.simplefanc.voj.backend.judge.local.JudgeTaskDispatcher;
 import com.simplefanc.voj.backend.judge.remote.RemoteJudgeTaskDispatcher;
 import com.simplefanc.voj.backend.service.admin.rejudge.RejudgeService;
+import com.simplefanc.voj.backend.service.oj.scoreboard.ContestScoreboardEngine;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
 import com.simplefanc.voj.common.pojo.entity.judge.Judge;
@@ -20,6 +22,8 @@ import com.simplefanc.voj.common.pojo.entity.user.UserAcproblem;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -44,10 +48,14 @@ public class RejudgeServiceImpl implements RejudgeService {
 
     private final ProblemEntityService problemEntityService;
 
+    private final ProblemStatEntityService problemStatEntityService;
+
     private final JudgeTaskDispatcher judgeTaskDispatcher;
 
     private final RemoteJudgeTaskDispatcher remoteJudgeTaskDispatcher;
 
+    private final ContestScoreboardEngine contestScoreboardEngine;
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public Judge rejudge(Long submitId) {
@@ -65,11 +73,15 @@ public class RejudgeServiceImpl implements RejudgeService {
                 userAcproblemQueryWrapper.eq("submit_id", judge.getSubmitId());
                 userAcproblemEntityService.remove(userAcproblemQueryWrapper);
             }
+            // 从题目提交统计中减去原来的结果，判题完成后判题机会累加新的结果
+            problemStatEntityService.removeResult(judge.getPid(), judge.getStatus());
         } else {
             // 将对应比赛记录设置成默认值
             UpdateWrapper<ContestRecord> updateWrapper = new UpdateWrapper<>();
-            updateWrapper.eq("submit_id", submitId).setSql("status=null,score=null");
+            updateWrapper.eq("submit_id", submitId).setSql("status=null,score=null,gmt_modified=NOW()");
             resetContestRecordResult = contestRecordEntityService.update(updateWrapper);
+            // 重判后比赛榜单从数据库重建
+            invalidateScoreboardAfterCommit(judge.getCid());
         }
 
         // 清除该提交对应的测试点结果
@@ -129,8 +141,10 @@ public class RejudgeServiceImpl implements RejudgeService {
         judgeCaseEntityService.remove(judgeCaseQueryWrapper);
         // 将对应比赛记录设置成默认值
         UpdateWrapper<ContestRecord> updateWrapper = new UpdateWrapper<>();
-        updateWrapper.in("submit_id", submitIdList).setSql("status=null,score=null");
+        updateWrapper.in("submit_id", submitIdList).setSql("status=null,score=null,gmt_modified=NOW()");
         boolean resetContestRecordResult = contestRecordEntityService.update(updateWrapper);
+        // 重判后比赛榜单从数据库重建
+        invalidateScoreboardAfterCommit(cid);
 
         if (resetContestRecordResult && resetJudgeResult) {
             // 调用重判服务
@@ -152,4 +166,20 @@ public class RejudgeServiceImpl implements RejudgeService {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * 事务提交后再使榜单失效，避免提交前就按未提交的旧数据重建榜单
+     */
+    private void invalidateScoreboardAfterCommit(Long cid) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    contestScoreboardEngine.invalidate(cid);
+                }
+            });
+        } else {
+            contestScoreboardEngine.invalidate(cid);
+        }
+    }
+
+}
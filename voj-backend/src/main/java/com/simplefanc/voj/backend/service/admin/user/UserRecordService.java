@@ -26,4 +26,16 @@ public interface UserRecordService {
 
     IPage<ACMRankVO> getACMRankList(Page<ACMRankVO> page, List<String> uidList);
 
+    /**
+     * 重新统计指定用户在 user_stat 表中的做题数据
+     */
+    void refreshUserStat(List<String> uidList);
+
+    /**
+     * 分批重建全部用户的 user_stat 数据
+     */
+    void rebuildUserStat();
+
+    int countUserStat();
+
 }
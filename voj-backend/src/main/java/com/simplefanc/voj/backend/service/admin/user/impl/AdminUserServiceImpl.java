@@ -18,16 +18,21 @@ import com.simplefanc.voj.backend.dao.user.UserRoleEntityService;
 import com.simplefanc.voj.backend.pojo.dto.AdminEditUserDTO;
 import com.simplefanc.voj.backend.pojo.vo.ExcelUserVO;
 import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
+import com.simplefanc.voj.backend.search.KeywordSearchService;
 import com.simplefanc.voj.backend.service.admin.user.AdminUserService;
+import com.simplefanc.voj.backend.service.admin.user.UserRecordService;
 import com.simplefanc.voj.backend.service.msg.AdminNoticeService;
+import com.simplefanc.voj.backend.shiro.AuthContextCache;
 import com.simplefanc.voj.backend.shiro.UserSessionUtil;
 import com.simplefanc.voj.common.constants.RedisConstant;
 import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
 import com.simplefanc.voj.common.pojo.entity.user.UserRole;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -48,8 +53,16 @@ public class AdminUserServiceImpl implements AdminUserService {
 
     private final AdminNoticeService adminNoticeService;
 
+    private final UserRecordService userRecordService;
+
     private final RedisUtil redisUtil;
 
+    private final CacheManager cacheManager;
+
+    private final AuthContextCache authContextCache;
+
+    private final KeywordSearchService keywordSearchService;
+
     @Override
     public IPage<UserRolesVO> getUserList(Integer limit, Integer currentPage, String keyword, Long roleId, Integer status) {
         if (currentPage == null || currentPage < 1) {
@@ -91,11 +104,12 @@ public class AdminUserServiceImpl implements AdminUserService {
             addUserRole = userRoleEntityService.updateById(userRole);
             if (type == RoleEnum.ROOT.getId() || oldType == RoleEnum.ROOT.getId()) {
                 // 新增或者去除超级管理员需要删除缓存
-                String cacheKey = RedisConstant.SUPER_ADMIN_UID_LIST_CACHE;
-                redisUtil.del(cacheKey);
+                cacheManager.getCache(RedisConstant.SUPER_ADMIN_UID_LIST_CACHE).clear();
             }
         }
         if (addUserInfo) {
+            // 用户名、真实姓名可能修改
+            keywordSearchService.refreshUsers(Collections.singletonList(uid));
             // 需要重新登录
             userRoleEntityService.deleteCache(uid, true);
         } else if (addUserRole) {
@@ -119,6 +133,7 @@ public class AdminUserServiceImpl implements AdminUserService {
         if (!isOk) {
             throw new StatusFailException("删除失败！");
         }
+        authContextCache.invalidate(deleteUserIdList);
     }
 
     @Override
@@ -130,6 +145,7 @@ public class AdminUserServiceImpl implements AdminUserService {
         if (!isOk) {
             throw new StatusFailException("封禁失败！");
         }
+        authContextCache.invalidate(userIdList);
     }
 
     @Override
@@ -184,6 +200,8 @@ public class AdminUserServiceImpl implements AdminUserService {
             if (result1 && result2) {
                 // 异步同步系统通知
                 List<String> uidList = userInfoList.stream().map(UserInfo::getUuid).collect(Collectors.toList());
+            // 排行榜只读取 user_stat，新用户需要先有一行统计数据
+            userRecordService.refreshUserStat(uidList);
                 adminNoticeService.syncNoticeToNewRegisterBatchUser(uidList);
             } else {
                 throw new StatusFailException("删除失败");
@@ -226,6 +244,8 @@ public class AdminUserServiceImpl implements AdminUserService {
             redisUtil.hset(Constant.GENERATE_USER_INFO_LIST, key, userVOList, 1800);
             // 异步同步系统通知
             List<String> uidList = userInfoList.stream().map(UserInfo::getUuid).collect(Collectors.toList());
+            // 排行榜只读取 user_stat，新用户需要先有一行统计数据
+            userRecordService.refreshUserStat(uidList);
             adminNoticeService.syncNoticeToNewRegisterBatchUser(uidList);
             return MapUtil.builder().put("key", key).map();
         } else {
@@ -2,15 +2,19 @@ package com.simplefanc.voj.backend.service.admin.user.impl;
 
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.simplefanc.voj.backend.dao.user.UserInfoEntityService;
 import com.simplefanc.voj.backend.service.admin.user.UserRecordService;
 import com.simplefanc.voj.backend.mapper.UserRecordMapper;
 import com.simplefanc.voj.backend.pojo.vo.ACMRankVO;
 import com.simplefanc.voj.backend.pojo.vo.OIRankVO;
 import com.simplefanc.voj.backend.pojo.vo.UserHomeVO;
+import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -21,11 +25,19 @@ import java.util.List;
  * @since 2021-10-23
  */
 @Service
+@Slf4j(topic = "voj")
 @RequiredArgsConstructor
 public class UserRecordServiceImpl implements UserRecordService {
 
+    /**
+     * 重建 user_stat 时每批统计的用户数
+     */
+    private static final int REBUILD_BATCH_SIZE = 200;
+
     private final UserRecordMapper userRecordMapper;
 
+    private final UserInfoEntityService userInfoEntityService;
+
     @Override
     public List<ACMRankVO> getRecent7ACRank() {
         return userRecordMapper.getRecent7ACRank();
@@ -46,4 +58,43 @@ public class UserRecordServiceImpl implements UserRecordService {
         return userRecordMapper.getACMRankList(page, uidList);
     }
 
+    @Override
+    public void refreshUserStat(List<String> uidList) {
+        if (uidList == null || uidList.isEmpty()) {
+            return;
+        }
+        userRecordMapper.refreshUserStat(uidList);
+    }
+
+    @Override
+    public void rebuildUserStat() {
+        long startTime = System.currentTimeMillis();
+        int count = 0;
+        String lastUid = null;
+        while (true) {
+            // 按uuid顺序分批，每批只扫描这些用户自己的提交记录
+            List<String> uidList = userInfoEntityService.lambdaQuery()
+                    .select(UserInfo::getUuid)
+                    .gt(lastUid != null, UserInfo::getUuid, lastUid)
+                    .orderByAsc(UserInfo::getUuid)
+                    .last("LIMIT " + REBUILD_BATCH_SIZE)
+                    .list()
+                    .stream()
+                    .map(UserInfo::getUuid)
+                    .collect(Collectors.toList());
+            if (uidList.isEmpty()) {
+                break;
+            }
+            userRecordMapper.refreshUserStat(uidList);
+            count += uidList.size();
+            lastUid = uidList.get(uidList.size() - 1);
+        }
+        log.info("Rebuild user_stat finished, users: {}, cost: {}ms", count, System.currentTimeMillis() - startTime);
+    }
+
+    @Override
+    public int countUserStat() {
+        return userRecordMapper.countUserStat();
+    }
+
 }
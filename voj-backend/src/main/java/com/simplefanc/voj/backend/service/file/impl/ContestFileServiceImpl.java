@@ -1,9 +1,8 @@
 package com.simplefanc.voj.backend.service.file.impl;
 
+import cn.hutool.core.collection.ListUtil;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.io.file.FileWriter;
-import cn.hutool.core.util.IdUtil;
-import cn.hutool.core.util.ZipUtil;
 import com.alibaba.excel.EasyExcel;
 import com.alibaba.excel.ExcelWriter;
 import com.alibaba.excel.write.metadata.WriteSheet;
@@ -41,9 +40,6 @@ import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -56,6 +52,16 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ContestFileServiceImpl implements ContestFileService {
 
+    /**
+     * 导出提交代码时每批读取的提交数
+     */
+    private static final int SUBMISSION_EXPORT_BATCH_SIZE = 200;
+
+    /**
+     * 导出榜单时每批转换并写入的行数
+     */
+    private static final int EXCEL_WRITE_BATCH_SIZE = 500;
+
     private static final ThreadLocal<SimpleDateFormat> THREAD_LOCAL_TIME = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyyMMddHHmmss"));
 
     private final ContestEntityService contestEntityService;
@@ -78,11 +84,6 @@ public class ContestFileServiceImpl implements ContestFileService {
 
     private final FilePathProperties filePathProps;
 
-    private static <T> Predicate<T> distinctByKey(Function<? super T, ?> keyExtractor) {
-        Map<Object, Boolean> seen = new ConcurrentHashMap<>();
-        return t -> seen.putIfAbsent(keyExtractor.apply(t), Boolean.TRUE) == null;
-    }
-
     private static String languageToFileSuffix(String language) {
 
         List<String> CLang = Arrays.asList("c", "gcc", "clang");
@@ -160,30 +161,42 @@ public class ContestFileServiceImpl implements ContestFileService {
                 .map(ContestProblem::getDisplayId)
                 .collect(Collectors.toList());
 
-        List<List<String>> head;
-        List data;
+        boolean isACM = contest.getType().intValue() == ContestEnum.TYPE_ACM.getCode();
+        List<List<String>> head = getContestRankExcelHead(contestProblemDisplayIdList, isACM);
+        List<ACMContestRankVO> acmContestRankVOList = null;
+        List<OIContestRankVO> oiContestRankVOList = null;
         // ACM比赛
-        if (contest.getType().intValue() == ContestEnum.TYPE_ACM.getCode()) {
-            List<ACMContestRankVO> acmContestRankVOList = contestACMRankService.calculateACMRank(isOpenSealRank, removeStar, contest,
-                    null, null, false, null);
-            head = getContestRankExcelHead(contestProblemDisplayIdList, true);
-            data = changeACMContestRankToExcelRowList(acmContestRankVOList,
-                            contestProblemDisplayIdList, contest.getRankShowName());
+        if (isACM) {
+            acmContestRankVOList = contestACMRankService.calculateACMRank(isOpenSealRank, removeStar, contest,
+                    null, null, false);
         } else {
-            List<OIContestRankVO> oiContestRankVOList = contestOIRankService.calculateOIRank(isOpenSealRank,
-                    removeStar, contest, null, null, false, null);
-            head = getContestRankExcelHead(contestProblemDisplayIdList, false);
-            data = changeOIContestRankToExcelRowList(oiContestRankVOList, contestProblemDisplayIdList, contest.getRankShowName());
+            oiContestRankVOList = contestOIRankService.calculateOIRank(isOpenSealRank,
+                    removeStar, contest, null, null, false);
         }
+        List<ExcelIpVO> excelIpVOList = getExcelIpVO(contest);
 
         final String fileName = "contest_" + contest.getId() + "_rank";
         ExcelUtil.wrapExcelResponse(response, fileName);
         final ExcelWriter excelWriter = EasyExcel.write(response.getOutputStream()).build();
-        WriteSheet rankSheet = EasyExcel.writerSheet(0, "rank").head(head).build();
-        WriteSheet ipSheet = EasyExcel.writerSheet(1, "ip").head(ExcelIpVO.class).build();
-        excelWriter.write(data, rankSheet)
-                .write(getExcelIpVO(contest), ipSheet);
-        excelWriter.finish();
+        try {
+            WriteSheet rankSheet = EasyExcel.writerSheet(0, "rank").head(head).build();
+            // 榜单按批转换为表格行并写入，不再一次性生成全部行
+            if (isACM) {
+                for (List<ACMContestRankVO> part : ListUtil.partition(acmContestRankVOList, EXCEL_WRITE_BATCH_SIZE)) {
+                    excelWriter.write(changeACMContestRankToExcelRowList(part, contestProblemDisplayIdList,
+                            contest.getRankShowName()), rankSheet);
+                }
+            } else {
+                for (List<OIContestRankVO> part : ListUtil.partition(oiContestRankVOList, EXCEL_WRITE_BATCH_SIZE)) {
+                    excelWriter.write(changeOIContestRankToExcelRowList(part, contestProblemDisplayIdList,
+                            contest.getRankShowName()), rankSheet);
+                }
+            }
+            WriteSheet ipSheet = EasyExcel.writerSheet(1, "ip").head(ExcelIpVO.class).build();
+            excelWriter.write(excelIpVOList, ipSheet);
+        } finally {
+            excelWriter.finish();
+        }
     }
 
     private List<ExcelIpVO> getExcelIpVO(Contest contest) {
@@ -222,125 +235,67 @@ public class ContestFileServiceImpl implements ContestFileService {
         List<ContestProblem> contestProblemList = contestProblemEntityService.list(contestProblemQueryWrapper);
 
         List<String> superAdminUidList = userInfoEntityService.getSuperAdminUidList();
-        QueryWrapper<Judge> judgeQueryWrapper = new QueryWrapper<>();
-        judgeQueryWrapper.eq("cid", cid)
-                .eq(!allStatus, "status", JudgeStatus.STATUS_ACCEPTED.getStatus())
-                // OI模式取得分不为null的
-                .isNotNull(!isACM, "score")
-                .between("submit_time", contest.getStartTime(), contest.getEndTime())
-                // 排除比赛创建者和root
-                .ne(excludeAdmin, "uid", contest.getUid())
-                .notIn(excludeAdmin && superAdminUidList.size() > 0, "uid", superAdminUidList)
-                .orderByDesc("submit_time");
-
-        List<Judge> judgeList = judgeEntityService.list(judgeQueryWrapper);
-
-        // 打包文件的临时路径 -> username为文件夹名字
-        String tmpFilesDir = filePathProps.getContestAcSubmissionTmpFolder() + File.separator + IdUtil.fastSimpleUUID();
-        FileUtil.mkdir(tmpFilesDir);
-
-        if ("user".equals(splitType)) {
-            splitCodeByUser(isACM, contestProblemList, judgeList, tmpFilesDir);
-        } else if ("problem".equals(splitType)) {
-            splitByProblem(isACM, contestProblemList, judgeList, tmpFilesDir);
+        // 比赛题目id -> 展示id
+        HashMap<Long, String> cpIdMap = new HashMap<>();
+        for (ContestProblem contestProblem : contestProblemList) {
+            cpIdMap.put(contestProblem.getId(), contestProblem.getDisplayId());
         }
 
         String zipFileName = "contest_" + contest.getId() + "_" + System.currentTimeMillis() + ".zip";
-        String zipPath = filePathProps.getContestAcSubmissionTmpFolder() + File.separator + zipFileName;
-        ZipUtil.zip(tmpFilesDir, zipPath);
-        MyFileUtil.download(response, zipPath, zipFileName, "下载比赛AC代码失败，请重新尝试！");
-        FileUtil.del(tmpFilesDir);
-        FileUtil.del(zipPath);
-    }
-
-    /**
-     * 以比赛题目编号来分割提交的代码
-     */
-    private void splitByProblem(boolean isACM, List<ContestProblem> contestProblemList, List<Judge> judgeList, String tmpFilesDir) {
-        for (ContestProblem contestProblem : contestProblemList) {
-            // 对于每题目生成对应的文件夹
-            String problemDir = tmpFilesDir + File.separator + contestProblem.getDisplayId();
-            FileUtil.mkdir(problemDir);
-            // 如果是ACM模式，则所有提交代码都要生成，如果同一题多次提交AC，加上提交时间秒后缀 ---> username_(666666).c
-            // 如果是OI模式就生成最近一次提交即可，且带上分数 ---> username_(666666)_100.c
-            List<Judge> problemSubmissionList = judgeList.stream()
-                    // 过滤出对应题目的提交
-                    .filter(judge -> judge.getPid().equals(contestProblem.getPid()))
-                    // 根据提交时间进行降序
-                    .sorted(Comparator.comparing(Judge::getSubmitTime).reversed()).collect(Collectors.toList());
-
-            for (Judge judge : problemSubmissionList) {
-                String filePath = problemDir + File.separator + judge.getUsername();
-                if (!isACM) {
-                    String key = judge.getUsername() + "_" + contestProblem.getDisplayId();
-                    // OI模式只取最后一次提交
-//                    if (!recordMap.containsKey(key)) {
-                        filePath += "_" + judge.getScore() + "_("
-                                + THREAD_LOCAL_TIME.get().format(judge.getSubmitTime()) + ")."
-                                + languageToFileSuffix(judge.getLanguage().toLowerCase());
-                        FileWriter fileWriter = new FileWriter(filePath);
-                        fileWriter.write(judge.getCode());
-//                        recordMap.put(key, true);
-//                    }
-                } else {
-                    filePath += "_(" + THREAD_LOCAL_TIME.get().format(judge.getSubmitTime()) + ")."
-                            + languageToFileSuffix(judge.getLanguage().toLowerCase());
-                    FileWriter fileWriter = new FileWriter(filePath);
-                    fileWriter.write(judge.getCode());
+        MyFileUtil.downloadZip(response, zipFileName, "下载比赛AC代码失败，请重新尝试！", zipOut -> {
+            if ("problem".equals(splitType)) {
+                // 对于每题目生成对应的文件夹
+                for (ContestProblem contestProblem : contestProblemList) {
+                    MyFileUtil.putZipDirectory(zipOut, contestProblem.getDisplayId());
                 }
+            } else if (!"user".equals(splitType)) {
+                return;
             }
-        }
+            // 按 submit_id 倒序分批读取提交，每批写入压缩流后释放，不再一次性读取全部代码
+            Long lastSubmitId = null;
+            while (true) {
+                QueryWrapper<Judge> judgeQueryWrapper = new QueryWrapper<>();
+                judgeQueryWrapper.select("submit_id", "username", "pid", "cpid", "language", "code", "score", "submit_time")
+                        .eq("cid", cid)
+                        .eq(!allStatus, "status", JudgeStatus.STATUS_ACCEPTED.getStatus())
+                        // OI模式取得分不为null的
+                        .isNotNull(!isACM, "score")
+                        .between("submit_time", contest.getStartTime(), contest.getEndTime())
+                        // 排除比赛创建者和root
+                        .ne(excludeAdmin, "uid", contest.getUid())
+                        .notIn(excludeAdmin && superAdminUidList.size() > 0, "uid", superAdminUidList)
+                        .lt(lastSubmitId != null, "submit_id", lastSubmitId)
+                        .orderByDesc("submit_id")
+                        .last("limit " + SUBMISSION_EXPORT_BATCH_SIZE);
+                List<Judge> judgeList = judgeEntityService.list(judgeQueryWrapper);
+                for (Judge judge : judgeList) {
+                    MyFileUtil.putZipEntry(zipOut, getSubmissionEntryName(judge, isACM, splitType, cpIdMap), judge.getCode());
+                }
+                if (judgeList.size() < SUBMISSION_EXPORT_BATCH_SIZE) {
+                    break;
+                }
+                lastSubmitId = judgeList.get(judgeList.size() - 1).getSubmitId();
+            }
+        });
     }
 
     /**
-     * 以用户来分割提交的代码
+     * 以比赛题目编号或用户来分割提交的代码
+     * 如果是ACM模式，则所有提交代码都要生成，如果同一题多次提交AC，加上提交时间秒后缀 ---> username_(666666).c
+     * 如果是OI模式，还要带上分数 ---> username_100_(666666).c
      */
-    private void splitCodeByUser(boolean isACM, List<ContestProblem> contestProblemList, List<Judge> judgeList, String tmpFilesDir) {
-        List<String> usernameList = judgeList.stream()
-                // 根据用户名过滤唯一
-                .filter(distinctByKey(Judge::getUsername))
-                // 映射出用户名列表
-                .map(Judge::getUsername)
-                .collect(Collectors.toList());
-
-        HashMap<Long, String> cpIdMap = new HashMap<>();
-        for (ContestProblem contestProblem : contestProblemList) {
-            cpIdMap.put(contestProblem.getId(), contestProblem.getDisplayId());
+    private String getSubmissionEntryName(Judge judge, boolean isACM, String splitType, Map<Long, String> cpIdMap) {
+        String entryName;
+        if ("problem".equals(splitType)) {
+            entryName = cpIdMap.getOrDefault(judge.getCpid(), "null") + "/" + judge.getUsername();
+        } else {
+            entryName = judge.getUsername() + "/" + cpIdMap.getOrDefault(judge.getCpid(), "null");
         }
-
-        for (String username : usernameList) {
-            // 对于每个用户生成对应的文件夹
-            String userDir = tmpFilesDir + File.separator + username;
-            FileUtil.mkdir(userDir);
-            // 如果是ACM模式，则所有提交代码都要生成，如果同一题多次提交AC，加上提交时间秒后缀 ---> A_(666666).c
-            // 如果是OI模式就生成最近一次提交即可，且带上分数 ---> A_(666666)_100.c
-            List<Judge> userSubmissionList = judgeList.stream()
-                    // 过滤出对应用户的提交
-                    .filter(judge -> judge.getUsername().equals(username))
-                    // 根据提交时间进行降序
-                    .sorted(Comparator.comparing(Judge::getSubmitTime).reversed()).collect(Collectors.toList());
-
-            for (Judge judge : userSubmissionList) {
-                String filePath = userDir + File.separator + cpIdMap.getOrDefault(judge.getCpid(), "null");
-                // OI模式只取最后一次提交
-                if (!isACM) {
-                    String key = judge.getUsername() + "_" + judge.getPid();
-//                    if (!recordMap.containsKey(key)) {
-                        filePath += "_" + judge.getScore() + "_("
-                                + THREAD_LOCAL_TIME.get().format(judge.getSubmitTime()) + ")."
-                                + languageToFileSuffix(judge.getLanguage().toLowerCase());
-                        FileWriter fileWriter = new FileWriter(filePath);
-                        fileWriter.write(judge.getCode());
-//                        recordMap.put(key, true);
-//                    }
-                } else {
-                    filePath += "_(" + THREAD_LOCAL_TIME.get().format(judge.getSubmitTime()) + ")."
-                            + languageToFileSuffix(judge.getLanguage().toLowerCase());
-                    FileWriter fileWriter = new FileWriter(filePath);
-                    fileWriter.write(judge.getCode());
-                }
-            }
+        if (!isACM) {
+            entryName += "_" + judge.getScore();
         }
+        return entryName + "_(" + THREAD_LOCAL_TIME.get().format(judge.getSubmitTime()) + ")."
+                + languageToFileSuffix(judge.getLanguage().toLowerCase());
     }
 
     @Override
@@ -12,6 +12,7 @@ import com.simplefanc.voj.backend.dao.user.UserInfoEntityService;
 import com.simplefanc.voj.backend.config.property.FilePathProperties;
 import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
 import com.simplefanc.voj.backend.service.file.ImageService;
+import com.simplefanc.voj.backend.shiro.AuthContextCache;
 import com.simplefanc.voj.backend.shiro.UserSessionUtil;
 import com.simplefanc.voj.common.pojo.entity.user.Role;
 import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
@@ -42,6 +43,8 @@ public class ImageServiceImpl implements ImageService {
 
     private final FilePathProperties filePathProps;
 
+    private final AuthContextCache authContextCache;
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public Map<Object, Object> uploadAvatar(MultipartFile image) {
@@ -78,6 +81,7 @@ public class ImageServiceImpl implements ImageService {
         UpdateWrapper<UserInfo> userInfoUpdateWrapper = new UpdateWrapper<>();
         userInfoUpdateWrapper.set("avatar", filePathProps.getImgApi() + filename).eq("uuid", userRolesVO.getUid());
         userInfoEntityService.update(userInfoUpdateWrapper);
+        authContextCache.invalidate(userRolesVO.getUid());
 
         // 插入file表记录
         com.simplefanc.voj.common.pojo.entity.common.File imgFile = new com.simplefanc.voj.common.pojo.entity.common.File();
@@ -127,64 +127,57 @@ public class TestCaseServiceImpl implements TestCaseService {
     public void downloadTestcase(Long pid, HttpServletResponse response) {
         String workDir = filePathProps.getTestcaseBaseFolder() + File.separator + "problem_" + pid;
         File file = new File(workDir);
+        String fileName = "problem_" + pid + "_testcase_" + System.currentTimeMillis() + ".zip";
+        String errMsg = "下载题目测试数据的压缩文件失败，请重新尝试！";
+        // 本地存在则直接将文件夹中的文件写入压缩流
+        if (file.exists()) {
+            List<File> caseFileList = FileUtil.loopFiles(file);
+            MyFileUtil.downloadZip(response, fileName, errMsg, zipOut -> {
+                for (File caseFile : caseFileList) {
+                    MyFileUtil.putZipEntry(zipOut, FileUtil.subPath(workDir, caseFile).replace('\\', '/'), caseFile);
+                }
+            });
+            return;
+        }
+
         // 本地为空 尝试去数据库查找
-        if (!file.exists()) {
-            QueryWrapper<ProblemCase> problemCaseQueryWrapper = new QueryWrapper<>();
-            problemCaseQueryWrapper.eq("pid", pid);
-            List<ProblemCase> problemCaseList = problemCaseEntityService.list(problemCaseQueryWrapper);
+        QueryWrapper<ProblemCase> problemCaseQueryWrapper = new QueryWrapper<>();
+        problemCaseQueryWrapper.eq("pid", pid);
+        List<ProblemCase> problemCaseList = problemCaseEntityService.list(problemCaseQueryWrapper);
 
-            if (CollectionUtils.isEmpty(problemCaseList)) {
-                throw new StatusFailException("对不起，该题目的评测数据为空！");
-            }
+        if (CollectionUtils.isEmpty(problemCaseList)) {
+            throw new StatusFailException("对不起，该题目的评测数据为空！");
+        }
 
-            boolean hasTestCase = true;
-            if (problemCaseList.get(0).getInput().endsWith(".in")
-                    && (problemCaseList.get(0).getOutput().endsWith(".out")
-                    || problemCaseList.get(0).getOutput().endsWith(".ans"))) {
-                hasTestCase = false;
-            }
-            if (!hasTestCase) {
-                throw new StatusFailException("对不起，该题目的评测数据为空！");
-            }
+        boolean hasTestCase = true;
+        if (problemCaseList.get(0).getInput().endsWith(".in")
+                && (problemCaseList.get(0).getOutput().endsWith(".out")
+                || problemCaseList.get(0).getOutput().endsWith(".ans"))) {
+            hasTestCase = false;
+        }
+        if (!hasTestCase) {
+            throw new StatusFailException("对不起，该题目的评测数据为空！");
+        }
 
-            // 为手动输入的测试用例
-            FileUtil.mkdir(workDir);
-            // 写入本地
+        // 为手动输入的测试用例，直接写入压缩流
+        MyFileUtil.downloadZip(response, fileName, errMsg, zipOut -> {
             for (int i = 0; i < problemCaseList.size(); i++) {
-                String filePreName = workDir + File.separator + (i + 1);
-                String inputName = filePreName + ".in";
-                String outputName = filePreName + ".out";
-                FileWriter infileWriter = new FileWriter(inputName);
-                infileWriter.write(problemCaseList.get(i).getInput());
-                FileWriter outfileWriter = new FileWriter(outputName);
-                outfileWriter.write(problemCaseList.get(i).getOutput());
+                MyFileUtil.putZipEntry(zipOut, (i + 1) + ".in", problemCaseList.get(i).getInput());
+                MyFileUtil.putZipEntry(zipOut, (i + 1) + ".out", problemCaseList.get(i).getOutput());
             }
-        }
-
-        String fileName = "problem_" + pid + "_testcase_" + System.currentTimeMillis() + ".zip";
-        // 将对应文件夹的文件压缩成zip
-        final String zipPath = filePathProps.getFileDownloadTmpFolder() + File.separator + fileName;
-        ZipUtil.zip(workDir, zipPath);
-        MyFileUtil.download(response, zipPath, fileName, "下载题目测试数据的压缩文件失败，请重新尝试！");
-        // 清空临时文件
-        FileUtil.del(zipPath);
+        });
     }
 
     @Override
     public void downloadSingleTestCase(Long pid, String inputData, String outputData, HttpServletResponse response) {
         String workDir = filePathProps.getTestcaseBaseFolder() + File.separator + "problem_" + pid;
         String fileName = "problem_" + pid + "_testcase_" + System.currentTimeMillis() + ".zip";
-        // 将对应文件夹的文件压缩成zip
-        final String zipPath = filePathProps.getFileDownloadTmpFolder() + File.separator + fileName;
-
-        ZipUtil.zip(FileUtil.file(zipPath), false,
-                FileUtil.file(workDir + File.separator + inputData),
-                FileUtil.file(workDir + File.separator + outputData)
-        );
-
-        MyFileUtil.download(response, zipPath, fileName, "下载题目测试数据的压缩文件失败，请重新尝试！");
-        // 清空临时文件
-        FileUtil.del(zipPath);
+        File inputFile = FileUtil.file(workDir + File.separator + inputData);
+        File outputFile = FileUtil.file(workDir + File.separator + outputData);
+        MyFileUtil.downloadZip(response, fileName, "下载题目测试数据的压缩文件失败，请重新尝试！", zipOut -> {
+            MyFileUtil.putZipEntry(zipOut, inputFile.getName(), inputFile);
+            MyFileUtil.putZipEntry(zipOut, outputFile.getName(), outputFile);
+        });
     }
 
-}
\ No newline at end of file
+}
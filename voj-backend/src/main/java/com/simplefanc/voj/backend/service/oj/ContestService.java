@@ -32,8 +32,8 @@ public interface ContestService {
     ProblemInfoVO getContestProblemDetails(Long cid, String displayId);
 
     // TODO 参数过多
-    IPage<JudgeVO> getContestSubmissionList(Integer limit, Integer currentPage, Boolean onlyMine, String displayId,
-                                            Integer searchStatus, String searchUsername, Long searchCid, Boolean beforeContestSubmit,
+    IPage<JudgeVO> getContestSubmissionList(Integer limit, Integer currentPage, Long lastSubmitId, Boolean onlyMine,
+                                            String displayId, Integer searchStatus, String searchUsername, Long searchCid, Boolean beforeContestSubmit,
                                             Boolean completeProblemId);
 
     IPage getContestRank(ContestRankDTO contestRankDTO);
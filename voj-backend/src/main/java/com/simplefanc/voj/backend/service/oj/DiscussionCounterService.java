@@ -0,0 +1,53 @@
+package com.simplefanc.voj.backend.service.oj;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/11/6 14:02
+ * @Description: 讨论浏览量、讨论点赞数、评论点赞数的延迟写入。增量先累加在 Redis 中，定时批量写入数据库，
+ * 读取时需加上还未写入数据库的增量
+ */
+public interface DiscussionCounterService {
+
+    @Getter
+    @AllArgsConstructor
+    enum CountType {
+
+        DISCUSSION_VIEW_NUM("discussion", "view_num"),
+
+        DISCUSSION_LIKE_NUM("discussion", "like_num"),
+
+        COMMENT_LIKE_NUM("comment", "like_num");
+
+        private final String table;
+
+        private final String column;
+
+    }
+
+    /**
+     * @return 累加后还未写入数据库的增量
+     */
+    long incr(CountType countType, Integer id, long delta);
+
+    /**
+     * 在当前事务提交后累加，事务回滚时不累加；不在事务中时立即累加
+     */
+    void incrAfterCommit(CountType countType, Integer id, long delta);
+
+    /**
+     * @return id -> 还未写入数据库的增量（包括正在写入的），没有增量的id不放入结果
+     */
+    Map<Integer, Long> getPending(CountType countType, Collection<Integer> ids);
+
+    /**
+     * 将 Redis 中的增量批量写入数据库
+     */
+    void flush();
+
+}
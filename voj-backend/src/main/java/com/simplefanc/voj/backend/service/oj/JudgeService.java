@@ -7,6 +7,7 @@ import com.simplefanc.voj.backend.pojo.vo.JudgeVO;
 import com.simplefanc.voj.backend.pojo.vo.SubmissionInfoVO;
 import com.simplefanc.voj.common.pojo.entity.judge.Judge;
 import com.simplefanc.voj.common.pojo.entity.judge.JudgeCase;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.List;
@@ -49,11 +50,11 @@ public interface JudgeService {
 
     /**
      * @MethodName getJudgeList
-     * @Description 通用查询判题记录列表
+     * @Description 通用查询判题记录列表，lastSubmitId 不为空时按提交id游标分页
      * @Since 2021/10/29
      */
-    IPage<JudgeVO> getJudgeList(Integer limit, Integer currentPage, Boolean onlyMine, String searchPid,
-                                Integer searchStatus, String searchUsername, Boolean completeProblemId);
+    IPage<JudgeVO> getJudgeList(Integer limit, Integer currentPage, Long lastSubmitId, Boolean onlyMine,
+                                String searchPid, Integer searchStatus, String searchUsername, Boolean completeProblemId);
 
     /**
      * @MethodName checkJudgeResult
@@ -69,6 +70,20 @@ public interface JudgeService {
      */
     HashMap<Long, Object> checkContestJudgeResult(SubmitIdListDTO submitIdListDTO);
 
+    /**
+     * @MethodName subscribeCommonJudgeStatus
+     * @Description 订阅当前用户非比赛提交的判题状态变化
+     * @Since 2023/11/5
+     */
+    SseEmitter subscribeCommonJudgeStatus();
+
+    /**
+     * @MethodName subscribeContestJudgeStatus
+     * @Description 订阅比赛提交的判题状态变化，与 checkContestJudgeResult 一样处理封榜与其它用户的提交
+     * @Since 2023/11/5
+     */
+    SseEmitter subscribeContestJudgeStatus(Long cid);
+
     /**
      * @MethodName getJudgeCase
      * @Description 获得指定提交id的测试样例结果，暂不支持查看测试数据，只可看测试点结果，时间，空间，或者IO得分
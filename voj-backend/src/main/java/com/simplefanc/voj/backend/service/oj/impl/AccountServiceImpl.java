@@ -17,6 +17,7 @@ import com.simplefanc.voj.backend.pojo.dto.CheckUsernameOrEmailDTO;
 import com.simplefanc.voj.backend.pojo.vo.*;
 import com.simplefanc.voj.backend.service.admin.user.UserRecordService;
 import com.simplefanc.voj.backend.service.oj.AccountService;
+import com.simplefanc.voj.backend.shiro.AuthContextCache;
 import com.simplefanc.voj.backend.shiro.UserSessionUtil;
 import com.simplefanc.voj.common.constants.RedisConstant;
 import com.simplefanc.voj.common.pojo.entity.problem.Problem;
@@ -56,6 +57,8 @@ public class AccountServiceImpl implements AccountService {
 
     private final SessionEntityService sessionEntityService;
 
+    private final AuthContextCache authContextCache;
+
     /**
      * @MethodName checkUsernameOrEmail
      * @Params * @param null
@@ -209,6 +212,7 @@ public class AccountServiceImpl implements AccountService {
             updateWrapper.set("password", SecureUtil.md5(newPassword)).eq("uuid", userRolesVO.getUid());
             boolean isOk = userInfoEntityService.update(updateWrapper);
             if (isOk) {
+                authContextCache.invalidate(userRolesVO.getUid());
                 resp.setCode(200);
                 resp.setMsg("修改密码成功！您将于5秒钟后退出进行重新登录操作！");
                 // 清空记录
@@ -291,6 +295,7 @@ public class AccountServiceImpl implements AccountService {
 
             boolean isOk = userInfoEntityService.update(updateWrapper);
             if (isOk) {
+                authContextCache.invalidate(userRolesVO.getUid());
                 UserInfoVO userInfoVO = new UserInfoVO();
                 BeanUtil.copyProperties(userRolesVO, userInfoVO, "roles");
                 userInfoVO.setRoleList(userRolesVO.getRoles().stream().map(Role::getRole).collect(Collectors.toList()));
@@ -354,6 +359,7 @@ public class AccountServiceImpl implements AccountService {
         boolean isOk = userInfoEntityService.updateById(userInfo);
 
         if (isOk) {
+            authContextCache.invalidate(userRolesVO.getUid());
             // 更新session
             UserRolesVO userRoles = userRoleEntityService.getUserRoles(userRolesVO.getUid(), null);
             UserSessionUtil.setUserInfo(userRoles);
@@ -17,6 +17,7 @@ import com.simplefanc.voj.backend.pojo.vo.CommentListVO;
 import com.simplefanc.voj.backend.pojo.vo.CommentVO;
 import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
 import com.simplefanc.voj.backend.service.oj.CommentService;
+import com.simplefanc.voj.backend.service.oj.DiscussionCounterService;
 import com.simplefanc.voj.backend.shiro.UserSessionUtil;
 import com.simplefanc.voj.common.pojo.entity.discussion.Comment;
 import com.simplefanc.voj.common.pojo.entity.discussion.CommentLike;
@@ -30,6 +31,8 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * @Author: chenfan
@@ -50,6 +53,8 @@ public class CommentServiceImpl implements CommentService {
 
     private final UserAcproblemEntityService userAcproblemEntityService;
 
+    private final DiscussionCounterService discussionCounterService;
+
     @Override
     public CommentListVO getComments(Long cid, Integer did, Integer limit, Integer currentPage) {
 
@@ -61,6 +66,15 @@ public class CommentServiceImpl implements CommentService {
         IPage<CommentVO> commentList = commentEntityService.getCommentList(limit, currentPage, cid, did, isRoot,
                 userRolesVO != null ? userRolesVO.getUid() : null);
 
+        // 加上还未写入数据库的点赞数
+        Map<Integer, Long> pendingLikeNum = discussionCounterService.getPending(
+                DiscussionCounterService.CountType.COMMENT_LIKE_NUM,
+                commentList.getRecords().stream().map(CommentVO::getId).collect(Collectors.toList()));
+        for (CommentVO commentVO : commentList.getRecords()) {
+            commentVO.setLikeNum(commentVO.getLikeNum()
+                    + pendingLikeNum.getOrDefault(commentVO.getId(), 0L).intValue());
+        }
+
         HashMap<Integer, Boolean> commentLikeMap = new HashMap<>();
 
         if (userRolesVO != null) {
@@ -209,21 +223,20 @@ public class CommentServiceImpl implements CommentService {
         CommentLike commentLike = commentLikeEntityService.getOne(commentLikeQueryWrapper, false);
         // 添加点赞
         if (toLike) {
-            // 如果不存在就添加
+            // 如果不存在就添加，已点赞过的不重复计数
             if (commentLike == null) {
                 boolean isSave = commentLikeEntityService
                         .saveOrUpdate(new CommentLike().setUid(userRolesVO.getUid()).setCid(cid));
                 if (!isSave) {
                     throw new StatusFailException("点赞失败，请重试尝试！");
                 }
-            }
-            // 点赞+1
-            Comment comment = commentEntityService.getById(cid);
-            if (comment != null) {
-                comment.setLikeNum(comment.getLikeNum() + 1);
-                commentEntityService.updateById(comment);
-                commentEntityService.updateCommentLikeMsg(comment.getFromUid(), userRolesVO.getUid(), sourceId,
-                        sourceType);
+                Comment comment = commentEntityService.getById(cid);
+                if (comment != null) {
+                    commentEntityService.updateCommentLikeMsg(comment.getFromUid(), userRolesVO.getUid(), sourceId,
+                            sourceType);
+                    // 点赞+1，定时批量写入数据库
+                    discussionCounterService.incrAfterCommit(DiscussionCounterService.CountType.COMMENT_LIKE_NUM, cid, 1);
+                }
             }
         }
         // 取消点赞
@@ -234,11 +247,9 @@ public class CommentServiceImpl implements CommentService {
                 if (!isDelete) {
                     throw new StatusFailException("取消点赞失败，请重试尝试！");
                 }
+                // 点赞-1，定时批量写入数据库
+                discussionCounterService.incrAfterCommit(DiscussionCounterService.CountType.COMMENT_LIKE_NUM, cid, -1);
             }
-            // 点赞-1
-            UpdateWrapper<Comment> commentUpdateWrapper = new UpdateWrapper<>();
-            commentUpdateWrapper.setSql("like_num=like_num-1").eq("id", cid);
-            commentEntityService.update(commentUpdateWrapper);
         }
 
     }
@@ -123,16 +123,12 @@ public class ContestScoreboardServiceImpl implements ContestScoreboardService {
         if (contest.getType().intValue() == ContestEnum.TYPE_ACM.getCode()) {
             // 获取ACM比赛排行榜外榜
             return contestACMRankService.getContestACMRankPage(contest, isOpenSealRank, removeStar, concernedList, contestRankDTO.getKeyword(),
-                    !forceRefresh,
-                    // 默认15s缓存
-                    15L, currentPage, limit);
+                    !forceRefresh, currentPage, limit);
 
         } else {
             // 获取OI比赛排行榜外榜
             return contestOIRankService.getContestOIRankPage(contest, isOpenSealRank, removeStar, concernedList, contestRankDTO.getKeyword(),
-                    !forceRefresh,
-                    // 默认15s缓存
-                    15L, currentPage, limit);
+                    !forceRefresh, currentPage, limit);
         }
     }
 
@@ -298,8 +298,8 @@ public class ContestServiceImpl implements ContestService {
 
     // TODO 参数过多
     @Override
-    public IPage<JudgeVO> getContestSubmissionList(Integer limit, Integer currentPage, Boolean onlyMine,
-                                                   String displayId, Integer searchStatus, String searchUsername, Long searchCid, Boolean beforeContestSubmit,
+    public IPage<JudgeVO> getContestSubmissionList(Integer limit, Integer currentPage, Long lastSubmitId,
+                                                   Boolean onlyMine, String displayId, Integer searchStatus, String searchUsername, Long searchCid, Boolean beforeContestSubmit,
                                                    Boolean completeProblemId) {
 
         // 获取本场比赛的状态
@@ -335,12 +335,12 @@ public class ContestServiceImpl implements ContestService {
         }
 
         // OI比赛封榜期间不更新; ACM比赛封榜期间可看到自己的提交(sealTimeUid)，但是其它人的不可见
-        IPage<JudgeVO> contestJudgeList = judgeEntityService.getContestJudgeList(limit, currentPage, displayId,
-                searchCid, searchStatus, searchUsername, uid, beforeContestSubmit, contestType, contest.getStartTime(),
+        IPage<JudgeVO> contestJudgeList = judgeEntityService.getContestJudgeList(limit, currentPage, lastSubmitId,
+                displayId, searchCid, searchStatus, searchUsername, uid, beforeContestSubmit, contestType, contest.getStartTime(),
                 sealRankTime, userId, completeProblemId);
 
-        // 未查询到一条数据
-        if (contestJudgeList.getTotal() == 0) {
+        // 未查询到一条数据（总数是缓存的近似值，以记录为准）
+        if (contestJudgeList.getRecords().isEmpty()) {
             return contestJudgeList;
         }
         // 比赛还是进行阶段，同时不是超级管理员与比赛管理员，需要将除自己之外的提交的时间、空间、长度隐藏
@@ -395,12 +395,12 @@ public class ContestServiceImpl implements ContestService {
             // ACM比赛
             // 进行排行榜计算以及排名分页
             return contestACMRankService.getContestACMRankPage(contest, isOpenSealRank, removeStarUser,
-                    concernedList, keyword, false, null, currentPage, limit);
+                    concernedList, keyword, false, currentPage, limit);
 
         } else {
             // OI比赛
             return contestOIRankService.getContestOIRankPage(contest, isOpenSealRank, removeStarUser,
-                    concernedList, keyword, false, null, currentPage, limit);
+                    concernedList, keyword, false, currentPage, limit);
         }
     }
 
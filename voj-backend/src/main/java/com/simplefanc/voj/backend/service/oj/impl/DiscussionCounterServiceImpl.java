@@ -0,0 +1,284 @@
+package com.simplefanc.voj.backend.service.oj.impl;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.util.IdUtil;
+import com.simplefanc.voj.backend.mapper.CommentMapper;
+import com.simplefanc.voj.backend.mapper.DiscussionMapper;
+import com.simplefanc.voj.backend.service.oj.DiscussionCounterService;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/11/6 14:10
+ * @Description: 每种计数的增量存放在三个 Redis hash 中（id -> 增量）：
+ * 1. 新的增量写入 live；
+ * 2. 写入数据库时持有分布式锁，先将 live 改名为 :flushing，之后的增量写入新的 live；
+ * 3. 每批由脚本从 :flushing 移入 :pending 并记录批次id，批次在一个事务中写入 discussion_counter_flush 和计数，
+ * 批次id已存在时说明已写入过（上次在删除 :pending 前中断），不再重复累加，最后按批次id删除 :pending。
+ * 读取时合并三个 hash 中的增量；:pending 的批次提交事务后、删除前的极短时间内会被重复计入读取结果，不影响数据库中的值
+ */
+@Slf4j(topic = "voj")
+@Service
+@RequiredArgsConstructor
+public class DiscussionCounterServiceImpl implements DiscussionCounterService {
+
+    private final static int FLUSH_BATCH_SIZE = 500;
+
+    private final static long FLUSH_LOCK_EXPIRE_MILLIS = 60 * 1000L;
+
+    /**
+     * 批次记录的保留天数，超过后不会再有对应的 :pending 重试
+     */
+    private final static int FLUSH_RECORD_KEEP_DAYS = 1;
+
+    private final static String FLUSH_ID_FIELD = "flush_id";
+
+    /**
+     * KEYS[1] live，KEYS[2] :flushing，KEYS[3] :pending；ARGV[1] id，ARGV[2] 增量。累加后返回三个 hash 中该id的增量之和
+     */
+    private final static DefaultRedisScript<Long> INCR_SCRIPT = new DefaultRedisScript<>(
+            "local sum = redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])\n" +
+            "sum = sum + (tonumber(redis.call('HGET', KEYS[2], ARGV[1])) or 0)\n" +
+            "return sum + (tonumber(redis.call('HGET', KEYS[3], ARGV[1])) or 0)", Long.class);
+
+    /**
+     * KEYS 同上；ARGV 为各个id。返回每个id在三个 hash 中的增量之和
+     */
+    @SuppressWarnings("rawtypes")
+    private final static DefaultRedisScript<List> GET_SCRIPT = new DefaultRedisScript<>(
+            "local result = {}\n" +
+            "for i = 1, #ARGV do result[i] = 0 end\n" +
+            "for k = 1, 3 do\n" +
+            "  local values = redis.call('HMGET', KEYS[k], unpack(ARGV))\n" +
+            "  for i = 1, #ARGV do result[i] = result[i] + (tonumber(values[i]) or 0) end\n" +
+            "end\n" +
+            "return result", List.class);
+
+    /**
+     * KEYS[1] :flushing，KEYS[2] :pending；ARGV[1] 批次id，ARGV[2...] 本批的id。
+     * 上一批还未完成时返回0，否则将本批增量移入 :pending 并返回1
+     */
+    private final static DefaultRedisScript<Long> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[2]) == 1 then return 0 end\n" +
+            "for i = 2, #ARGV do\n" +
+            "  local value = redis.call('HGET', KEYS[1], ARGV[i])\n" +
+            "  if value then\n" +
+            "    redis.call('HSET', KEYS[2], ARGV[i], value)\n" +
+            "    redis.call('HDEL', KEYS[1], ARGV[i])\n" +
+            "  end\n" +
+            "end\n" +
+            "redis.call('HSET', KEYS[2], '" + FLUSH_ID_FIELD + "', ARGV[1])\n" +
+            "return 1", Long.class);
+
+    /**
+     * KEYS[1] :pending；ARGV[1] 批次id。只删除本批次，避免删除其它节点在锁过期后领取的批次
+     */
+    private final static DefaultRedisScript<Long> FINISH_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HGET', KEYS[1], '" + FLUSH_ID_FIELD + "') == ARGV[1] then\n" +
+            "  return redis.call('DEL', KEYS[1])\n" +
+            "end\n" +
+            "return 0", Long.class);
+
+    private final static DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then\n" +
+            "  return redis.call('DEL', KEYS[1])\n" +
+            "end\n" +
+            "return 0", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final DiscussionMapper discussionMapper;
+
+    private final CommentMapper commentMapper;
+
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    public long incr(CountType countType, Integer id, long delta) {
+        Long pending = stringRedisTemplate.execute(INCR_SCRIPT, getKeys(countType), String.valueOf(id),
+                String.valueOf(delta));
+        return pending == null ? 0L : pending;
+    }
+
+    @Override
+    public void incrAfterCommit(CountType countType, Integer id, long delta) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    incr(countType, id, delta);
+                }
+            });
+        } else {
+            incr(countType, id, delta);
+        }
+    }
+
+    @Override
+    public Map<Integer, Long> getPending(CountType countType, Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<String> fields = new ArrayList<>(ids.size());
+        ids.forEach(id -> fields.add(String.valueOf(id)));
+        List<?> values = stringRedisTemplate.execute(GET_SCRIPT, getKeys(countType), fields.toArray());
+        Map<Integer, Long> pending = new HashMap<>();
+        int i = 0;
+        for (Integer id : ids) {
+            Object value = values == null ? null : values.get(i++);
+            if (value instanceof Number && ((Number) value).longValue() != 0) {
+                pending.put(id, ((Number) value).longValue());
+            }
+        }
+        return pending;
+    }
+
+    @Override
+    @Scheduled(fixedDelay = 5000)
+    public void flush() {
+        String lockToken = IdUtil.fastSimpleUUID();
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(RedisConstant.DISCUSSION_COUNTER_FLUSH_LOCK,
+                lockToken, FLUSH_LOCK_EXPIRE_MILLIS, TimeUnit.MILLISECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            for (CountType countType : CountType.values()) {
+                flush(countType);
+            }
+        } catch (Exception e) {
+            log.error("讨论计数写入数据库失败-------------->", e);
+        } finally {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT,
+                    Collections.singletonList(RedisConstant.DISCUSSION_COUNTER_FLUSH_LOCK), lockToken);
+        }
+    }
+
+    /**
+     * 停机前写入一次，减少未写入数据库的增量
+     */
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+
+    /**
+     * 每天清理已过保留期的批次记录
+     */
+    @Scheduled(cron = "0 10 3 * * *")
+    public void cleanFlushRecords() {
+        discussionMapper.deleteCounterFlushBefore(DateUtil.offsetDay(DateUtil.date(), -FLUSH_RECORD_KEEP_DAYS));
+    }
+
+    private void flush(CountType countType) {
+        List<String> keys = getKeys(countType);
+        String liveKey = keys.get(0);
+        String flushingKey = keys.get(1);
+        String pendingKey = keys.get(2);
+        // 先完成上次中断的批次
+        if (!flushPending(countType, pendingKey)) {
+            return;
+        }
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(flushingKey))) {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(liveKey))
+                    || !Boolean.TRUE.equals(stringRedisTemplate.renameIfAbsent(liveKey, flushingKey))) {
+                return;
+            }
+        }
+        List<Object> fields = new ArrayList<>(stringRedisTemplate.opsForHash().keys(flushingKey));
+        for (int from = 0; from < fields.size(); from += FLUSH_BATCH_SIZE) {
+            List<Object> batch = fields.subList(from, Math.min(from + FLUSH_BATCH_SIZE, fields.size()));
+            String flushId = IdUtil.fastSimpleUUID();
+            Object[] args = new Object[batch.size() + 1];
+            args[0] = flushId;
+            for (int i = 0; i < batch.size(); i++) {
+                args[i + 1] = batch.get(i);
+            }
+            Long claimed = stringRedisTemplate.execute(CLAIM_SCRIPT, Arrays.asList(flushingKey, pendingKey), args);
+            if (claimed == null || claimed == 0 || !flushPending(countType, pendingKey)) {
+                // 其它节点在锁过期后正在处理，下次再继续
+                return;
+            }
+        }
+    }
+
+    /**
+     * 将 :pending 中的批次写入数据库并删除
+     *
+     * @return 没有批次或已完成时返回true
+     */
+    private boolean flushPending(CountType countType, String pendingKey) {
+        Map<Object, Object> entries = new HashMap<>(stringRedisTemplate.opsForHash().entries(pendingKey));
+        if (entries.isEmpty()) {
+            return true;
+        }
+        String flushId = (String) entries.remove(FLUSH_ID_FIELD);
+        if (flushId == null) {
+            // 领取脚本最后才写入批次id，不会出现
+            return false;
+        }
+        Map<Integer, Long> deltas = new LinkedHashMap<>();
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            long delta = Long.parseLong((String) entry.getValue());
+            if (delta != 0) {
+                deltas.put(Integer.valueOf((String) entry.getKey()), delta);
+            }
+        }
+        Boolean written = transactionTemplate.execute(status -> {
+            // 批次id已存在说明已经写入过
+            if (discussionMapper.insertCounterFlush(flushId) == 0) {
+                return false;
+            }
+            if (!deltas.isEmpty()) {
+                if ("comment".equals(countType.getTable())) {
+                    commentMapper.addCounts(countType.getColumn(), deltas);
+                } else {
+                    discussionMapper.addCounts(countType.getColumn(), deltas);
+                }
+            }
+            return true;
+        });
+        stringRedisTemplate.execute(FINISH_SCRIPT, Collections.singletonList(pendingKey), flushId);
+        if (Boolean.TRUE.equals(written)) {
+            Counter.builder("voj.discussion.counter.flushed")
+                    .tag("type", countType.name().toLowerCase())
+                    .description("写入数据库的计数行数")
+                    .register(meterRegistry)
+                    .increment(deltas.size());
+        }
+        return true;
+    }
+
+    /**
+     * live、:flushing、:pending 三个key，使用相同的 hash tag 以便在集群中由同一脚本操作
+     */
+    private static List<String> getKeys(CountType countType) {
+        String key = RedisConstant.DISCUSSION_COUNTER + "{" + countType.getTable() + ":" + countType.getColumn() + "}";
+        return Arrays.asList(key, key + ":flushing", key + ":pending");
+    }
+
+}
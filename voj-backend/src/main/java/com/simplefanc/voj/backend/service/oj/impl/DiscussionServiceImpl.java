@@ -16,6 +16,8 @@ import com.simplefanc.voj.backend.dao.problem.CategoryEntityService;
 import com.simplefanc.voj.backend.dao.user.UserAcproblemEntityService;
 import com.simplefanc.voj.backend.pojo.vo.DiscussionVO;
 import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
+import com.simplefanc.voj.backend.search.KeywordSearchService;
+import com.simplefanc.voj.backend.service.oj.DiscussionCounterService;
 import com.simplefanc.voj.backend.service.oj.DiscussionService;
 import com.simplefanc.voj.backend.shiro.UserSessionUtil;
 import com.simplefanc.voj.common.constants.RedisConstant;
@@ -28,7 +30,10 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * @Author: chenfan
@@ -51,6 +56,10 @@ public class DiscussionServiceImpl implements DiscussionService {
 
     private final UserAcproblemEntityService userAcproblemEntityService;
 
+    private final DiscussionCounterService discussionCounterService;
+
+    private final KeywordSearchService keywordSearchService;
+
     @Override
     public IPage<Discussion> getDiscussionList(Integer limit, Integer currentPage, Integer categoryId, String pid,
                                                Boolean onlyMine, String keyword, Boolean admin) {
@@ -67,8 +76,15 @@ public class DiscussionServiceImpl implements DiscussionService {
 
             final String key = keyword.trim();
 
-            discussionQueryWrapper.and(wrapper -> wrapper.like("title", key).or().like("author", key).or()
-                    .like("id", key).or().like("description", key));
+            List<Integer> keywordDidList = keywordSearchService.searchDiscussions(key);
+            if (keywordDidList == null) {
+                discussionQueryWrapper.and(wrapper -> wrapper.like("title", key).or().like("author", key).or()
+                        .like("id", key).or().like("description", key));
+            } else if (keywordDidList.isEmpty()) {
+                return iPage;
+            } else {
+                discussionQueryWrapper.in("id", keywordDidList);
+            }
         }
 
         if (StrUtil.isNotEmpty(pid)) {
@@ -85,7 +101,20 @@ public class DiscussionServiceImpl implements DiscussionService {
             discussionQueryWrapper.eq("uid", userRolesVO.getUid());
         }
 
-        return discussionEntityService.page(iPage, discussionQueryWrapper);
+        IPage<Discussion> discussionPage = discussionEntityService.page(iPage, discussionQueryWrapper);
+        // 加上还未写入数据库的浏览量与点赞数
+        List<Integer> didList = discussionPage.getRecords().stream().map(Discussion::getId)
+                .collect(Collectors.toList());
+        Map<Integer, Long> pendingViewNum = discussionCounterService
+                .getPending(DiscussionCounterService.CountType.DISCUSSION_VIEW_NUM, didList);
+        Map<Integer, Long> pendingLikeNum = discussionCounterService
+                .getPending(DiscussionCounterService.CountType.DISCUSSION_LIKE_NUM, didList);
+        for (Discussion discussion : discussionPage.getRecords()) {
+            Integer did = discussion.getId();
+            discussion.setViewNum(discussion.getViewNum() + pendingViewNum.getOrDefault(did, 0L).intValue());
+            discussion.setLikeNum(discussion.getLikeNum() + pendingLikeNum.getOrDefault(did, 0L).intValue());
+        }
+        return discussionPage;
     }
 
     @Override
@@ -110,11 +139,15 @@ public class DiscussionServiceImpl implements DiscussionService {
             throw new StatusForbiddenException("对不起，该讨论已被封禁！");
         }
 
-        // 浏览量+1
-        UpdateWrapper<Discussion> discussionUpdateWrapper = new UpdateWrapper<>();
-        discussionUpdateWrapper.setSql("view_num=view_num+1").eq("id", discussion.getId());
-        discussionEntityService.update(discussionUpdateWrapper);
-        discussion.setViewNum(discussion.getViewNum() + 1);
+        // 浏览量+1，定时批量写入数据库
+        long pendingViewNum = discussionCounterService.incr(DiscussionCounterService.CountType.DISCUSSION_VIEW_NUM,
+                discussion.getId(), 1);
+        discussion.setViewNum(discussion.getViewNum() + (int) pendingViewNum);
+        long pendingLikeNum = discussionCounterService
+                .getPending(DiscussionCounterService.CountType.DISCUSSION_LIKE_NUM,
+                        Collections.singletonList(discussion.getId()))
+                .getOrDefault(discussion.getId(), 0L);
+        discussion.setLikeNum(discussion.getLikeNum() + (int) pendingLikeNum);
 
         return discussion;
     }
@@ -204,21 +237,20 @@ public class DiscussionServiceImpl implements DiscussionService {
 
         // 添加点赞
         if (toLike) {
-            // 如果不存在就添加
+            // 如果不存在就添加，已点赞过的不重复计数
             if (discussionLike == null) {
                 boolean isSave = discussionLikeEntityService
                         .saveOrUpdate(new DiscussionLike().setUid(userRolesVO.getUid()).setDid(did));
                 if (!isSave) {
                     throw new StatusFailException("点赞失败，请重试尝试！");
                 }
-            }
-            // 点赞+1
-            Discussion discussion = discussionEntityService.getById(did);
-            if (discussion != null) {
-                discussion.setLikeNum(discussion.getLikeNum() + 1);
-                discussionEntityService.updateById(discussion);
-                // 更新点赞消息
-                discussionEntityService.updatePostLikeMsg(discussion.getUid(), userRolesVO.getUid(), did);
+                Discussion discussion = discussionEntityService.getById(did);
+                if (discussion != null) {
+                    // 更新点赞消息
+                    discussionEntityService.updatePostLikeMsg(discussion.getUid(), userRolesVO.getUid(), did);
+                    // 点赞+1，定时批量写入数据库
+                    discussionCounterService.incrAfterCommit(DiscussionCounterService.CountType.DISCUSSION_LIKE_NUM, did, 1);
+                }
             }
         } else {
             // 取消点赞
@@ -228,11 +260,9 @@ public class DiscussionServiceImpl implements DiscussionService {
                 if (!isDelete) {
                     throw new StatusFailException("取消点赞失败，请重试尝试！");
                 }
+                // 点赞-1，定时批量写入数据库
+                discussionCounterService.incrAfterCommit(DiscussionCounterService.CountType.DISCUSSION_LIKE_NUM, did, -1);
             }
-            // 点赞-1
-            UpdateWrapper<Discussion> discussionUpdateWrapper = new UpdateWrapper<>();
-            discussionUpdateWrapper.setSql("like_num=like_num-1").eq("id", did);
-            discussionEntityService.update(discussionUpdateWrapper);
         }
 
     }
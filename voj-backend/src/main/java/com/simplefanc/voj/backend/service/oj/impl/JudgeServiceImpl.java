@@ -1,5 +1,6 @@
 package com.simplefanc.voj.backend.service.oj.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
@@ -13,7 +14,9 @@ import com.simplefanc.voj.backend.dao.contest.ContestRecordEntityService;
 import com.simplefanc.voj.backend.dao.judge.JudgeCaseEntityService;
 import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.backend.dao.problem.ProblemEntityService;
+import com.simplefanc.voj.backend.dao.problem.ProblemStatEntityService;
 import com.simplefanc.voj.backend.dao.user.UserAcproblemEntityService;
+import com.simplefanc.voj.backend.judge.JudgeStatusHub;
 import com.simplefanc.voj.backend.judge.local.JudgeTaskDispatcher;
 import com.simplefanc.voj.backend.judge.remote.RemoteJudgeTaskDispatcher;
 import com.simplefanc.voj.backend.pojo.dto.SubmitIdListDTO;
@@ -30,6 +33,7 @@ import com.simplefanc.voj.backend.validator.JudgeValidator;
 import com.simplefanc.voj.common.constants.ContestEnum;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.common.constants.RedisConstant;
+import com.simplefanc.voj.common.pojo.dto.JudgeStatusDTO;
 import com.simplefanc.voj.common.pojo.entity.contest.Contest;
 import com.simplefanc.voj.common.pojo.entity.contest.ContestRecord;
 import com.simplefanc.voj.common.pojo.entity.judge.Judge;
@@ -43,6 +47,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.Date;
@@ -64,6 +69,8 @@ public class JudgeServiceImpl implements JudgeService {
 
     private final ProblemEntityService problemEntityService;
 
+    private final ProblemStatEntityService problemStatEntityService;
+
     private final ContestEntityService contestEntityService;
 
     private final ContestRecordEntityService contestRecordEntityService;
@@ -84,6 +91,8 @@ public class JudgeServiceImpl implements JudgeService {
 
     private final ConfigVO configVO;
 
+    private final JudgeStatusHub judgeStatusHub;
+
     /**
      * @MethodName submitProblemJudge
      * @Description 核心方法
@@ -169,11 +178,13 @@ public class JudgeServiceImpl implements JudgeService {
                 userAcproblemQueryWrapper.eq("submit_id", judge.getSubmitId());
                 userAcproblemEntityService.remove(userAcproblemQueryWrapper);
             }
+            // 从题目提交统计中减去原来的结果，判题完成后判题机会累加新的结果
+            problemStatEntityService.removeResult(judge.getPid(), judge.getStatus());
         } else {
             if (problem.getIsRemote()) {
                 // 将对应比赛记录设置成默认值
                 UpdateWrapper<ContestRecord> updateWrapper = new UpdateWrapper<>();
-                updateWrapper.eq("submit_id", submitId).setSql("status=null,score=null");
+                updateWrapper.eq("submit_id", submitId).setSql("status=null,score=null,gmt_modified=NOW()");
                 contestRecordEntityService.update(updateWrapper);
             } else {
                 throw new StatusNotFoundException("错误！非vJudge题目在比赛过程无权限重新提交");
@@ -299,8 +310,9 @@ public class JudgeServiceImpl implements JudgeService {
      * @Since 2021/10/29
      */
     @Override
-    public IPage<JudgeVO> getJudgeList(Integer limit, Integer currentPage, Boolean onlyMine, String searchPid,
-                                       Integer searchStatus, String searchUsername, Boolean completeProblemId) {
+    public IPage<JudgeVO> getJudgeList(Integer limit, Integer currentPage, Long lastSubmitId, Boolean onlyMine,
+                                       String searchPid, Integer searchStatus, String searchUsername,
+                                       Boolean completeProblemId) {
         // 页数，每页题数若为空，设置默认值
         if (currentPage == null || currentPage < 1) {
             currentPage = 1;
@@ -326,8 +338,8 @@ public class JudgeServiceImpl implements JudgeService {
             searchUsername = searchUsername.trim();
         }
 
-        return judgeEntityService.getCommonJudgeList(limit, currentPage, searchPid, searchStatus, searchUsername, uid,
-                completeProblemId);
+        return judgeEntityService.getCommonJudgeList(limit, currentPage, lastSubmitId, searchPid, searchStatus,
+                searchUsername, uid, completeProblemId);
     }
 
     /**
@@ -406,6 +418,42 @@ public class JudgeServiceImpl implements JudgeService {
         return result;
     }
 
+    @Override
+    public SseEmitter subscribeCommonJudgeStatus() {
+        UserRolesVO userRolesVO = UserSessionUtil.getUserInfo();
+        return judgeStatusHub.subscribeUser(userRolesVO.getUid());
+    }
+
+    @Override
+    public SseEmitter subscribeContestJudgeStatus(Long cid) {
+        if (cid == null) {
+            throw new StatusNotFoundException("查询比赛id不能为空");
+        }
+        Contest contest = contestEntityService.getById(cid);
+        if (contest == null) {
+            throw new StatusNotFoundException("该比赛不存在！");
+        }
+        // 与比赛提交列表相同，私有赛、保护赛需要已注册或为比赛管理员
+        contestValidator.validateContestAuth(contest);
+        String uid = UserSessionUtil.getUserInfo().getUid();
+        // 推送时不在请求线程中，无法读取当前用户，需提前判断
+        boolean isContestAdmin = contestValidator.isContestAdmin(contest);
+        return judgeStatusHub.subscribeContest(cid, uid, judgeStatus -> {
+            if (isContestAdmin) {
+                return judgeStatus;
+            }
+            // 封榜期间不推送封榜后的提交
+            if (contestValidator.isOpenSealRank(contest, false) && (judgeStatus.getSubmitTime() == null
+                    || judgeStatus.getSubmitTime().after(contest.getSealRankTime()))) {
+                return null;
+            }
+            if (uid.equals(judgeStatus.getUid())) {
+                return judgeStatus;
+            }
+            return BeanUtil.copyProperties(judgeStatus, JudgeStatusDTO.class, "time", "memory");
+        });
+    }
+
     /**
      * @MethodName getJudgeCase
      * @Description 获得指定提交id的测试样例结果，暂不支持查看测试数据，只可看测试点结果，时间，空间，或者IO得分
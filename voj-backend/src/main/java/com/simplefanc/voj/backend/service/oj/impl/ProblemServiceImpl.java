@@ -42,6 +42,8 @@ public class ProblemServiceImpl implements ProblemService {
 
     private final JudgeEntityService judgeEntityService;
 
+    private final ProblemStatEntityService problemStatEntityService;
+
     private final TagEntityService tagEntityService;
 
     private final LanguageEntityService languageEntityService;
@@ -251,7 +253,7 @@ public class ProblemServiceImpl implements ProblemService {
         });
 
         // 获取题目的提交记录
-        ProblemCountVO problemCount = judgeEntityService.getProblemCount(problem.getId());
+        ProblemCountVO problemCount = problemStatEntityService.getProblemStat(problem.getId());
 
         // 获取题目的代码模板
         QueryWrapper<CodeTemplate> codeTemplateQueryWrapper = new QueryWrapper<>();
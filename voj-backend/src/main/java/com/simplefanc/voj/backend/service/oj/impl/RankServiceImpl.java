@@ -15,7 +15,7 @@ import com.simplefanc.voj.common.constants.ContestEnum;
 import com.simplefanc.voj.common.constants.RedisConstant;
 import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
 import lombok.RequiredArgsConstructor;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -39,6 +39,8 @@ public class RankServiceImpl implements RankService {
 
     private final RedisUtil redisUtil;
 
+    private final CacheManager cacheManager;
+
     /**
      * @MethodName get-rank-list
      * @Params * @param null
@@ -70,19 +72,24 @@ public class RankServiceImpl implements RankService {
         }
 
         IPage rankList = null;
-        // 根据type查询不同类型的排行榜
+        final int finalLimit = limit;
+        final int finalCurrentPage = currentPage;
+        // 根据type查询不同类型的排行榜，不搜索用户时走缓存（同一页并发未命中时只查询一次数据库）
         if (type.intValue() == ContestEnum.TYPE_ACM.getCode()) {
-            rankList = getACMRankList(limit, currentPage, uidList);
+            rankList = uidList != null ? getACMRankList(limit, currentPage, uidList)
+                    : cacheManager.getCache(RedisConstant.ACM_RANK_CACHE).get(limit + "-" + currentPage,
+                            () -> getACMRankList(finalLimit, finalCurrentPage, null));
         } else if (type.intValue() == ContestEnum.TYPE_OI.getCode()) {
-            rankList = getOIRankList(limit, currentPage, uidList);
+            rankList = uidList != null ? getOIRankList(limit, currentPage, uidList)
+                    : cacheManager.getCache(RedisConstant.OI_RANK_CACHE).get(limit + "-" + currentPage,
+                            () -> getOIRankList(finalLimit, finalCurrentPage, null));
         } else {
             throw new StatusFailException("比赛类型代码不正确！");
         }
         return rankList;
     }
 
-    @Cacheable(value = RedisConstant.ACM_RANK_CACHE, key = "#limit+'-'+#currentPage", condition="#uidList == null")
-    public IPage<ACMRankVO> getACMRankList(int limit, int currentPage, List<String> uidList) {
+    private IPage<ACMRankVO> getACMRankList(int limit, int currentPage, List<String> uidList) {
         IPage<ACMRankVO> data = null;
         if (uidList != null) {
             Page<ACMRankVO> page = new Page<>(currentPage, limit);
@@ -104,8 +111,7 @@ public class RankServiceImpl implements RankService {
         return data;
     }
 
-    @Cacheable(value = RedisConstant.OI_RANK_CACHE, key = "#limit+'-'+#currentPage", condition="#uidList == null")
-    public IPage<OIRankVO> getOIRankList(int limit, int currentPage, List<String> uidList) {
+    private IPage<OIRankVO> getOIRankList(int limit, int currentPage, List<String> uidList) {
         IPage<OIRankVO> data = null;
         if (uidList != null) {
             Page<OIRankVO> page = new Page<>(currentPage, limit);
@@ -0,0 +1,193 @@
+package com.simplefanc.voj.backend.service.oj.scoreboard;
+
+import cn.hutool.core.date.DateUtil;
+import com.simplefanc.voj.backend.pojo.vo.ACMContestRankVO;
+import com.simplefanc.voj.backend.pojo.vo.ContestRecordVO;
+import com.simplefanc.voj.common.constants.ContestEnum;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/10/26 11:25
+ * @Description: ACM机制的增量榜单：先按AC的题目数量排名，若AC的题目数量一样，则按罚时排名
+ */
+public class ACMContestScoreboard extends ContestScoreboard<ACMContestScoreboard.ACMRow, ACMContestRankVO> {
+
+    /**
+     * 先以总ac数降序，再以总罚时升序
+     */
+    private static final Comparator<ACMRow> SCORE_COMPARATOR = Comparator
+            .comparing((ACMRow row) -> row.ac, Comparator.reverseOrder())
+            .thenComparing(row -> row.totalTime);
+
+    /**
+     * 题目展示id -> 各用户的AC时间（多重集合），最小值即为一血时间
+     */
+    private final Map<String, TreeMap<Long, Integer>> acTimeMap = new HashMap<>();
+
+    ACMContestScoreboard(Contest contest, boolean sealed, String signature, Set<String> starUsernames) {
+        super(contest, sealed, signature, starUsernames, SCORE_COMPARATOR);
+    }
+
+    @Override
+    protected boolean isEligible(ContestRecordVO contestRecord) {
+        return contestRecord.getStatus() != null && contestRecord.getSubmitTime() != null
+                && !contestRecord.getSubmitTime().before(startTime);
+    }
+
+    @Override
+    protected ACMRow newRow(UserInfo userInfo) {
+        return new ACMRow(userInfo);
+    }
+
+    @Override
+    protected void updateCell(ACMRow row, String displayId, Collection<ContestRecordVO> contestRecords) {
+        ACMCell old = row.cells.remove(displayId);
+        if (old != null) {
+            row.total -= old.total;
+            if (old.isAC) {
+                row.ac--;
+                row.totalTime -= old.penalty();
+                removeAcTime(displayId, old.acTime);
+            }
+        }
+        if (contestRecords == null) {
+            return;
+        }
+
+        // 按题目提交耗时time升序处理
+        List<ContestRecordVO> sortedRecords = new ArrayList<>(contestRecords);
+        sortedRecords.sort(Comparator.comparing(ContestRecordVO::getTime).thenComparing(ContestRecordVO::getId));
+        ACMCell cell = new ACMCell();
+        for (ContestRecordVO contestRecord : sortedRecords) {
+            cell.total++;
+            // 如果是当前是开启封榜的时段和同时该提交是处于封榜时段 尝试次数+1
+            if (sealed && DateUtil.isIn(contestRecord.getSubmitTime(), sealRankTime, endTime)) {
+                cell.tryNum++;
+            } else if (cell.isAC) {
+                // 如果该题目已经AC过了，其它都不记录了
+                continue;
+            } else if (contestRecord.getStatus().intValue() == ContestEnum.RECORD_AC.getCode()) {
+                cell.isAC = true;
+                cell.acTime = contestRecord.getTime();
+            } else if (contestRecord.getStatus().intValue() == ContestEnum.RECORD_NOT_AC_PENALTY.getCode()) {
+                // 未通过同时需要记录罚时次数
+                cell.errorNum++;
+            }
+        }
+        row.cells.put(displayId, cell);
+        row.total += cell.total;
+        if (cell.isAC) {
+            row.ac++;
+            row.totalTime += cell.penalty();
+            acTimeMap.computeIfAbsent(displayId, k -> new TreeMap<>()).merge(cell.acTime, 1, Integer::sum);
+        }
+    }
+
+    private void removeAcTime(String displayId, long acTime) {
+        TreeMap<Long, Integer> acTimes = acTimeMap.get(displayId);
+        if (acTimes.merge(acTime, -1, Integer::sum) == 0) {
+            acTimes.remove(acTime);
+        }
+    }
+
+    @Override
+    protected boolean isVisible(ACMRow row) {
+        return row.total > 0;
+    }
+
+    @Override
+    protected void clear() {
+        acTimeMap.clear();
+    }
+
+    @Override
+    protected ACMContestRankVO toRankVO(ACMRow row) {
+        HashMap<String, HashMap<String, Object>> submissionInfo = new HashMap<>();
+        row.cells.forEach((displayId, cell) -> {
+            HashMap<String, Object> problemSubmissionInfo = new HashMap<>();
+            problemSubmissionInfo.put("errorNum", cell.errorNum);
+            if (cell.tryNum > 0) {
+                problemSubmissionInfo.put("tryNum", cell.tryNum);
+            }
+            if (cell.isAC) {
+                problemSubmissionInfo.put("isAC", true);
+                // 相同提交时间也是first AC
+                problemSubmissionInfo.put("isFirstAC", acTimeMap.get(displayId).firstKey() == cell.acTime);
+                problemSubmissionInfo.put("ACTime", cell.acTime);
+            }
+            submissionInfo.put(displayId, problemSubmissionInfo);
+        });
+        return new ACMContestRankVO()
+                .setRealname(row.realname)
+                .setUid(row.uid)
+                .setUsername(row.username)
+                .setSchool(row.school)
+                .setAvatar(row.avatar)
+                .setGender(row.gender)
+                .setNickname(row.nickname)
+                .setRegistered(row.registered)
+                .setAc(row.ac)
+                .setTotalTime(row.totalTime)
+                .setTotal(row.total)
+                .setSubmissionInfo(submissionInfo);
+    }
+
+    @Override
+    protected void setRank(ACMContestRankVO rankVO, int rank, int seq) {
+        rankVO.setRank(rank).setSeq(seq);
+    }
+
+    @Override
+    protected boolean isZeroScore(ACMRow row) {
+        return row.ac == 0 && row.totalTime == 0;
+    }
+
+    static class ACMRow extends ContestScoreboard.Row {
+
+        private int ac;
+
+        private long totalTime;
+
+        private int total;
+
+        private final Map<String, ACMCell> cells = new HashMap<>();
+
+        ACMRow(UserInfo userInfo) {
+            super(userInfo);
+        }
+
+    }
+
+    private static class ACMCell {
+
+        private int total;
+
+        private int errorNum;
+
+        private int tryNum;
+
+        private boolean isAC;
+
+        private long acTime;
+
+        /**
+         * 所谓“罚时”指的是做出题目所用的总时间，加上提交错误所付出的代价，每提交错误一次，会罚时20分钟
+         */
+        long penalty() {
+            return errorNum * 20 * 60L + acTime;
+        }
+
+    }
+
+}
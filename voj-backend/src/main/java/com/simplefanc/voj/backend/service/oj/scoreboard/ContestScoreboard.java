@@ -0,0 +1,399 @@
+package com.simplefanc.voj.backend.service.oj.scoreboard;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.simplefanc.voj.backend.pojo.vo.ContestRecordVO;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/10/26 10:40
+ * @Description: 单场比赛（某一视图：封榜或实时）的增量榜单。
+ * 以 contest_record 的变更为事件，每条记录变更只重新计算对应用户对应题目的一格，再把该用户在有序集合中重新定位（O(log n)），
+ * 同步完成后按顺序遍历一次生成不可变的 {@link ContestScoreboardSnapshot} 供查询（O(n)，查询直接按下标或uid索引定位，
+ * 不在有序集合上做按名次查找）；榜单数据由 {@link ContestScoreboardEngine} 负责加载与同步
+ */
+public abstract class ContestScoreboard<R extends ContestScoreboard.Row, V> {
+
+    protected final Long cid;
+
+    /**
+     * 是否为封榜视图
+     */
+    protected final boolean sealed;
+
+    protected final Date startTime;
+
+    protected final Date endTime;
+
+    protected final Date sealRankTime;
+
+    /**
+     * 构建时的比赛配置，配置变化后需要重新构建榜单
+     */
+    private final String signature;
+
+    /**
+     * 打星用户的用户名
+     */
+    private final Set<String> starUsernames;
+
+    private final Comparator<R> scoreComparator;
+
+    private final Comparator<R> rowComparator;
+
+    /**
+     * 加载与同步时持有，查询只读取已发布的快照，不需要加锁
+     */
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    /**
+     * 不参与排名的用户（比赛未开启管理员参与排名时的超级管理员与比赛创建者）
+     */
+    private Set<String> excludedUids = Collections.emptySet();
+
+    private final Map<String, R> rows = new HashMap<>();
+
+    /**
+     * 当前出现在榜单中的用户，按成绩排序；元素在集合中时不能修改参与比较的字段，更新前需先移除再重新加入
+     */
+    private TreeSet<R> tree;
+
+    private volatile boolean loaded;
+
+    /**
+     * 上次发布快照后榜单是否有变化
+     */
+    private boolean dirty;
+
+    private volatile ContestScoreboardSnapshot<V> snapshot;
+
+    /**
+     * 加载时的重建版本号，重判后版本号变化，榜单需要从数据库重新加载
+     */
+    private String epoch;
+
+    /**
+     * 已同步到的数据库时间，下次只查询此后变更的记录
+     */
+    private Date watermark;
+
+    private volatile long lastSyncTime;
+
+    private volatile long lastAccessTime = System.currentTimeMillis();
+
+    protected ContestScoreboard(Contest contest, boolean sealed, String signature, Set<String> starUsernames,
+                                Comparator<R> scoreComparator) {
+        this.cid = contest.getId();
+        this.sealed = sealed;
+        this.startTime = contest.getStartTime();
+        this.endTime = contest.getEndTime();
+        this.sealRankTime = contest.getSealRankTime();
+        this.signature = signature;
+        this.starUsernames = starUsernames;
+        this.scoreComparator = scoreComparator;
+        // 同分时按uid排序，保证树中元素的顺序唯一
+        this.rowComparator = scoreComparator.thenComparing(row -> row.uid);
+        this.tree = newTree();
+    }
+
+    /**
+     * 该提交记录是否计入当前视图的榜单
+     */
+    protected abstract boolean isEligible(ContestRecordVO contestRecord);
+
+    protected abstract R newRow(UserInfo userInfo);
+
+    /**
+     * 根据用户某道题当前的全部有效记录（按记录id升序，可能为null）重新计算该题的格子及用户总分
+     */
+    protected abstract void updateCell(R row, String displayId, Collection<ContestRecordVO> contestRecords);
+
+    /**
+     * 用户当前是否应出现在榜单中
+     */
+    protected abstract boolean isVisible(R row);
+
+    protected abstract V toRankVO(R row);
+
+    protected abstract void setRank(V rankVO, int rank, int seq);
+
+    /**
+     * 成绩是否与没有任何提交的用户相同
+     */
+    protected abstract boolean isZeroScore(R row);
+
+    /**
+     * 清空榜单中规则相关的统计数据
+     */
+    protected void clear() {
+    }
+
+    /**
+     * 清空榜单，准备从数据库重新加载，调用方需持有同步锁
+     */
+    void reset(String epoch, Set<String> excludedUids) {
+        rows.clear();
+        tree = newTree();
+        clear();
+        this.epoch = epoch;
+        this.excludedUids = excludedUids;
+        this.loaded = false;
+        this.dirty = true;
+    }
+
+    /**
+     * 需要加载用户信息的用户id，调用方需持有同步锁
+     */
+    Set<String> getUnknownUids(List<ContestRecordVO> contestRecords) {
+        return contestRecords.stream()
+                .filter(contestRecord -> !rows.containsKey(contestRecord.getUid())
+                        && !excludedUids.contains(contestRecord.getUid())
+                        && isEligible(contestRecord))
+                .map(ContestRecordVO::getUid)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * 应用一批记录变更，同一条记录重复应用的结果不变，调用方需持有同步锁
+     */
+    void apply(List<ContestRecordVO> contestRecords, Map<String, UserInfo> userInfoMap) {
+        for (ContestRecordVO contestRecord : contestRecords) {
+            apply(contestRecord, userInfoMap);
+        }
+    }
+
+    private void apply(ContestRecordVO contestRecord, Map<String, UserInfo> userInfoMap) {
+        String uid = contestRecord.getUid();
+        if (excludedUids.contains(uid)) {
+            return;
+        }
+        boolean eligible = isEligible(contestRecord);
+        R row = rows.get(uid);
+        if (row == null) {
+            UserInfo userInfo = userInfoMap.get(uid);
+            if (!eligible || userInfo == null) {
+                return;
+            }
+            row = newRow(userInfo);
+            row.star = starUsernames.contains(row.username);
+            rows.put(uid, row);
+        }
+        if (row.inTree) {
+            tree.remove(row);
+            row.inTree = false;
+        }
+        dirty = true;
+
+        Set<String> changedDisplayIds = new HashSet<>();
+        ContestRecordVO previous = row.recordById.remove(contestRecord.getId());
+        if (previous != null) {
+            Map<Long, ContestRecordVO> cellRecords = row.records.get(previous.getDisplayId());
+            cellRecords.remove(previous.getId());
+            if (cellRecords.isEmpty()) {
+                row.records.remove(previous.getDisplayId());
+            }
+            changedDisplayIds.add(previous.getDisplayId());
+        }
+        if (eligible) {
+            row.recordById.put(contestRecord.getId(), contestRecord);
+            row.records.computeIfAbsent(contestRecord.getDisplayId(), k -> new TreeMap<>())
+                    .put(contestRecord.getId(), contestRecord);
+            changedDisplayIds.add(contestRecord.getDisplayId());
+        }
+        for (String displayId : changedDisplayIds) {
+            Map<Long, ContestRecordVO> cellRecords = row.records.get(displayId);
+            updateCell(row, displayId, cellRecords == null ? null : cellRecords.values());
+        }
+
+        if (isVisible(row)) {
+            tree.add(row);
+            row.inTree = true;
+        } else if (row.recordById.isEmpty()) {
+            rows.remove(uid);
+        }
+    }
+
+    /**
+     * 根据当前榜单生成不可变快照，排名、序号与移除打星用户后的视图均提前计算好，调用方需持有同步锁
+     */
+    void publish() {
+        if (!dirty && snapshot != null) {
+            return;
+        }
+        List<R> rowList = new ArrayList<>(tree);
+        boolean hasStar = rowList.stream().anyMatch(row -> row.star);
+
+        List<V> rankList = new ArrayList<>(rowList.size());
+        // 没有打星用户时，移除打星用户后的视图与完整视图相同
+        List<V> nonStarRankList = hasStar ? new ArrayList<>() : rankList;
+        int nonStarNum = 0;
+        R preRow = null;
+        int preRank = 0;
+        for (int i = 0; i < rowList.size(); i++) {
+            R row = rowList.get(i);
+            int rank;
+            if (row.star) {
+                // 打星队伍排名为-1
+                rank = -1;
+            } else {
+                // 与前一个非打星用户成绩相同时排名相同
+                rank = preRow != null && scoreComparator.compare(preRow, row) == 0 ? preRank : nonStarNum + 1;
+                preRow = row;
+                preRank = rank;
+                nonStarNum++;
+            }
+            V rankVO = toRankVO(row);
+            setRank(rankVO, rank, i + 1);
+            rankList.add(rankVO);
+            if (hasStar && !row.star) {
+                // 两个视图只有序号不同，复制完整视图中的对象即可
+                V nonStarRankVO = copyRankVO(rankVO);
+                setRank(nonStarRankVO, rank, nonStarRankList.size() + 1);
+                nonStarRankList.add(nonStarRankVO);
+            }
+        }
+        // 追加在榜单末尾的无提交用户成绩为0，与最后一个非打星用户成绩相同时排名相同
+        int zeroRank = preRow != null && isZeroScore(preRow) ? preRank : nonStarNum + 1;
+        snapshot = new ContestScoreboardSnapshot<>(this, rowList, rankList, nonStarRankList, zeroRank);
+        dirty = false;
+        // 首次发布快照后才视为加载完成，加载失败时下次访问重新全量加载
+        loaded = true;
+    }
+
+    public ContestScoreboardSnapshot<V> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 没有提交记录的用户（管理员查看时追加在榜单末尾）
+     */
+    V toNoRecordRankVO(UserInfo userInfo, boolean registered) {
+        R row = newRow(userInfo);
+        row.star = isStarUser(row.username);
+        row.registered = registered;
+        return toRankVO(row);
+    }
+
+    boolean isStarUser(String username) {
+        return starUsernames.contains(username);
+    }
+
+    /**
+     * 浅拷贝，各题的提交信息在快照发布后不再修改，可以共享
+     */
+    @SuppressWarnings("unchecked")
+    private V copyRankVO(V rankVO) {
+        return BeanUtil.copyProperties(rankVO, (Class<V>) rankVO.getClass());
+    }
+
+    private TreeSet<R> newTree() {
+        return new TreeSet<>(rowComparator);
+    }
+
+    ReentrantLock getSyncLock() {
+        return syncLock;
+    }
+
+    String getSignature() {
+        return signature;
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    String getEpoch() {
+        return epoch;
+    }
+
+    Date getWatermark() {
+        return watermark;
+    }
+
+    void setWatermark(Date watermark) {
+        this.watermark = watermark;
+    }
+
+    long getLastSyncTime() {
+        return lastSyncTime;
+    }
+
+    void setLastSyncTime(long lastSyncTime) {
+        this.lastSyncTime = lastSyncTime;
+    }
+
+    long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    void setLastAccessTime(long lastAccessTime) {
+        this.lastAccessTime = lastAccessTime;
+    }
+
+    /**
+     * 榜单中的一个用户
+     */
+    protected static class Row {
+
+        protected final String uid;
+
+        protected final String username;
+
+        protected final String realname;
+
+        protected final String nickname;
+
+        protected final String school;
+
+        protected final String gender;
+
+        protected final String avatar;
+
+        boolean star;
+
+        boolean inTree;
+
+        /**
+         * 该用户的全部有效记录，key为记录id
+         */
+        final Map<Long, ContestRecordVO> recordById = new HashMap<>();
+
+        /**
+         * 按题目分组的有效记录，key为题目展示id，组内按记录id升序
+         */
+        final Map<String, Map<Long, ContestRecordVO>> records = new HashMap<>();
+
+        /**
+         * 是否已报名，只有无提交记录的用户才设置
+         */
+        protected Boolean registered;
+
+        protected Row(UserInfo userInfo) {
+            this.uid = userInfo.getUuid();
+            this.username = userInfo.getUsername();
+            this.realname = userInfo.getRealname();
+            this.nickname = userInfo.getNickname();
+            this.school = userInfo.getSchool();
+            this.gender = userInfo.getGender();
+            this.avatar = userInfo.getAvatar();
+        }
+
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.simplefanc.voj.backend.service.oj.scoreboard;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.simplefanc.voj.backend.dao.contest.ContestRecordEntityService;
+import com.simplefanc.voj.backend.dao.user.UserInfoEntityService;
+import com.simplefanc.voj.backend.pojo.vo.ContestRecordVO;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/10/26 15:10
+ * @Description: 比赛榜单引擎，为每场被访问的比赛（封榜视图与实时视图分别）维护一份内存中的增量榜单。
+ * 判题机评测完成后在 contest_record 上更新结果并刷新 gmt_modified，引擎按数据库时间水位只拉取此后变更的记录并逐条应用；
+ * 只有首次访问、比赛配置变化或重判（重建版本号变化）时才从数据库全量重建，重建版本号保存在redis中，多个后端实例共享
+ */
+@Component
+@Slf4j(topic = "voj")
+@RequiredArgsConstructor
+public class ContestScoreboardEngine {
+
+    /**
+     * 两次增量同步的最小间隔，榜单刷新高峰时同一场比赛每秒最多查询一次数据库
+     */
+    private final static long SYNC_INTERVAL_MILLIS = 1000L;
+
+    /**
+     * 增量查询向前回看的时间，覆盖记录的更新时间与事务提交之间的延迟，重复应用同一条记录不影响结果
+     */
+    private final static long SYNC_OVERLAP_MILLIS = 5 * 1000L;
+
+    /**
+     * 超过该时间未被访问的榜单会被回收，再次访问时重新加载
+     */
+    private final static long IDLE_EVICT_MILLIS = 30 * 60 * 1000L;
+
+    private final static long EPOCH_EXPIRE_DAYS = 7;
+
+    private final ContestRecordEntityService contestRecordEntityService;
+
+    private final UserInfoEntityService userInfoEntityService;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * key为 比赛id:是否封榜视图
+     */
+    private final Map<String, ContestScoreboard<?, ?>> scoreboards = new ConcurrentHashMap<>();
+
+    private Timer rebuildTimer;
+
+    private Timer syncTimer;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("voj.contest.scoreboard.size", scoreboards, Map::size)
+                .description("内存中维护的比赛榜单数")
+                .register(meterRegistry);
+        rebuildTimer = Timer.builder("voj.contest.scoreboard.sync").tag("type", "rebuild")
+                .description("比赛榜单从数据库同步的耗时")
+                .register(meterRegistry);
+        syncTimer = Timer.builder("voj.contest.scoreboard.sync").tag("type", "incremental")
+                .description("比赛榜单从数据库同步的耗时")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param sealed   是否为封榜视图
+     * @param useCache 为false时立即同步到最新数据，否则允许返回 {@link #SYNC_INTERVAL_MILLIS} 内的数据
+     */
+    public ACMContestScoreboard getACMScoreboard(Contest contest, boolean sealed, boolean useCache) {
+        return getScoreboard(contest, sealed, useCache, ACMContestScoreboard.class,
+                signature -> new ACMContestScoreboard(contest, sealed, signature, getStarUsernames(contest)));
+    }
+
+    /**
+     * @param sealed   是否为封榜视图
+     * @param useCache 为false时立即同步到最新数据，否则允许返回 {@link #SYNC_INTERVAL_MILLIS} 内的数据
+     */
+    public OIContestScoreboard getOIScoreboard(Contest contest, boolean sealed, boolean useCache) {
+        return getScoreboard(contest, sealed, useCache, OIContestScoreboard.class,
+                signature -> new OIContestScoreboard(contest, sealed, signature, getStarUsernames(contest)));
+    }
+
+    /**
+     * 重判后调用，所有后端实例的该比赛榜单在下次同步时从数据库重建
+     */
+    public void invalidate(Long cid) {
+        String key = RedisConstant.CONTEST_SCOREBOARD_EPOCH + cid;
+        stringRedisTemplate.opsForValue().increment(key);
+        stringRedisTemplate.expire(key, EPOCH_EXPIRE_DAYS, TimeUnit.DAYS);
+    }
+
+    /**
+     * 回收长时间未被访问的榜单，比赛结束后不再占用内存
+     */
+    @Scheduled(fixedDelay = 10 * 60 * 1000L)
+    public void evictIdleScoreboards() {
+        long now = System.currentTimeMillis();
+        scoreboards.values().removeIf(scoreboard -> now - scoreboard.getLastAccessTime() > IDLE_EVICT_MILLIS);
+    }
+
+    private <B extends ContestScoreboard<?, ?>> B getScoreboard(Contest contest, boolean sealed, boolean useCache,
+                                                                Class<B> type, Function<String, B> factory) {
+        String signature = getSignature(contest);
+        ContestScoreboard<?, ?> scoreboard = scoreboards.compute(contest.getId() + ":" + sealed,
+                (key, old) -> old != null && type.isInstance(old) && old.getSignature().equals(signature)
+                        ? old : factory.apply(signature));
+        sync(contest, scoreboard, useCache);
+        return type.cast(scoreboard);
+    }
+
+    private void sync(Contest contest, ContestScoreboard<?, ?> scoreboard, boolean useCache) {
+        long now = System.currentTimeMillis();
+        scoreboard.setLastAccessTime(now);
+        if (scoreboard.isLoaded() && useCache && now - scoreboard.getLastSyncTime() < SYNC_INTERVAL_MILLIS) {
+            return;
+        }
+        ReentrantLock syncLock = scoreboard.getSyncLock();
+        if (scoreboard.isLoaded() && useCache) {
+            // 其它请求正在同步，直接使用当前榜单
+            if (!syncLock.tryLock()) {
+                return;
+            }
+        } else {
+            syncLock.lock();
+        }
+        try {
+            if (scoreboard.isLoaded() && useCache
+                    && System.currentTimeMillis() - scoreboard.getLastSyncTime() < SYNC_INTERVAL_MILLIS) {
+                return;
+            }
+            String epoch = Optional.ofNullable(
+                    stringRedisTemplate.opsForValue().get(RedisConstant.CONTEST_SCOREBOARD_EPOCH + contest.getId()))
+                    .orElse("0");
+            // 先取数据库时间作为新的水位，查询期间发生的变更下次还会再查到
+            Date watermark = contestRecordEntityService.getCurrentTime();
+            long startTime = System.nanoTime();
+            if (!scoreboard.isLoaded() || !epoch.equals(scoreboard.getEpoch())) {
+                List<ContestRecordVO> contestRecordList =
+                        contestRecordEntityService.getScoreboardContestRecord(contest.getId(), null);
+                scoreboard.reset(epoch, getExcludedUids(contest));
+                apply(scoreboard, contestRecordList);
+                rebuildTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            } else {
+                Date since = new Date(scoreboard.getWatermark().getTime() - SYNC_OVERLAP_MILLIS);
+                List<ContestRecordVO> contestRecordList =
+                        contestRecordEntityService.getScoreboardContestRecord(contest.getId(), since);
+                apply(scoreboard, contestRecordList);
+                syncTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            }
+            scoreboard.publish();
+            scoreboard.setWatermark(watermark);
+            scoreboard.setLastSyncTime(System.currentTimeMillis());
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void apply(ContestScoreboard<?, ?> scoreboard, List<ContestRecordVO> contestRecordList) {
+        if (contestRecordList.isEmpty()) {
+            return;
+        }
+        Set<String> unknownUids = scoreboard.getUnknownUids(contestRecordList);
+        Map<String, UserInfo> userInfoMap = unknownUids.isEmpty()
+                ? Collections.emptyMap()
+                : userInfoEntityService.listByIds(unknownUids)
+                .stream()
+                .collect(Collectors.toMap(UserInfo::getUuid, userInfo -> userInfo));
+        scoreboard.apply(contestRecordList, userInfoMap);
+    }
+
+    /**
+     * 比赛未开启管理员参与排名时，超级管理员与比赛创建者的提交不计入榜单
+     */
+    private Set<String> getExcludedUids(Contest contest) {
+        if (contest.getContestAdminRank()) {
+            return Collections.emptySet();
+        }
+        Set<String> excludedUids = new HashSet<>(userInfoEntityService.getSuperAdminUidList());
+        excludedUids.add(contest.getUid());
+        return excludedUids;
+    }
+
+    /**
+     * 影响榜单计算的比赛配置，任何一项变化都需要重建榜单
+     */
+    private String getSignature(Contest contest) {
+        return Arrays.asList(contest.getType(), contest.getUid(), contest.getStartTime(), contest.getEndTime(),
+                contest.getSealRankTime(), contest.getOiRankScoreType(), contest.getContestAdminRank(),
+                contest.getStarAccount()).toString();
+    }
+
+    private Set<String> getStarUsernames(Contest contest) {
+        String starAccountStr = contest.getStarAccount();
+        if (StrUtil.isEmpty(starAccountStr)) {
+            return Collections.emptySet();
+        }
+        JSONObject jsonObject = JSONUtil.parseObj(starAccountStr);
+        List<String> accountList = jsonObject.get("star_account", List.class);
+        return Optional.ofNullable(accountList)
+                .orElse(Collections.emptyList())
+                .stream()
+                .filter(StrUtil::isNotEmpty)
+                .collect(Collectors.toSet());
+    }
+
+}
@@ -0,0 +1,290 @@
+package com.simplefanc.voj.backend.service.oj.scoreboard;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/10/28 10:20
+ * @Description: 榜单某一时刻的不可变快照，由 {@link ContestScoreboard#publish()} 在同步后生成。
+ * 完整视图与移除打星用户后的视图的排名、序号均已计算好，分页直接截取对应区间，当前用户与关注用户通过uid索引定位；
+ * 关键字搜索使用首次搜索时建立的 n-gram 倒排索引，只校验候选用户
+ */
+public class ContestScoreboardSnapshot<V> {
+
+    /**
+     * 倒排索引的最大 gram 长度，不超过该长度的关键字直接查倒排表
+     */
+    private static final int MAX_GRAM_LENGTH = 3;
+
+    private final ContestScoreboard<?, V> scoreboard;
+
+    private final List<? extends ContestScoreboard.Row> rows;
+
+    /**
+     * 移除打星用户后的视图中的用户，没有打星用户时与完整视图相同
+     */
+    private final List<? extends ContestScoreboard.Row> nonStarRows;
+
+    private final List<V> rankVOs;
+
+    private final List<V> nonStarRankVOs;
+
+    private final Map<String, Integer> indexByUid;
+
+    /**
+     * 用户在移除打星用户后的视图中的下标，没有打星用户时为null（与完整视图相同）
+     */
+    private final Map<String, Integer> nonStarIndexByUid;
+
+    /**
+     * 成绩为0的非打星用户的排名
+     */
+    private final int zeroRank;
+
+    private final Set<String> usernames;
+
+    /**
+     * gram -> 包含该 gram 的用户在完整视图中的下标（升序）
+     */
+    private volatile Map<String, int[]> gramIndex;
+
+    ContestScoreboardSnapshot(ContestScoreboard<?, V> scoreboard, List<? extends ContestScoreboard.Row> rows,
+                              List<V> rankVOs, List<V> nonStarRankVOs, int zeroRank) {
+        this.scoreboard = scoreboard;
+        this.rows = rows;
+        this.rankVOs = Collections.unmodifiableList(rankVOs);
+        this.nonStarRankVOs = nonStarRankVOs == rankVOs ? this.rankVOs : Collections.unmodifiableList(nonStarRankVOs);
+        this.zeroRank = zeroRank;
+        this.indexByUid = new HashMap<>(rows.size() * 2);
+        this.usernames = new HashSet<>(rows.size() * 2);
+        Map<String, Integer> nonStarIndex = nonStarRankVOs == rankVOs ? null : new HashMap<>(rows.size() * 2);
+        for (int i = 0; i < rows.size(); i++) {
+            ContestScoreboard.Row row = rows.get(i);
+            indexByUid.put(row.uid, i);
+            usernames.add(row.username);
+            if (nonStarIndex != null && !row.star) {
+                nonStarIndex.put(row.uid, nonStarIndex.size());
+            }
+        }
+        this.nonStarIndexByUid = nonStarIndex;
+        this.nonStarRows = nonStarIndex == null
+                ? rows
+                : rows.stream().filter(row -> !row.star).collect(Collectors.toList());
+    }
+
+    /**
+     * 有提交记录（出现在榜单中）的用户名
+     */
+    public Set<String> getUsernames() {
+        return Collections.unmodifiableSet(usernames);
+    }
+
+    /**
+     * 榜单分页，当前用户与关注用户置顶在最前面（与完整榜单的顺序一致）
+     *
+     * @param removeStar      是否移除打星用户
+     * @param currentUid      当前用户id，未登录为null
+     * @param concernedList   关注的用户（uid）列表
+     * @param keyword         按真实姓名、用户名、学校搜索的关键字
+     * @param noRecordUsers   追加在榜单末尾的无提交用户（比赛管理员查看时），可为空
+     * @param registeredUids  已报名的用户id
+     */
+    public Page<V> getRankPage(boolean removeStar, String currentUid, List<String> concernedList, String keyword,
+                               List<UserInfo> noRecordUsers, Set<String> registeredUids, int currentPage, int limit) {
+        List<List<V>> segments = getSegments(removeStar, currentUid, concernedList, keyword, noRecordUsers,
+                registeredUids);
+        int count = segments.stream().mapToInt(List::size).sum();
+        List<V> pageList = new ArrayList<>();
+        // 计算当前页第一条数据的下标
+        int currId = currentPage > 1 ? (currentPage - 1) * limit : 0;
+        int end = Math.min(currId + limit, count);
+        int offset = 0;
+        for (List<V> segment : segments) {
+            int from = Math.max(currId - offset, 0);
+            int to = Math.min(end - offset, segment.size());
+            if (from < to) {
+                pageList.addAll(segment.subList(from, to));
+            }
+            offset += segment.size();
+        }
+        Page<V> page = new Page<>(currentPage, limit);
+        page.setSize(limit);
+        page.setCurrent(currentPage);
+        page.setTotal(count);
+        page.setRecords(pageList);
+        return page;
+    }
+
+    /**
+     * 完整榜单（置顶用户在最前面），参数同 {@link #getRankPage}
+     */
+    public List<V> getRankList(boolean removeStar, String currentUid, List<String> concernedList, String keyword,
+                               List<UserInfo> noRecordUsers, Set<String> registeredUids) {
+        List<V> result = new ArrayList<>();
+        getSegments(removeStar, currentUid, concernedList, keyword, noRecordUsers, registeredUids)
+                .forEach(result::addAll);
+        return result;
+    }
+
+    /**
+     * 依次为置顶用户、榜单用户、无提交用户
+     */
+    private List<List<V>> getSegments(boolean removeStar, String currentUid, List<String> concernedList,
+                                      String keyword, List<UserInfo> noRecordUsers, Set<String> registeredUids) {
+        boolean hasKeyword = StrUtil.isNotEmpty(keyword);
+        List<V> view = removeStar ? nonStarRankVOs : rankVOs;
+        List<? extends ContestScoreboard.Row> viewRows = getViewRows(removeStar);
+
+        List<V> extraList = new ArrayList<>();
+        Map<String, V> extraByUid = new HashMap<>();
+        if (noRecordUsers != null) {
+            for (UserInfo userInfo : noRecordUsers) {
+                boolean star = scoreboard.isStarUser(userInfo.getUsername());
+                if (removeStar && star || hasKeyword && !matches(keyword, userInfo.getRealname(),
+                        userInfo.getUsername(), userInfo.getSchool())) {
+                    continue;
+                }
+                V rankVO = scoreboard.toNoRecordRankVO(userInfo,
+                        registeredUids != null && registeredUids.contains(userInfo.getUuid()));
+                scoreboard.setRank(rankVO, star ? -1 : zeroRank, view.size() + extraList.size() + 1);
+                extraList.add(rankVO);
+                extraByUid.put(userInfo.getUuid(), rankVO);
+            }
+        }
+
+        Set<String> topUids = new LinkedHashSet<>();
+        if (StrUtil.isNotEmpty(currentUid)) {
+            topUids.add(currentUid);
+        }
+        if (concernedList != null) {
+            topUids.addAll(concernedList);
+        }
+        int[] topIndexes = topUids.stream()
+                .map(uid -> getViewIndex(uid, removeStar))
+                .filter(index -> index != null
+                        && (!hasKeyword || matches(keyword, viewRows.get(index))))
+                .mapToInt(Integer::intValue)
+                .sorted()
+                .toArray();
+        List<V> topList = new ArrayList<>(topIndexes.length);
+        for (int index : topIndexes) {
+            topList.add(view.get(index));
+        }
+        topUids.stream().map(extraByUid::get).filter(Objects::nonNull).forEach(topList::add);
+
+        List<V> mainList = hasKeyword ? search(keyword, removeStar) : view;
+        return Arrays.asList(topList, mainList, extraList);
+    }
+
+    private Integer getViewIndex(String uid, boolean removeStar) {
+        if (removeStar && nonStarIndexByUid != null) {
+            return nonStarIndexByUid.get(uid);
+        }
+        return indexByUid.get(uid);
+    }
+
+    private List<? extends ContestScoreboard.Row> getViewRows(boolean removeStar) {
+        return removeStar ? nonStarRows : rows;
+    }
+
+    private List<V> search(String keyword, boolean removeStar) {
+        int[] candidates = getCandidates(keyword);
+        List<V> result = new ArrayList<>();
+        for (int index : candidates) {
+            ContestScoreboard.Row row = rows.get(index);
+            if (removeStar && row.star) {
+                continue;
+            }
+            // 不超过最大 gram 长度的关键字，倒排表即为精确结果
+            if (keyword.length() > MAX_GRAM_LENGTH && !matches(keyword, row)) {
+                continue;
+            }
+            result.add(removeStar && nonStarIndexByUid != null
+                    ? nonStarRankVOs.get(nonStarIndexByUid.get(row.uid))
+                    : rankVOs.get(index));
+        }
+        return result;
+    }
+
+    private int[] getCandidates(String keyword) {
+        Map<String, int[]> index = getGramIndex();
+        if (keyword.length() <= MAX_GRAM_LENGTH) {
+            return index.getOrDefault(keyword, new int[0]);
+        }
+        // 取关键字所有 gram 中倒排表最短的一个作为候选
+        int[] candidates = null;
+        for (int i = 0; i + MAX_GRAM_LENGTH <= keyword.length(); i++) {
+            int[] postings = index.getOrDefault(keyword.substring(i, i + MAX_GRAM_LENGTH), new int[0]);
+            if (candidates == null || postings.length < candidates.length) {
+                candidates = postings;
+            }
+        }
+        return candidates;
+    }
+
+    private Map<String, int[]> getGramIndex() {
+        Map<String, int[]> index = gramIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = gramIndex;
+                if (index == null) {
+                    index = buildGramIndex();
+                    gramIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private Map<String, int[]> buildGramIndex() {
+        Map<String, List<Integer>> postings = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            ContestScoreboard.Row row = rows.get(i);
+            Set<String> grams = new HashSet<>();
+            addGrams(grams, row.realname);
+            addGrams(grams, row.username);
+            addGrams(grams, row.school);
+            for (String gram : grams) {
+                postings.computeIfAbsent(gram, k -> new ArrayList<>()).add(i);
+            }
+        }
+        Map<String, int[]> index = new HashMap<>(postings.size() * 2);
+        postings.forEach((gram, list) -> index.put(gram, list.stream().mapToInt(Integer::intValue).toArray()));
+        return index;
+    }
+
+    private static void addGrams(Set<String> grams, String text) {
+        if (StrUtil.isEmpty(text)) {
+            return;
+        }
+        for (int length = 1; length <= MAX_GRAM_LENGTH; length++) {
+            for (int i = 0; i + length <= text.length(); i++) {
+                grams.add(text.substring(i, i + length));
+            }
+        }
+    }
+
+    private static boolean matches(String keyword, ContestScoreboard.Row row) {
+        return matches(keyword, row.realname, row.username, row.school);
+    }
+
+    private static boolean matches(String keyword, String realname, String username, String school) {
+        return StrUtil.contains(realname, keyword) || StrUtil.contains(username, keyword)
+                || StrUtil.contains(school, keyword);
+    }
+
+}
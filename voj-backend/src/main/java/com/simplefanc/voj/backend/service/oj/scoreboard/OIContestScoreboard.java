@@ -0,0 +1,174 @@
+package com.simplefanc.voj.backend.service.oj.scoreboard;
+
+import cn.hutool.core.date.DateUtil;
+import com.simplefanc.voj.backend.pojo.vo.ContestRecordVO;
+import com.simplefanc.voj.backend.pojo.vo.OIContestRankVO;
+import com.simplefanc.voj.common.constants.ContestConstant;
+import com.simplefanc.voj.common.constants.ContestEnum;
+import com.simplefanc.voj.common.pojo.entity.contest.Contest;
+import com.simplefanc.voj.common.pojo.entity.user.UserInfo;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/10/26 14:02
+ * @Description: OI机制的增量榜单：每道题取最近一次或最高分的提交计分，先按总得分排名，再按满分提交的总耗时排名
+ */
+public class OIContestScoreboard extends ContestScoreboard<OIContestScoreboard.OIRow, OIContestRankVO> {
+
+    /**
+     * 根据总得分进行降序，再根据总时耗升序排序
+     */
+    private static final Comparator<OIRow> SCORE_COMPARATOR = Comparator
+            .comparing((OIRow row) -> row.totalScore, Comparator.reverseOrder())
+            .thenComparing(row -> row.totalTime);
+
+    private final boolean isHighestRankScore;
+
+    OIContestScoreboard(Contest contest, boolean sealed, String signature, Set<String> starUsernames) {
+        super(contest, sealed, signature, starUsernames, SCORE_COMPARATOR);
+        this.isHighestRankScore = ContestConstant.OI_RANK_HIGHEST_SCORE.equals(contest.getOiRankScoreType());
+    }
+
+    @Override
+    protected boolean isEligible(ContestRecordVO contestRecord) {
+        return contestRecord.getStatus() != null && contestRecord.getSubmitTime() != null
+                && DateUtil.isIn(contestRecord.getSubmitTime(), startTime, sealed ? sealRankTime : endTime);
+    }
+
+    @Override
+    protected OIRow newRow(UserInfo userInfo) {
+        return new OIRow(userInfo);
+    }
+
+    /**
+     * 最高分：取该题得分最高的提交（无得分的提交不计）；最近一次：取该题提交耗时time最大的提交。
+     * 相同分数或相同时间的多个提交中，取满分（AC）提交的最优耗时作为该题耗时
+     */
+    @Override
+    protected void updateCell(OIRow row, String displayId, Collection<ContestRecordVO> contestRecords) {
+        OICell old = row.cells.remove(displayId);
+        if (old != null) {
+            row.totalScore -= old.getScoreValue();
+            if (old.useTime != null) {
+                row.totalTime -= old.useTime;
+            }
+        }
+        if (contestRecords == null) {
+            return;
+        }
+
+        ContestRecordVO chosen = null;
+        for (ContestRecordVO contestRecord : contestRecords) {
+            if (isHighestRankScore) {
+                if (contestRecord.getScore() != null
+                        && (chosen == null || contestRecord.getScore() > chosen.getScore())) {
+                    chosen = contestRecord;
+                }
+            } else if (chosen == null || contestRecord.getTime() >= chosen.getTime()) {
+                // 记录按id升序，同一时间取最后一条
+                chosen = contestRecord;
+            }
+        }
+        if (chosen == null) {
+            return;
+        }
+        OICell cell = new OICell();
+        cell.score = chosen.getScore();
+        for (ContestRecordVO contestRecord : contestRecords) {
+            boolean isSelected = isHighestRankScore
+                    ? Objects.equals(contestRecord.getScore(), chosen.getScore())
+                    : Objects.equals(contestRecord.getTime(), chosen.getTime());
+            if (isSelected && Objects.equals(contestRecord.getStatus(), ContestEnum.RECORD_AC.getCode())
+                    && contestRecord.getUseTime() != null
+                    && (cell.useTime == null || contestRecord.getUseTime() < cell.useTime)) {
+                cell.useTime = contestRecord.getUseTime();
+            }
+        }
+        row.cells.put(displayId, cell);
+        row.totalScore += cell.getScoreValue();
+        if (cell.useTime != null) {
+            row.totalTime += cell.useTime;
+        }
+    }
+
+    @Override
+    protected boolean isVisible(OIRow row) {
+        return !row.cells.isEmpty();
+    }
+
+    @Override
+    protected OIContestRankVO toRankVO(OIRow row) {
+        Map<String, Integer> submissionInfo = new HashMap<>();
+        Map<String, Integer> timeInfo = new HashMap<>();
+        row.cells.forEach((displayId, cell) -> {
+            submissionInfo.put(displayId, cell.score);
+            if (cell.useTime != null) {
+                timeInfo.put(displayId, cell.useTime);
+            }
+        });
+        return new OIContestRankVO()
+                .setRealname(row.realname)
+                .setUid(row.uid)
+                .setUsername(row.username)
+                .setSchool(row.school)
+                .setAvatar(row.avatar)
+                .setGender(row.gender)
+                .setNickname(row.nickname)
+                .setRegistered(row.registered)
+                .setTotalScore(row.totalScore)
+                .setTotalTime(row.totalTime)
+                .setSubmissionInfo(submissionInfo)
+                // 没有满分提交的用户不返回耗时信息
+                .setTimeInfo(timeInfo.isEmpty() ? null : timeInfo);
+    }
+
+    @Override
+    protected void setRank(OIContestRankVO rankVO, int rank, int seq) {
+        rankVO.setRank(rank).setSeq(seq);
+    }
+
+    @Override
+    protected boolean isZeroScore(OIRow row) {
+        return row.totalScore == 0 && row.totalTime == 0;
+    }
+
+    static class OIRow extends ContestScoreboard.Row {
+
+        private int totalScore;
+
+        private int totalTime;
+
+        private final Map<String, OICell> cells = new HashMap<>();
+
+        OIRow(UserInfo userInfo) {
+            super(userInfo);
+        }
+
+    }
+
+    private static class OICell {
+
+        /**
+         * 计分提交的得分，最近一次提交可能还没有得分
+         */
+        private Integer score;
+
+        /**
+         * 满分提交的最优耗时
+         */
+        private Integer useTime;
+
+        int getScoreValue() {
+            return score == null ? 0 : score;
+        }
+
+    }
+
+}
@@ -10,6 +10,7 @@ import com.simplefanc.voj.backend.dao.common.FileEntityService;
 import com.simplefanc.voj.backend.dao.judge.JudgeEntityService;
 import com.simplefanc.voj.backend.dao.msg.AdminSysNoticeEntityService;
 import com.simplefanc.voj.backend.dao.msg.UserSysNoticeEntityService;
+import com.simplefanc.voj.backend.dao.problem.ProblemStatEntityService;
 import com.simplefanc.voj.backend.dao.user.SessionEntityService;
 import com.simplefanc.voj.backend.dao.user.UserInfoEntityService;
 import com.simplefanc.voj.backend.service.admin.user.UserRecordService;
@@ -23,6 +24,9 @@ import com.simplefanc.voj.common.pojo.entity.msg.UserSysNotice;
 import com.simplefanc.voj.common.pojo.entity.user.Session;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
@@ -65,6 +69,8 @@ public class ScheduleService {
 
     private final RejudgeService rejudgeService;
 
+    private final ProblemStatEntityService problemStatEntityService;
+
     private final FilePathProperties filePathProps;
 
     /**
@@ -233,4 +239,46 @@ public class ScheduleService {
         }
     }
 
+    /**
+     * @MethodName rebuildUserStat
+     * @Description 每天4点半重建排行榜使用的 user_stat 表，修正重判、删除提交等未经判题机的变更
+     * @Since 2023/10/29
+     */
+    @Scheduled(cron = "0 30 4 * * *")
+    public void rebuildUserStat() {
+        userRecordService.rebuildUserStat();
+    }
+
+    /**
+     * user_stat 表为空时（首次部署）在启动后立即构建，否则排行榜要等到当晚重建后才有数据
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void initUserStat() {
+        if (userRecordService.countUserStat() == 0) {
+            userRecordService.rebuildUserStat();
+        }
+    }
+
+    /**
+     * @MethodName rebuildProblemStat
+     * @Description 每天4点40分重建题目列表使用的 problem_stat 表，修正删除提交等未经判题机的变更
+     * @Since 2023/11/8
+     */
+    @Scheduled(cron = "0 40 4 * * *")
+    public void rebuildProblemStat() {
+        problemStatEntityService.rebuildProblemStat();
+    }
+
+    /**
+     * problem_stat 表为空时（首次部署）在启动后立即构建
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void initProblemStat() {
+        if (problemStatEntityService.countProblemStat() == 0) {
+            problemStatEntityService.rebuildProblemStat();
+        }
+    }
+
 }
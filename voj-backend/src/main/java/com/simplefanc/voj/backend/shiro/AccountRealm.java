@@ -2,12 +2,7 @@ package com.simplefanc.voj.backend.shiro;
 
 import cn.hutool.core.bean.BeanUtil;
 import com.simplefanc.voj.backend.common.utils.JwtUtil;
-import com.simplefanc.voj.backend.mapper.RoleAuthMapper;
-import com.simplefanc.voj.backend.mapper.UserRoleMapper;
 import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
-import com.simplefanc.voj.common.pojo.entity.user.Auth;
-import com.simplefanc.voj.common.pojo.entity.user.Role;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.shiro.authc.*;
 import org.apache.shiro.authz.AuthorizationInfo;
@@ -16,9 +11,6 @@ import org.apache.shiro.realm.AuthorizingRealm;
 import org.apache.shiro.subject.PrincipalCollection;
 import org.springframework.stereotype.Component;
 
-import java.util.LinkedList;
-import java.util.List;
-
 /**
  * @Author: chenfan
  * @Date: 2021/7/19 22:57
@@ -26,14 +18,18 @@ import java.util.List;
  */
 @Slf4j(topic = "voj")
 @Component
-@RequiredArgsConstructor
 public class AccountRealm extends AuthorizingRealm {
 
     private final JwtUtil jwtUtil;
 
-    private final UserRoleMapper userRoleMapper;
+    private final AuthContextCache authContextCache;
 
-    private final RoleAuthMapper roleAuthMapper;
+    public AccountRealm(JwtUtil jwtUtil, AuthContextCache authContextCache) {
+        this.jwtUtil = jwtUtil;
+        this.authContextCache = authContextCache;
+        // 角色与权限由本机的 AuthContextCache 提供，不再经过 Redis 中的授权缓存
+        setAuthorizationCachingEnabled(false);
+    }
 
     @Override
     public boolean supports(AuthenticationToken token) {
@@ -43,27 +39,15 @@ public class AccountRealm extends AuthorizingRealm {
     @Override
     protected AuthorizationInfo doGetAuthorizationInfo(PrincipalCollection principals) {
         AccountProfile user = (AccountProfile) principals.getPrimaryPrincipal();
-        // 角色权限列表
-        List<String> permissionsNameList = new LinkedList<>();
-        // 用户角色列表
-        List<String> roleNameList = new LinkedList<>();
-        // 获取该用户角色所有的权限
-        List<Role> roles = userRoleMapper.getRolesByUid(user.getUid());
-        // 角色变动，同时需要修改会话里面的数据
-        UserRolesVO userInfo = UserSessionUtil.getUserInfo();
-        userInfo.setRoles(roles);
-        UserSessionUtil.setUserInfo(userInfo);
-        for (Role role : roles) {
-            roleNameList.add(role.getRole());
-            for (Auth auth : roleAuthMapper.getRoleAuths(role.getId()).getAuths()) {
-                permissionsNameList.add(auth.getPermission());
-            }
-        }
+        // 角色与会话中的用户信息来自同一份缓存，角色变动时两者一起失效
+        AuthContextCache.AuthContext authContext = authContextCache.getAuthorization(user.getUid());
         SimpleAuthorizationInfo authorizationInfo = new SimpleAuthorizationInfo();
-
-        authorizationInfo.addRoles(roleNameList);
+        if (authContext == null) {
+            return authorizationInfo;
+        }
+        authorizationInfo.addRoles(authContext.getRoleNames());
         // 添加权限
-        authorizationInfo.addStringPermissions(permissionsNameList);
+        authorizationInfo.addStringPermissions(authContext.getPermissions());
         return authorizationInfo;
     }
 
@@ -71,7 +55,7 @@ public class AccountRealm extends AuthorizingRealm {
     protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token) {
         JwtToken jwt = (JwtToken) token;
         String userId = jwtUtil.getClaimByToken((String) jwt.getPrincipal());
-        UserRolesVO userRoles = userRoleMapper.getUserRoles(userId, null);
+        UserRolesVO userRoles = authContextCache.getUserRoles(userId, jwt.getVersion());
         if (userRoles == null) {
             throw new UnknownAccountException("账户不存在！");
         }
@@ -0,0 +1,212 @@
+package com.simplefanc.voj.backend.shiro;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.simplefanc.voj.backend.common.utils.JwtUtil;
+import com.simplefanc.voj.backend.mapper.RoleAuthMapper;
+import com.simplefanc.voj.backend.mapper.UserRoleMapper;
+import com.simplefanc.voj.backend.pojo.vo.RoleAuthsVO;
+import com.simplefanc.voj.backend.pojo.vo.UserRolesVO;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import com.simplefanc.voj.common.pojo.entity.user.Auth;
+import com.simplefanc.voj.common.pojo.entity.user.Role;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/11/3 15:20
+ * @Description: 本机缓存的用户认证与授权信息（用户信息、角色、权限），避免每个请求都查询数据库。
+ * 每个用户在 Redis 中有一个版本号，用户信息或角色变更时调用 {@link #invalidate(String)} 递增版本号，
+ * 各节点在请求时读取版本号（与 token 状态在同一次 Redis 往返中读取），版本号变化后重新从数据库加载
+ */
+@Slf4j(topic = "voj")
+@Component
+public class AuthContextCache {
+
+    private final UserRoleMapper userRoleMapper;
+
+    private final RoleAuthMapper roleAuthMapper;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+
+    /**
+     * uid -> 认证与授权信息
+     */
+    private final Cache<String, AuthContext> authContexts = Caffeine.newBuilder()
+            .maximumSize(10000)
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * 角色id -> 权限，角色的权限只在初始化数据库时设置
+     */
+    private final Cache<Long, List<String>> rolePermissions = Caffeine.newBuilder()
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .build();
+
+    public AuthContextCache(UserRoleMapper userRoleMapper, RoleAuthMapper roleAuthMapper,
+                            RedisTemplate<String, Object> redisTemplate) {
+        this.userRoleMapper = userRoleMapper;
+        this.roleAuthMapper = roleAuthMapper;
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 一次 Redis 往返读取 token 状态与认证信息版本号
+     */
+    public TokenState getTokenState(String uid) {
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                ops.hasKey(JwtUtil.TOKEN_REFRESH + uid);
+                ops.hasKey(JwtUtil.TOKEN_KEY + uid);
+                ops.opsForValue().get(RedisConstant.AUTH_CONTEXT_VERSION + uid);
+                return null;
+            }
+        });
+        TokenState state = new TokenState();
+        // 过了需更新token时间，但是还未过期
+        state.needRefresh = !Boolean.TRUE.equals(results.get(0)) && Boolean.TRUE.equals(results.get(1));
+        state.version = toVersion(results.get(2));
+        return state;
+    }
+
+    /**
+     * @param version 当前请求读取到的版本号，为null时从 Redis 读取
+     * @return 用户信息与角色，用户不存在时返回null；返回的是副本，可以修改
+     */
+    public UserRolesVO getUserRoles(String uid, Long version) {
+        AuthContext context = getAuthContext(uid, version);
+        return context == null ? null : copy(context.userRoles);
+    }
+
+    /**
+     * 用户的角色与权限，优先使用本请求认证时已校验过版本号的缓存
+     */
+    public AuthContext getAuthorization(String uid) {
+        AuthContext context = authContexts.getIfPresent(uid);
+        return context != null ? context : getAuthContext(uid, null);
+    }
+
+    /**
+     * 用户信息或角色变更后调用，所有节点的缓存在下一个请求时失效
+     */
+    public void invalidate(String uid) {
+        // 版本号不设置过期时间，过期后从0重新计数会与节点缓存中的旧版本号相同，导致旧缓存继续被使用
+        redisTemplate.opsForValue().increment(RedisConstant.AUTH_CONTEXT_VERSION + uid);
+        authContexts.invalidate(uid);
+    }
+
+    public void invalidate(List<String> uidList) {
+        uidList.forEach(this::invalidate);
+    }
+
+    private AuthContext getAuthContext(String uid, Long version) {
+        if (version == null) {
+            version = toVersion(redisTemplate.opsForValue().get(RedisConstant.AUTH_CONTEXT_VERSION + uid));
+        }
+        AuthContext context = authContexts.getIfPresent(uid);
+        if (context != null && context.version == version) {
+            return context;
+        }
+        UserRolesVO userRoles = userRoleMapper.getUserRoles(uid, null);
+        if (userRoles == null) {
+            authContexts.invalidate(uid);
+            return null;
+        }
+        context = new AuthContext(version, userRoles, loadPermissions(userRoles.getRoles()));
+        authContexts.put(uid, context);
+        return context;
+    }
+
+    private Set<String> loadPermissions(List<Role> roles) {
+        if (roles == null || roles.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> permissions = new LinkedHashSet<>();
+        for (Role role : roles) {
+            permissions.addAll(rolePermissions.get(role.getId(), this::loadRolePermissions));
+        }
+        return permissions;
+    }
+
+    private List<String> loadRolePermissions(Long roleId) {
+        List<String> permissions = new ArrayList<>();
+        RoleAuthsVO roleAuths = roleAuthMapper.getRoleAuths(roleId);
+        if (roleAuths != null && roleAuths.getAuths() != null) {
+            for (Auth auth : roleAuths.getAuths()) {
+                if (auth.getPermission() != null) {
+                    permissions.add(auth.getPermission());
+                }
+            }
+        }
+        return permissions;
+    }
+
+    private static long toVersion(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    private static UserRolesVO copy(UserRolesVO userRoles) {
+        UserRolesVO copy = BeanUtil.copyProperties(userRoles, UserRolesVO.class);
+        if (userRoles.getRoles() != null) {
+            copy.setRoles(new ArrayList<>(userRoles.getRoles()));
+        }
+        return copy;
+    }
+
+    public static class TokenState {
+
+        /**
+         * 是否需要刷新token
+         */
+        public boolean needRefresh;
+
+        public long version;
+
+    }
+
+    public static class AuthContext {
+
+        private final long version;
+
+        private final UserRolesVO userRoles;
+
+        private final List<String> roleNames = new ArrayList<>();
+
+        private final Set<String> permissions;
+
+        AuthContext(long version, UserRolesVO userRoles, Set<String> permissions) {
+            this.version = version;
+            this.userRoles = userRoles;
+            this.permissions = Collections.unmodifiableSet(permissions);
+            if (userRoles.getRoles() != null) {
+                userRoles.getRoles().forEach(role -> roleNames.add(role.getRole()));
+            }
+        }
+
+        public List<String> getRoleNames() {
+            return Collections.unmodifiableList(roleNames);
+        }
+
+        public Set<String> getPermissions() {
+            return permissions;
+        }
+
+    }
+
+}
@@ -31,10 +31,14 @@ public class JwtFilter extends AuthenticatingFilter {
 
     private final static String TOKEN_LOCK = "token-lock:";
 
+    private final static String AUTH_CONTEXT_VERSION_ATTRIBUTE = "authContextVersion";
+
     private final JwtUtil jwtUtil;
 
     private final RedisUtil redisUtil;
 
+    private final AuthContextCache authContextCache;
+
     /**
      * 拦截请求之后，用于把令牌字符串封装成令牌对象
      *
@@ -50,7 +54,7 @@ public class JwtFilter extends AuthenticatingFilter {
         if (StrUtil.isEmpty(jwt)) {
             return null;
         }
-        return new JwtToken(jwt);
+        return new JwtToken(jwt, (Long) request.getAttribute(AUTH_CONTEXT_VERSION_ATTRIBUTE));
     }
 
     /**
@@ -72,7 +76,10 @@ public class JwtFilter extends AuthenticatingFilter {
             return true;
         }
         String userId = jwtUtil.getClaimByToken(token);
-        if (!redisUtil.hasKey(JwtUtil.TOKEN_REFRESH + userId) && redisUtil.hasKey(JwtUtil.TOKEN_KEY + userId)) {
+        // token状态与认证信息版本号在同一次Redis往返中读取
+        AuthContextCache.TokenState tokenState = authContextCache.getTokenState(userId);
+        request.setAttribute(AUTH_CONTEXT_VERSION_ATTRIBUTE, tokenState.version);
+        if (tokenState.needRefresh) {
             // 过了需更新token时间，但是还未过期，则进行token刷新
             HttpServletResponse httpResponse = (HttpServletResponse) servletResponse;
             HttpServletRequest httpRequest = (HttpServletRequest) servletRequest;
@@ -11,10 +11,24 @@ public class JwtToken implements AuthenticationToken {
 
     private String token;
 
+    /**
+     * 过滤器读取到的用户认证信息版本号，为null时由 {@link AuthContextCache} 自行读取
+     */
+    private Long version;
+
     public JwtToken(String token) {
         this.token = token;
     }
 
+    public JwtToken(String token, Long version) {
+        this.token = token;
+        this.version = version;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
     @Override
     public Object getPrincipal() {
         return token;
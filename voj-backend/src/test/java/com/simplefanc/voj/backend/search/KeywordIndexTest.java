@@ -0,0 +1,124 @@
+package com.simplefanc.voj.backend.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 校验二元组倒排索引的搜索结果与 like '%keyword%'（不区分大小写）一致，以及替换、删除记录后倒排表被清理
+ */
+public class KeywordIndexTest {
+
+    private final static int LIMIT = 1000;
+
+    private KeywordIndex<Long> index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new KeywordIndex<>();
+        // 与题目索引一致：0 为题目id，1 为标题
+        index.put(1L, "P1000", "A+B Problem");
+        index.put(2L, "P1001", "Hello World");
+        index.put(3L, "HDU-1000", "a+b again");
+        index.put(4L, "P1002", null);
+    }
+
+    @Test
+    public void searchSingleCharacter() {
+        assertEquals(set(1L, 3L), set(index.search("+", LIMIT)));
+        assertEquals(set(1L, 3L), set(index.search("B", LIMIT)));
+        assertEquals(set(2L), set(index.search("w", LIMIT)));
+        // 单个字符也只匹配指定的字段
+        assertEquals(set(3L), set(index.search("h", LIMIT, 0)));
+        assertEquals(Collections.emptyList(), index.search("z", LIMIT));
+    }
+
+    @Test
+    public void searchIgnoresCase() {
+        assertEquals(set(1L, 3L), set(index.search("a+B", LIMIT)));
+        assertEquals(set(2L), set(index.search("WORLD", LIMIT)));
+        assertEquals(set(1L, 2L, 4L), set(index.search("p10", LIMIT)));
+    }
+
+    @Test
+    public void searchChecksWholeKeyword() {
+        // 每个二元组都有记录，但没有记录包含完整的关键字
+        assertEquals(Collections.emptyList(), index.search("P1000 World", LIMIT));
+        assertEquals(Collections.emptyList(), index.search("worldw", LIMIT));
+    }
+
+    @Test
+    public void searchGramWithoutPosting() {
+        assertEquals(Collections.emptyList(), index.search("qz", LIMIT));
+        assertEquals(Collections.emptyList(), index.search("hello!", LIMIT));
+    }
+
+    @Test
+    public void searchOverLimitReturnsNull() {
+        assertNull(index.search("p", 2));
+        assertNull(index.search("10", 3));
+        assertEquals(set(1L, 2L, 3L, 4L), set(index.search("10", 4)));
+        assertEquals(Collections.emptyList(), index.search("qz", 0));
+    }
+
+    @Test
+    public void searchRestrictedToField() {
+        // searchProblemIds / searchUsernames 只匹配第 0 个字段
+        assertEquals(set(1L, 3L), set(index.search("1000", LIMIT, 0)));
+        assertEquals(Collections.emptyList(), index.search("problem", LIMIT, 0));
+        assertEquals(set(1L), set(index.search("problem", LIMIT)));
+        assertEquals(set(1L), set(index.search("problem", LIMIT, 1)));
+        assertEquals(Collections.emptyList(), index.search("p1002", LIMIT, 1));
+    }
+
+    @Test
+    public void replaceCleansUpPostings() {
+        index.put(2L, "P1001", "Goodbye");
+        assertEquals(Collections.emptyList(), index.search("world", LIMIT));
+        assertEquals(set(2L), set(index.search("goodbye", LIMIT)));
+        assertEquals(4, index.size());
+
+        index.put(2L, "P1001", "Hello World");
+        int gramCount = index.gramCount();
+        index.put(2L, "P1001", "Goodbye");
+        index.put(2L, "P1001", "Hello World");
+        assertEquals(gramCount, index.gramCount());
+    }
+
+    @Test
+    public void removeCleansUpPostings() {
+        index.remove(2L);
+        assertEquals(Collections.emptyList(), index.search("world", LIMIT));
+        assertEquals(Collections.emptyList(), index.search("w", LIMIT));
+        assertEquals(set(1L, 4L), set(index.search("p100", LIMIT)));
+        assertEquals(3, index.size());
+        // 删除不存在的记录不影响索引
+        index.remove(5L);
+        assertEquals(3, index.size());
+
+        for (long key = 1; key <= 4; key++) {
+            index.remove(key);
+        }
+        assertEquals(0, index.size());
+        assertEquals(0, index.gramCount());
+        assertEquals(Collections.emptyList(), index.search("a", LIMIT));
+    }
+
+    @SafeVarargs
+    private static <T> Set<T> set(T... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static <T> Set<T> set(List<T> values) {
+        return new HashSet<>(values);
+    }
+
+}
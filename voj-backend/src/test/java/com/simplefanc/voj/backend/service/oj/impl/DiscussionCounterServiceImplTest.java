@@ -0,0 +1,201 @@
+package com.simplefanc.voj.backend.service.oj.impl;
+
+import com.simplefanc.voj.backend.mapper.CommentMapper;
+import com.simplefanc.voj.backend.mapper.DiscussionMapper;
+import com.simplefanc.voj.backend.service.oj.DiscussionCounterService.CountType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 需要本地 Redis（默认 localhost:6379，可用 -Dvoj.test.redis.host/port 指定，使用 15 号库），连接不上时跳过。
+ * 数据库由内存中的 map 代替，校验并发累加与写入同时进行时，数据库中的值加上 Redis 中的增量等于累加总数
+ */
+public class DiscussionCounterServiceImplTest {
+
+    private final static int THREADS = 8;
+
+    private final static int INCREMENTS_PER_THREAD = 500;
+
+    private final static int IDS = 20;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 讨论id -> 数据库中的浏览数
+     */
+    private final Map<Integer, Long> database = new ConcurrentHashMap<>();
+
+    private final Set<String> flushIds = ConcurrentHashMap.newKeySet();
+
+    private DiscussionCounterServiceImpl discussionCounterService;
+
+    @BeforeEach
+    public void setUp() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("voj.test.redis.host", "localhost"),
+                Integer.getInteger("voj.test.redis.port", 6379));
+        configuration.setDatabase(15);
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        boolean available;
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            available = connection.ping() != null;
+        } catch (Exception e) {
+            available = false;
+        }
+        assumeTrue(available, "Redis is not available");
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        clearKeys();
+
+        DiscussionMapper discussionMapper = mock(DiscussionMapper.class);
+        when(discussionMapper.addCounts(anyString(), anyMap())).thenAnswer(invocation -> {
+            Map<Integer, Long> deltas = invocation.getArgument(1);
+            deltas.forEach((id, delta) -> database.merge(id, delta, Long::sum));
+            return deltas.size();
+        });
+        when(discussionMapper.insertCounterFlush(anyString()))
+                .thenAnswer(invocation -> flushIds.add(invocation.getArgument(0)) ? 1 : 0);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        discussionCounterService = new DiscussionCounterServiceImpl(stringRedisTemplate, transactionTemplate,
+                discussionMapper, mock(CommentMapper.class), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (stringRedisTemplate != null) {
+            clearKeys();
+        }
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+
+    @Test
+    public void concurrentIncrDuringFlush() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<?>> incrFutures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            incrFutures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < INCREMENTS_PER_THREAD; i++) {
+                    discussionCounterService.incr(CountType.DISCUSSION_VIEW_NUM, i % IDS + 1, 1);
+                }
+                return null;
+            }));
+        }
+        Future<?> flusher = executor.submit(() -> {
+            start.await();
+            while (running.get()) {
+                discussionCounterService.flush();
+            }
+            return null;
+        });
+        start.countDown();
+        for (Future<?> future : incrFutures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        running.set(false);
+        flusher.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertEquals(THREADS * INCREMENTS_PER_THREAD, totalOf(ids()));
+
+        // 全部写入后 Redis 中不再有增量
+        discussionCounterService.flush();
+        discussionCounterService.flush();
+        assertTrue(discussionCounterService.getPending(CountType.DISCUSSION_VIEW_NUM, ids()).isEmpty());
+        assertEquals(THREADS * INCREMENTS_PER_THREAD,
+                database.values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void pendingBatchAlreadyWrittenIsNotAppliedAgain() {
+        String pendingKey = pendingKey();
+        stringRedisTemplate.opsForHash().put(pendingKey, "1", "5");
+        stringRedisTemplate.opsForHash().put(pendingKey, "flush_id", "written");
+        flushIds.add("written");
+
+        assertEquals(5L, discussionCounterService.getPending(CountType.DISCUSSION_VIEW_NUM, ids()).get(1));
+        discussionCounterService.flush();
+
+        assertFalse(database.containsKey(1));
+        assertFalse(Boolean.TRUE.equals(stringRedisTemplate.hasKey(pendingKey)));
+    }
+
+    @Test
+    public void pendingBatchNotWrittenIsAppliedOnce() {
+        String pendingKey = pendingKey();
+        stringRedisTemplate.opsForHash().put(pendingKey, "1", "5");
+        stringRedisTemplate.opsForHash().put(pendingKey, "flush_id", "interrupted");
+
+        discussionCounterService.flush();
+        discussionCounterService.flush();
+
+        assertEquals(5L, database.get(1));
+        assertFalse(Boolean.TRUE.equals(stringRedisTemplate.hasKey(pendingKey)));
+    }
+
+    private long totalOf(List<Integer> ids) {
+        Map<Integer, Long> pending = discussionCounterService.getPending(CountType.DISCUSSION_VIEW_NUM, ids);
+        long total = 0;
+        for (Integer id : ids) {
+            total += database.getOrDefault(id, 0L) + pending.getOrDefault(id, 0L);
+        }
+        return total;
+    }
+
+    private static List<Integer> ids() {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 1; id <= IDS; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static String pendingKey() {
+        return "discussion_counter:{discussion:view_num}:pending";
+    }
+
+    private void clearKeys() {
+        Set<String> keys = stringRedisTemplate.keys("discussion_counter*");
+        if (keys != null && !keys.isEmpty()) {
+            stringRedisTemplate.delete(keys);
+        }
+        stringRedisTemplate.delete(Arrays.asList("discussion_counter_flush_lock"));
+    }
+
+}
@@ -1,16 +1,18 @@
 package com.simplefanc.voj.common.constants;
 
 public interface RedisConstant {
-    String OI_CONTEST_RANK_CACHE = "oi_contest_rank_cache";
-
-    String CONTEST_RANK_CAL_RESULT_CACHE = "contest_rank_cal_result_cache";
-
     String ACM_RANK_CACHE = "acm_rank_cache";
 
     String OI_RANK_CACHE = "oi_rank_cache";
 
     String SUPER_ADMIN_UID_LIST_CACHE = "super_admin_uid_list_cache";
 
+    String JUDGE_LIST_COUNT_CACHE = "judge_list_count_cache";
+
+    String DOUBLE_CACHE_INVALIDATION_CHANNEL = "double_cache_invalidation";
+
+    String JUDGE_STATUS_CHANNEL = "judge_status";
+
     String CODE_CHANGE_PASSWORD_FAIL = "change-password-fail:";
 
     String CODE_CHANGE_PASSWORD_LOCK = "change-password-lock:";
@@ -30,4 +32,19 @@ public interface RedisConstant {
     String DISCUSSION_ADD_NUM_LOCK = "discussion_add_num_lock:";
 
     String CONTEST_ADD_PRINT_LOCK = "contest_add_print_lock:";
+
+    /**
+     * 判题机容量与租约的key使用相同的 hash tag，集群模式下位于同一个slot，可以由同一个lua脚本操作
+     */
+    String JUDGE_SERVER_CAPACITY = "{judge_server}:capacity:";
+
+    String JUDGE_SERVER_LEASES = "{judge_server}:leases:";
+
+    String CONTEST_SCOREBOARD_EPOCH = "contest_scoreboard_epoch:";
+
+    String AUTH_CONTEXT_VERSION = "auth_context_version:";
+
+    String DISCUSSION_COUNTER = "discussion_counter:";
+
+    String DISCUSSION_COUNTER_FLUSH_LOCK = "discussion_counter_flush_lock";
 }
\ No newline at end of file
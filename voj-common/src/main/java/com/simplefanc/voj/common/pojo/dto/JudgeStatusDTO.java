@@ -0,0 +1,50 @@
+package com.simplefanc.voj.common.pojo.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/11/5 10:12
+ * @Description:
+ */
+@Data
+@Accessors(chain = true)
+@ApiModel(value = "com.simplefanc.voj.common.pojo.dto.JudgeStatusDTO", description = "判题状态变化通知，判题服务通过 Redis 发布，后台服务推送给订阅的用户")
+public class JudgeStatusDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @ApiModelProperty("提交id")
+    private Long submitId;
+
+    @ApiModelProperty("提交用户id")
+    private String uid;
+
+    @ApiModelProperty("比赛id，非比赛提交为0")
+    private Long cid;
+
+    @ApiModelProperty("题目id")
+    private Long pid;
+
+    @ApiModelProperty("判题状态")
+    private Integer status;
+
+    @ApiModelProperty("运行时间(ms)")
+    private Integer time;
+
+    @ApiModelProperty("运行内存(kb)")
+    private Integer memory;
+
+    @ApiModelProperty("得分")
+    private Integer score;
+
+    @ApiModelProperty("提交时间")
+    private Date submitTime;
+
+}
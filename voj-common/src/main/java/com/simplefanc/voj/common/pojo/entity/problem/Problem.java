@@ -34,6 +34,9 @@ public class Problem implements Serializable {
     @ApiModelProperty(value = "题目的自定义ID 例如（VOJ-1000）")
     private String problemId;
 
+    @ApiModelProperty(value = "题目列表的排序键，problem_id的长度（补齐3位）+ problem_id，写入时根据problemId生成")
+    private String sortKey;
+
     @ApiModelProperty(value = "题目的自定义信息 例如JSK除题面外的真实id")
     private String info;
 
@@ -22,6 +22,8 @@ public enum ResultStatus {
 
     NOT_FOUND(404, "数据不存在"),
 
+    BUSY(429, "服务繁忙"),
+
     SYSTEM_ERROR(500, "系统错误");
 
     private int status;
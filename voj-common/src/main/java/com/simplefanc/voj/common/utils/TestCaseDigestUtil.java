@@ -0,0 +1,302 @@
+package com.simplefanc.voj.common.utils;
+
+import lombok.Getter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/10/24 9:40
+ * @Description: 测试数据的流式规整与摘要计算，后端上传与判题机初始化共用。
+ * 单次遍历完成 \r\n -> \n 的换行规整，同时计算输出大小、原数据MD5、去掉全部空白符的MD5与去掉行末及文末空白符的MD5，
+ * 内存占用与文件大小无关
+ */
+public class TestCaseDigestUtil {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int INITIAL_BLANK_RUN_SIZE = 256;
+
+    private TestCaseDigestUtil() {
+    }
+
+    /**
+     * 规整文件的换行符（\r\n -> \n），只有确实包含 \r\n 时才会原子替换原文件
+     *
+     * @param filePath 测试数据文件路径
+     * @param digest   是否同时计算输出摘要，输入文件无需计算
+     * @return 规整后内容的摘要，digest为false时返回null
+     */
+    public static TestCaseDigest normalizeFile(String filePath, boolean digest) throws IOException {
+        Path path = Paths.get(filePath);
+        Path tmpPath = path.resolveSibling(path.getFileName() + ".normalizing");
+        DigestCollector collector = digest ? new DigestCollector() : null;
+        boolean changed;
+        try (InputStream in = Files.newInputStream(path);
+             OutputStream out = Files.newOutputStream(tmpPath)) {
+            changed = process(in, out, collector);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmpPath);
+            throw e;
+        }
+        if (changed) {
+            try {
+                Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } else {
+            Files.delete(tmpPath);
+        }
+        return digest ? collector.finish() : null;
+    }
+
+    /**
+     * 只读取文件计算摘要（按 \r\n -> \n 规整后的内容计算），不修改文件
+     */
+    public static TestCaseDigest digestFile(String filePath) throws IOException {
+        try (InputStream in = Files.newInputStream(Paths.get(filePath))) {
+            return digest(in);
+        }
+    }
+
+    public static TestCaseDigest digest(String content) {
+        try {
+            return digest(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            // 内存流不会抛出IO异常
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static TestCaseDigest digest(InputStream in) throws IOException {
+        DigestCollector collector = new DigestCollector();
+        process(in, null, collector);
+        return collector.finish();
+    }
+
+    /**
+     * @return 内容是否因换行规整而发生变化
+     */
+    private static boolean process(InputStream in, OutputStream out, DigestCollector collector) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] normalized = new byte[BUFFER_SIZE];
+        boolean changed = false;
+        // 上一块以 \r 结尾，需要看到下一个字节才能确定是否为 \r\n
+        boolean pendingCr = false;
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+            int n = 0;
+            for (int i = 0; i < len; i++) {
+                byte b = buffer[i];
+                if (pendingCr) {
+                    pendingCr = false;
+                    if (b == '\n') {
+                        changed = true;
+                    } else {
+                        normalized[n++] = '\r';
+                    }
+                }
+                if (b == '\r') {
+                    pendingCr = true;
+                } else {
+                    normalized[n++] = b;
+                }
+            }
+            emit(normalized, n, out, collector);
+        }
+        if (pendingCr) {
+            normalized[0] = '\r';
+            emit(normalized, 1, out, collector);
+        }
+        return changed;
+    }
+
+    private static void emit(byte[] bytes, int len, OutputStream out, DigestCollector collector) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        if (out != null) {
+            out.write(bytes, 0, len);
+        }
+        if (collector != null) {
+            collector.update(bytes, len);
+        }
+    }
+
+    /**
+     * 与 \s 一致：[ \t\n\x0B\f\r]
+     */
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    private static boolean isLineBreak(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    /**
+     * 测试数据输出文件的摘要信息，字段名与测试数据 info 文件保持一致
+     */
+    @Getter
+    public static class TestCaseDigest {
+
+        /**
+         * 原数据大小
+         */
+        private final long outputSize;
+
+        /**
+         * 原数据MD5
+         */
+        private final String outputMd5;
+
+        /**
+         * 去掉全部空白符的MD5，用来判断pe
+         */
+        private final String allStrippedOutputMd5;
+
+        /**
+         * 去掉行末空白符与文末空白符的MD5
+         */
+        private final String eofStrippedOutputMd5;
+
+        TestCaseDigest(long outputSize, String outputMd5, String allStrippedOutputMd5, String eofStrippedOutputMd5) {
+            this.outputSize = outputSize;
+            this.outputMd5 = outputMd5;
+            this.allStrippedOutputMd5 = allStrippedOutputMd5;
+            this.eofStrippedOutputMd5 = eofStrippedOutputMd5;
+        }
+
+        /**
+         * 写入测试点的 info 记录
+         */
+        public void fillTo(Map<String, Object> testCaseInfo) {
+            testCaseInfo.put("outputMd5", outputMd5);
+            testCaseInfo.put("outputSize", outputSize);
+            testCaseInfo.put("allStrippedOutputMd5", allStrippedOutputMd5);
+            testCaseInfo.put("EOFStrippedOutputMd5", eofStrippedOutputMd5);
+        }
+
+    }
+
+    /**
+     * 对规整后的字节流同时计算三种MD5。
+     * 去掉行末及文末空白符的摘要无法提前确定空白符是否保留，因此把两个非空白字符之间的空白符游程暂存在缓冲区：
+     * 去掉行末空白后游程等价于若干个换行 + 最后一个换行之后的空白符，遇到换行时丢弃末段空白符，
+     * 遇到非空白字符时才把游程写入摘要，到达文末时直接丢弃游程
+     */
+    private static class DigestCollector {
+
+        private final MessageDigest full = newMd5();
+
+        private final MessageDigest allStripped = newMd5();
+
+        private final MessageDigest eofStripped = newMd5();
+
+        private final byte[] stripped = new byte[BUFFER_SIZE];
+
+        /**
+         * 待定的空白符游程，缓冲区复用，只会增长到最长的一段游程
+         */
+        private byte[] blankRun = new byte[INITIAL_BLANK_RUN_SIZE];
+
+        private int blankRunLength;
+
+        /**
+         * 游程中最后一个换行之后的位置，之后的空白符在遇到换行时丢弃
+         */
+        private int lineEnd;
+
+        private long size;
+
+        void update(byte[] bytes, int len) {
+            full.update(bytes, 0, len);
+            size += len;
+
+            int strippedLen = 0;
+            // 当前非空白字符片段的起始位置
+            int start = -1;
+            for (int i = 0; i < len; i++) {
+                byte b = bytes[i];
+                if (!isBlank(b)) {
+                    stripped[strippedLen++] = b;
+                    if (start < 0) {
+                        flushBlankRun();
+                        start = i;
+                    }
+                    continue;
+                }
+                if (start >= 0) {
+                    eofStripped.update(bytes, start, i - start);
+                    start = -1;
+                }
+                if (isLineBreak(b)) {
+                    blankRunLength = lineEnd;
+                    appendBlank(b);
+                    lineEnd = blankRunLength;
+                } else {
+                    appendBlank(b);
+                }
+            }
+            if (start >= 0) {
+                eofStripped.update(bytes, start, len - start);
+            }
+            allStripped.update(stripped, 0, strippedLen);
+        }
+
+        private void appendBlank(byte b) {
+            if (blankRunLength == blankRun.length) {
+                blankRun = Arrays.copyOf(blankRun, blankRun.length << 1);
+            }
+            blankRun[blankRunLength++] = b;
+        }
+
+        /**
+         * 遇到非空白字符，之前暂存的换行与空白符都需要保留
+         */
+        private void flushBlankRun() {
+            eofStripped.update(blankRun, 0, blankRunLength);
+            blankRunLength = 0;
+            lineEnd = 0;
+        }
+
+        TestCaseDigest finish() {
+            return new TestCaseDigest(size, toHex(full.digest()), toHex(allStripped.digest()),
+                    toHex(eofStripped.digest()));
+        }
+
+        private static MessageDigest newMd5() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static String toHex(byte[] bytes) {
+            char[] hexDigits = "0123456789abcdef".toCharArray();
+            char[] chars = new char[bytes.length * 2];
+            for (int i = 0; i < bytes.length; i++) {
+                chars[i * 2] = hexDigits[(bytes[i] >> 4) & 0xf];
+                chars[i * 2 + 1] = hexDigits[bytes[i] & 0xf];
+            }
+            return new String(chars);
+        }
+
+    }
+
+}
@@ -0,0 +1,226 @@
+package com.simplefanc.voj.judger.common.utils;
+
+import com.simplefanc.voj.common.constants.JudgeStatus;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/10/20 10:12
+ * @Description: 流式比对标准输出与用户输出，单次遍历、常量内存，遇到第一个不一致处立即返回
+ */
+public class OutputCompareUtil {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 末段空白符缓冲区的初始长度，不够时按需扩容
+     */
+    private static final int INITIAL_TAIL_SIZE = 64;
+
+    private OutputCompareUtil() {
+    }
+
+    /**
+     * @param expectedOutputPath 题目数据的输出文件路径
+     * @param userOutput         用户程序的输出流
+     * @param isRemoveEOLBlank   是否忽略行末空白符与文末空白符
+     * @MethodName compare
+     * @Description 比对结果：AC、PE（仅非空白字符一致）或 WA
+     * @Return Integer 判题状态码
+     * @Since 2023/10/20
+     */
+    public static Integer compare(String expectedOutputPath, InputStream userOutput, Boolean isRemoveEOLBlank)
+            throws IOException {
+        try (InputStream expectedOutput = new BufferedInputStream(new FileInputStream(expectedOutputPath), BUFFER_SIZE)) {
+            return compare(expectedOutput, userOutput, isRemoveEOLBlank);
+        }
+    }
+
+    public static Integer compare(InputStream expectedOutput, InputStream userOutput, Boolean isRemoveEOLBlank)
+            throws IOException {
+        // 测试数据统一按 \n 换行比对，与生成 info 时 \r\n -> \n 的处理保持一致
+        ByteReader expected = new ByteReader(expectedOutput, true);
+        ByteReader user = new ByteReader(userOutput, false);
+        if (Boolean.TRUE.equals(isRemoveEOLBlank)) {
+            return compareIgnoreEOLBlank(expected, user);
+        }
+        return compareStrict(expected, user);
+    }
+
+    /**
+     * 逐字节比对，同时跳过空白符比对非空白字符序列：完全一致为AC，仅非空白字符一致为PE
+     */
+    private static Integer compareStrict(ByteReader expected, ByteReader user) throws IOException {
+        boolean exact = true;
+        while (true) {
+            // 两侧的空白符游程同步推进，任一字节不同即不再是完全一致
+            while (true) {
+                int e = expected.peek();
+                int u = user.peek();
+                boolean expectedBlank = isBlank(e);
+                boolean userBlank = isBlank(u);
+                if (expectedBlank && userBlank) {
+                    exact &= e == u;
+                    expected.read();
+                    user.read();
+                } else if (expectedBlank) {
+                    exact = false;
+                    expected.read();
+                } else if (userBlank) {
+                    exact = false;
+                    user.read();
+                } else {
+                    break;
+                }
+            }
+            int e = expected.read();
+            int u = user.read();
+            if (e != u) {
+                return JudgeStatus.STATUS_WRONG_ANSWER.getStatus();
+            }
+            if (e == -1) {
+                return exact ? JudgeStatus.STATUS_ACCEPTED.getStatus()
+                        : JudgeStatus.STATUS_PRESENTATION_ERROR.getStatus();
+            }
+        }
+    }
+
+    /**
+     * 忽略每行末尾空白符以及文末空白符后比对，结果只有AC或WA
+     */
+    private static Integer compareIgnoreEOLBlank(ByteReader expected, ByteReader user) throws IOException {
+        BlankRun expectedRun = new BlankRun();
+        BlankRun userRun = new BlankRun();
+        while (true) {
+            expectedRun.consume(expected);
+            userRun.consume(user);
+            int e = expected.read();
+            int u = user.read();
+            if (e != u) {
+                return JudgeStatus.STATUS_WRONG_ANSWER.getStatus();
+            }
+            // 文末的空白符游程直接忽略
+            if (e == -1) {
+                return JudgeStatus.STATUS_ACCEPTED.getStatus();
+            }
+            if (!expectedRun.sameAs(userRun)) {
+                return JudgeStatus.STATUS_WRONG_ANSWER.getStatus();
+            }
+        }
+    }
+
+    /**
+     * 与 \s 一致：[ \t\n\x0B\f\r]
+     */
+    private static boolean isBlank(int b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    /**
+     * 两个非空白字符之间的空白符游程，去掉行末空白后等价于：若干个换行 + 最后一个换行之后的空白符。
+     * 只记录换行数与末段空白符本身，换行时清空末段，缓冲区只会增长到最长的一段末段空白
+     */
+    private static final class BlankRun {
+
+        private long lineBreaks;
+
+        private byte[] tail = new byte[INITIAL_TAIL_SIZE];
+
+        private int tailLength;
+
+        void consume(ByteReader reader) throws IOException {
+            lineBreaks = 0;
+            tailLength = 0;
+            while (isBlank(reader.peek())) {
+                int b = reader.read();
+                if (b == '\n') {
+                    lineBreaks++;
+                    tailLength = 0;
+                } else {
+                    if (tailLength == tail.length) {
+                        tail = Arrays.copyOf(tail, tail.length << 1);
+                    }
+                    tail[tailLength++] = (byte) b;
+                }
+            }
+        }
+
+        boolean sameAs(BlankRun other) {
+            if (lineBreaks != other.lineBreaks || tailLength != other.tailLength) {
+                return false;
+            }
+            for (int i = 0; i < tailLength; i++) {
+                if (tail[i] != other.tail[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 带缓冲、支持单字节预读的字节流读取器，可选将 \r\n 视为 \n
+     */
+    private static final class ByteReader {
+
+        private final InputStream in;
+
+        private final boolean normalizeCrlf;
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private int pos;
+
+        private int limit;
+
+        ByteReader(InputStream in, boolean normalizeCrlf) {
+            this.in = in;
+            this.normalizeCrlf = normalizeCrlf;
+        }
+
+        int peek() throws IOException {
+            if (!ensure(1)) {
+                return -1;
+            }
+            int b = buffer[pos] & 0xff;
+            if (b == '\r' && normalizeCrlf && ensure(2) && buffer[pos + 1] == '\n') {
+                pos++;
+                return '\n';
+            }
+            return b;
+        }
+
+        int read() throws IOException {
+            int b = peek();
+            if (b >= 0) {
+                pos++;
+            }
+            return b;
+        }
+
+        private boolean ensure(int n) throws IOException {
+            if (limit - pos >= n) {
+                return true;
+            }
+            if (pos > 0) {
+                System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            }
+            while (limit < n) {
+                int len = in.read(buffer, limit, buffer.length - limit);
+                if (len < 0) {
+                    return false;
+                }
+                limit += len;
+            }
+            return true;
+        }
+    }
+
+}
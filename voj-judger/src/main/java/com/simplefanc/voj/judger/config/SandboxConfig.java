@@ -0,0 +1,105 @@
+package com.simplefanc.voj.judger.config;
+
+import com.simplefanc.voj.judger.judge.local.SandboxRun;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/10/21 15:02
+ * @Description: 判题安全沙箱的客户端配置，使用连接池复用与沙箱之间的长连接
+ */
+@Configuration
+@Slf4j(topic = "voj")
+public class SandboxConfig {
+
+    private static final int CPU_NUM = Runtime.getRuntime().availableProcessors();
+
+    @Value("${voj-judge-server.sandbox.url:http://localhost:5050}")
+    private String url;
+
+    @Value("${voj-judge-server.sandbox.max-connections:-1}")
+    private Integer maxConnections;
+
+    @Value("${voj-judge-server.sandbox.connect-timeout:20000}")
+    private Integer connectTimeout;
+
+    @Value("${voj-judge-server.sandbox.connection-request-timeout:20000}")
+    private Integer connectionRequestTimeout;
+
+    @Value("${voj-judge-server.sandbox.read-timeout:180000}")
+    private Integer readTimeout;
+
+    @Value("${voj-judge-server.sandbox.keep-alive:60}")
+    private Integer keepAlive;
+
+    private RestTemplate restTemplate;
+
+    @PostConstruct
+    public void init() {
+        if (maxConnections == -1) {
+            maxConnections = CPU_NUM * 2 + 1;
+        }
+        log.info("Sandbox client: url={}, maxConnections={}, keepAlive={}s", url, maxConnections, keepAlive);
+        restTemplate = createRestTemplate(maxConnections, connectTimeout, connectionRequestTimeout, readTimeout,
+                keepAlive);
+        SandboxRun.init(url, restTemplate);
+    }
+
+    /**
+     * 关闭连接池及其空闲连接清理线程
+     */
+    @PreDestroy
+    public void destroy() throws Exception {
+        if (restTemplate != null
+                && restTemplate.getRequestFactory() instanceof HttpComponentsClientHttpRequestFactory) {
+            ((HttpComponentsClientHttpRequestFactory) restTemplate.getRequestFactory()).destroy();
+        }
+    }
+
+    /**
+     * 创建带连接池的RestTemplate，请求体直接流式写出，不在内存中额外缓冲
+     *
+     * @param maxConnections           连接池最大连接数（沙箱只有一个路由）
+     * @param connectTimeout           建立连接的超时时间 ms
+     * @param connectionRequestTimeout 从连接池获取连接的超时时间 ms
+     * @param readTimeout              读取响应的超时时间 ms
+     * @param keepAlive                空闲连接的保活时间 s
+     * @return
+     */
+    public static RestTemplate createRestTemplate(int maxConnections, int connectTimeout, int connectionRequestTimeout,
+                                                  int readTimeout, int keepAlive) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(keepAlive,
+                TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        // 空闲超过2s的连接在复用前先检查是否可用
+        connectionManager.setValidateAfterInactivity(2000);
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAlive, TimeUnit.SECONDS)
+                // 沙箱的 /run 请求不是幂等的，不允许自动重试
+                .disableAutomaticRetries()
+                .build();
+
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        requestFactory.setConnectTimeout(connectTimeout);
+        requestFactory.setConnectionRequestTimeout(connectionRequestTimeout);
+        requestFactory.setReadTimeout(readTimeout);
+        requestFactory.setBufferRequestBody(false);
+        return new RestTemplate(requestFactory);
+    }
+
+}
@@ -6,6 +6,7 @@ import com.simplefanc.voj.common.pojo.entity.judge.Judge;
 import com.simplefanc.voj.common.result.CommonResult;
 import com.simplefanc.voj.common.result.ResultStatus;
 import com.simplefanc.voj.judger.common.exception.SystemException;
+import com.simplefanc.voj.judger.judge.local.JudgeTaskExecutor;
 import com.simplefanc.voj.judger.service.JudgeService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
@@ -26,6 +27,8 @@ public class JudgeController {
 
     private final JudgeService judgeService;
 
+    private final JudgeTaskExecutor judgeTaskExecutor;
+
     @Value("${voj.judge.token}")
     private String judgeToken;
 
@@ -44,7 +47,15 @@ public class JudgeController {
             return CommonResult.errorResponse("调用参数错误！请检查您的调用参数！");
         }
 
-        judgeService.localJudge(judge);
+        // 判题机满载时直接拒绝，由后端调度器稍后重新分配
+        if (!judgeTaskExecutor.tryAcquireSubmission()) {
+            return CommonResult.errorResponse("判题机繁忙，请稍后重试！", ResultStatus.BUSY);
+        }
+        try {
+            judgeService.localJudge(judge);
+        } finally {
+            judgeTaskExecutor.releaseSubmission();
+        }
 
         return CommonResult.successResponse("判题机评测完成！");
     }
@@ -0,0 +1,18 @@
+package com.simplefanc.voj.judger.dao;
+
+/**
+ * <p>
+ * 服务类
+ * </p>
+ *
+ * @author chenfan
+ * @since 2023-11-08
+ */
+public interface ProblemStatEntityService {
+
+    /**
+     * 非比赛提交得到最终结果后，累加到该题目的提交统计中
+     */
+    void addResult(Long pid, Integer status);
+
+}
@@ -0,0 +1,18 @@
+package com.simplefanc.voj.judger.dao;
+
+/**
+ * <p>
+ * 服务类
+ * </p>
+ *
+ * @author chenfan
+ * @since 2023-10-29
+ */
+public interface UserRecordEntityService {
+
+    /**
+     * 非比赛提交得到最终结果后，更新该用户在排行榜中的做题数据
+     */
+    void refreshUserStat(String uid);
+
+}
@@ -54,6 +54,8 @@ public class ContestRecordEntityServiceImpl extends ServiceImpl<ContestRecordMap
         }
 
         updateWrapper.set("use_time", judge.getTime());
+        // 后端的比赛榜单按 gmt_modified 增量同步评测结果
+        updateWrapper.setSql("gmt_modified=NOW()");
         // submit_id一定只有一个
         updateWrapper.eq("submit_id", judge.getSubmitId())
                 .eq("cid", judge.getCid())
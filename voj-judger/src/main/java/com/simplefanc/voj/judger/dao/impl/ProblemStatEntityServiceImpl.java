@@ -0,0 +1,34 @@
+package com.simplefanc.voj.judger.dao.impl;
+
+import com.simplefanc.voj.judger.dao.ProblemStatEntityService;
+import com.simplefanc.voj.judger.mapper.ProblemStatMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * 服务实现类
+ * </p>
+ *
+ * @author chenfan
+ * @since 2023-11-08
+ */
+@Service
+@Slf4j(topic = "voj")
+@RequiredArgsConstructor
+public class ProblemStatEntityServiceImpl implements ProblemStatEntityService {
+
+    private final ProblemStatMapper problemStatMapper;
+
+    @Override
+    public void addResult(Long pid, Integer status) {
+        try {
+            problemStatMapper.addResult(pid, status);
+        } catch (Exception e) {
+            // 统计数据会在后端每日重建时修正，不影响判题结果的写回
+            log.error("Add result [{}] to problem_stat of [{}] failed:", status, pid, e);
+        }
+    }
+
+}
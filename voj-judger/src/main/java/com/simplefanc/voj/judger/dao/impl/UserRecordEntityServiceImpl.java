@@ -0,0 +1,34 @@
+package com.simplefanc.voj.judger.dao.impl;
+
+import com.simplefanc.voj.judger.dao.UserRecordEntityService;
+import com.simplefanc.voj.judger.mapper.UserRecordMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * 服务实现类
+ * </p>
+ *
+ * @author chenfan
+ * @since 2023-10-29
+ */
+@Service
+@Slf4j(topic = "voj")
+@RequiredArgsConstructor
+public class UserRecordEntityServiceImpl implements UserRecordEntityService {
+
+    private final UserRecordMapper userRecordMapper;
+
+    @Override
+    public void refreshUserStat(String uid) {
+        try {
+            userRecordMapper.refreshUserStat(uid);
+        } catch (Exception e) {
+            // 排行榜数据会在后端每日重建时修正，不影响判题结果的写回
+            log.error("Refresh user_stat of [{}] failed:", uid, e);
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.simplefanc.voj.judger.judge;
+
+import cn.hutool.json.JSONUtil;
+import com.simplefanc.voj.common.constants.JudgeStatus;
+import com.simplefanc.voj.common.constants.RedisConstant;
+import com.simplefanc.voj.common.pojo.dto.JudgeStatusDTO;
+import com.simplefanc.voj.common.pojo.entity.judge.Judge;
+import com.simplefanc.voj.judger.judge.remote.pojo.SubmissionInfo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 判题状态变化（编译中、评测中、最终结果）写入数据库后发布到 Redis，由后台服务推送给订阅的用户；
+ * 发布失败不影响判题，前端仍可通过轮询接口获取状态
+ *
+ * @author chenfan
+ */
+@Slf4j(topic = "voj")
+@Component
+@RequiredArgsConstructor
+public class JudgeStatusPublisher {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * @param judge 需包含 submitId、uid、cid、status
+     */
+    public void publish(Judge judge) {
+        publish(new JudgeStatusDTO().setSubmitId(judge.getSubmitId()).setUid(judge.getUid()).setCid(judge.getCid())
+                .setPid(judge.getPid()).setStatus(judge.getStatus()).setTime(judge.getTime())
+                .setMemory(judge.getMemory()).setScore(judge.getScore()).setSubmitTime(judge.getSubmitTime()));
+    }
+
+    public void publish(SubmissionInfo info, JudgeStatus status) {
+        publish(new JudgeStatusDTO().setSubmitId(info.submitId).setUid(info.uid).setCid(info.cid).setPid(info.pid)
+                .setStatus(status.getStatus()).setSubmitTime(info.submitTime));
+    }
+
+    public void publish(JudgeStatusDTO judgeStatus) {
+        try {
+            stringRedisTemplate.convertAndSend(RedisConstant.JUDGE_STATUS_CHANNEL, JSONUtil.toJsonStr(judgeStatus));
+        } catch (Exception e) {
+            log.error("Publish the status of submission [{}] failed:", judgeStatus.getSubmitId(), e);
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+package com.simplefanc.voj.judger.judge.local;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.simplefanc.voj.judger.common.constants.CompileConfig;
+import com.simplefanc.voj.judger.common.exception.CompileException;
+import com.simplefanc.voj.judger.common.exception.SubmitException;
+import com.simplefanc.voj.judger.common.exception.SystemException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/10/24 16:05
+ * @Description: 用户程序的编译缓存。
+ * 以（语言、编译配置、代码、额外文件）的摘要为key，复用沙箱中已编译好的可执行文件，重判或重复提交相同代码时无需再次编译；
+ * 缓存按LRU淘汰，被淘汰的文件在没有评测引用后才会从沙箱中删除
+ */
+@Slf4j(topic = "voj")
+@Component
+public class CompileCache {
+
+    private final int maxEntries;
+
+    /**
+     * 按访问顺序排列的缓存，所有访问都需持有该对象的锁
+     */
+    private final LinkedHashMap<String, CachedFile> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 正在编译中的代码，相同代码同时提交时只编译一次
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<String>> compiling = new ConcurrentHashMap<>();
+
+    private final Counter hitCounter;
+
+    private final Counter missCounter;
+
+    public CompileCache(MeterRegistry meterRegistry,
+                        @Value("${voj-judge-server.compile-cache.max-entries:256}") Integer maxEntries) {
+        this.maxEntries = maxEntries;
+        this.hitCounter = Counter.builder("voj.judge.compile.cache").tag("result", "hit")
+                .description("编译缓存命中次数")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("voj.judge.compile.cache").tag("result", "miss")
+                .description("编译缓存未命中次数")
+                .register(meterRegistry);
+        Gauge.builder("voj.judge.compile.cache.size", this, CompileCache::size)
+                .description("编译缓存中的可执行文件数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 获取编译好的可执行文件，使用完毕后必须调用 {@link CompiledFile#release()}
+     */
+    public CompiledFile compile(CompileConfig compileConfig, String code, String language,
+                                HashMap<String, String> extraFiles)
+            throws SystemException, CompileException, SubmitException {
+        if (maxEntries <= 0) {
+            String fileId = Compiler.compile(compileConfig, code, language, extraFiles);
+            return new CompiledFile(fileId, null, false);
+        }
+        String key = getKey(compileConfig, code, language, extraFiles);
+        while (true) {
+            CachedFile cached = retain(key);
+            if (cached != null) {
+                hitCounter.increment();
+                return new CompiledFile(cached.fileId, cached, true);
+            }
+            CompletableFuture<String> future = new CompletableFuture<>();
+            CompletableFuture<String> running = compiling.putIfAbsent(key, future);
+            if (running == null) {
+                missCounter.increment();
+                return compileAndCache(key, future, compileConfig, code, language, extraFiles);
+            }
+            // 等待正在进行的相同编译完成，成功后重新从缓存中获取
+            awaitCompiling(running);
+        }
+    }
+
+    private CompiledFile compileAndCache(String key, CompletableFuture<String> future, CompileConfig compileConfig,
+                                         String code, String language, HashMap<String, String> extraFiles)
+            throws SystemException, CompileException, SubmitException {
+        try {
+            String fileId = Compiler.compile(compileConfig, code, language, extraFiles);
+            CachedFile cached = new CachedFile(fileId);
+            // 当前评测持有一个引用
+            cached.refCount = 1;
+            List<CachedFile> evicted = put(key, cached);
+            evicted.forEach(this::deleteIfUnused);
+            future.complete(fileId);
+            return new CompiledFile(fileId, cached, false);
+        } catch (SystemException | CompileException | SubmitException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            compiling.remove(key, future);
+        }
+    }
+
+    private void awaitCompiling(CompletableFuture<String> running)
+            throws SystemException, CompileException, SubmitException {
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException("Interrupted while waiting for compilation.", null, null);
+        } catch (ExecutionException e) {
+            // 编译失败的结果不缓存，直接返回同样的错误
+            Throwable cause = e.getCause();
+            if (cause instanceof CompileException) {
+                throw (CompileException) cause;
+            } else if (cause instanceof SubmitException) {
+                throw (SubmitException) cause;
+            } else if (cause instanceof SystemException) {
+                throw (SystemException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private CachedFile retain(String key) {
+        synchronized (cache) {
+            CachedFile cached = cache.get(key);
+            if (cached != null) {
+                cached.refCount++;
+            }
+            return cached;
+        }
+    }
+
+    private List<CachedFile> put(String key, CachedFile cached) {
+        List<CachedFile> evicted = new ArrayList<>();
+        synchronized (cache) {
+            CachedFile old = cache.put(key, cached);
+            if (old != null) {
+                old.evicted = true;
+                evicted.add(old);
+            }
+            Iterator<CachedFile> iterator = cache.values().iterator();
+            while (cache.size() > maxEntries && iterator.hasNext()) {
+                CachedFile eldest = iterator.next();
+                iterator.remove();
+                eldest.evicted = true;
+                evicted.add(eldest);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * 沙箱中的文件已失效（如沙箱重启），从缓存中移除，下次重新编译
+     */
+    private void invalidate(CachedFile cached) {
+        synchronized (cache) {
+            cache.values().removeIf(value -> value == cached);
+            cached.evicted = true;
+        }
+    }
+
+    private void release(CachedFile cached) {
+        synchronized (cache) {
+            cached.refCount--;
+        }
+        deleteIfUnused(cached);
+    }
+
+    private void deleteIfUnused(CachedFile cached) {
+        synchronized (cache) {
+            if (!cached.evicted || cached.refCount > 0 || cached.deleted) {
+                return;
+            }
+            cached.deleted = true;
+        }
+        SandboxRun.delFile(cached.fileId);
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    @PreDestroy
+    public void clear() {
+        List<CachedFile> evicted;
+        synchronized (cache) {
+            evicted = new ArrayList<>(cache.values());
+            cache.clear();
+            evicted.forEach(cached -> cached.evicted = true);
+        }
+        evicted.forEach(this::deleteIfUnused);
+    }
+
+    private String getKey(CompileConfig compileConfig, String code, String language,
+                          HashMap<String, String> extraFiles) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(language).append('\0')
+                .append(compileConfig.name()).append('\0')
+                .append(compileConfig.getCommand()).append('\0')
+                .append(compileConfig.getEnvs()).append('\0')
+                .append(compileConfig.getMaxCpuTime()).append('\0')
+                .append(compileConfig.getMaxRealTime()).append('\0')
+                .append(compileConfig.getMaxMemory()).append('\0')
+                .append(DigestUtil.sha256Hex(code)).append('\0');
+        if (extraFiles != null) {
+            // 额外文件按文件名排序，保证相同的文件集合得到相同的key
+            for (Map.Entry<String, String> entry : new TreeMap<>(extraFiles).entrySet()) {
+                sb.append(entry.getKey()).append('\0').append(DigestUtil.sha256Hex(entry.getValue())).append('\0');
+            }
+        }
+        return DigestUtil.sha256Hex(sb.toString());
+    }
+
+    private static class CachedFile {
+
+        private final String fileId;
+
+        private int refCount;
+
+        private boolean evicted;
+
+        private boolean deleted;
+
+        CachedFile(String fileId) {
+            this.fileId = fileId;
+        }
+
+    }
+
+    /**
+     * 一次评测对编译结果的引用
+     */
+    public class CompiledFile {
+
+        private final String fileId;
+
+        private final CachedFile cached;
+
+        /**
+         * 是否复用了之前编译的文件
+         */
+        private final boolean reused;
+
+        private boolean released;
+
+        CompiledFile(String fileId, CachedFile cached, boolean reused) {
+            this.fileId = fileId;
+            this.cached = cached;
+            this.reused = reused;
+        }
+
+        public String getFileId() {
+            return fileId;
+        }
+
+        public boolean isReused() {
+            return reused;
+        }
+
+        /**
+         * 评测过程中发生系统错误（包括测试点返回 System Error）时调用，避免继续复用可能已失效的文件
+         */
+        public void invalidate() {
+            if (cached != null) {
+                CompileCache.this.invalidate(cached);
+            }
+        }
+
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (cached == null) {
+                SandboxRun.delFile(fileId);
+            } else {
+                CompileCache.this.release(cached);
+            }
+        }
+
+    }
+
+}
@@ -17,6 +17,7 @@ import com.simplefanc.voj.judger.common.exception.SystemException;
 import com.simplefanc.voj.judger.common.utils.JudgeUtil;
 import com.simplefanc.voj.judger.dao.JudgeCaseEntityService;
 import com.simplefanc.voj.judger.dao.JudgeEntityService;
+import com.simplefanc.voj.judger.judge.JudgeStatusPublisher;
 import com.simplefanc.voj.judger.judge.local.pojo.CaseResult;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeResult;
 import lombok.RequiredArgsConstructor;
@@ -43,26 +44,33 @@ public class JudgeProcess {
 
     private final JudgeRun judgeRun;
 
+    private final CompileCache compileCache;
+
+    private final JudgeStatusPublisher judgeStatusPublisher;
+
     @Value("${voj-judge-server.name}")
     private String judgeServerName;
 
     public JudgeResult execute(Problem problem, Judge judge) {
         JudgeResult result = new JudgeResult();
-        // 编译好的临时代码文件id
+        // 编译好的临时代码文件，可能与其它相同代码的评测共用
+        CompileCache.CompiledFile compiledFile = null;
         String userFileId = null;
         String userFileSrc = null;
         // 标志该判题过程进入编译阶段
         judge.setJudger(judgeServerName);
         judge.setStatus(JudgeStatus.STATUS_COMPILING.getStatus());
         judgeEntityService.updateById(judge);
+        judgeStatusPublisher.publish(judge);
 
         // 对用户源代码进行编译 获取tmpfs中的fileId
         CompileConfig compileConfig = CompileConfig.getCompilerByLanguage(judge.getLanguage());
         try {
             // 有的语言可能不支持编译
             if (compileConfig != null) {
-                userFileId = Compiler.compile(compileConfig, judge.getCode(), judge.getLanguage(),
+                compiledFile = compileCache.compile(compileConfig, judge.getCode(), judge.getLanguage(),
                         JudgeUtil.getProblemExtraFileMap(problem, "user"));
+                userFileId = compiledFile.getFileId();
             } else {
                 // 目前只有js、php不支持编译，需要提供源代码文件的绝对路径
                 userFileSrc = JudgeDir.RUN_WORKPLACE_DIR + File.separator + problem.getId() + File.separator
@@ -81,12 +89,29 @@ public class JudgeProcess {
             // 更新状态为评测数据中
             judge.setStatus(JudgeStatus.STATUS_JUDGING.getStatus());
             judgeEntityService.updateById(judge);
+            judgeStatusPublisher.publish(judge);
             // 开始测试每个测试点
             List<CaseResult> allCaseResultList = judgeRun.judgeAllCase(judge, problem, userFileId, userFileSrc, false);
+            // 沙箱重启等原因导致缓存的可执行文件失效时，测试点会返回 File Error（System Error）而不是抛出异常
+            if (compiledFile != null && hasSystemError(allCaseResultList)) {
+                compiledFile.invalidate();
+                // 复用的文件可能已失效，重新编译后再评测一次
+                if (compiledFile.isReused()) {
+                    compiledFile.release();
+                    compiledFile = compileCache.compile(compileConfig, judge.getCode(), judge.getLanguage(),
+                            JudgeUtil.getProblemExtraFileMap(problem, "user"));
+                    allCaseResultList = judgeRun.judgeAllCase(judge, problem, compiledFile.getFileId(), userFileSrc,
+                            false);
+                }
+            }
 
             // 对全部测试点结果进行评判，获取最终评判结果
             return getJudgeResult(allCaseResultList, problem, judge);
         } catch (SystemException systemException) {
+            // 可能是沙箱中缓存的可执行文件已失效，不再复用
+            if (compiledFile != null) {
+                compiledFile.invalidate();
+            }
             handleJudgeError(result, JudgeStatus.STATUS_SYSTEM_ERROR, "Oops, something has gone wrong with the judgeServer. Please report this to administrator.");
             log.error("题号为：" + problem.getId() + "的题目，提交id为" + judge.getSubmitId() + "在评测过程中发生SystemError异常------------------->", systemException);
         } catch (SubmitException submitException) {
@@ -98,9 +123,9 @@ public class JudgeProcess {
             handleJudgeError(result, JudgeStatus.STATUS_SYSTEM_ERROR, "Oops, something has gone wrong with the judgeServer. Please report this to administrator.");
             log.error("题号为：" + problem.getId() + "的题目，提交id为" + judge.getSubmitId() + "在评测过程中发生Exception异常-------------------->", e);
         } finally {
-            // 删除tmpfs内存中的用户代码可执行文件
-            if (StrUtil.isNotEmpty(userFileId)) {
-                SandboxRun.delFile(userFileId);
+            // 释放对用户代码可执行文件的引用，不再被缓存引用时从tmpfs内存中删除
+            if (compiledFile != null) {
+                compiledFile.release();
             }
         }
         return result;
@@ -133,6 +158,15 @@ public class JudgeProcess {
         return true;
     }
 
+    private boolean hasSystemError(List<CaseResult> caseResultList) {
+        for (CaseResult caseResult : caseResultList) {
+            if (JudgeStatus.STATUS_SYSTEM_ERROR.getStatus().equals(caseResult.getStatus())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void handleJudgeError(JudgeResult result, JudgeStatus status, String errMsg) {
         result.setStatus(status.getStatus());
         result.setErrMsg(errMsg);
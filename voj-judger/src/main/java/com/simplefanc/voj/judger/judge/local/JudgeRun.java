@@ -11,7 +11,6 @@ import com.simplefanc.voj.judger.common.constants.JudgeDir;
 import com.simplefanc.voj.judger.common.constants.RunConfig;
 import com.simplefanc.voj.judger.common.exception.SystemException;
 import com.simplefanc.voj.judger.common.utils.JudgeUtil;
-import com.simplefanc.voj.judger.common.utils.ThreadPoolUtil;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeCaseDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeGlobalDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.CaseResult;
@@ -25,6 +24,7 @@ import org.springframework.stereotype.Component;
 import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.*;
@@ -38,6 +38,18 @@ import java.util.concurrent.*;
 @RequiredArgsConstructor
 public class JudgeRun {
 
+    private static final int CPU_NUM = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 一次沙盒请求最多运行的测试点数量
+     */
+    private static final int MAX_BATCH_SIZE = 16;
+
+    /**
+     * 一批测试点的输入文件总大小上限 byte，超过则另起一批
+     */
+    private static final long MAX_BATCH_INPUT_SIZE = 1024 * 1024L;
+
     private final DefaultJudge defaultJudge;
 
     private final SpecialJudge specialJudge;
@@ -46,26 +58,31 @@ public class JudgeRun {
 
     private final ProblemTestCaseUtils problemTestCaseUtils;
 
+    private final JudgeTaskExecutor judgeTaskExecutor;
+
     public List<CaseResult> judgeAllCase(Judge judge, Problem problem, String userFileId, String userFileSrc, Boolean getUserOutput)
             throws SystemException, ExecutionException, InterruptedException, UnsupportedEncodingException {
 
         JudgeGlobalDTO judgeGlobalDTO = getJudgeGlobalDTO(judge, problem, userFileId, userFileSrc, getUserOutput);
 
         List<JudgeTask> judgeTasks = getJudgeTasks(judgeGlobalDTO);
+        // 本次提交的测试点任务在同一个队列中，与其它提交公平轮询执行
+        Executor executor = judgeTaskExecutor.newSubmissionExecutor();
         if (JudgeCaseMode.ITERATE_UNTIL_WRONG.getMode().equals(problem.getJudgeCaseMode())) {
             // 顺序评测测试点，遇到非AC就停止！
-            return iterateJudgeAllCase(judgeTasks);
+            return iterateJudgeAllCase(judgeTasks, executor);
         } else {
-            return defaultJudgeAllCase(judgeTasks);
+            return defaultJudgeAllCase(judgeTasks, executor);
         }
     }
 
-    private List<CaseResult> iterateJudgeAllCase(List<JudgeTask> judgeTasks) throws ExecutionException, InterruptedException {
+    private List<CaseResult> iterateJudgeAllCase(List<JudgeTask> judgeTasks, Executor executor)
+            throws ExecutionException, InterruptedException {
         List<CaseResult> result = new LinkedList<>();
         for (JudgeTask judgeTask : judgeTasks) {
-            // 提交到线程池进行执行
+            // 提交到判题执行引擎进行执行
             FutureTask<CaseResult> futureTask = new FutureTask<>(judgeTask);
-            ThreadPoolUtil.getInstance().getThreadPool().submit(futureTask);
+            executor.execute(futureTask);
             final CaseResult judgeRes = futureTask.get();
             result.add(judgeRes);
             Integer status = judgeRes.getStatus();
@@ -76,31 +93,75 @@ public class JudgeRun {
         return result;
     }
 
-    private List<CaseResult> defaultJudgeAllCase(List<JudgeTask> judgeTasks) throws InterruptedException, ExecutionException {
-        ExecutorService threadPool = ThreadPoolUtil.getInstance().getThreadPool();
-        CompletableFuture[] futures = new CompletableFuture[judgeTasks.size()];
-        for (int i = 0; i < judgeTasks.size(); i++) {
-            final JudgeTask judgeTask = judgeTasks.get(i);
+    private List<CaseResult> defaultJudgeAllCase(List<JudgeTask> judgeTasks, Executor executor)
+            throws InterruptedException, ExecutionException {
+        List<List<JudgeTask>> batches = splitBatches(judgeTasks);
+        CompletableFuture[] futures = new CompletableFuture[batches.size()];
+        for (int i = 0; i < batches.size(); i++) {
+            final BatchJudgeTask batchJudgeTask = new BatchJudgeTask(batches.get(i));
             futures[i]  = CompletableFuture.supplyAsync(() -> {
                 try {
                     // 普通方法
-                    return judgeTask.call();
+                    return batchJudgeTask.call();
                 } catch (SystemException e) {
                     throw new RuntimeException(e);
                 }
-            }, threadPool);
+            }, executor);
         }
         // allOf() 方法会等到所有的 CompletableFuture 都运行完成之后再返回
         CompletableFuture<Void> headerFuture = CompletableFuture.allOf(futures);
         // 都运行完了之后再继续执行
         headerFuture.join();
-        List<CaseResult> res = new ArrayList<>();
-        for (int i = 0; i < judgeTasks.size(); i++) {
-            res.add((CaseResult) futures[i].get());
+        List<CaseResult> res = new ArrayList<>(judgeTasks.size());
+        for (int i = 0; i < batches.size(); i++) {
+            res.addAll((List<CaseResult>) futures[i].get());
         }
         return res;
     }
 
+    /**
+     * 将测试点按顺序分批，一批测试点在一次沙盒请求中运行（沙盒同时启动一批中的全部程序）。
+     * 批大小由测试点数量决定（保证批数不少于cpu核心数，充分并行），且不超过cpu核心数；
+     * 每批按测试点数占用运行名额，同时运行的程序总数不超过cpu核心数，
+     * 同时限制一批的输入文件总大小，大数据的测试点单独运行
+     *
+     * @param judgeTasks
+     * @return
+     */
+    private List<List<JudgeTask>> splitBatches(List<JudgeTask> judgeTasks) {
+        List<List<JudgeTask>> batches = new ArrayList<>();
+        if (judgeTasks.isEmpty()) {
+            return batches;
+        }
+        boolean supportBatch = judgeTasks.get(0).getAbstractJudge().supportBatch();
+        int batchSize = supportBatch
+                ? Math.min(Math.min(MAX_BATCH_SIZE, CPU_NUM), (judgeTasks.size() + CPU_NUM - 1) / CPU_NUM)
+                : 1;
+        List<JudgeTask> batch = new ArrayList<>(batchSize);
+        long batchInputSize = 0;
+        for (JudgeTask judgeTask : judgeTasks) {
+            long inputSize = batchSize > 1 ? new File(judgeTask.judgeDTO.getTestCaseInputPath()).length() : 0;
+            if (!batch.isEmpty() && (batch.size() >= batchSize || batchInputSize + inputSize > MAX_BATCH_INPUT_SIZE)) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize);
+                batchInputSize = 0;
+            }
+            batch.add(judgeTask);
+            batchInputSize += inputSize;
+        }
+        batches.add(batch);
+        return batches;
+    }
+
+    private int acquireRunPermits(int programNum) throws SystemException {
+        try {
+            return judgeTaskExecutor.acquireRunPermits(programNum);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException("Interrupted while waiting to run the test cases.", null, null);
+        }
+    }
+
     private List<JudgeTask> getJudgeTasks(JudgeGlobalDTO judgeGlobalDTO) {
         List<JudgeTask> judgeTasks = new ArrayList<>();
         final JSONArray testcaseList = (JSONArray) judgeGlobalDTO.getTestCaseInfo().get("testCases");
@@ -197,9 +258,17 @@ public class JudgeRun {
 
         @Override
         public CaseResult call() throws SystemException {
-            final AbstractJudge abstractJudge = getAbstractJudge(judgeGlobalDTO.getJudgeMode());
+            // 交互评测同时运行用户程序与交互程序
+            int permits = acquireRunPermits(judgeGlobalDTO.getJudgeMode() == JudgeMode.INTERACTIVE ? 2 : 1);
+            try {
+                CaseResult result = getAbstractJudge().judge(judgeDTO, judgeGlobalDTO);
+                return fillCaseInfo(result);
+            } finally {
+                judgeTaskExecutor.releaseRunPermits(permits);
+            }
+        }
 
-            CaseResult result = abstractJudge.judge(judgeDTO, judgeGlobalDTO);
+        CaseResult fillCaseInfo(CaseResult result) {
             result.setCaseId(judgeDTO.getProblemCaseId());
             result.setScore(judgeDTO.getScore());
             result.setInputFileName(judgeDTO.getTestCaseInputFileName());
@@ -207,7 +276,8 @@ public class JudgeRun {
             return result;
         }
 
-        private AbstractJudge getAbstractJudge(JudgeMode judgeMode) {
+        AbstractJudge getAbstractJudge() {
+            JudgeMode judgeMode = judgeGlobalDTO.getJudgeMode();
             switch (judgeMode) {
                 case DEFAULT:
                     return defaultJudge;
@@ -222,4 +292,35 @@ public class JudgeRun {
 
     }
 
-}
\ No newline at end of file
+    class BatchJudgeTask implements Callable<List<CaseResult>> {
+        List<JudgeTask> judgeTasks;
+
+        public BatchJudgeTask(List<JudgeTask> judgeTasks) {
+            this.judgeTasks = judgeTasks;
+        }
+
+        @Override
+        public List<CaseResult> call() throws SystemException {
+            if (judgeTasks.size() == 1) {
+                return Collections.singletonList(judgeTasks.get(0).call());
+            }
+            JudgeTask first = judgeTasks.get(0);
+            List<JudgeCaseDTO> judgeDTOList = new ArrayList<>(judgeTasks.size());
+            for (JudgeTask judgeTask : judgeTasks) {
+                judgeDTOList.add(judgeTask.judgeDTO);
+            }
+            int permits = acquireRunPermits(judgeTasks.size());
+            try {
+                List<CaseResult> results = first.getAbstractJudge().judgeBatch(judgeDTOList, first.judgeGlobalDTO);
+                for (int i = 0; i < results.size(); i++) {
+                    judgeTasks.get(i).fillCaseInfo(results.get(i));
+                }
+                return results;
+            } finally {
+                judgeTaskExecutor.releaseRunPermits(permits);
+            }
+        }
+
+    }
+
+}
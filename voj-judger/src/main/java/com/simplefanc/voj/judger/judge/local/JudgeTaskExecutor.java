@@ -0,0 +1,228 @@
+package com.simplefanc.voj.judger.judge.local;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author: chenfan
+ * @Date: 2023/10/23 20:31
+ * @Description: 判题机的测试点执行引擎
+ * 1. 按提交准入：同时评测的提交数不超过最大并行任务数，超出时直接拒绝，由后端稍后重试，测试点任务不会被丢弃；
+ * 2. 按提交公平调度：每个提交拥有独立的任务队列，工作线程在各提交之间轮询取任务，测试点多的提交不会饿死其它提交；
+ * 3. 限制同时运行的用户程序数：沙盒会同时启动一次请求中的全部cmd，测试点任务按运行的程序数占用运行名额，总数不超过cpu核心数；
+ * 4. 暴露排队测试点数、运行中提交数、任务排队耗时与执行耗时等监控指标（/actuator/metrics）。
+ */
+@Slf4j(topic = "voj")
+@Component
+public class JudgeTaskExecutor {
+
+    private static final int CPU_NUM = Runtime.getRuntime().availableProcessors();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * 有待执行任务的提交队列，按轮询顺序排列
+     */
+    private final Deque<SubmissionExecutor> readyQueue = new ArrayDeque<>();
+
+    private final AtomicInteger pendingTaskNum = new AtomicInteger();
+
+    private final int maxTaskNum;
+
+    private final Semaphore submissionPermits;
+
+    /**
+     * 同时在沙盒中运行的程序数名额，公平获取，避免占用名额多的批量任务饿死
+     */
+    private final Semaphore runPermits = new Semaphore(CPU_NUM, true);
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private volatile boolean running = true;
+
+    private final Timer taskWaitTimer;
+
+    private final Timer taskRunTimer;
+
+    private final Counter rejectedCounter;
+
+    public JudgeTaskExecutor(MeterRegistry meterRegistry,
+                             @Value("${voj-judge-server.max-task-num}") Integer maxTaskNum) {
+        this.maxTaskNum = maxTaskNum == -1 ? CPU_NUM + 1 : maxTaskNum;
+        this.submissionPermits = new Semaphore(this.maxTaskNum);
+
+        Gauge.builder("voj.judge.task.pending", pendingTaskNum, AtomicInteger::get)
+                .description("排队等待执行的测试点任务数")
+                .register(meterRegistry);
+        Gauge.builder("voj.judge.submission.running", this, JudgeTaskExecutor::getRunningSubmissionNum)
+                .description("正在评测的提交数")
+                .register(meterRegistry);
+        this.taskWaitTimer = Timer.builder("voj.judge.task.wait")
+                .description("测试点任务的排队耗时")
+                .register(meterRegistry);
+        this.taskRunTimer = Timer.builder("voj.judge.task.run")
+                .description("测试点任务的执行耗时")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("voj.judge.submission.rejected")
+                .description("判题机繁忙而拒绝的提交数")
+                .register(meterRegistry);
+
+        // 工作线程数与原线程池的最大线程数一致
+        for (int i = 0; i < CPU_NUM + 1; i++) {
+            Thread worker = new Thread(this::work, "judge-case-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * 尝试占用一个提交的评测名额，判题机繁忙时立即返回false
+     */
+    public boolean tryAcquireSubmission() {
+        boolean acquired = submissionPermits.tryAcquire();
+        if (!acquired) {
+            rejectedCounter.increment();
+        }
+        return acquired;
+    }
+
+    public void releaseSubmission() {
+        submissionPermits.release();
+    }
+
+    /**
+     * 为一次提交创建独立的任务队列，该提交的全部测试点任务都通过它执行
+     */
+    public Executor newSubmissionExecutor() {
+        return new SubmissionExecutor();
+    }
+
+    /**
+     * 在沙盒中运行程序前调用，占用与程序数相同的运行名额，最多占用cpu核心数个
+     *
+     * @return 实际占用的名额数，运行结束后通过 {@link #releaseRunPermits(int)} 归还
+     */
+    public int acquireRunPermits(int programNum) throws InterruptedException {
+        int permits = Math.max(1, Math.min(programNum, CPU_NUM));
+        runPermits.acquire(permits);
+        return permits;
+    }
+
+    public void releaseRunPermits(int permits) {
+        runPermits.release(permits);
+    }
+
+    public int getPendingTaskNum() {
+        return pendingTaskNum.get();
+    }
+
+    public int getRunningSubmissionNum() {
+        return maxTaskNum - submissionPermits.availablePermits();
+    }
+
+    public int getMaxTaskNum() {
+        return maxTaskNum;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void work() {
+        while (running) {
+            TimedTask task;
+            lock.lock();
+            try {
+                while (readyQueue.isEmpty()) {
+                    notEmpty.await();
+                }
+                SubmissionExecutor submission = readyQueue.pollFirst();
+                task = submission.tasks.poll();
+                // 该提交还有任务则排到队尾，实现各提交之间的轮询
+                if (submission.tasks.isEmpty()) {
+                    submission.scheduled = false;
+                } else {
+                    readyQueue.addLast(submission);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            pendingTaskNum.decrementAndGet();
+            task.run();
+        }
+    }
+
+    private class SubmissionExecutor implements Executor {
+
+        private final Queue<TimedTask> tasks = new ArrayDeque<>();
+
+        private boolean scheduled;
+
+        @Override
+        public void execute(Runnable command) {
+            lock.lock();
+            try {
+                tasks.add(new TimedTask(command));
+                pendingTaskNum.incrementAndGet();
+                if (!scheduled) {
+                    scheduled = true;
+                    readyQueue.addLast(this);
+                }
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private class TimedTask implements Runnable {
+
+        private final Runnable command;
+
+        private final long submitTime = System.nanoTime();
+
+        TimedTask(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            long startTime = System.nanoTime();
+            taskWaitTimer.record(startTime - submitTime, TimeUnit.NANOSECONDS);
+            try {
+                command.run();
+            } catch (Throwable e) {
+                log.error("测试点任务执行异常------------------->", e);
+            } finally {
+                taskRunTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+}
@@ -3,6 +3,7 @@ package com.simplefanc.voj.judger.judge.local;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.io.file.FileReader;
 import cn.hutool.core.io.file.FileWriter;
+import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.CharsetUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONArray;
@@ -12,18 +13,25 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.simplefanc.voj.common.constants.JudgeMode;
 import com.simplefanc.voj.common.pojo.entity.problem.Problem;
 import com.simplefanc.voj.common.pojo.entity.problem.ProblemCase;
+import com.simplefanc.voj.common.utils.TestCaseDigestUtil;
 import com.simplefanc.voj.judger.common.constants.JudgeDir;
 import com.simplefanc.voj.judger.common.exception.SystemException;
 import com.simplefanc.voj.judger.dao.ProblemCaseEntityService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
-import org.springframework.util.DigestUtils;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @Author: chenfan
@@ -36,7 +44,39 @@ public class ProblemTestCaseUtils {
 
     private final ProblemCaseEntityService problemCaseEntityService;
 
+    /**
+     * 已解析的测试数据信息，key为题目id，value中记录对应的测试数据版本，版本不一致即失效
+     */
+    private final ConcurrentHashMap<Long, CachedTestCaseInfo> testCaseInfoCache = new ConcurrentHashMap<>();
+
+    /**
+     * 每道题目的初始化锁，保证同一题目同时只有一个线程读取或生成测试数据信息
+     */
+    private final ConcurrentHashMap<Long, Object> initLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 返回的测试数据信息在多个评测之间共享，调用方只能读取，不能修改
+     */
     public JSONObject loadTestCaseInfo(Problem problem) throws SystemException {
+        Long problemId = problem.getId();
+        String version = problem.getCaseVersion();
+        CachedTestCaseInfo cached = testCaseInfoCache.get(problemId);
+        if (cached != null && cached.version.equals(version)) {
+            return cached.info;
+        }
+        synchronized (initLocks.computeIfAbsent(problemId, id -> new Object())) {
+            // 等待锁期间可能已由其它线程加载完成
+            cached = testCaseInfoCache.get(problemId);
+            if (cached != null && cached.version.equals(version)) {
+                return cached.info;
+            }
+            JSONObject testcaseInfo = readOrInitTestCaseInfo(problem);
+            testCaseInfoCache.put(problemId, new CachedTestCaseInfo(version, testcaseInfo));
+            return testcaseInfo;
+        }
+    }
+
+    private JSONObject readOrInitTestCaseInfo(Problem problem) throws SystemException {
         Long problemId = problem.getId();
         String testCasesDir = JudgeDir.TEST_CASE_DIR + File.separator + "problem_" + problem.getId();
         String version = problem.getCaseVersion();
@@ -110,7 +150,7 @@ public class ProblemTestCaseUtils {
      * @return
      */
     private JSONObject initLocalTestCase(String mode, String version, String testCasesDir,
-                                        List<ProblemCase> problemCaseList) {
+                                        List<ProblemCase> problemCaseList) throws SystemException {
         JSONObject result = new JSONObject();
         result.set("mode", mode);
         result.set("version", version);
@@ -123,22 +163,21 @@ public class ProblemTestCaseUtils {
             jsonObject.set("score", problemCase.getScore());
             jsonObject.set("inputName", problemCase.getInput());
             jsonObject.set("outputName", problemCase.getOutput());
-            // 读取输出文件
-            FileReader readFile = new FileReader(testCasesDir + File.separator + problemCase.getOutput(),
-                    CharsetUtil.UTF_8);
-            String output = readFile.readString().replaceAll("\r\n", "\n");
-
             // spj或interactive是根据特判程序输出判断结果，所以无需初始化测试数据
             if (JudgeMode.DEFAULT.getMode().equals(mode)) {
-                initOutputData(jsonObject, output);
+                String outputPath = testCasesDir + File.separator + problemCase.getOutput();
+                try {
+                    // 流式读取输出文件计算摘要，不会整个读入内存
+                    TestCaseDigestUtil.digestFile(outputPath).fillTo(jsonObject);
+                } catch (IOException e) {
+                    throw new SystemException("读取测试数据失败：" + outputPath, null, e.getMessage());
+                }
             }
 
             ((JSONArray) result.get("testCases")).put(jsonObject);
         }
 
-        FileWriter infoFile = new FileWriter(testCasesDir + File.separator + "info", CharsetUtil.UTF_8);
-        // 写入记录文件
-        infoFile.write(JSONUtil.toJsonStr(result));
+        writeInfoFile(testCasesDir, result);
 
         return result;
     }
@@ -191,7 +230,7 @@ public class ProblemTestCaseUtils {
 
             // spj或interactive是根据特判程序输出判断结果，所以无需初始化测试数据
             if (JudgeMode.DEFAULT.getMode().equals(mode)) {
-                initOutputData(jsonObject, outputData);
+                TestCaseDigestUtil.digest(outputData).fillTo(jsonObject);
             }
 
             testCaseList.add(jsonObject);
@@ -199,34 +238,44 @@ public class ProblemTestCaseUtils {
 
         result.set("testCases", testCaseList);
 
-        FileWriter infoFile = new FileWriter(testCasesDir + File.separator + "info", CharsetUtil.UTF_8);
-        // 写入记录文件
-        infoFile.write(JSONUtil.toJsonStr(result));
+        writeInfoFile(testCasesDir, result);
         return result;
     }
 
-    private void initOutputData(JSONObject jsonObject, String outputData) {
-        // 原数据MD5
-        jsonObject.set("outputMd5", DigestUtils.md5DigestAsHex(outputData.getBytes()));
-        // 原数据大小
-        jsonObject.set("outputSize", outputData.getBytes(StandardCharsets.UTF_8).length);
-        // 去掉全部空格的MD5，用来判断pe
-        jsonObject.set("allStrippedOutputMd5",
-                DigestUtils.md5DigestAsHex(outputData.replaceAll("\\s+", "").getBytes()));
-        // 默认去掉文末空格的MD5
-        jsonObject.set("EOFStrippedOutputMd5", DigestUtils.md5DigestAsHex(rtrim(outputData).getBytes()));
-    }
-
     /**
-     * 去除每行末尾的空白符
+     * 先写临时文件再原子替换，其它进程（如rsync）不会读到写了一半的info
      *
-     * @param value
-     * @return
+     * @param testCasesDir
+     * @param testcaseInfo
+     * @throws SystemException
      */
-    private static String rtrim(String value) {
-        if (value == null) {
-            return null;
+    private void writeInfoFile(String testCasesDir, JSONObject testcaseInfo) throws SystemException {
+        Path infoPath = Paths.get(testCasesDir, "info");
+        Path tmpPath = Paths.get(testCasesDir, "info." + IdUtil.fastSimpleUUID() + ".tmp");
+        try {
+            Files.write(tmpPath, JSONUtil.toJsonStr(testcaseInfo).getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmpPath, infoPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpPath, infoPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            FileUtil.del(tmpPath);
+            throw new SystemException("写入测试数据信息文件失败：" + infoPath, null, e.getMessage());
         }
-        return value.replaceAll("[^\\S\\r\\n]+(?=\\n|\\r)|\\s+(?=$)", "");
     }
-}
\ No newline at end of file
+
+    private static class CachedTestCaseInfo {
+
+        private final String version;
+
+        private final JSONObject info;
+
+        CachedTestCaseInfo(String version, JSONObject info) {
+            this.version = version;
+            this.info = info;
+        }
+
+    }
+
+}
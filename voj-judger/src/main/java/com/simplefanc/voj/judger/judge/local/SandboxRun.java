@@ -2,19 +2,28 @@ package com.simplefanc.voj.judger.judge.local;
 
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONConfig;
 import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONTokener;
 import cn.hutool.json.JSONUtil;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.judger.common.exception.SystemException;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -64,23 +73,28 @@ public class SandboxRun {
     private SandboxRun() {
     }
 
-    private static final RestTemplate REST_TEMPLATE;
+    /**
+     * 由 SandboxConfig 根据配置文件创建带连接池的客户端后通过 {@link #init} 设置，连接池随应用关闭
+     */
+    private static volatile RestTemplate restTemplate;
 
-    static {
-        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
-        requestFactory.setConnectTimeout(20000);
-        requestFactory.setReadTimeout(180000);
-        REST_TEMPLATE = new RestTemplate(requestFactory);
+    private static volatile String sandboxBaseUrl = "http://localhost:5050";
+
+    public static void init(String baseUrl, RestTemplate template) {
+        sandboxBaseUrl = baseUrl;
+        restTemplate = template;
     }
 
     public static RestTemplate getRestTemplate() {
-        return REST_TEMPLATE;
+        RestTemplate template = restTemplate;
+        if (template == null) {
+            throw new IllegalStateException("The sandbox client has not been initialized.");
+        }
+        return template;
     }
 
-    private static final String SANDBOX_BASE_URL = "http://localhost:5050";
-
     public static String getSandboxBaseUrl() {
-        return SANDBOX_BASE_URL;
+        return sandboxBaseUrl;
     }
 
     private static final int MAX_PROCESS_NUMBER = 128;
@@ -166,16 +180,19 @@ public class SandboxRun {
     };
 
     public JSONArray run(String uri, JSONObject param) throws SystemException {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        HttpEntity<String> request = new HttpEntity<>(JSONUtil.toJsonStr(param), headers);
-        ResponseEntity<String> postForEntity;
+        // 请求体直接序列化到连接的输出流，响应体边读边解析，不生成完整的JSON字符串
+        RequestCallback requestCallback = request -> {
+            request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            if (request instanceof StreamingHttpOutputMessage) {
+                ((StreamingHttpOutputMessage) request).setBody(body -> writeJson(param, body));
+            } else {
+                writeJson(param, request.getBody());
+            }
+        };
+        ResponseExtractor<JSONArray> responseExtractor = response -> new JSONArray(
+                new JSONTokener(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8), JSONConfig.create()));
         try {
-            postForEntity = REST_TEMPLATE.postForEntity(SANDBOX_BASE_URL + uri, request, String.class);
-            // TODO 疑似出现OOM 普通评测：如果沙盒运行程序不是 Accepted 可以不获取 stdout
-            // 临时解决：顺序评测 and 降低程序的并发数
-            // 如果测试数据标准输出真的特别大 只有增大JVM配置
-            return JSONUtil.parseArray(postForEntity.getBody());
+            return getRestTemplate().execute(sandboxBaseUrl + uri, HttpMethod.POST, requestCallback, responseExtractor);
         } catch (RestClientResponseException ex) {
             if (ex.getRawStatusCode() != 200) {
                 throw new SystemException("Cannot connect to sandbox service.", null, ex.getResponseBodyAsString());
@@ -186,9 +203,15 @@ public class SandboxRun {
         return null;
     }
 
+    private static void writeJson(JSONObject param, OutputStream body) throws IOException {
+        Writer writer = new OutputStreamWriter(body, StandardCharsets.UTF_8);
+        param.write(writer);
+        writer.flush();
+    }
+
     public static void delFile(String fileId) {
         try {
-            REST_TEMPLATE.delete(SANDBOX_BASE_URL + "/file/{0}", fileId);
+            getRestTemplate().delete(sandboxBaseUrl + "/file/{0}", fileId);
         } catch (RestClientResponseException ex) {
             if (ex.getRawStatusCode() != 200) {
                 log.error("安全沙箱判题的删除内存中的文件缓存操作异常----------------->{}", ex.getResponseBodyAsString());
@@ -196,6 +219,24 @@ public class SandboxRun {
         }
     }
 
+    /**
+     * @param fileId    沙盒中缓存文件的id
+     * @param extractor 读取文件内容流的处理逻辑
+     * @MethodName getFile
+     * @Description 以流的形式读取沙盒中缓存的文件，避免整个文件读入内存
+     * @Return T
+     * @Since 2023/10/20
+     */
+    public static <T> T getFile(String fileId, ResponseExtractor<T> extractor) throws SystemException {
+        try {
+            return getRestTemplate().execute(sandboxBaseUrl + "/file/{0}", HttpMethod.GET, null, extractor, fileId);
+        } catch (RestClientResponseException ex) {
+            throw new SystemException("Cannot connect to sandbox service.", null, ex.getResponseBodyAsString());
+        } catch (Exception e) {
+            throw new SystemException("Call SandBox Error.", null, e.getMessage());
+        }
+    }
+
     /**
      * @param maxCpuTime        最大编译的cpu时间 ms
      * @param maxRealTime       最大编译的真实时间 ms
@@ -286,6 +327,7 @@ public class SandboxRun {
      * @param exeName       评测的用户程序名称
      * @param fileId        评测的用户程序文件id
      * @param fileSrc       评测的用户程序文件绝对路径，如果userFileId存在则为null
+     * @param cacheStdout   是否将标准输出缓存在沙盒中只返回文件id，用于流式比对
      * @MethodName testCase
      * @Description 普通评测
      * @Return JSONArray
@@ -300,36 +342,41 @@ public class SandboxRun {
                                      Integer maxStack,
                                      String exeName,
                                      String fileId,
-                                     String fileSrc) throws SystemException {
-
-        JSONObject cmd = new JSONObject();
-        cmd.set("args", args);
-        cmd.set("env", envs);
-
-        JSONArray files = new JSONArray();
-        JSONObject content = new JSONObject();
-        content.set("src", testCasePath);
-
-        JSONObject stdout = new JSONObject();
-        stdout.set("name", "stdout");
-        stdout.set("max", maxOutputSize);
-
-        JSONObject stderr = new JSONObject();
-        stderr.set("name", "stderr");
-        stderr.set("max", 1024 * 1024 * 16);
-        files.put(content);
-        files.put(stdout);
-        files.put(stderr);
-
-        cmd.set("files", files);
+                                     String fileSrc,
+                                     Boolean cacheStdout) throws SystemException {
+        return batchTestCase(args, envs, Collections.singletonList(testCasePath), maxTime, maxMemory,
+                Collections.singletonList(maxOutputSize), maxStack, exeName, fileId, fileSrc, cacheStdout);
+    }
 
-        // ms-->ns
-        cmd.set("cpuLimit", maxTime * 1000 * 1000L);
-        cmd.set("clockLimit", maxTime * 1000 * 1000L * 3);
-        // byte
-        cmd.set("memoryLimit", (maxMemory + 100) * 1024 * 1024L);
-        cmd.set("procLimit", MAX_PROCESS_NUMBER);
-        cmd.set("stackLimit", maxStack * 1024 * 1024L);
+    /**
+     * @param args           普通评测运行cmd的命令参数
+     * @param envs           普通评测运行的环境变量
+     * @param testCasePaths  一批题目数据的输入文件路径
+     * @param maxTime        评测的最大限制时间 ms
+     * @param maxOutputSizes 一批评测各自的最大输出大小，与testCasePaths一一对应
+     * @param maxStack       评测的最大限制栈空间 mb
+     * @param exeName        评测的用户程序名称
+     * @param fileId         评测的用户程序文件id
+     * @param fileSrc        评测的用户程序文件绝对路径，如果userFileId存在则为null
+     * @param cacheStdout    是否将标准输出缓存在沙盒中只返回文件id，用于流式比对
+     * @MethodName batchTestCase
+     * @Description 批量普通评测：同一个用户程序的多个测试点放在一次 /run 请求的cmd数组中，
+     * 沙盒会同时启动全部cmd（并行度配置不限制同一请求中的cmd），调用方需限制一批的大小与同时运行的批数，
+     * 结果与cmd的顺序一一对应
+     * @Return JSONArray
+     * @Since 2023/10/22
+     */
+    public static JSONArray batchTestCase(List<String> args,
+                                          List<String> envs,
+                                          List<String> testCasePaths,
+                                          Long maxTime,
+                                          Long maxMemory,
+                                          List<Long> maxOutputSizes,
+                                          Integer maxStack,
+                                          String exeName,
+                                          String fileId,
+                                          String fileSrc,
+                                          Boolean cacheStdout) throws SystemException {
 
         JSONObject exeFile = new JSONObject();
         if (StrUtil.isNotEmpty(fileId)) {
@@ -340,17 +387,57 @@ public class SandboxRun {
         JSONObject copyIn = new JSONObject();
         copyIn.set(exeName, exeFile);
 
-        cmd.set("copyIn", copyIn);
-        cmd.set("copyOut", new JSONArray().put("stdout").put("stderr"));
+        JSONArray cmdList = new JSONArray(testCasePaths.size());
+        for (int i = 0; i < testCasePaths.size(); i++) {
+            JSONObject cmd = new JSONObject();
+            cmd.set("args", args);
+            cmd.set("env", envs);
+
+            JSONArray files = new JSONArray();
+            JSONObject content = new JSONObject();
+            content.set("src", testCasePaths.get(i));
+
+            JSONObject stdout = new JSONObject();
+            stdout.set("name", "stdout");
+            stdout.set("max", maxOutputSizes.get(i));
+
+            JSONObject stderr = new JSONObject();
+            stderr.set("name", "stderr");
+            stderr.set("max", 1024 * 1024 * 16);
+            files.put(content);
+            files.put(stdout);
+            files.put(stderr);
+
+            cmd.set("files", files);
+
+            // ms-->ns
+            cmd.set("cpuLimit", maxTime * 1000 * 1000L);
+            cmd.set("clockLimit", maxTime * 1000 * 1000L * 3);
+            // byte
+            cmd.set("memoryLimit", (maxMemory + 100) * 1024 * 1024L);
+            cmd.set("procLimit", MAX_PROCESS_NUMBER);
+            cmd.set("stackLimit", maxStack * 1024 * 1024L);
+
+            cmd.set("copyIn", copyIn);
+            if (cacheStdout) {
+                cmd.set("copyOut", new JSONArray().put("stderr"));
+                cmd.set("copyOutCached", new JSONArray().put("stdout"));
+            } else {
+                cmd.set("copyOut", new JSONArray().put("stdout").put("stderr"));
+            }
+            cmdList.put(cmd);
+        }
 
         JSONObject param = new JSONObject();
-        param.set("cmd", new JSONArray().put(cmd));
+        param.set("cmd", cmdList);
 
         // 调用判题安全沙箱
         JSONArray result = INSTANCE.run("/run", param);
 
-        final JSONObject jsonObject = (JSONObject) result.get(0);
-        jsonObject.set("status", RESULT_STATUS_MAP.get(jsonObject.getStr("status")));
+        for (int i = 0; i < result.size(); i++) {
+            final JSONObject jsonObject = (JSONObject) result.get(i);
+            jsonObject.set("status", RESULT_STATUS_MAP.get(jsonObject.getStr("status")));
+        }
         return result;
     }
 
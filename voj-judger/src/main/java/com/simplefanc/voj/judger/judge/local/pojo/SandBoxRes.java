@@ -41,6 +41,11 @@ public class SandBoxRes {
      */
     private String stdout;
 
+    /**
+     * 单个程序的标准输出在沙盒中缓存的文件id，用于流式比对
+     */
+    private String stdoutFileId;
+
     /**
      * 单个程序的错误信息
      */
@@ -8,6 +8,7 @@ import com.simplefanc.voj.judger.common.constants.JudgeDir;
 import com.simplefanc.voj.judger.common.constants.RunConfig;
 import com.simplefanc.voj.judger.common.exception.SystemException;
 import com.simplefanc.voj.judger.common.utils.JudgeUtil;
+import com.simplefanc.voj.judger.judge.local.SandboxRun;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeCaseDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeGlobalDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.CaseResult;
@@ -15,6 +16,7 @@ import com.simplefanc.voj.judger.judge.local.pojo.SandBoxRes;
 
 import java.io.File;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -51,8 +53,89 @@ public abstract class AbstractJudge {
 
     }
 
+    /**
+     * 批量评测同一个用户程序的多个测试点，一次沙盒请求运行整批，再逐个处理评测结果
+     *
+     * @param judgeDTOList
+     * @param judgeGlobalDTO
+     * @return 与judgeDTOList顺序一一对应的评测结果
+     * @throws SystemException
+     */
+    public List<CaseResult> judgeBatch(List<JudgeCaseDTO> judgeDTOList, JudgeGlobalDTO judgeGlobalDTO)
+            throws SystemException {
+        if (!supportBatch()) {
+            // 不支持批量的评测模式逐个评测
+            List<CaseResult> caseResultList = new ArrayList<>(judgeDTOList.size());
+            for (JudgeCaseDTO judgeDTO : judgeDTOList) {
+                caseResultList.add(judge(judgeDTO, judgeGlobalDTO));
+            }
+            return caseResultList;
+        }
+        JSONArray judgeResultList = batchJudgeCase(judgeDTOList, judgeGlobalDTO);
+        List<SandBoxRes> sandBoxResList = new ArrayList<>(judgeDTOList.size());
+        for (int i = 0; i < judgeDTOList.size(); i++) {
+            sandBoxResList.add(wrapToSandBoxRes((JSONObject) judgeResultList.get(i)));
+        }
+        List<CaseResult> caseResultList = new ArrayList<>(judgeDTOList.size());
+        try {
+            for (int i = 0; i < judgeDTOList.size(); i++) {
+                caseResultList.add(processResult(sandBoxResList.get(i), judgeDTOList.get(i), judgeGlobalDTO));
+            }
+        } finally {
+            // 处理中途出现异常时，释放后续测试点缓存在沙盒中的标准输出
+            for (int i = caseResultList.size() + 1; i < sandBoxResList.size(); i++) {
+                if (sandBoxResList.get(i).getStdoutFileId() != null) {
+                    SandboxRun.delFile(sandBoxResList.get(i).getStdoutFileId());
+                }
+            }
+        }
+        return caseResultList;
+    }
+
+    /**
+     * 是否支持一次沙盒请求批量运行多个测试点，交互评测每个测试点需要管道连接两个程序，不支持批量
+     */
+    public boolean supportBatch() {
+        return false;
+    }
+
     protected abstract JSONArray judgeCase(JudgeCaseDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) throws SystemException;
 
+    /**
+     * 一次沙盒请求运行整批测试点，只用于 {@link #supportBatch()} 的评测模式（每个测试点只运行用户程序），
+     * 结果与judgeDTOList顺序一一对应
+     */
+    protected JSONArray batchJudgeCase(List<JudgeCaseDTO> judgeDTOList, JudgeGlobalDTO judgeGlobalDTO)
+            throws SystemException {
+        RunConfig runConfig = judgeGlobalDTO.getRunConfig();
+        List<String> testCaseInputPaths = new ArrayList<>(judgeDTOList.size());
+        List<Long> maxOutputSizes = new ArrayList<>(judgeDTOList.size());
+        for (JudgeCaseDTO judgeDTO : judgeDTOList) {
+            testCaseInputPaths.add(judgeDTO.getTestCaseInputPath());
+            maxOutputSizes.add(judgeDTO.getMaxOutputSize());
+        }
+        // 一次调用安全沙箱运行整批测试点
+        return SandboxRun.batchTestCase(
+                parseRunCommand(runConfig, null, null, null),
+                runConfig.getEnvs(),
+                testCaseInputPaths,
+                judgeGlobalDTO.getTestTime(),
+                judgeGlobalDTO.getMaxMemory(),
+                maxOutputSizes,
+                judgeGlobalDTO.getMaxStack(),
+                runConfig.getExeName(),
+                judgeGlobalDTO.getUserFileId(),
+                judgeGlobalDTO.getUserFileSrc(),
+                cacheStdout(judgeGlobalDTO));
+    }
+
+    /**
+     * 是否将用户程序的标准输出缓存在沙盒中只返回文件id，比对时再流式读取
+     */
+    protected boolean cacheStdout(JudgeGlobalDTO judgeGlobalDTO) {
+        return false;
+    }
+
     protected CaseResult processResult(SandBoxRes sandBoxRes, JudgeCaseDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO)
             throws SystemException {
         return null;
@@ -141,6 +224,9 @@ public abstract class AbstractJudge {
                 // 普通评测：如果沙盒运行程序不是 Accepted 可以不获取 stdout
                 .stdout(((JSONObject) judgeResult.get("files")).getStr("stdout"))
                 .stderr(((JSONObject) judgeResult.get("files")).getStr("stderr"))
+                // 普通评测：标准输出缓存在沙盒中时只返回文件id
+                .stdoutFileId(judgeResult.getJSONObject("fileIds") == null ? null
+                        : judgeResult.getJSONObject("fileIds").getStr("stdout"))
                 // ns->ms
                 .time(judgeResult.getLong("time") / 1_000_000)
                 // b-->kb
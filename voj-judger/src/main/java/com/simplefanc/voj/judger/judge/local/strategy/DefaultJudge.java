@@ -2,19 +2,20 @@ package com.simplefanc.voj.judger.judge.local.strategy;
 
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONArray;
-import cn.hutool.json.JSONObject;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.judger.common.constants.RunConfig;
 import com.simplefanc.voj.judger.common.exception.SystemException;
+import com.simplefanc.voj.judger.common.utils.OutputCompareUtil;
 import com.simplefanc.voj.judger.judge.local.SandboxRun;
 import com.simplefanc.voj.judger.judge.local.pojo.CaseResult;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeCaseDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.JudgeGlobalDTO;
 import com.simplefanc.voj.judger.judge.local.pojo.SandBoxRes;
 import org.springframework.stereotype.Component;
-import org.springframework.util.DigestUtils;
 
-import java.util.regex.Pattern;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * @Author: chenfan
@@ -23,7 +24,6 @@ import java.util.regex.Pattern;
  */
 @Component
 public class DefaultJudge extends AbstractJudge {
-    private final static Pattern EOL_PATTERN = Pattern.compile("[^\\S\\n]+(?=\\n)");
 
     @Override
     public JSONArray judgeCase(JudgeCaseDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) throws SystemException {
@@ -39,23 +39,45 @@ public class DefaultJudge extends AbstractJudge {
                 judgeGlobalDTO.getMaxStack(),
                 runConfig.getExeName(),
                 judgeGlobalDTO.getUserFileId(),
-                judgeGlobalDTO.getUserFileSrc());
+                judgeGlobalDTO.getUserFileSrc(),
+                cacheStdout(judgeGlobalDTO));
     }
 
     @Override
-    public CaseResult processResult(SandBoxRes sandBoxRes, JudgeCaseDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) {
+    public boolean supportBatch() {
+        return true;
+    }
+
+    /**
+     * 不需要返回用户输出时，标准输出缓存在沙盒中，比对时再流式读取
+     */
+    @Override
+    protected boolean cacheStdout(JudgeGlobalDTO judgeGlobalDTO) {
+        return !judgeGlobalDTO.getNeedUserOutputFile();
+    }
+
+    @Override
+    public CaseResult processResult(SandBoxRes sandBoxRes, JudgeCaseDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO)
+            throws SystemException {
         CaseResult result = new CaseResult();
-        // 如果测试跑题无异常
-        if (sandBoxRes.getStatus().equals(JudgeStatus.STATUS_ACCEPTED.getStatus())) {
-            // 比对题目限制、测试数据
-            success(result, sandBoxRes, judgeDTO, judgeGlobalDTO);
-        } else if (sandBoxRes.getStatus().equals(JudgeStatus.STATUS_TIME_LIMIT_EXCEEDED.getStatus())) {
-            result.setStatus(JudgeStatus.STATUS_TIME_LIMIT_EXCEEDED.getStatus());
-        } else if (sandBoxRes.getExitCode() != 0) {
-            // STATUS_RUNTIME_ERROR 记录errMsg
-            abort(result, sandBoxRes);
-        } else {
-            result.setStatus(sandBoxRes.getStatus());
+        try {
+            // 如果测试跑题无异常
+            if (sandBoxRes.getStatus().equals(JudgeStatus.STATUS_ACCEPTED.getStatus())) {
+                // 比对题目限制、测试数据
+                success(result, sandBoxRes, judgeDTO, judgeGlobalDTO);
+            } else if (sandBoxRes.getStatus().equals(JudgeStatus.STATUS_TIME_LIMIT_EXCEEDED.getStatus())) {
+                result.setStatus(JudgeStatus.STATUS_TIME_LIMIT_EXCEEDED.getStatus());
+            } else if (sandBoxRes.getExitCode() != 0) {
+                // STATUS_RUNTIME_ERROR 记录errMsg
+                abort(result, sandBoxRes);
+            } else {
+                result.setStatus(sandBoxRes.getStatus());
+            }
+        } finally {
+            // 无论比对结果如何，都需要释放沙盒中缓存的标准输出
+            if (sandBoxRes.getStdoutFileId() != null) {
+                SandboxRun.delFile(sandBoxRes.getStdoutFileId());
+            }
         }
 
         result.setMemory(sandBoxRes.getMemory());
@@ -81,62 +103,42 @@ public class DefaultJudge extends AbstractJudge {
     }
 
 
-    private void success(CaseResult result, SandBoxRes sandBoxRes, JudgeCaseDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO) {
+    private void success(CaseResult result, SandBoxRes sandBoxRes, JudgeCaseDTO judgeDTO, JudgeGlobalDTO judgeGlobalDTO)
+            throws SystemException {
         // 对结果的时间损耗和空间损耗与题目限制做比较，判断是否mle和tle
         if (sandBoxRes.getTime() > judgeGlobalDTO.getMaxTime()) {
             result.setStatus(JudgeStatus.STATUS_TIME_LIMIT_EXCEEDED.getStatus());
         } else if (sandBoxRes.getMemory() > judgeGlobalDTO.getMaxMemory() * 1024) {
             result.setStatus(JudgeStatus.STATUS_MEMORY_LIMIT_EXCEEDED.getStatus());
         } else {
-            // 与原测试数据输出的md5进行对比 AC或者是WA
-            JSONObject testcaseInfo = (JSONObject) ((JSONArray) judgeGlobalDTO.getTestCaseInfo().get("testCases"))
-                    .get(judgeDTO.getTestCaseNum() - 1);
-            result.setStatus(compareOutput(sandBoxRes.getStdout(), judgeGlobalDTO.getRemoveEOLBlank(), testcaseInfo));
+            // 与原测试数据输出文件进行流式比对 AC、PE或者是WA
+            result.setStatus(compareOutput(sandBoxRes, judgeDTO.getTestCaseOutputPath(),
+                    judgeGlobalDTO.getRemoveEOLBlank()));
         }
     }
 
     /**
-     * 根据评测结果与用户程序输出的字符串MD5进行对比
+     * 将用户程序输出与测试数据输出文件进行流式比对
      *
-     * @param userOutput
+     * @param sandBoxRes
+     * @param testCaseOutputPath
      * @param isRemoveEOLBlank
-     * @param testcaseInfo
      * @return
      */
-    private Integer compareOutput(String userOutput, Boolean isRemoveEOLBlank, JSONObject testcaseInfo) {
-        // 如果当前题目选择默认去掉字符串末位空格
-        if (isRemoveEOLBlank) {
-            String userOutputMd5 = DigestUtils.md5DigestAsHex(rtrim(userOutput).getBytes());
-            if (userOutputMd5.equals(testcaseInfo.getStr("EOFStrippedOutputMd5"))) {
-                return JudgeStatus.STATUS_ACCEPTED.getStatus();
-            }
-            return JudgeStatus.STATUS_WRONG_ANSWER.getStatus();
-        }
-        // 不选择默认去掉文末空格 与原数据进行对比
-        String userOutputMd5 = DigestUtils.md5DigestAsHex(userOutput.getBytes());
-        if (userOutputMd5.equals(testcaseInfo.getStr("outputMd5"))) {
-            return JudgeStatus.STATUS_ACCEPTED.getStatus();
+    private Integer compareOutput(SandBoxRes sandBoxRes, String testCaseOutputPath, Boolean isRemoveEOLBlank)
+            throws SystemException {
+        // 标准输出缓存在沙盒中，边下载边比对
+        if (sandBoxRes.getStdoutFileId() != null) {
+            return SandboxRun.getFile(sandBoxRes.getStdoutFileId(),
+                    response -> OutputCompareUtil.compare(testCaseOutputPath, response.getBody(), isRemoveEOLBlank));
         }
-        // 如果不AC, 进行PE判断, 否则为WA
-        userOutputMd5 = DigestUtils.md5DigestAsHex(userOutput.replaceAll("\\s+", "").getBytes());
-        if (userOutputMd5.equals(testcaseInfo.getStr("allStrippedOutputMd5"))) {
-            return JudgeStatus.STATUS_PRESENTATION_ERROR.getStatus();
-        }
-        return JudgeStatus.STATUS_WRONG_ANSWER.getStatus();
-    }
-
-
-    /**
-     * 去除行末尾空白符
-     *
-     * @param value
-     * @return
-     */
-    private String rtrim(String value) {
-        if (value == null) {
-            return null;
+        String stdout = StrUtil.nullToEmpty(sandBoxRes.getStdout());
+        try {
+            return OutputCompareUtil.compare(testCaseOutputPath,
+                    new ByteArrayInputStream(stdout.getBytes(StandardCharsets.UTF_8)), isRemoveEOLBlank);
+        } catch (IOException e) {
+            throw new SystemException("Read test case output error.", null, e.getMessage());
         }
-        return EOL_PATTERN.matcher(StrUtil.trimEnd(value)).replaceAll("");
     }
 
-}
\ No newline at end of file
+}
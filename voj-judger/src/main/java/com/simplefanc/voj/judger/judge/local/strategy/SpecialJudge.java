@@ -42,7 +42,13 @@ public class SpecialJudge extends AbstractJudge {
                 judgeGlobalDTO.getMaxStack(),
                 runConfig.getExeName(),
                 judgeGlobalDTO.getUserFileId(),
-                judgeGlobalDTO.getUserFileSrc());
+                judgeGlobalDTO.getUserFileSrc(),
+                cacheStdout(judgeGlobalDTO));
+    }
+
+    @Override
+    public boolean supportBatch() {
+        return true;
     }
 
     @Override
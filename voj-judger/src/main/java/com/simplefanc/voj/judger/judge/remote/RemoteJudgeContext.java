@@ -55,7 +55,7 @@ public class RemoteJudgeContext {
         }
         final SubmissionInfo submissionInfo = SubmissionInfo.builder().remoteOj(remoteOj).remotePid(remoteProblemId)
                 .remoteAccountId(toJudge.getUsername()).submitId(judge.getSubmitId()).uid(judge.getUid())
-                .cid(judge.getCid()).pid(judge.getPid()).language(judge.getLanguage()).userCode(judge.getCode())
+                .cid(judge.getCid()).pid(judge.getPid()).submitTime(judge.getSubmitTime()).language(judge.getLanguage()).userCode(judge.getCode())
                 .serverIp(toJudge.getJudgeServerIp()).serverPort(toJudge.getJudgeServerPort()).build();
 
         judge.setJudger(judgeServerName);
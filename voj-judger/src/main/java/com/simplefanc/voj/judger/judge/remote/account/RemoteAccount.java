@@ -2,6 +2,8 @@ package com.simplefanc.voj.judger.judge.remote.account;
 
 import com.simplefanc.voj.common.constants.RemoteOj;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.BasicCookieStore;
@@ -10,6 +12,7 @@ import org.apache.http.protocol.HttpContext;
 
 import java.net.HttpCookie;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Data
 public class RemoteAccount {
@@ -29,6 +32,25 @@ public class RemoteAccount {
 
     private List<HttpCookie> cookies;
 
+    /**
+     * 上次登录成功的时间，0表示未登录或会话已失效
+     */
+    @EqualsAndHashCode.Exclude
+    private volatile long loginTime;
+
+    /**
+     * 上次被提交或查询使用的时间，长时间未使用的账号不再后台保活
+     */
+    @EqualsAndHashCode.Exclude
+    private volatile long lastUsedTime = System.currentTimeMillis();
+
+    /**
+     * 登录与提交时持有，同一账号同时只有一个线程登录或提交，后台保活不会在提交过程中替换会话
+     */
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final ReentrantLock sessionLock = new ReentrantLock();
+
     public RemoteAccount(RemoteOj remoteOj, String accountId, String password) {
         this.remoteOj = remoteOj;
         this.accountId = accountId;
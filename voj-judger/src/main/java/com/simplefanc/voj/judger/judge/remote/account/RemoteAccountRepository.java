@@ -1,25 +1,164 @@
 package com.simplefanc.voj.judger.judge.remote.account;
 
 import com.simplefanc.voj.common.constants.RemoteOj;
+import com.simplefanc.voj.judger.judge.remote.loginer.Loginer;
+import com.simplefanc.voj.judger.judge.remote.loginer.LoginersHolder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
+import javax.annotation.PreDestroy;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * 远程账号会话池：每个账号只保留一个会话（HttpContext），登录与提交都持有账号的 sessionLock；
+ * 后台定期在会话过期（{@code RemoteOjInfo.maxInactiveInterval}）前为最近使用过的账号重新登录，提交时无需再等待登录，
+ * 正在登录或提交的账号本轮跳过
+ */
+@Slf4j(topic = "voj")
 @Component
 public class RemoteAccountRepository {
 
     /**
-     * accountId -> RemoteAccount
+     * 距离会话过期不足该比例时后台重新登录
      */
-    private Map<String, RemoteAccount> repo = new HashMap<>();
+    private static final double REFRESH_RATIO = 0.8;
+
+    private static final long KEEP_ALIVE_INTERVAL_SECONDS = 30;
+
+    /**
+     * 超过该时间未使用的账号不再保活，下次使用时再登录
+     */
+    private static final long IDLE_MILLIS = 30 * 60 * 1000L;
+
+    /**
+     * remoteOj-accountId -> RemoteAccount
+     */
+    private final Map<String, RemoteAccount> repo = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService keepAliveScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "remote-account-keep-alive");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final MeterRegistry meterRegistry;
+
+    public RemoteAccountRepository(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("voj.remote.account.size", repo, Map::size)
+                .description("会话池中的远程账号数")
+                .register(meterRegistry);
+        keepAliveScheduler.scheduleWithFixedDelay(this::keepAlive, KEEP_ALIVE_INTERVAL_SECONDS,
+                KEEP_ALIVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
 
     public RemoteAccount getRemoteAccount(RemoteOj remoteOj, String username, String password) {
         final String key = remoteOj.getName() + "-" + username;
-        if (!repo.containsKey(key)) {
-            repo.put(key, new RemoteAccount(remoteOj, username, password));
+        // 密码修改后使用新的会话
+        RemoteAccount account = repo.compute(key, (k, old) -> old != null && Objects.equals(old.password, password)
+                ? old : new RemoteAccount(remoteOj, username, password));
+        account.setLastUsedTime(System.currentTimeMillis());
+        return account;
+    }
+
+    /**
+     * 会话仍然有效时直接返回，否则登录（同一账号的并发调用只登录一次），提交时在持有 sessionLock 的情况下调用
+     */
+    public void login(RemoteAccount account) throws Exception {
+        if (isFresh(account, 1.0)) {
+            return;
+        }
+        ReentrantLock sessionLock = account.getSessionLock();
+        sessionLock.lock();
+        try {
+            // 等待期间其它线程已登录
+            if (isFresh(account, 1.0)) {
+                return;
+            }
+            loginEnforce(account);
+        } finally {
+            sessionLock.unlock();
+        }
+    }
+
+    /**
+     * 远程请求因会话失效而失败时调用，下次使用前重新登录
+     */
+    public void invalidate(RemoteAccount account) {
+        account.setLoginTime(0);
+    }
+
+    private void loginEnforce(RemoteAccount account) throws Exception {
+        Loginer loginer = LoginersHolder.getLoginer(account.getRemoteOj());
+        long startTime = System.nanoTime();
+        try {
+            loginer.login(account);
+            account.setLoginTime(System.currentTimeMillis());
+            getLoginTimer(account, "success").record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            account.setLoginTime(0);
+            getLoginTimer(account, "failure").record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private Timer getLoginTimer(RemoteAccount account, String result) {
+        return Timer.builder("voj.remote.login")
+                .tag("oj", account.getRemoteOj().getName())
+                .tag("result", result)
+                .description("远程账号登录耗时")
+                .register(meterRegistry);
+    }
+
+    private boolean isFresh(RemoteAccount account, double ratio) {
+        long loginTime = account.getLoginTime();
+        return loginTime > 0 && System.currentTimeMillis() - loginTime
+                < getMaxInactiveInterval(account) * ratio;
+    }
+
+    private long getMaxInactiveInterval(RemoteAccount account) {
+        Loginer loginer = LoginersHolder.getLoginer(account.getRemoteOj());
+        return loginer == null ? Long.MAX_VALUE : loginer.getOjInfo().maxInactiveInterval;
+    }
+
+    /**
+     * 为最近使用过且会话即将过期的账号重新登录，正在被其它线程登录或用于提交的账号跳过
+     */
+    private void keepAlive() {
+        long now = System.currentTimeMillis();
+        for (RemoteAccount account : repo.values()) {
+            if (now - account.getLastUsedTime() > IDLE_MILLIS || account.getLoginTime() == 0
+                    || isFresh(account, REFRESH_RATIO)) {
+                continue;
+            }
+            ReentrantLock sessionLock = account.getSessionLock();
+            if (!sessionLock.tryLock()) {
+                continue;
+            }
+            try {
+                loginEnforce(account);
+            } catch (Throwable t) {
+                log.error("[{}] Keep alive of remote account [{}] failed:", account.getRemoteOj(),
+                        account.getAccountId(), t);
+            } finally {
+                sessionLock.unlock();
+            }
         }
-        return repo.get(key);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        keepAliveScheduler.shutdownNow();
     }
 
 }
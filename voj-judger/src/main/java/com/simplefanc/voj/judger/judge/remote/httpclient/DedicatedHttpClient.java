@@ -4,12 +4,16 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.protocol.HttpContext;
 
+import java.io.IOException;
+
 /**
  * 专用 Http 客户端
  */
@@ -28,6 +32,11 @@ public class DedicatedHttpClient {
 
     protected AnonymousHttpContextRepository contextRepository;
 
+    /**
+     * 远程OJ的限流与熔断，通过 host 创建的客户端为null
+     */
+    protected RemoteOjGuard guard;
+
     protected DedicatedHttpClient() {
     }
 
@@ -38,7 +47,7 @@ public class DedicatedHttpClient {
         try {
             // public <T> T execute(HttpHost target, HttpRequest request,
             // ResponseHandler<? extends T> responseHandler, HttpContext context)
-            return client.execute(host, request, new ResponseHandler<T>() {
+            return doExecute(request, new ResponseHandler<T>() {
                 @Override
                 public T handleResponse(HttpResponse response) {
                     try {
@@ -82,7 +91,7 @@ public class DedicatedHttpClient {
     public <T> T execute(final HttpRequest request, final ResponseHandler<T> handler) {
         HttpContext _context = context != null ? context : contextRepository.acquire();
         try {
-            return client.execute(host, request, handler, _context);
+            return doExecute(request, handler, _context);
         } catch (Exception e) {
             throw new RuntimeException(e);
         } finally {
@@ -92,6 +101,29 @@ public class DedicatedHttpClient {
         }
     }
 
+    private <T> T doExecute(final HttpRequest request, final ResponseHandler<T> handler, HttpContext _context)
+            throws IOException {
+        if (guard == null) {
+            return client.execute(host, request, handler, _context);
+        }
+        guard.acquire();
+        try {
+            return client.execute(host, request, new ResponseHandler<T>() {
+                @Override
+                public T handleResponse(HttpResponse response) throws IOException {
+                    guard.onResponse(response.getStatusLine().getStatusCode());
+                    return handler.handleResponse(response);
+                }
+            }, _context);
+        } catch (IOException e) {
+            // 连接、读取超时等网络异常计入失败；协议错误（如非法重定向）与本地连接池耗尽不是远程OJ的问题，不计入
+            if (!(e instanceof ClientProtocolException) && !(e instanceof ConnectionPoolTimeoutException)) {
+                guard.onFailure();
+            }
+            throw e;
+        }
+    }
+
     // /////////////////////////////////////////////////////////
 
     public <T> T get(String url, SimpleHttpResponseMapper<T> mapper) {
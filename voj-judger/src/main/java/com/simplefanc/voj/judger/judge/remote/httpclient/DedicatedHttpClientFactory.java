@@ -1,16 +1,55 @@
 package com.simplefanc.voj.judger.judge.remote.httpclient;
 
+import com.simplefanc.voj.common.constants.RemoteOj;
+import com.simplefanc.voj.judger.judge.remote.pojo.RemoteOjInfo;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.http.HttpHost;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.protocol.HttpContext;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j(topic = "voj")
 @Component
 @RequiredArgsConstructor
 public class DedicatedHttpClientFactory {
 
     private final AnonymousHttpContextRepository contextRepository;
 
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 每个远程OJ独立的连接池
+     */
+    private final Map<RemoteOj, CloseableHttpClient> httpClients = new ConcurrentHashMap<>();
+
+    private final Map<RemoteOj, RemoteOjGuard> guards = new ConcurrentHashMap<>();
+
+    /**
+     * 使用该OJ独立的连接池，并按 {@link RemoteOjInfo} 的配置限流与熔断
+     */
+    public DedicatedHttpClient build(RemoteOjInfo ojInfo, HttpContext context, String charset) {
+        DedicatedHttpClient client = build(ojInfo.mainHost, context, charset);
+        client.client = httpClients.computeIfAbsent(ojInfo.remoteOj,
+                k -> HttpClientUtil.buildHttpClient(ojInfo.maxConnections, ojInfo.socketTimeout));
+        client.guard = getGuard(ojInfo);
+        return client;
+    }
+
+    public DedicatedHttpClient build(RemoteOjInfo ojInfo, HttpContext context) {
+        return build(ojInfo, context, ojInfo.defaultCharset);
+    }
+
+    public RemoteOjGuard getGuard(RemoteOjInfo ojInfo) {
+        return guards.computeIfAbsent(ojInfo.remoteOj, k -> new RemoteOjGuard(ojInfo, meterRegistry));
+    }
+
     public DedicatedHttpClient build(HttpHost host, HttpContext context, String charset) {
         DedicatedHttpClient client = new DedicatedHttpClient();
         client.host = host;
@@ -33,6 +72,17 @@ public class DedicatedHttpClientFactory {
         return build(host, null, "UTF-8");
     }
 
+    @PreDestroy
+    public void close() {
+        httpClients.forEach((remoteOj, httpClient) -> {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                log.error("[{}] Close httpclient failed:", remoteOj, e);
+            }
+        });
+    }
+
     // private CloseableHttpClient getHttpClinet(
     // int socketTimeout,
     // int connectionTimeout,
@@ -37,6 +37,7 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * https://blog.csdn.net/qq_19642249/article/details/103817546
@@ -52,7 +53,7 @@ public class HttpClientUtil {
     private static final int CONNECTION_REQUEST_TIMEOUT = 1 * 1000;
 
     // 配置客户端连接服务器超时时间
-    private static final int CONNECT_TIMEOUT = 3 * 1000;
+    static final int CONNECT_TIMEOUT = 3 * 1000;
 
     // 配置服务器响应超时时间
     private static final int SOCKET_TIMEOUT = 20 * 1000;
@@ -74,6 +75,8 @@ public class HttpClientUtil {
     // 管理Https连接的上下文类
     private static SSLContextBuilder sslContextBuilder = null;
 
+    private static Registry<ConnectionSocketFactory> socketFactoryRegistry = null;
+
     static {
         try {
             sslContextBuilder = SSLContexts.custom();
@@ -104,10 +107,10 @@ public class HttpClientUtil {
             });
 
             // 注册两种请求形式
-            Registry<ConnectionSocketFactory> registryBuilder = RegistryBuilder.<ConnectionSocketFactory>create()
+            socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
                     .register(_HTTP, new PlainConnectionSocketFactory()).register(_HTTPS, sslConnectionSocketFactory)
                     .build();
-            poolingHttpClientConnectionManager = new PoolingHttpClientConnectionManager(registryBuilder);
+            poolingHttpClientConnectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
             // 最大连接数
             poolingHttpClientConnectionManager.setMaxTotal(MAX_CONN_TOTAL);
             // 最大并发数
@@ -121,6 +124,10 @@ public class HttpClientUtil {
      * http初始化连接配置
      */
     private static RequestConfig getDefaultRequestConfig() {
+        return getRequestConfig(SOCKET_TIMEOUT);
+    }
+
+    private static RequestConfig getRequestConfig(int socketTimeout) {
         return RequestConfig.custom()
                 /*
                  * 从连接池中获取连接的超时时间，假设：连接池中已经使用的连接数等于setMaxTotal，新来的线程在等待1*1000
@@ -140,7 +147,7 @@ public class HttpClientUtil {
                  * 返回的文件内容太大，在指定的时间内没有读完，则出现 java.net.SocketTimeoutException: Read timed
                  * out
                  */
-                .setSocketTimeout(SOCKET_TIMEOUT).build();
+                .setSocketTimeout(socketTimeout).build();
     }
 
     /**
@@ -182,6 +189,24 @@ public class HttpClientUtil {
                 .setUserAgent(USER_AGENT).build();
     }
 
+    /**
+     * 创建使用独立连接池的httpclient，每个远程OJ一个，慢OJ占满自己的连接池时不影响其它OJ；
+     * 返回的httpclient需要由调用方在不再使用时关闭
+     */
+    public static CloseableHttpClient buildHttpClient(int maxConnections, int socketTimeout) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                socketFactoryRegistry);
+        // 每个远程OJ通常只有一个主机，连接数全部给该路由
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        return HttpClients.custom()
+                .setSSLSocketFactory(sslConnectionSocketFactory)
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(getRequestConfig(socketTimeout))
+                .evictIdleConnections(60, TimeUnit.SECONDS)
+                .setUserAgent(USER_AGENT).build();
+    }
+
     /**
      * post请求——JSON格式
      */
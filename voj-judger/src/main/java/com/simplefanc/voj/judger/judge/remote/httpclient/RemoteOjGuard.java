@@ -0,0 +1,153 @@
+package com.simplefanc.voj.judger.judge.remote.httpclient;
+
+import com.simplefanc.voj.judger.judge.remote.pojo.RemoteOjInfo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 单个远程OJ的令牌桶限流与熔断，配置来自 {@link RemoteOjInfo}。
+ * 连续失败达到阈值后熔断，熔断期间请求直接失败；熔断时间过后每次只放行一个探测请求，探测成功则恢复
+ *
+ * @author chenfan
+ */
+@Slf4j(topic = "voj")
+public class RemoteOjGuard {
+
+    private final RemoteOjInfo ojInfo;
+
+    private final Counter rateLimitedCounter;
+
+    private final Counter circuitRejectedCounter;
+
+    /**
+     * 当前可用令牌数，预约等待的请求会使其为负
+     */
+    private double tokens;
+
+    private long lastRefillTime = System.nanoTime();
+
+    private int consecutiveFailures;
+
+    /**
+     * 熔断结束时间，0表示未熔断
+     */
+    private long openUntil;
+
+    /**
+     * 探测请求的超时时间，超过后放行下一个探测请求
+     */
+    private long probeUntil;
+
+    public RemoteOjGuard(RemoteOjInfo ojInfo, MeterRegistry meterRegistry) {
+        this.ojInfo = ojInfo;
+        this.tokens = ojInfo.maxBurst;
+        String oj = ojInfo.remoteOj.getName();
+        this.rateLimitedCounter = Counter.builder("voj.remote.request.rejected")
+                .tag("oj", oj).tag("reason", "rate_limit")
+                .description("被限流或熔断拒绝的远程请求数")
+                .register(meterRegistry);
+        this.circuitRejectedCounter = Counter.builder("voj.remote.request.rejected")
+                .tag("oj", oj).tag("reason", "circuit_open")
+                .description("被限流或熔断拒绝的远程请求数")
+                .register(meterRegistry);
+        Gauge.builder("voj.remote.circuit.open", this, guard -> guard.isOpen() ? 1 : 0)
+                .tag("oj", oj)
+                .description("远程OJ是否处于熔断状态")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 发送请求前调用：熔断时直接失败，否则等待令牌
+     */
+    public void acquire() {
+        if (!allowRequest()) {
+            circuitRejectedCounter.increment();
+            throw new RemoteOjUnavailableException(ojInfo.remoteOj, "circuit open");
+        }
+        long waitMillis = reserve();
+        if (waitMillis <= 0) {
+            return;
+        }
+        if (waitMillis > ojInfo.maxRateLimitWait) {
+            cancelReservation();
+            rateLimitedCounter.increment();
+            throw new RemoteOjUnavailableException(ojInfo.remoteOj, "too many requests");
+        }
+        try {
+            Thread.sleep(waitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteOjUnavailableException(ojInfo.remoteOj, "interrupted");
+        }
+    }
+
+    /**
+     * 收到响应后调用，5xx与429视为失败
+     */
+    public void onResponse(int statusCode) {
+        if (statusCode >= 500 || statusCode == 429) {
+            onFailure();
+        } else {
+            onSuccess();
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (openUntil != 0) {
+            log.info("[{}] Remote OJ recovered, circuit closed.", ojInfo.remoteOj);
+        }
+        consecutiveFailures = 0;
+        openUntil = 0;
+        probeUntil = 0;
+    }
+
+    /**
+     * 网络异常或服务端错误时调用
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        // 探测请求失败或连续失败达到阈值
+        if (openUntil != 0 || consecutiveFailures >= ojInfo.circuitFailureThreshold) {
+            if (openUntil == 0) {
+                log.warn("[{}] Remote OJ failed {} times in a row, circuit opened for {} ms.", ojInfo.remoteOj,
+                        consecutiveFailures, ojInfo.circuitOpenInterval);
+            }
+            openUntil = System.currentTimeMillis() + ojInfo.circuitOpenInterval;
+            probeUntil = 0;
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return openUntil != 0;
+    }
+
+    private synchronized boolean allowRequest() {
+        if (openUntil == 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now < openUntil || now < probeUntil) {
+            return false;
+        }
+        probeUntil = now + ojInfo.socketTimeout + HttpClientUtil.CONNECT_TIMEOUT;
+        return true;
+    }
+
+    /**
+     * 预约一个令牌，返回需要等待的时间
+     */
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(ojInfo.maxBurst, tokens + (now - lastRefillTime) / 1e9 * ojInfo.permitsPerSecond);
+        lastRefillTime = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / ojInfo.permitsPerSecond * 1000);
+    }
+
+    private synchronized void cancelReservation() {
+        tokens += 1;
+    }
+
+}
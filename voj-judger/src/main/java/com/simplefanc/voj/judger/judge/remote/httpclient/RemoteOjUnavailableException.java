@@ -0,0 +1,16 @@
+package com.simplefanc.voj.judger.judge.remote.httpclient;
+
+import com.simplefanc.voj.common.constants.RemoteOj;
+
+/**
+ * 远程OJ已熔断或请求被限流，请求没有发出
+ *
+ * @author chenfan
+ */
+public class RemoteOjUnavailableException extends RuntimeException {
+
+    public RemoteOjUnavailableException(RemoteOj remoteOj, String reason) {
+        super("The remote OJ [" + remoteOj.getName() + "] is temporarily unavailable: " + reason);
+    }
+
+}
@@ -22,6 +22,38 @@ public class RemoteOjInfo {
      */
     public long maxInactiveInterval = 300000L;
 
+    /**
+     * 该OJ独占的连接池大小，慢OJ占满连接也不影响其它OJ
+     */
+    public int maxConnections = 4;
+
+    /**
+     * 服务器响应超时时间，in milliseconds
+     */
+    public int socketTimeout = 20000;
+
+    /**
+     * 令牌桶：每秒允许的请求数与可积累的突发请求数
+     */
+    public double permitsPerSecond = 2.0;
+
+    public int maxBurst = 4;
+
+    /**
+     * 等待令牌的最长时间，超过则直接失败，in milliseconds
+     */
+    public long maxRateLimitWait = 10000L;
+
+    /**
+     * 熔断：连续失败（网络异常、5xx、429）达到该次数后熔断
+     */
+    public int circuitFailureThreshold = 5;
+
+    /**
+     * 熔断后拒绝请求的时间，之后放行一个探测请求，in milliseconds
+     */
+    public long circuitOpenInterval = 60000L;
+
     public RemoteOjInfo(RemoteOj remoteOj, HttpHost mainHost) {
         this.remoteOj = remoteOj;
         this.mainHost = mainHost;
@@ -22,6 +22,11 @@ public class SubmissionInfo {
 
     public Long pid;
 
+    /**
+     * 本地的提交时间
+     */
+    public Date submitTime;
+
     public String serverIp;
 
     public Integer serverPort;
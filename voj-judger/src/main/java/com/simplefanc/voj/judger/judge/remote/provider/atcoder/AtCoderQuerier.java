@@ -46,7 +46,7 @@ public class AtCoderQuerier implements Querier {
 
     @Override
     public SubmissionRemoteStatus query(SubmissionInfo info, RemoteAccount account) {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         SubmissionRemoteStatus status = new SubmissionRemoteStatus();
         String url = String.format(SUBMISSION_RESULT_URL, info.remoteContestId, info.remoteRunId);
         String body = client.get(url).getBody();
@@ -1,10 +1,6 @@
 package com.simplefanc.voj.judger.judge.remote.provider.atcoder;
 
-import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.util.ReUtil;
-import cn.hutool.http.HttpRequest;
-import cn.hutool.http.HttpResponse;
-import cn.hutool.http.HttpUtil;
 import com.simplefanc.voj.judger.judge.remote.pojo.RemoteOjInfo;
 import com.simplefanc.voj.judger.judge.remote.pojo.SubmissionInfo;
 import com.simplefanc.voj.judger.judge.remote.account.RemoteAccount;
@@ -114,35 +110,17 @@ public class AtCoderSubmitter implements Submitter {
         return ReUtil.get("<a href=\"/contests/" + info.remoteContestId + "/submissions/(\\d+)\">Detail</a>", body, 1);
     }
 
-    private String getRunId(SubmissionInfo info, String username) {
-        HttpRequest.getCookieManager().getCookieStore().removeAll();
-        String url = getOjInfo().mainHost + String.format("/contests/%s/submissions?f.Task=%s&f.User=%s", info.remoteContestId, info.remotePid, username);
-        String body = HttpUtil.get(url);
-        return ReUtil.get("<a href=\"/contests/" + info.remoteContestId + "/submissions/(\\d+)\">Detail</a>", body, 1);
-    }
-
-    private HttpResponse trySubmit(SubmissionInfo info, RemoteAccount account) {
-        String submitUrl = getOjInfo().mainHost + String.format(SUBMIT_URL, info.remoteContestId);
-        HttpRequest request = HttpUtil.createPost(submitUrl);
-        HttpRequest httpRequest = request.form(MapUtil.builder(new HashMap<String, Object>())
-                .put("data.TaskScreenName", info.remotePid)
-                .put("data.LanguageId", LANGUAGE_MAP.get(info.language))
-                .put("sourceCode", info.userCode)
-                .put("csrf_token", account.getCsrfToken()).map());
-        httpRequest.cookie(account.getCookies());
-        return httpRequest.execute();
-    }
-
     @Override
     public void submit(SubmissionInfo info, RemoteAccount account) throws Exception {
-//        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         String[] arr = info.remotePid.split("_");
         info.remoteContestId = arr[0];
         info.remoteProblemIndex = arr[1];
-        HttpResponse response = trySubmit(info, account);
+
+        SimpleHttpResponse response = trySubmit(client, info, account);
         // 说明被限制提交频率了
-        if (response.getStatus() == HttpStatus.SC_OK) {
-            String timeStr = ReUtil.get("Wait for (\\d+) second to submit again.", response.body(), 1);
+        if (response.getStatusCode() == HttpStatus.SC_OK) {
+            String timeStr = ReUtil.get("Wait for (\\d+) second to submit again.", response.getBody(), 1);
             if (timeStr != null) {
                 int time = Integer.parseInt(timeStr);
                 try {
@@ -150,13 +128,13 @@ public class AtCoderSubmitter implements Submitter {
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 }
-                response = trySubmit(info, account);
+                response = trySubmit(client, info, account);
             }
         }
 
-        if (response.getStatus() != HttpStatus.SC_MOVED_TEMPORARILY) {
-            log.error("Submit to AtCoder failed, the response status:{}, It may be that the frequency of submission operation is too fast. Please try later", response.getStatus());
-            throw new RuntimeException("[AtCoder] Failed to Submit, the response status:" + response.getStatus());
+        if (response.getStatusCode() != HttpStatus.SC_MOVED_TEMPORARILY) {
+            log.error("Submit to AtCoder failed, the response status:{}, It may be that the frequency of submission operation is too fast. Please try later", response.getStatusCode());
+            throw new RuntimeException("[AtCoder] Failed to Submit, the response status:" + response.getStatusCode());
         }
 
         // 停留3秒钟后再获取id，之后归还账号，避免提交频率过快
@@ -166,48 +144,9 @@ public class AtCoderSubmitter implements Submitter {
             e.printStackTrace();
         }
 
-//        info.remoteRunId = getRunId(client, info, account.getAccountId());
-        info.remoteRunId = getRunId(info, account.getAccountId());
+        info.remoteRunId = getRunId(client, info, account.getAccountId());
     }
 
-//    @Override
-//    public void submit(SubmissionInfo info, RemoteAccount account) throws Exception {
-//        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
-//        String[] arr = info.remotePid.split("_");
-//        info.remoteContestId = arr[0];
-//        info.remoteProblemIndex = arr[1];
-//
-//        SimpleHttpResponse response = trySubmit(client, info, account);
-//        // 说明被限制提交频率了
-//        if (response.getStatusCode() == HttpStatus.SC_OK) {
-//            String timeStr = ReUtil.get("Wait for (\\d+) second to submit again.", response.getBody(), 1);
-//            if (timeStr != null) {
-//                int time = Integer.parseInt(timeStr);
-//                try {
-//                    TimeUnit.SECONDS.sleep(time + 1);
-//                } catch (InterruptedException e) {
-//                    e.printStackTrace();
-//                }
-//                response = trySubmit(client, info, account);
-//            }
-//        }
-//
-//        if (response.getStatusCode() != HttpStatus.SC_MOVED_TEMPORARILY) {
-//            log.error("Submit to AtCoder failed, the response status:{}, It may be that the frequency of submission operation is too fast. Please try later", response.getStatusCode());
-//            throw new RuntimeException("[AtCoder] Failed to Submit, the response status:" + response.getStatusCode());
-//        }
-//
-//        // 停留3秒钟后再获取id，之后归还账号，避免提交频率过快
-//        try {
-//            TimeUnit.SECONDS.sleep(3);
-//        } catch (InterruptedException e) {
-//            e.printStackTrace();
-//        }
-//
-//        info.remoteRunId = getRunId(client, info, account.getAccountId());
-//    }
-
-    @Deprecated
     private SimpleHttpResponse trySubmit(DedicatedHttpClient client, SubmissionInfo info, RemoteAccount account) {
         HttpEntity entity = SimpleNameValueEntityFactory.create(
                 "data.TaskScreenName", info.remotePid,
@@ -216,14 +155,6 @@ public class AtCoderSubmitter implements Submitter {
                 "csrf_token", account.getCsrfToken()
         );
         return client.post(String.format(SUBMIT_URL, info.remoteContestId), entity);
-//        HttpPost post = new HttpPost(String.format("/contests/%s/submit", contestId));
-//        post.setEntity(entity);
-//        client.execute(post, new ResponseHandler<Object>() {
-//            @Override
-//            public Object handleResponse(HttpResponse httpResponse) throws ClientProtocolException, IOException {
-//                return null;
-//            }
-//        });
     }
 
 }
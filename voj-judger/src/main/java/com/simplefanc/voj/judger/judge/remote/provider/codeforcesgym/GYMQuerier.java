@@ -18,6 +18,9 @@ import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpPost;
 import org.springframework.stereotype.Component;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -35,39 +38,66 @@ public class GYMQuerier extends AbstractCFStyleQuerier {
 
     @Override
     public SubmissionRemoteStatus query(SubmissionInfo info, RemoteAccount account) {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
 
         String body = client.get(String.format(SUBMISSION_BY_USERNAME, account.accountId)).getBody();
+        SubmissionRemoteStatus status = parseStatus(client, body, info, account);
+        if (status == null) {
+            status = new SubmissionRemoteStatus();
+            status.statusType = JudgeStatus.STATUS_JUDGING;
+        }
+        return status;
+    }
+
+    /**
+     * 账号的提交列表页一次即可查到多个在途提交
+     */
+    @Override
+    public Map<String, SubmissionRemoteStatus> batchQuery(List<SubmissionInfo> infos, RemoteAccount account) {
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
+
+        String body = client.get(String.format(SUBMISSION_BY_USERNAME, account.accountId)).getBody();
+        Map<String, SubmissionRemoteStatus> result = new HashMap<>();
+        for (SubmissionInfo info : infos) {
+            SubmissionRemoteStatus status = parseStatus(client, body, info, account);
+            if (status != null) {
+                result.put(info.remoteRunId, status);
+            }
+        }
+        return result;
+    }
+
+    private SubmissionRemoteStatus parseStatus(DedicatedHttpClient client, String body, SubmissionInfo info,
+                                               RemoteAccount account) {
         String regex = "<span .*? submissionId=\"" + info.remoteRunId + "\" submissionVerdict=\"(.*?)\" .*?>.*?</span>.*?<i .*?></i>[\\s]*?</td>[\\s]*?" +
                 "<td class=\"time.*?\">[\\s]*?(\\d+)&nbsp;ms[\\s]*?</td>[\\s]*?" +
                 "<td class=\"memory.*?\">[\\s]*?(\\d+)&nbsp;KB[\\s]*?</td>[\\s]*?</tr>";
         Pattern pattern = PatternPool.get(regex, Pattern.DOTALL);
         final Matcher matcher = pattern.matcher(body);
+        if (!matcher.find()) {
+            return null;
+        }
         SubmissionRemoteStatus status = new SubmissionRemoteStatus();
-        status.statusType = JudgeStatus.STATUS_JUDGING;
-        if (matcher.find()) {
-            String statusStr = matcher.group(1);
-            status.statusType = STATUS_MAP.getOrDefault(statusStr, JudgeStatus.STATUS_JUDGING);
-            if (status.statusType == JudgeStatus.STATUS_JUDGING) {
-                return status;
-            }
-            String timeStr = matcher.group(2);
-            status.executionTime = StrUtil.isEmpty(timeStr) ? 0 : Integer.parseInt(timeStr);
-            String memoryStr = matcher.group(3);
-            status.executionMemory = StrUtil.isEmpty(memoryStr) ? 0 : Integer.parseInt(memoryStr);
-            if (status.statusType == JudgeStatus.STATUS_COMPILE_ERROR) {
-                HttpEntity entity = SimpleNameValueEntityFactory.create(
-                        "csrf_token", account.getCsrfToken(),
-                        "submissionId", info.remoteRunId
-                );
-                HttpPost post = new HttpPost(JUDGE_PROTOCOL);
-                post.setEntity(entity);
-                String ceInfo = client.execute(post, HttpStatusValidator.SC_OK).getBody();
-                status.compilationErrorInfo = UnicodeUtil.toString(ceInfo).replaceAll("(\\\\r)?\\\\n", "\n")
-                        .replaceAll("\\\\\\\\", "\\\\");
-            }
+        String statusStr = matcher.group(1);
+        status.statusType = STATUS_MAP.getOrDefault(statusStr, JudgeStatus.STATUS_JUDGING);
+        if (status.statusType == JudgeStatus.STATUS_JUDGING) {
+            return status;
+        }
+        String timeStr = matcher.group(2);
+        status.executionTime = StrUtil.isEmpty(timeStr) ? 0 : Integer.parseInt(timeStr);
+        String memoryStr = matcher.group(3);
+        status.executionMemory = StrUtil.isEmpty(memoryStr) ? 0 : Integer.parseInt(memoryStr);
+        if (status.statusType == JudgeStatus.STATUS_COMPILE_ERROR) {
+            HttpEntity entity = SimpleNameValueEntityFactory.create(
+                    "csrf_token", account.getCsrfToken(),
+                    "submissionId", info.remoteRunId
+            );
+            HttpPost post = new HttpPost(JUDGE_PROTOCOL);
+            post.setEntity(entity);
+            String ceInfo = client.execute(post, HttpStatusValidator.SC_OK).getBody();
+            status.compilationErrorInfo = UnicodeUtil.toString(ceInfo).replaceAll("(\\\\r)?\\\\n", "\n")
+                    .replaceAll("\\\\\\\\", "\\\\");
         }
-
         return status;
     }
 
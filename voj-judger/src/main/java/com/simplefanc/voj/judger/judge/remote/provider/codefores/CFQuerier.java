@@ -1,25 +1,35 @@
 package com.simplefanc.voj.judger.judge.remote.provider.codefores;
 
-import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.util.ReUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.http.HttpUtil;
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONException;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.common.pojo.entity.judge.JudgeCase;
 import com.simplefanc.voj.judger.judge.remote.account.RemoteAccount;
+import com.simplefanc.voj.judger.judge.remote.httpclient.DedicatedHttpClient;
 import com.simplefanc.voj.judger.judge.remote.httpclient.DedicatedHttpClientFactory;
+import com.simplefanc.voj.judger.judge.remote.httpclient.SimpleNameValueEntityFactory;
 import com.simplefanc.voj.judger.judge.remote.pojo.RemoteOjInfo;
 import com.simplefanc.voj.judger.judge.remote.pojo.SubmissionInfo;
 import com.simplefanc.voj.judger.judge.remote.pojo.SubmissionRemoteStatus;
 import com.simplefanc.voj.judger.judge.remote.provider.shared.codeforces.AbstractCFStyleQuerier;
 import lombok.RequiredArgsConstructor;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
@@ -27,6 +37,24 @@ public class CFQuerier extends AbstractCFStyleQuerier {
     private final DedicatedHttpClientFactory dedicatedHttpClientFactory;
     public static final String HOST = "https://codeforces.com";
     private static final String CE_INFO_URL = "/data/submitSource";
+    private static final String USER_STATUS_API = "/api/user.status?handle=%s&from=1&count=%d";
+    /**
+     * 匿名访问的csrf token（与 anonymousContext 中的会话绑定）有效时间
+     */
+    private static final long CSRF_TOKEN_TTL_MILLIS = 30 * 60 * 1000L;
+    /**
+     * 批量查询时额外多取的提交数，账号可能同时被其它判题机使用
+     */
+    private static final int USER_STATUS_EXTRA_COUNT = 20;
+
+    /**
+     * 查询编译信息使用的匿名会话，与账号会话分开
+     */
+    private final HttpContext anonymousContext = buildAnonymousContext();
+
+    private volatile String csrfToken;
+
+    private volatile long csrfTokenTime;
 
     @Override
     public RemoteOjInfo getOjInfo() {
@@ -35,28 +63,15 @@ public class CFQuerier extends AbstractCFStyleQuerier {
 
     @Override
     public SubmissionRemoteStatus query(SubmissionInfo info, RemoteAccount account) {
-//        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
-//        HttpEntity entity = SimpleNameValueEntityFactory.create(
-//                "csrf_token", account.getCsrfToken(),
-//                "submissionId", info.remoteRunId
-//        );
-//        HttpPost post = new HttpPost(CE_INFO_URL);
-//        post.setEntity(entity);
-//        String body = client.execute(post, HttpStatusValidator.SC_OK).getBody();
-        String homePage = HttpUtil.createGet(HOST).execute().body();
-        String csrfToken = ReUtil.get("data-csrf='(\\w+)'", homePage, 1);
-
-        String body = HttpUtil.createPost(HOST + CE_INFO_URL)
-                .header("Origin", HOST)
-                .header("Referer", HOST)
-                .form(MapUtil
-                        .builder(new HashMap<String, Object>())
-                        .put("csrf_token", csrfToken)
-                        .put("submissionId", info.remoteRunId).map()).execute().body();
+        JSONObject submissionInfoJson;
+        try {
+            submissionInfoJson = JSONUtil.parseObj(querySubmitSource(info, getCsrfToken(false)));
+        } catch (JSONException e) {
+            // token 失效时返回的是页面，刷新 token 后重试一次
+            submissionInfoJson = JSONUtil.parseObj(querySubmitSource(info, getCsrfToken(true)));
+        }
 
         SubmissionRemoteStatus status = new SubmissionRemoteStatus();
-
-        JSONObject submissionInfoJson = JSONUtil.parseObj(body);
         String compilationError = submissionInfoJson.getStr("compilationError");
         if ("true".equals(compilationError)) {
             status.executionMemory = 0;
@@ -108,4 +123,67 @@ public class CFQuerier extends AbstractCFStyleQuerier {
 
         return status;
     }
+
+    /**
+     * 通过 user.status 接口一次取回账号最近的提交，评测中的提交直接返回状态；
+     * 已出结果的提交不放入结果，由 {@link #query} 单独获取各测试点详情（每个提交只需一次）
+     */
+    @Override
+    public Map<String, SubmissionRemoteStatus> batchQuery(List<SubmissionInfo> infos, RemoteAccount account) {
+        String body = getClient().get(String.format(USER_STATUS_API, account.getAccountId(),
+                infos.size() + USER_STATUS_EXTRA_COUNT)).getBody();
+        JSONObject json = JSONUtil.parseObj(body);
+        Map<String, SubmissionRemoteStatus> result = new HashMap<>();
+        if (!"OK".equals(json.getStr("status"))) {
+            return result;
+        }
+        Set<String> runIds = infos.stream().map(info -> info.remoteRunId).collect(Collectors.toSet());
+        JSONArray submissions = json.getJSONArray("result");
+        for (int i = 0; i < submissions.size(); i++) {
+            JSONObject submission = submissions.getJSONObject(i);
+            String runId = submission.getStr("id");
+            if (!runIds.contains(runId)) {
+                continue;
+            }
+            String verdict = submission.getStr("verdict");
+            if (verdict == null || "TESTING".equals(verdict)) {
+                SubmissionRemoteStatus status = new SubmissionRemoteStatus();
+                status.statusType = JudgeStatus.STATUS_JUDGING;
+                result.put(runId, status);
+            }
+        }
+        return result;
+    }
+
+    private String querySubmitSource(SubmissionInfo info, String csrfToken) {
+        HttpPost post = new HttpPost(CE_INFO_URL);
+        post.setHeader("Origin", HOST);
+        post.setHeader("Referer", HOST);
+        post.setEntity(SimpleNameValueEntityFactory.create("csrf_token", csrfToken, "submissionId", info.remoteRunId));
+        return getClient().execute(post).getBody();
+    }
+
+    private synchronized String getCsrfToken(boolean forceRefresh) {
+        if (forceRefresh || csrfToken == null
+                || System.currentTimeMillis() - csrfTokenTime > CSRF_TOKEN_TTL_MILLIS) {
+            String homePage = getClient().get("/").getBody();
+            csrfToken = ReUtil.get("data-csrf='(\\w+)'", homePage, 1);
+            csrfTokenTime = System.currentTimeMillis();
+        }
+        return csrfToken;
+    }
+
+    /**
+     * 经过 Codeforces 的独立连接池与限流、熔断
+     */
+    private DedicatedHttpClient getClient() {
+        return dedicatedHttpClientFactory.build(getOjInfo(), anonymousContext);
+    }
+
+    private static HttpContext buildAnonymousContext() {
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute(HttpClientContext.COOKIE_STORE, new BasicCookieStore());
+        return context;
+    }
+
 }
@@ -36,7 +36,7 @@ public class EojLoginer extends AbstractRetentiveLoginer {
 
     @Override
     protected void loginEnforce(RemoteAccount account) throws Exception {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         final String body = client.get("/login/").getBody();
         if (body.contains("logout")) {
             return;
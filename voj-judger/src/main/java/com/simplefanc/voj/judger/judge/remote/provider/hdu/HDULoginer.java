@@ -23,7 +23,7 @@ public class HDULoginer implements Loginer {
 
     @Override
     public void login(RemoteAccount account) throws Exception {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         if (client.get("/").getBody().contains("href=\"/userloginex.php?action=logout\"")) {
             return;
         }
@@ -13,7 +13,9 @@ import com.simplefanc.voj.judger.judge.remote.querier.Querier;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
+import java.net.URLEncoder;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -30,12 +32,41 @@ public class HDUQuerier implements Querier {
 
     @Override
     public SubmissionRemoteStatus query(SubmissionInfo info, RemoteAccount account) throws Exception {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, null, getOjInfo().defaultCharset);
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), null, getOjInfo().defaultCharset);
 
         String html = client.get("/status.php?first=" + info.remoteRunId).getBody();
-        Pattern pattern = Pattern.compile(">" + info.remoteRunId + "</td><td>[\\s\\S]*?</td><td>([\\s\\S]*?)</td><td>[\\s\\S]*?</td><td>(\\d*?)MS</td><td>(\\d*?)K</td>");
+        SubmissionRemoteStatus status = parseStatus(client, html, info.remoteRunId);
+        Assert.notNull(status);
+        return status;
+    }
+
+    /**
+     * 状态页按账号过滤后从最大的 runId 开始倒序列出该账号的提交，一页即可覆盖多个在途提交
+     */
+    @Override
+    public Map<String, SubmissionRemoteStatus> batchQuery(List<SubmissionInfo> infos, RemoteAccount account)
+            throws Exception {
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), null, getOjInfo().defaultCharset);
+
+        long maxRunId = infos.stream().mapToLong(info -> Long.parseLong(info.remoteRunId)).max().orElse(0);
+        String html = client.get("/status.php?first=" + maxRunId + "&user="
+                + URLEncoder.encode(account.getAccountId(), "UTF-8")).getBody();
+        Map<String, SubmissionRemoteStatus> result = new HashMap<>();
+        for (SubmissionInfo info : infos) {
+            SubmissionRemoteStatus status = parseStatus(client, html, info.remoteRunId);
+            if (status != null) {
+                result.put(info.remoteRunId, status);
+            }
+        }
+        return result;
+    }
+
+    private SubmissionRemoteStatus parseStatus(DedicatedHttpClient client, String html, String runId) {
+        Pattern pattern = Pattern.compile(">" + runId + "</td><td>[\\s\\S]*?</td><td>([\\s\\S]*?)</td><td>[\\s\\S]*?</td><td>(\\d*?)MS</td><td>(\\d*?)K</td>");
         Matcher matcher = pattern.matcher(html);
-        Assert.isTrue(matcher.find());
+        if (!matcher.find()) {
+            return null;
+        }
 
         SubmissionRemoteStatus status = new SubmissionRemoteStatus();
         status.rawStatus = matcher.group(1).replaceAll("<[\\s\\S]*?>", "").trim();
@@ -44,8 +75,8 @@ public class HDUQuerier implements Querier {
             status.executionTime = Integer.parseInt(matcher.group(2));
             status.executionMemory = Integer.parseInt(matcher.group(3));
         } else if (status.statusType == JudgeStatus.STATUS_COMPILE_ERROR) {
-            html = client.get("/viewerror.php?rid=" + info.remoteRunId).getBody();
-            status.compilationErrorInfo = ReUtil.get("<pre>([\\s\\S]*?)</pre>", html, 1);
+            String errorHtml = client.get("/viewerror.php?rid=" + runId).getBody();
+            status.compilationErrorInfo = ReUtil.get("<pre>([\\s\\S]*?)</pre>", errorHtml, 1);
         }
         return status;
     }
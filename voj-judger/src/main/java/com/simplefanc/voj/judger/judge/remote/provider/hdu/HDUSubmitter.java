@@ -36,7 +36,7 @@ public class HDUSubmitter implements Submitter {
 
     @Override
     public void submit(SubmissionInfo info, RemoteAccount account) throws Exception {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         HttpEntity entity = SimpleNameValueEntityFactory.create(
                 "_usercode", Base64.encode(URLEncoder.encode(info.userCode, "utf-8").getBytes("utf-8")),
                 "check", "0",
@@ -26,7 +26,7 @@ public class JSKLoginer extends AbstractRetentiveLoginer {
 
     @Override
     protected void loginEnforce(RemoteAccount account) throws Exception {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         client.get("/");
 
         HttpPost post = new HttpPost("/api/auth/sign-in");
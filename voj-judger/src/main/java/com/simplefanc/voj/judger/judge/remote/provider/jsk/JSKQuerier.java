@@ -57,7 +57,7 @@ public class JSKQuerier implements Querier {
 
     @Override
     public SubmissionRemoteStatus query(SubmissionInfo info, RemoteAccount account) {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         // 执行时间和内存
         HttpGet get = new HttpGet("/api/problem/solve/result?solveResultKey=" + info.remoteRunId);
         String result = client.execute(get, HttpStatusValidator.SC_OK).getBody();
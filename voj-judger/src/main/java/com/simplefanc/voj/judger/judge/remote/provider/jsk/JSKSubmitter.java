@@ -51,7 +51,7 @@ public class JSKSubmitter implements Submitter {
 
     @Override
     public void submit(SubmissionInfo info, RemoteAccount account) throws Exception {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         HttpPost post = new HttpPost("/api/problem/solve/submit");
         JSONObject json = getJsonObject(info);
         post.setEntity(new StringEntity(json.toString(), StandardCharsets.UTF_8));
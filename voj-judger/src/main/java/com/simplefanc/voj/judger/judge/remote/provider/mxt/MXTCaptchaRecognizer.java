@@ -2,7 +2,8 @@ package com.simplefanc.voj.judger.judge.remote.provider.mxt;
 
 import cn.hutool.core.img.gif.GifDecoder;
 
-import java.awt.*;
+import com.simplefanc.voj.judger.judge.remote.provider.shared.captcha.BitmapGlyphMatcher;
+
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
@@ -815,16 +816,20 @@ public class MXTCaptchaRecognizer {
 
     };
 
+    /**
+     * 依次为数字、大写字母、小写字母，与某个模板的差异像素少于5个时直接采用
+     */
+    private static final BitmapGlyphMatcher MATCHER = new BitmapGlyphMatcher(30, 27, 5)
+            .addTemplates('0', digitals)
+            .addTemplates('A', upper)
+            .addTemplates('a', lower);
+
     /**
      * @param colorInt 像素点的RGB值
      * @return
      */
     private static boolean isBlack(int colorInt) {
-        Color color = new Color(colorInt);
-        if (color.getRed() + color.getGreen() + color.getBlue() <= 500) {
-            return true;
-        }
-        return false;
+        return ((colorInt >> 16) & 0xFF) + ((colorInt >> 8) & 0xFF) + (colorInt & 0xFF) <= 500;
     }
 
     /**
@@ -876,75 +881,7 @@ public class MXTCaptchaRecognizer {
      * @return
      */
     private static char recognizeSymbol(BufferedImage image) {
-        int h = image.getHeight();
-        int w = image.getWidth();
-
-        int minDiff = 999999;
-        char symAns = 0;
-        // 对于某个给定数值
-        for (int i = 0; i < 10; i++) {
-            int curDiff = 0;
-            for (int y = 0; y < h; y++) {
-                for (int x = 0; x < w; x++) {
-                    boolean pixel1 = digitals[i][y].charAt(x) == '#';
-                    boolean pixel2 = isBlack(image.getRGB(x, y));
-                    if (pixel1 != pixel2) {
-                        ++curDiff;
-                    }
-                }
-            }
-            if (curDiff < minDiff) {
-                minDiff = curDiff;
-                symAns = (char) ('0' + i);
-            }
-            if (minDiff < 5) {
-                return symAns;
-            }
-        }
-
-        // 对于某个给定大写字母
-        for (int i = 0; i < 26; i++) {
-            int curDiff = 0;
-            for (int y = 0; y < h; y++) {
-                for (int x = 0; x < w; x++) {
-                    boolean pixel1 = upper[i][y].charAt(x) == '#';
-                    boolean pixel2 = isBlack(image.getRGB(x, y));
-                    if (pixel1 != pixel2) {
-                        ++curDiff;
-                    }
-                }
-            }
-            if (curDiff < minDiff) {
-                minDiff = curDiff;
-                symAns = (char) ('A' + i);
-            }
-            if (minDiff < 5) {
-                return symAns;
-            }
-        }
-
-        // 对于某个给定小写字母
-        for (int i = 0; i < 26; i++) {
-            int curDiff = 0;
-            for (int y = 0; y < h; y++) {
-                for (int x = 0; x < w; x++) {
-                    boolean pixel1 = lower[i][y].charAt(x) == '#';
-                    boolean pixel2 = isBlack(image.getRGB(x, y));
-                    if (pixel1 != pixel2) {
-                        ++curDiff;
-                    }
-                }
-            }
-            if (curDiff < minDiff) {
-                minDiff = curDiff;
-                symAns = (char) ('a' + i);
-            }
-            if (minDiff < 5) {
-                return symAns;
-            }
-        }
-
-        return symAns;
+        return MATCHER.recognize(image, MXTCaptchaRecognizer::isBlack);
     }
 
     /**
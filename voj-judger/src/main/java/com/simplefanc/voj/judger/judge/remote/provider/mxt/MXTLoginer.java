@@ -49,7 +49,7 @@ public class MXTLoginer extends AbstractRetentiveLoginer {
 
     @Override
     protected void loginEnforce(RemoteAccount account) throws Exception {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         // 获得SHRIOSESSIONID
         client.get("/login");
         if (client.execute(new HttpPost("/islogin"), HttpStatusValidator.SC_OK).getBody().contains("1")) {
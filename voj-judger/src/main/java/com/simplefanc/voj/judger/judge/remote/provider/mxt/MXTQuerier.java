@@ -83,7 +83,7 @@ public class MXTQuerier implements Querier {
 
     @Override
     public SubmissionRemoteStatus query(SubmissionInfo info, RemoteAccount account) throws Exception {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         HttpPost post = new HttpPost("/submit/solution/" + info.remoteRunId + "/");
         String body = client.execute(post, HttpStatusValidator.SC_OK).getBody();
         final JSONObject jsonObject = JSONUtil.parseObj(body);
@@ -59,7 +59,7 @@ public class MXTSubmitter implements Submitter {
 
     @Override
     public void submit(SubmissionInfo info, RemoteAccount account) throws Exception {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         HttpEntity entity = SimpleNameValueEntityFactory.create("language", LANGUAGE_MAP.get(info.language), "notes_id",
                 "0", "source", info.userCode);
         HttpPost post = new HttpPost("/submit/7/" + info.remotePid + "/");
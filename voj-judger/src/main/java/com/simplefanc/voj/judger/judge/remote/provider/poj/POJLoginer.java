@@ -24,7 +24,7 @@ public class POJLoginer extends AbstractRetentiveLoginer {
 
     @Override
     protected void loginEnforce(RemoteAccount account) {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         if (client.get("/").getBody().contains(">Log Out</a>")) {
             return;
         }
@@ -14,8 +14,12 @@ import com.simplefanc.voj.judger.judge.remote.querier.Querier;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
+import java.net.URLEncoder;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Component
 @RequiredArgsConstructor
@@ -45,7 +49,7 @@ public class POJQuerier implements Querier {
 
     @Override
     public SubmissionRemoteStatus query(SubmissionInfo info, RemoteAccount account) {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         // 需要登录
         String html = client
                 .get("/showsource?solution_id=" + info.remoteRunId, new HttpBodyValidator("<title>Error</title>", true))
@@ -65,4 +69,40 @@ public class POJQuerier implements Querier {
         return status;
     }
 
+    /**
+     * 状态页（无需登录）按账号过滤后列出 runId 小于 top 的最近提交，一页即可覆盖多个在途提交；
+     * 编译错误的提交不放入结果，由 {@link #query} 单独获取编译信息
+     */
+    @Override
+    public Map<String, SubmissionRemoteStatus> batchQuery(List<SubmissionInfo> infos, RemoteAccount account)
+            throws Exception {
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
+        long maxRunId = infos.stream().mapToLong(info -> Long.parseLong(info.remoteRunId)).max().orElse(0);
+        String html = client.get("/status?user_id=" + URLEncoder.encode(account.getAccountId(), "UTF-8")
+                + "&top=" + (maxRunId + 1)).getBody();
+
+        Map<String, SubmissionRemoteStatus> result = new HashMap<>();
+        for (SubmissionInfo info : infos) {
+            // Run ID, User, Problem, Result, Memory, Time
+            Matcher matcher = Pattern.compile("<td>" + info.remoteRunId
+                    + "</td><td>[\\s\\S]*?</td><td>[\\s\\S]*?</td><td>([\\s\\S]*?)</td><td>([\\s\\S]*?)</td><td>([\\s\\S]*?)</td>")
+                    .matcher(html);
+            if (!matcher.find()) {
+                continue;
+            }
+            SubmissionRemoteStatus status = new SubmissionRemoteStatus();
+            status.rawStatus = matcher.group(1).replaceAll("<.*?>", "").trim();
+            status.statusType = STATUS_MAP.getOrDefault(status.rawStatus, JudgeStatus.STATUS_JUDGING);
+            if (status.statusType == JudgeStatus.STATUS_COMPILE_ERROR) {
+                continue;
+            }
+            if (status.statusType == JudgeStatus.STATUS_ACCEPTED) {
+                status.executionMemory = Integer.parseInt(ReUtil.getGroup1("([-\\d]+)", matcher.group(2)));
+                status.executionTime = Integer.parseInt(ReUtil.getGroup1("([-\\d]+)", matcher.group(3)));
+            }
+            result.put(info.remoteRunId, status);
+        }
+        return result;
+    }
+
 }
@@ -48,7 +48,7 @@ public class POJSubmitter implements Submitter {
 
     @Override
     public void submit(SubmissionInfo info, RemoteAccount account) throws Exception {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         HttpEntity entity = SimpleNameValueEntityFactory.create("language", LANGUAGE_MAP.get(info.language),
                 "problem_id", info.remotePid, "source", new String(Base64.encodeBase64(info.userCode.getBytes())),
                 "encoded", "1", "submit", "Submit");
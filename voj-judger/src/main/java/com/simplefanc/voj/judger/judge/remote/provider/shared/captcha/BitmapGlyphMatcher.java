@@ -0,0 +1,118 @@
+package com.simplefanc.voj.judger.judge.remote.provider.shared.captcha;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * 验证码字符模板匹配：字符模板（'#' 为前景）在创建时编译为按行展开的 long 位图，
+ * 待识别图片只二值化一次，与每个模板的差异像素数通过 XOR + {@link Long#bitCount} 计算
+ *
+ * @author chenfan
+ */
+public class BitmapGlyphMatcher {
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * 差异像素数小于该值时直接采用该模板，不再比较后面的模板
+     */
+    private final int acceptDiff;
+
+    private final List<long[]> templates = new ArrayList<>();
+
+    private final StringBuilder symbols = new StringBuilder();
+
+    /**
+     * @param width      字符图片宽度
+     * @param height     字符图片高度
+     * @param acceptDiff 差异像素数小于该值时直接采用该模板
+     */
+    public BitmapGlyphMatcher(int width, int height, int acceptDiff) {
+        this.width = width;
+        this.height = height;
+        this.acceptDiff = acceptDiff;
+    }
+
+    /**
+     * 按顺序添加一组模板，第 i 个模板对应字符 first + i；匹配时按添加顺序比较
+     *
+     * @param first  第一个模板对应的字符
+     * @param glyphs 每个模板为 height 行、每行 width 个字符的点阵
+     */
+    public BitmapGlyphMatcher addTemplates(char first, String[][] glyphs) {
+        for (int i = 0; i < glyphs.length; i++) {
+            long[] bits = new long[wordCount()];
+            for (int y = 0; y < height; y++) {
+                String row = glyphs[i][y];
+                for (int x = 0; x < width; x++) {
+                    if (row.charAt(x) == '#') {
+                        set(bits, y * width + x);
+                    }
+                }
+            }
+            templates.add(bits);
+            symbols.append((char) (first + i));
+        }
+        return this;
+    }
+
+    /**
+     * 将图片二值化为与模板相同格式的位图，整块读取像素
+     *
+     * @param image        字符图片，尺寸需与模板一致
+     * @param isForeground 根据像素RGB判断是否为前景
+     */
+    public long[] binarize(BufferedImage image, IntPredicate isForeground) {
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        long[] bits = new long[wordCount()];
+        for (int i = 0; i < pixels.length; i++) {
+            if (isForeground.test(pixels[i])) {
+                set(bits, i);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @param image        待识别的字符图片
+     * @param isForeground 根据像素RGB判断是否为前景
+     * @return 差异像素最少的模板对应的字符，差异相同时取先添加的
+     */
+    public char recognize(BufferedImage image, IntPredicate isForeground) {
+        return match(binarize(image, isForeground));
+    }
+
+    public char match(long[] bits) {
+        int minDiff = Integer.MAX_VALUE;
+        char symbol = 0;
+        for (int i = 0; i < templates.size(); i++) {
+            long[] template = templates.get(i);
+            int diff = 0;
+            // 已经不可能比当前最优更小时提前结束
+            for (int w = 0; w < template.length && diff < minDiff; w++) {
+                diff += Long.bitCount(template[w] ^ bits[w]);
+            }
+            if (diff < minDiff) {
+                minDiff = diff;
+                symbol = symbols.charAt(i);
+            }
+            if (minDiff < acceptDiff) {
+                return symbol;
+            }
+        }
+        return symbol;
+    }
+
+    private int wordCount() {
+        return (width * height + 63) >>> 6;
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+}
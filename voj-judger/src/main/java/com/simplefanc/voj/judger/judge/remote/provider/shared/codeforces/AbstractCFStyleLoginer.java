@@ -20,7 +20,7 @@ public abstract class AbstractCFStyleLoginer extends AbstractRetentiveLoginer {
 
     @Override
     protected void loginEnforce(RemoteAccount account) {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         final String homePage = client.get("/").getBody();
         if (homePage.contains("/logout\">") && homePage.contains("<a href=\"/profile/" + account.getAccountId() + "\"")) {
             return;
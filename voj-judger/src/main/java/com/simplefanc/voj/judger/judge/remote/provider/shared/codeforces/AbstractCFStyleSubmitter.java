@@ -29,7 +29,7 @@ public abstract class AbstractCFStyleSubmitter implements Submitter {
 
     @Override
     public void submit(SubmissionInfo info, RemoteAccount account) throws Exception {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         submitCode(client, info, account);
         // 获取提交的题目id
         info.remoteRunId = getMaxIdByParseHtml(client, info, account);
@@ -1,10 +1,10 @@
 package com.simplefanc.voj.judger.judge.remote.provider.tkoj;
 
+import com.simplefanc.voj.judger.judge.remote.provider.shared.captcha.BitmapGlyphMatcher;
+
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 public class TKOJCaptchaRecognizer {
 
@@ -40,6 +40,14 @@ public class TKOJCaptchaRecognizer {
                     "#########.", ".########.", "......###.", "......###.", ".....####.", ".##.####..", ".#######..",
                     ".######..."}};
 
+    private static final BitmapGlyphMatcher MATCHER = new BitmapGlyphMatcher(10, 15, 1)
+            .addTemplates('0', digitals);
+
+    /**
+     * 灰度值（RGB之和）的最大值
+     */
+    private static final int MAX_GRAY = 255 * 3;
+
     /**
      * @param image 需要被分割的验证码
      * @return
@@ -68,26 +76,24 @@ public class TKOJCaptchaRecognizer {
 
     /**
      * @param image 目标图片
-     * @return 灰度集
+     * @return 灰度集，下标为灰度值
      */
-    private static Set<Integer> getGraySet(BufferedImage image) {
+    private static boolean[] getGraySet(BufferedImage image) {
         int h = image.getHeight();
         int w = image.getWidth();
         // 灰度统计
-        Set<Integer> hashSet = new HashSet<Integer>();
-        for (int x = 0; x < w; x++) {
-            for (int y = 0; y < h; y++) {
-                hashSet.add(calGray(image.getRGB(x, y)));
-            }
+        boolean[] graySet = new boolean[MAX_GRAY + 1];
+        for (int rgb : image.getRGB(0, 0, w, h, null, 0, w)) {
+            graySet[calGray(rgb)] = true;
         }
-        return hashSet;
+        return graySet;
     }
 
     /**
      * @param image   需要打印的图像
      * @param graySet 背景灰度集
      */
-    private static void printImage(BufferedImage image, Set<Integer> graySet) {
+    private static void printImage(BufferedImage image, boolean[] graySet) {
         int h = image.getHeight();
         int w = image.getWidth();
 
@@ -95,7 +101,7 @@ public class TKOJCaptchaRecognizer {
         for (int y = 0; y < h; y++) {
             System.out.printf("\"");
             for (int x = 0; x < w; x++) {
-                if (graySet.contains(calGray(image.getRGB(x, y)))) {
+                if (graySet[calGray(image.getRGB(x, y))]) {
                     System.out.print(".");
                 } else {
                     System.out.print("#");
@@ -111,34 +117,8 @@ public class TKOJCaptchaRecognizer {
      * @param graySet 背景灰度集
      * @return 符号
      */
-    private static char recognizeSymbol(BufferedImage image, Set<Integer> graySet) {
-        int h = image.getHeight();
-        int w = image.getWidth();
-
-        int minDiff = 999999;
-        char symAns = 0;
-        // 对于某个给定数值
-        for (int i = 0; i < 10; i++) {
-            int curDiff = 0;
-            for (int y = 0; y < h; y++) {
-                for (int x = 0; x < w; x++) {
-                    boolean pixel1 = digitals[i][y].charAt(x) == '#';
-                    boolean pixel2 = !graySet.contains(calGray(image.getRGB(x, y)));
-                    if (pixel1 != pixel2) {
-                        ++curDiff;
-                    }
-                }
-            }
-            if (curDiff < minDiff) {
-                minDiff = curDiff;
-                symAns = (char) ('0' + i);
-            }
-            if (minDiff == 0) {
-                return symAns;
-            }
-        }
-
-        return symAns;
+    private static char recognizeSymbol(BufferedImage image, boolean[] graySet) {
+        return MATCHER.recognize(image, rgb -> !graySet[calGray(rgb)]);
     }
 
     /**
@@ -148,7 +128,7 @@ public class TKOJCaptchaRecognizer {
     public static String recognize(BufferedImage image) {
         StringBuilder ans = new StringBuilder();
         List<BufferedImage> subImgs = splitImage(image);
-        Set<Integer> graySet = getGraySet(subImgs.get(subImgs.size() - 1));
+        boolean[] graySet = getGraySet(subImgs.get(subImgs.size() - 1));
 
         // printImage(image, graySet);
         for (int i = 0; i < subImgs.size() - 1; i++) {
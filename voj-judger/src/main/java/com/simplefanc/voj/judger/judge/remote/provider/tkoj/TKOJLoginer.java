@@ -23,7 +23,7 @@ public class TKOJLoginer extends AbstractRetentiveLoginer {
 
     @Override
     protected void loginEnforce(RemoteAccount account) throws Exception {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         if (client.get("/loginpage.php", HttpStatusValidator.SC_OK).getBody().contains("Please logout First!")) {
             return;
         }
@@ -61,7 +61,7 @@ public class TKOJSubmitter implements Submitter {
 
     @Override
     public void submit(SubmissionInfo info, RemoteAccount account) throws Exception {
-        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo().mainHost, account.getContext());
+        DedicatedHttpClient client = dedicatedHttpClientFactory.build(getOjInfo(), account.getContext());
         // 进行代码提交
         HttpEntity entity = SimpleNameValueEntityFactory.create("id", info.remotePid, "language", info.language,
                 "source", info.userCode, "csrf", TKOJVerifyUtil.getCsrf(client), "vcode",
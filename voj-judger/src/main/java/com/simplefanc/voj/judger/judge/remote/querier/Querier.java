@@ -5,8 +5,21 @@ import com.simplefanc.voj.judger.judge.remote.pojo.SubmissionInfo;
 import com.simplefanc.voj.judger.judge.remote.pojo.SubmissionRemoteStatus;
 import com.simplefanc.voj.judger.judge.remote.account.RemoteAccount;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 public interface Querier extends RemoteOjAware {
 
     SubmissionRemoteStatus query(SubmissionInfo info, RemoteAccount account) throws Exception;
 
+    /**
+     * 一次请求查询同一账号下的多个提交，key为 remoteRunId；没有查到的提交不放入结果，由调用方再调用 {@link #query} 单独查询。
+     * 远程OJ支持批量查看状态时（如状态页、用户提交列表）应覆盖该方法，默认不支持批量查询
+     */
+    default Map<String, SubmissionRemoteStatus> batchQuery(List<SubmissionInfo> infos, RemoteAccount account)
+            throws Exception {
+        return Collections.emptyMap();
+    }
+
 }
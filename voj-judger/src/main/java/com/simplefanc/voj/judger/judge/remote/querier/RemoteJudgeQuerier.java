@@ -1,6 +1,5 @@
 package com.simplefanc.voj.judger.judge.remote.querier;
 
-import cn.hutool.core.lang.UUID;
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.common.pojo.entity.judge.Judge;
@@ -9,6 +8,9 @@ import com.simplefanc.voj.judger.dao.ContestRecordEntityService;
 import com.simplefanc.voj.judger.dao.JudgeCaseEntityService;
 import com.simplefanc.voj.judger.dao.JudgeEntityService;
 import com.simplefanc.voj.judger.dao.UserAcproblemEntityService;
+import com.simplefanc.voj.judger.dao.ProblemStatEntityService;
+import com.simplefanc.voj.judger.dao.UserRecordEntityService;
+import com.simplefanc.voj.judger.judge.JudgeStatusPublisher;
 import com.simplefanc.voj.judger.judge.remote.account.RemoteAccount;
 import com.simplefanc.voj.judger.judge.remote.pojo.SubmissionInfo;
 import com.simplefanc.voj.judger.judge.remote.pojo.SubmissionRemoteStatus;
@@ -17,11 +19,17 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * 远程判题结果轮询：同一远程OJ同一账号下的在途提交归为一组，每组只有一个轮询任务，
+ * 到期的提交尽量通过 {@link Querier#batchQuery} 一次请求查回，查不到的再单独查询；
+ * 每个提交的轮询间隔按状态自适应：状态没有变化时逐步退避，状态推进（如排队→编译→评测）后恢复为最短间隔
+ *
  * @author chenfan
  */
 @Slf4j(topic = "voj")
@@ -32,8 +40,29 @@ public class RemoteJudgeQuerier {
     private final static ScheduledExecutorService SCHEDULER = Executors
             .newScheduledThreadPool(Runtime.getRuntime().availableProcessors() * 2);
 
-    private final static Map<String, ScheduledFuture<?>> FUTURE_TASK_MAP = new ConcurrentHashMap<>(
-            Runtime.getRuntime().availableProcessors() * 2);
+    /**
+     * 提交后第一次查询的延迟
+     */
+    private final static long FIRST_QUERY_DELAY_MILLIS = 1000L;
+
+    private final static long MIN_QUERY_INTERVAL_MILLIS = 2000L;
+
+    private final static long MAX_QUERY_INTERVAL_MILLIS = 16000L;
+
+    /**
+     * 连续查询失败超过该次数则判为提交失败
+     */
+    private final static int MAX_QUERY_FAILURE = 20;
+
+    /**
+     * 等待远程结果的最长时间
+     */
+    private final static long MAX_WAIT_MILLIS = 10 * 60 * 1000L;
+
+    /**
+     * key为 远程OJ:账号
+     */
+    private final Map<String, QueryGroup> queryGroups = new ConcurrentHashMap<>();
 
     private final JudgeEntityService judgeEntityService;
 
@@ -43,53 +72,152 @@ public class RemoteJudgeQuerier {
 
     private final ContestRecordEntityService contestRecordEntityService;
 
-    public void process(SubmissionInfo info, RemoteAccount account) {
-        String key = UUID.randomUUID().toString() + info.submitId;
+    private final UserRecordEntityService userRecordEntityService;
+
+    private final ProblemStatEntityService problemStatEntityService;
+
+    private final JudgeStatusPublisher judgeStatusPublisher;
 
-        ScheduledFuture<?> scheduledFuture = SCHEDULER.scheduleWithFixedDelay(new QueryTask(info, account, key), 0, 3,
-                TimeUnit.SECONDS);
-        FUTURE_TASK_MAP.put(key, scheduledFuture);
+    public void process(SubmissionInfo info, RemoteAccount account) {
+        String key = info.remoteOj + ":" + account.getAccountId();
+        queryGroups.computeIfAbsent(key, k -> new QueryGroup(account)).add(new QueryTask(info));
     }
 
-    class QueryTask implements Runnable {
+    /**
+     * 同一远程OJ同一账号下的在途提交
+     */
+    class QueryGroup implements Runnable {
 
-        AtomicInteger count = new AtomicInteger(0);
+        private final RemoteAccount account;
 
-        SubmissionInfo info;
+        private final List<QueryTask> tasks = new ArrayList<>();
 
-        RemoteAccount account;
+        private ScheduledFuture<?> future;
 
-        String key;
+        private long nextRunTime = Long.MAX_VALUE;
 
-        public QueryTask(SubmissionInfo info, RemoteAccount account, String key) {
-            this.info = info;
+        private boolean running;
+
+        QueryGroup(RemoteAccount account) {
             this.account = account;
-            this.key = key;
+        }
+
+        synchronized void add(QueryTask task) {
+            tasks.add(task);
+            // 正在轮询时，本轮结束后会按最早的到期时间重新调度
+            if (!running && task.nextQueryTime < nextRunTime) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                schedule(task.nextQueryTime);
+            }
+        }
+
+        private void schedule(long runTime) {
+            nextRunTime = runTime;
+            future = SCHEDULER.schedule(this, Math.max(runTime - System.currentTimeMillis(), 0),
+                    TimeUnit.MILLISECONDS);
         }
 
         @Override
         public void run() {
-            // 超过20次失败则判为提交失败
-            if (count.get() > 20) {
-                handleQueryFailure();
-                return;
+            List<QueryTask> dueTasks = new ArrayList<>();
+            synchronized (this) {
+                // 取消失败的旧调度与新调度可能同时触发，由正在执行的一轮结束后重新调度
+                if (running) {
+                    return;
+                }
+                running = true;
+                future = null;
+                nextRunTime = Long.MAX_VALUE;
+                long now = System.currentTimeMillis();
+                for (QueryTask task : tasks) {
+                    if (task.nextQueryTime <= now) {
+                        dueTasks.add(task);
+                    }
+                }
             }
-
-            count.getAndIncrement();
             try {
-                Querier querier = QueriersHolder.getQuerier(info.remoteOj);
-                final SubmissionRemoteStatus result = querier.query(info, account);
-                checkSubmissionResult(result);
-            } catch (Exception e) {
-                log.error("The Error of getting the `remote judge` result:", e);
+                query(dueTasks);
+            } catch (Throwable t) {
+                log.error("The Error of getting the `remote judge` result:", t);
+            } finally {
+                synchronized (this) {
+                    tasks.removeIf(task -> task.finished);
+                    running = false;
+                    tasks.stream()
+                            .mapToLong(task -> task.nextQueryTime)
+                            .min()
+                            .ifPresent(this::schedule);
+                }
             }
         }
 
+        private void query(List<QueryTask> dueTasks) {
+            if (dueTasks.isEmpty()) {
+                return;
+            }
+            Querier querier = QueriersHolder.getQuerier(dueTasks.get(0).info.remoteOj);
+            Map<String, SubmissionRemoteStatus> results = Collections.emptyMap();
+            if (dueTasks.size() > 1) {
+                List<SubmissionInfo> infos = new ArrayList<>(dueTasks.size());
+                dueTasks.forEach(task -> infos.add(task.info));
+                try {
+                    results = querier.batchQuery(infos, account);
+                } catch (Exception e) {
+                    log.error("[{}] Batch query of the `remote judge` result failed:", account.getRemoteOj(), e);
+                }
+            }
+            for (QueryTask task : dueTasks) {
+                SubmissionRemoteStatus result = results.get(task.info.remoteRunId);
+                try {
+                    if (result == null) {
+                        result = querier.query(task.info, account);
+                    }
+                    task.checkSubmissionResult(result);
+                } catch (Exception e) {
+                    log.error("The Error of getting the `remote judge` result:", e);
+                    task.onQueryFailure();
+                }
+            }
+        }
+
+    }
+
+    class QueryTask {
+
+        final SubmissionInfo info;
+
+        final long startTime = System.currentTimeMillis();
+
+        long nextQueryTime = startTime + FIRST_QUERY_DELAY_MILLIS;
+
+        long interval = MIN_QUERY_INTERVAL_MILLIS;
+
+        int failureCount;
+
+        JudgeStatus lastStatus;
+
+        volatile boolean finished;
+
+        QueryTask(SubmissionInfo info) {
+            this.info = info;
+        }
+
         private void checkSubmissionResult(SubmissionRemoteStatus result) {
+            failureCount = 0;
             JudgeStatus status = result.getStatusType() != null ? result.getStatusType()
                     : JudgeStatus.STATUS_SYSTEM_ERROR;
             if (status == JudgeStatus.STATUS_COMPILING || status == JudgeStatus.STATUS_JUDGING) {
-                recordMidResult(status);
+                if (status != lastStatus) {
+                    // 状态推进，很快会有结果
+                    lastStatus = status;
+                    interval = MIN_QUERY_INTERVAL_MILLIS;
+                    recordMidResult(status);
+                } else {
+                    interval = Math.min(interval * 2, MAX_QUERY_INTERVAL_MILLIS);
+                }
+                scheduleNext();
             } else {
                 log.info("[{}] Get Result Successfully! Status:[{}]", info.remoteOj, status);
 
@@ -109,11 +237,31 @@ public class RemoteJudgeQuerier {
                         userAcproblemEntityService.saveOrUpdate(new UserAcproblem().setPid(judge.getPid())
                                 .setUid(judge.getUid()).setSubmitId(judge.getSubmitId()));
                     }
+                    userRecordEntityService.refreshUserStat(judge.getUid());
+                    problemStatEntityService.addResult(judge.getPid(), judge.getStatus());
                 } else {
                     // 如果是比赛提交
                     contestRecordEntityService.updateContestRecord(judge);
                 }
-                cancelFutureTask();
+                judgeStatusPublisher.publish(judge.setSubmitTime(info.submitTime));
+                finished = true;
+            }
+        }
+
+        private void onQueryFailure() {
+            // 连续失败超过20次则判为提交失败
+            if (++failureCount > MAX_QUERY_FAILURE) {
+                handleQueryFailure();
+                return;
+            }
+            interval = Math.min(interval * 2, MAX_QUERY_INTERVAL_MILLIS);
+            scheduleNext();
+        }
+
+        private void scheduleNext() {
+            nextQueryTime = System.currentTimeMillis() + interval;
+            if (nextQueryTime - startTime > MAX_WAIT_MILLIS) {
+                handleQueryFailure();
             }
         }
 
@@ -142,6 +290,7 @@ public class RemoteJudgeQuerier {
             judge.setSubmitId(info.submitId).setStatus(status.getStatus());
             // 写回数据库
             judgeEntityService.updateById(judge);
+            judgeStatusPublisher.publish(info, status);
         }
 
         private void handleQueryFailure() {
@@ -151,19 +300,10 @@ public class RemoteJudgeQuerier {
                     "Waiting for remote judge result exceeds the maximum number of times, please try submitting again!")
                     .eq("submit_id", info.submitId);
             judgeEntityService.update(judgeUpdateWrapper);
+            judgeStatusPublisher.publish(info, JudgeStatus.STATUS_SUBMITTED_FAILED);
 
             log.error("[{}] Get Result Failed!", info.remoteOj);
-            cancelFutureTask();
-        }
-
-        private void cancelFutureTask() {
-            ScheduledFuture<?> future = FUTURE_TASK_MAP.get(key);
-            if (future != null) {
-                boolean isCanceled = future.cancel(true);
-                if (isCanceled) {
-                    FUTURE_TASK_MAP.remove(key);
-                }
-            }
+            finished = true;
         }
 
     }
@@ -5,15 +5,18 @@ import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
 import com.simplefanc.voj.common.constants.JudgeStatus;
 import com.simplefanc.voj.common.pojo.entity.judge.Judge;
 import com.simplefanc.voj.judger.dao.JudgeEntityService;
+import com.simplefanc.voj.judger.judge.JudgeStatusPublisher;
 import com.simplefanc.voj.judger.judge.remote.pojo.SubmissionInfo;
 import com.simplefanc.voj.judger.judge.remote.account.RemoteAccount;
-import com.simplefanc.voj.judger.judge.remote.loginer.LoginersHolder;
+import com.simplefanc.voj.judger.judge.remote.account.RemoteAccountRepository;
 import com.simplefanc.voj.judger.service.JudgeService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cloud.context.config.annotation.RefreshScope;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * @author chenfan
  */
@@ -24,6 +27,10 @@ public class RemoteJudgeSubmitter {
 
     private final JudgeEntityService judgeEntityService;
 
+    private final RemoteAccountRepository remoteAccountRepository;
+
+    private final JudgeStatusPublisher judgeStatusPublisher;
+
     public boolean process(SubmissionInfo info, RemoteAccount account) {
         log.info(
                 "Ready Send Task to RemoteJudge[{}] => submit_id: [{}], uid: [{}],"
@@ -31,13 +38,20 @@ public class RemoteJudgeSubmitter {
                 info.remoteOj, info.submitId, info.uid, info.pid, account.accountId, account.password);
 
         String errLog = null;
+        // 提交期间持有账号的会话锁，避免后台保活重新登录替换正在使用的会话
+        ReentrantLock sessionLock = account.getSessionLock();
+        sessionLock.lock();
         try {
-            // account的context存储了相关cookie等
-            LoginersHolder.getLoginer(info.remoteOj).login(account);
+            // account的context存储了相关cookie等，会话有效时不会重新登录
+            remoteAccountRepository.login(account);
             SubmittersHolder.getSubmitter(info.remoteOj).submit(info, account);
         } catch (Exception e) {
             log.error("Submit Failed! Error:", e);
+            // 会话可能已被远程OJ注销，下次提交前重新登录
+            remoteAccountRepository.invalidate(account);
             errLog = e.getMessage();
+        } finally {
+            sessionLock.unlock();
         }
 
         // 提交失败 前端手动按按钮再次提交 修改状态 STATUS_SUBMITTED_FAILED
@@ -49,6 +63,7 @@ public class RemoteJudgeSubmitter {
             judgeUpdateWrapper.set("status", JudgeStatus.STATUS_SUBMITTED_FAILED.getStatus())
                     .set("error_message", errLog).eq("submit_id", info.submitId);
             judgeEntityService.update(judgeUpdateWrapper);
+            judgeStatusPublisher.publish(info, JudgeStatus.STATUS_SUBMITTED_FAILED);
             // 更新其它表
 //            judgeService.updateOtherTable(
 //                    new Judge().setSubmitId(info.submitId).setStatus(JudgeStatus.STATUS_SYSTEM_ERROR.getStatus())
@@ -60,6 +75,7 @@ public class RemoteJudgeSubmitter {
         judgeEntityService.updateById(new Judge().setSubmitId(info.submitId)
                 .setStatus(JudgeStatus.STATUS_JUDGING.getStatus()).setVjudgeSubmitId(info.remoteRunId)
                 .setVjudgeUsername(account.accountId).setVjudgePassword(account.password));
+        judgeStatusPublisher.publish(info, JudgeStatus.STATUS_JUDGING);
 
         log.info("[{}] Submit Successfully! The submit_id of remote judge is [{}]. Waiting the result of the task!",
                 info.remoteRunId, info.remoteOj);
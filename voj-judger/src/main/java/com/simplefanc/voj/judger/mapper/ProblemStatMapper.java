@@ -0,0 +1,32 @@
+package com.simplefanc.voj.judger.mapper;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * <p>
+ * Mapper 接口
+ * </p>
+ *
+ * @author chenfan
+ * @since 2023-11-08
+ */
+@Mapper
+public interface ProblemStatMapper {
+
+    /**
+     * 将一次提交的结果累加到该题目的提交统计（题目列表使用的 problem_stat 表）
+     */
+    @Insert("INSERT INTO problem_stat(pid, total, ac, wa, ce, pe, tle, mle, re, se, pa, gmt_create, gmt_modified) " +
+            "VALUES (#{pid}, 1, " +
+            "IF(#{status} = 0, 1, 0), IF(#{status} = -1, 1, 0), IF(#{status} = -2, 1, 0), " +
+            "IF(#{status} = -3, 1, 0), IF(#{status} = 1, 1, 0), IF(#{status} = 2, 1, 0), " +
+            "IF(#{status} = 3, 1, 0), IF(#{status} = 4, 1, 0), IF(#{status} = 8, 1, 0), " +
+            "NOW(), NOW()) " +
+            "ON DUPLICATE KEY UPDATE total = total + VALUES(total), ac = ac + VALUES(ac), wa = wa + VALUES(wa), " +
+            "ce = ce + VALUES(ce), pe = pe + VALUES(pe), tle = tle + VALUES(tle), mle = mle + VALUES(mle), " +
+            "re = re + VALUES(re), se = se + VALUES(se), pa = pa + VALUES(pa), gmt_modified = NOW()")
+    int addResult(@Param("pid") Long pid, @Param("status") Integer status);
+
+}
@@ -1,6 +1,8 @@
 package com.simplefanc.voj.judger.mapper;
 
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
 /**
  * <p>
@@ -13,4 +15,18 @@ import org.apache.ibatis.annotations.Mapper;
 @Mapper
 public interface UserRecordMapper {
 
+    /**
+     * 重新统计该用户的做题数据（排行榜使用的 user_stat 表），只扫描该用户自己的提交
+     */
+    @Insert("INSERT INTO user_stat(uid, ac, total, score, gmt_create, gmt_modified) " +
+            "SELECT #{uid}, " +
+            "(SELECT COUNT(DISTINCT pid) FROM user_acproblem WHERE uid = #{uid}), " +
+            "(SELECT COUNT(uid) FROM judge WHERE uid = #{uid} AND cid = 0), " +
+            "s.oi_score, NOW(), NOW() " +
+            "FROM (SELECT COALESCE(SUM(p.max_score), 0) AS oi_score FROM " +
+            "(SELECT MAX(oi_rank_score) AS max_score FROM judge WHERE uid = #{uid} AND cid = 0 GROUP BY pid) p) s " +
+            "ON DUPLICATE KEY UPDATE ac = VALUES(ac), total = VALUES(total), score = VALUES(score), " +
+            "gmt_modified = NOW()")
+    int refreshUserStat(@Param("uid") String uid);
+
 }
@@ -10,6 +10,9 @@ import com.simplefanc.voj.judger.dao.ContestRecordEntityService;
 import com.simplefanc.voj.judger.dao.JudgeEntityService;
 import com.simplefanc.voj.judger.dao.ProblemEntityService;
 import com.simplefanc.voj.judger.dao.UserAcproblemEntityService;
+import com.simplefanc.voj.judger.dao.ProblemStatEntityService;
+import com.simplefanc.voj.judger.dao.UserRecordEntityService;
+import com.simplefanc.voj.judger.judge.JudgeStatusPublisher;
 import com.simplefanc.voj.judger.judge.local.JudgeContext;
 import com.simplefanc.voj.judger.judge.remote.RemoteJudgeContext;
 import com.simplefanc.voj.judger.service.JudgeService;
@@ -35,10 +38,16 @@ public class JudgeServiceImpl implements JudgeService {
 
     private final ContestRecordEntityService contestRecordEntityService;
 
+    private final UserRecordEntityService userRecordEntityService;
+
+    private final ProblemStatEntityService problemStatEntityService;
+
     private final JudgeContext judgeContext;
 
     private final RemoteJudgeContext remoteJudgeContext;
 
+    private final JudgeStatusPublisher judgeStatusPublisher;
+
     @Override
     public void localJudge(Judge judge) {
         Problem problem = problemEntityService.getById(judge.getPid());
@@ -57,11 +66,14 @@ public class JudgeServiceImpl implements JudgeService {
                     userAcproblemEntityService.saveOrUpdate(new UserAcproblem().setPid(judge.getPid())
                             .setUid(judge.getUid()).setSubmitId(judge.getSubmitId()));
                 }
+                userRecordEntityService.refreshUserStat(judge.getUid());
+                problemStatEntityService.addResult(judge.getPid(), judge.getStatus());
             } else {
                 // 如果是比赛提交
                 contestRecordEntityService.updateContestRecord(judge);
             }
         }
+        judgeStatusPublisher.publish(judge);
     }
 
     @Override
@@ -4,8 +4,10 @@ import cn.hutool.core.map.MapUtil;
 import cn.hutool.json.JSONUtil;
 import cn.hutool.system.oshi.OshiUtil;
 import com.simplefanc.voj.judger.common.constants.JudgeServerConstant;
+import com.simplefanc.voj.judger.judge.local.JudgeTaskExecutor;
 import com.simplefanc.voj.judger.judge.local.SandboxRun;
 import com.simplefanc.voj.judger.service.SystemConfigService;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -18,9 +20,10 @@ import java.util.HashMap;
  * @Description:
  */
 @Service
+@RequiredArgsConstructor
 public class SystemConfigServiceImpl implements SystemConfigService {
-    @Value("${voj-judge-server.max-task-num}")
-    private Integer maxTaskNum;
+
+    private final JudgeTaskExecutor judgeTaskExecutor;
 
     @Value("${voj-judge-server.remote-judge.open}")
     private Boolean isOpenRemoteJudge;
@@ -66,11 +69,9 @@ public class SystemConfigServiceImpl implements SystemConfigService {
         res.put("cpu", Runtime.getRuntime().availableProcessors());
         res.put("languages", JudgeServerConstant.LANGUAGE_LIST);
 
-        if (maxTaskNum == -1) {
-            res.put("maxTaskNum", Runtime.getRuntime().availableProcessors() + 1);
-        } else {
-            res.put("maxTaskNum", maxTaskNum);
-        }
+        res.put("maxTaskNum", judgeTaskExecutor.getMaxTaskNum());
+        res.put("runningTaskNum", judgeTaskExecutor.getRunningSubmissionNum());
+        res.put("pendingCaseNum", judgeTaskExecutor.getPendingTaskNum());
         if (isOpenRemoteJudge) {
             res.put("isOpenRemoteJudge", true);
             if (remoteJudgeMaxTaskNum == -1) {